@@ -0,0 +1,198 @@
+package dal.tool.trace.jmxer.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * 대상 JVM 내부에서 ThreadMXBean으로 스레드 스택을 샘플링하여, JMXer로 전송하는 Attach Agent<br/>
+ * JMXer가 {@link com.sun.tools.attach.VirtualMachine#loadAgent}로 로드하며, Agent 인자는 "port:token" 형식이다.<br/>
+ * Agent는 127.0.0.1:port 로 접속한 뒤 샘플링 설정(주기, 깊이, 스레드ID 목록)을 받아 샘플링을 시작하고,
+ * 소켓 연결이 끊어지면 샘플링을 중단한다.<br/>
+ * 스택 프레임과 문자열은 처음 나올때 한번만 정의(FRAME_DEF, STRING_DEF)를 전송하고, 이후에는 ID로만 참조한다.<br/>
+ * 샘플링은 System.nanoTime 기준의 고정 주기로 수행하며, 수집이 늦어져 지나간 주기는 건너뛰고 그 수를 샘플(SAMPLE)과 함께 전송한다.<br/>
+ * JMX의 CompositeData 변환을 거치지 않으므로 스레드 수가 많거나 샘플링 주기가 짧아도 부하가 적다.<br/>
+ * 대상 JVM에 로드되는 클래스이므로, JDK 클래스 외에 다른 JMXer 클래스를 참조하지 않는다.
+ */
+public class SamplingAgent implements Runnable {
+
+	public static final int MAGIC = 0x4A4D5841;
+	public static final int VERSION = 2;
+
+	public static final int TYPE_STRING_DEF = 1;
+	public static final int TYPE_FRAME_DEF = 2;
+	public static final int TYPE_SAMPLE = 3;
+
+	public static final int FLAG_IN_NATIVE = 0x01;
+	public static final int FLAG_SUSPENDED = 0x02;
+
+	private final int port;
+	private final String token;
+	private final Map<String,Integer> stringIds = new HashMap<String,Integer>();
+	private final Map<StackTraceElement,Integer> frameIds = new HashMap<StackTraceElement,Integer>();
+
+
+	private SamplingAgent(int port, String token) {
+		this.port = port;
+		this.token = token;
+	}
+
+
+	public static void agentmain(String agentArgs) {
+		if(agentArgs == null || agentArgs.indexOf(':') < 0) {
+			System.err.println("[JMXer Agent] Invalid agent argument : " + agentArgs);
+			return;
+		}
+		int idx = agentArgs.indexOf(':');
+		int port = Integer.parseInt(agentArgs.substring(0, idx));
+		String token = agentArgs.substring(idx+1);
+		Thread samplerThread = new Thread(new SamplingAgent(port, token), "JMXer-SamplingAgent");
+		samplerThread.setDaemon(true);
+		samplerThread.start();
+	}
+
+
+	public static void agentmain(String agentArgs, java.lang.instrument.Instrumentation inst) {
+		agentmain(agentArgs);
+	}
+
+
+	public void run() {
+		Socket socket = null;
+		try {
+			socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+			socket.setTcpNoDelay(true);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 64*1024));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(token);
+			out.flush();
+
+			long intervalMS = in.readLong();
+			int maxDepth = in.readInt();
+			int count = in.readInt();
+			long[] ids = new long[count];
+			for(int i = 0; i < count; i++) {
+				ids[i] = in.readLong();
+			}
+
+			ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+			long intervalNanos = Math.max(intervalMS, 1L) * 1000000L;
+			long nextTick = System.nanoTime();
+			int missedTicks = 0;
+			while(true) {
+				long start = System.currentTimeMillis();
+				long startNanos = System.nanoTime();
+				ThreadInfo[] infos = threadMXBean.getThreadInfo(ids, maxDepth);
+				long endNanos = System.nanoTime();
+				long end = System.currentTimeMillis();
+				writeSample(out, start, end, endNanos - startNanos, missedTicks, infos);
+				out.flush();
+				nextTick += intervalNanos;
+				long now = System.nanoTime();
+				missedTicks = 0;
+				if(now - nextTick > 0) {
+					missedTicks = (int)((now - nextTick) / intervalNanos);
+					nextTick += missedTicks * intervalNanos;
+				} else {
+					long sleep = nextTick - now;
+					Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
+				}
+			}
+		} catch(IOException e) {
+			// the recorder closed the connection
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(Throwable t) {
+			System.err.println("[JMXer Agent] Sampling stopped : " + t);
+		} finally {
+			if(socket != null) {
+				try {
+					socket.close();
+				} catch(IOException e) {
+				}
+			}
+		}
+	}
+
+
+	private void writeSample(DataOutputStream out, long start, long end, long latencyNanos, int missedTicks, ThreadInfo[] infos) throws IOException {
+		int count = 0;
+		for(ThreadInfo info : infos) {
+			if(info == null) continue;
+			count++;
+			defineString(out, info.getThreadName());
+			defineString(out, info.getLockName());
+			defineString(out, info.getLockOwnerName());
+			for(StackTraceElement ste : info.getStackTrace()) {
+				defineFrame(out, ste);
+			}
+		}
+		out.writeByte(TYPE_SAMPLE);
+		out.writeLong(start);
+		out.writeLong(end);
+		out.writeLong(latencyNanos);
+		out.writeInt(missedTicks);
+		out.writeInt(count);
+		for(ThreadInfo info : infos) {
+			if(info == null) continue;
+			out.writeLong(info.getThreadId());
+			out.writeInt(stringId(info.getThreadName()));
+			out.writeByte(info.getThreadState().ordinal());
+			out.writeByte((info.isInNative() ? FLAG_IN_NATIVE : 0) | (info.isSuspended() ? FLAG_SUSPENDED : 0));
+			out.writeLong(info.getBlockedTime());
+			out.writeLong(info.getBlockedCount());
+			out.writeLong(info.getWaitedTime());
+			out.writeLong(info.getWaitedCount());
+			out.writeInt(stringId(info.getLockName()));
+			out.writeLong(info.getLockOwnerId());
+			out.writeInt(stringId(info.getLockOwnerName()));
+			StackTraceElement[] stack = info.getStackTrace();
+			out.writeInt(stack.length);
+			for(StackTraceElement ste : stack) {
+				out.writeInt(frameIds.get(ste));
+			}
+		}
+	}
+
+
+	private int stringId(String value) {
+		if(value == null) return -1;
+		return stringIds.get(value);
+	}
+
+
+	private void defineString(DataOutputStream out, String value) throws IOException {
+		if(value == null || stringIds.containsKey(value)) return;
+		int id = stringIds.size();
+		stringIds.put(value, id);
+		out.writeByte(TYPE_STRING_DEF);
+		out.writeInt(id);
+		out.writeUTF(value);
+	}
+
+
+	private void defineFrame(DataOutputStream out, StackTraceElement ste) throws IOException {
+		if(frameIds.containsKey(ste)) return;
+		int id = frameIds.size();
+		frameIds.put(ste, id);
+		out.writeByte(TYPE_FRAME_DEF);
+		out.writeInt(id);
+		out.writeUTF(ste.getClassName());
+		out.writeUTF(ste.getMethodName());
+		out.writeUTF(ste.getFileName() == null ? "" : ste.getFileName());
+		out.writeInt(ste.getLineNumber());
+	}
+
+}
@@ -12,17 +12,31 @@ import dal.tool.trace.jmxer.JMXControl;
 import dal.tool.trace.jmxer.JMXerConstant;
 import dal.tool.trace.jmxer.cli.JmxCommandExecutor;
 import dal.tool.trace.jmxer.cli.data.RecordResult;
+import dal.tool.trace.jmxer.cli.data.RecordStackIndex;
+import dal.tool.trace.jmxer.cli.helper.AgentStackRecordThread;
 import dal.tool.trace.jmxer.cli.helper.ListArgumentsHelper;
+import dal.tool.trace.jmxer.cli.helper.RecordWatchCondition;
+import dal.tool.trace.jmxer.cli.helper.RecordWatchThread;
 import dal.tool.trace.jmxer.cli.helper.ResourceRecordThread;
 import dal.tool.trace.jmxer.cli.helper.StackRecordThread;
+import dal.tool.trace.jmxer.cli.helper.StateRecordThread;
+import dal.tool.trace.jmxer.cli.helper.ThreadChurnTracker;
 import dal.tool.util.NumberUtil;
 import dal.tool.util.StringUtil;
+import dal.tool.util.jmx.MBeanConnector.ConnectType;
 
 public class JmxRecordCommand extends JmxCommand {
 
 	public static final CommandMeta commandMeta = new CommandMeta(JmxRecordCommand.class, "REC[ORD]");
 
+	private static final int MAX_SHARDS = 16;
+	private static final int DEFAULT_ADAPTIVE_BUDGET = 50;
+	private static final int DEFAULT_ADAPTIVE_CPU_LIMIT = 80;
+	private static final long DEFAULT_STATE_INTERVAL = 50L;
+
 	private static RecordResult lastRecordResult = null;
+	private static StackRecordThread backgroundRecordThread = null;
+	private static RecordWatchThread watchThread = null;
 	
 	
 	public JmxRecordCommand(String commandLine, JmxCommandExecutor commandExecutor) {
@@ -33,7 +47,7 @@ public class JmxRecordCommand extends JmxCommand {
 	public boolean beforeExecute() throws Exception {
 		if(JMXControl.isAnalyzeMode && commandArgs.size() > 0) {
 			String arg = StringUtil.stripQuote(commandArgs.getArguments().get(0), new char[]{'"','\''}, true);
-			if(IOUtil.isIncludeEquals(arg, "res", "ource") || IOUtil.isIncludeEquals(arg, "stack", "trace")) {
+			if(IOUtil.isIncludeEquals(arg, "res", "ource") || IOUtil.isIncludeEquals(arg, "stack", "trace") || arg.equalsIgnoreCase("state") || arg.equalsIgnoreCase("watch")) {
 				logln("JMX commands are not allowed in analyze mode.");
 				return false;
 			}
@@ -48,18 +62,31 @@ public class JmxRecordCommand extends JmxCommand {
         logln("");
         logln(" Profile changes in the state of threads.");
         logln("");
-        logln(" REC[ORD] RES[OURCE] ThreadList");
-        logln(" REC[ORD] STACK[TRACE] ThreadList");
+        logln(" REC[ORD] RES[OURCE] ThreadList [--rank N]");
+        logln(" REC[ORD] STACK[TRACE] ThreadList [StackOptions...]");
+        logln(" REC[ORD] STATE ThreadList [StateOptions...]");
+        logln(" REC[ORD] WATCH ThreadList Condition [WatchOptions...]");
+        logln(" REC[ORD] SNAPSHOT");
+        logln(" REC[ORD] STOP");
         logln(" REC[ORD] VIEW ViewType [ViewTypeArgs...]");
-        logln(" REC[ORD] SAVE [FileName]");
+        logln(" REC[ORD] SAVE [FileName] [--no-compress]");
         logln(" REC[ORD] LOAD [FileName]");
         logln("");
         logln(" Following is the list of available argument.");
         logln("     RESOURCE    - record resource usage of threads for a while.");
+        logln("                   * shows the cpu usage and allocation rate per interval, and the top N(--rank N, default: 3) threads of each interval.");
+        logln("                   * also shows the threads started or terminated while recording, and the thread creation rate.");
         logln("     STACKTRACE  - record stacktrace sample of threads for a while.");
+        logln("     STATE       - record only the state and lock information of threads for a while, without stacktrace.");
+        logln("                   * it is light enough to sample at a much shorter interval. (default: " + DEFAULT_STATE_INTERVAL + "ms)");
+        logln("     WATCH       - poll an MBean attribute in background, and sample stacktrace while the condition is met.");
+        logln("     SNAPSHOT    - capture the samples of the background recording as the last record result.");
+        logln("                   * for WATCH, the result of the last finished sampling is captured.");
+        logln("     STOP        - stop the background recording or watching, and keep its samples as the last record result.");
         logln("     VIEW        - display the result of the last recorded stacktrace sample data.");
         logln("                   * follows SET RECORD_VIEW_MODE (default: NO_REQUEST_WAIT)");
         logln("     SAVE        - save the last recorded stacktrace sample data to a file.");
+        logln("                   * sample blocks are compressed unless '--no-compress' is given.");
         logln("     LOAD        - load stacktrace sample data from a file.");
         logln("");
         logln(" ThreadList : {*|ThreadIds|ThreadNames}");
@@ -72,18 +99,59 @@ public class JmxRecordCommand extends JmxCommand {
         logln("   'ThreadIds' and 'ThreadNames' could be array type. ex) 1,3,21-30 or \"main\",\"Thread-*\",\"pool-1-thread-*\"");
         logln("   'ThreadIds' and 'ThreadNames' could also be used in combination. ex) 1,3-5,\"Thread-*\"");
         logln("");
-        logln(" ViewType : {INFO|METHOD|THREAD|STACK|SEARCH}");
+        logln(" StackOptions :");
+        logln("   '--agent' or '-a' means to sample inside the target JVM with an attached agent, and stream the samples to JMXer.");
+        logln("      It is available only when connected by PID or NAME, and JMXer must be run from the jar file.");
+        logln("      It has less overhead than JMX for many threads or short intervals.");
+        logln("   '--depth N' or '-d N' means to sample only the leaf(innermost) N frames of each stacktrace.");
+        logln("      Stacks that may have been truncated are rooted at the '<truncated>' frame in the views.");
+        logln("   '--top' or '-t' means to sample only the top frame of each stacktrace. (same as '--depth 1')");
+        logln("   '--shards N' means to split the threads into N shards, and sample them concurrently over N JMX connections. (1~" + MAX_SHARDS + ")");
+        logln("      It shortens the sampling time for a large number of threads. It cannot be used with '--agent'.");
+        logln("   '--adaptive' means to back off the sampling automatically when the sampling latency or the target cpu usage is high.");
+        logln("      It raises the interval (up to x8), limits the stack depth (64, 16), and samples half of the threads per tick step by step,");
+        logln("      and restores them when the pressure drops. Every change is shown in 'record view info'. It cannot be used with '--agent'.");
+        logln("   '--budget Percent' means the allowed sampling latency as a percentage of the interval. (default: " + DEFAULT_ADAPTIVE_BUDGET + ", implies '--adaptive')");
+        logln("   '--cpu-limit Percent' means the cpu usage(ProcessCpuLoad) of the target JVM to back off. (default: " + DEFAULT_ADAPTIVE_CPU_LIMIT + ", 0 to ignore, implies '--adaptive')");
+        logln("   '--window Duration' or '-w Duration' means to record in background, and keep only the samples of the last Duration.");
+        logln("      Duration is a number with a unit of ms, s, m or h. ex) --window 5m");
+        logln("      The memory usage does not grow over time. Use SNAPSHOT to capture the samples, and STOP to end the recording.");
+        logln("");
+        logln("   '--resource' means to record the cpu time and allocated bytes of the threads at each sampling, too.");
+        logln("      It can be shown with 'record view resource', and is saved with the result. It cannot be used with '--agent' or '--window'.");
+        logln("   '--churn' means to track the threads started or terminated in the target JVM every " + (ThreadChurnTracker.POLL_INTERVAL_MS/1000) + "s while sampling, too.");
+        logln("      It can be shown with 'record view churn', and is saved with the result. It cannot be used with '--agent' or '--window'.");
+        logln("   '--index' means to aggregate the stacks of each thread per " + (RecordStackIndex.DEFAULT_BUCKET_MS/1000) + "s bucket while recording.");
+        logln("      METHOD and THREAD(--merge) views are made from the index, and read the samples only for the buckets at the edges of a range.");
+        logln("      It is kept in memory only. It cannot be used with '--resource' or '--window'.");
+        logln(" StateOptions : '--shards N', '--window Duration', '--resource', '--churn' (see StackOptions)");
+        logln("");
+        logln(" Condition : ObjectName/Attribute[.Key]{>|>=|<|<=|==|!=}Number");
+        logln("   ex) java.lang:type=Threading/ThreadCount>200 or java.lang:type=OperatingSystem/ProcessCpuLoad>=0.8");
+        logln("   'Key' is the item of a CompositeData attribute. ex) java.lang:type=Memory/HeapMemoryUsage.used>500000000");
+        logln("   It must not contain spaces. Enclose it in single quotation marks if it contains double quotation marks.");
+        logln("");
+        logln(" WatchOptions :");
+        logln("   '--poll Duration' or '-p Duration' means the interval to check the condition. (default: 5s)");
+        logln("   '--cooldown Duration' or '-c Duration' means to stop sampling after the condition is not met for Duration. (default: 30s)");
+        logln("   '--save Directory' or '-s Directory' means to save the result of each sampling to a dump file in the directory.");
+        logln("   '--agent' or '-a' means to sample with an attached agent. (see StackOptions)");
+        logln("");
+        logln(" ViewType : {INFO|METHOD|THREAD|STACK|SEARCH|STATE|LOCK|RESOURCE|ALLOC|CHURN}");
         logln("   'INFO' means to show the information of the last recorded stacktrace sample.");
         logln("      Usage) record view info");
         logln("   'METHOD' means to aggregate the results of all methods in threads.");
-        logln("      Usage) record view method ThreadList [RangeExpression]");
+        logln("      Usage) record view method ThreadList [RangeExpression] [--by SortBy]");
         logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
         logln("        arg 2) RangeExpression : {AbsoluteTimeRange|RelativeTimeRange|SampleOrderRange}");
+        logln("        arg 3) SortBy : {count|cpu|alloc} (default: count. cpu/alloc needs the result recorded with '--resource')");
         logln("   'THREAD' means to aggregate the results per thread.");
-        logln("      Usage) record view thread ThreadList [RangeExpression] [--merge|--split]");
+        logln("      Usage) record view thread ThreadList [RangeExpression] [--merge|--split] [--by SortBy]");
         logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
         logln("        arg 2) RangeExpression : {AbsoluteTimeRange|RelativeTimeRange|SampleOrderRange}");
         logln("        arg 3) ViewOption : {--merge|-m|--split|-s} (default: --split)");
+        logln("        arg 4) SortBy : {count|cpu|alloc} (default: count. cpu/alloc needs the result recorded with '--resource')");
+        logln("      With the result recorded with '--resource', METHOD and THREAD also show the estimated cpu time and allocated bytes.");
         logln("   'STACK' means to show the stacktraces of a specific point in time.");
         logln("      Usage) record view stack ThreadList PointExpression");
         logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
@@ -92,6 +160,29 @@ public class JmxRecordCommand extends JmxCommand {
         logln("      Usage) record view search ThreadList NameExpression");
         logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
         logln("        arg 2) NameExpression : '*' and '?' as name pattern characters. (case-sensitive, at least 3 characters)");
+        logln("   'STATE' means to show the state timeline of threads, and the summary of lock contention.");
+        logln("      Usage) record view state ThreadList [RangeExpression]");
+        logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
+        logln("        arg 2) RangeExpression : {AbsoluteTimeRange|RelativeTimeRange|SampleOrderRange}");
+        logln("      It is also available for the result of REC STACK. METHOD, THREAD, STACK and SEARCH are not available for the result of REC STATE.");
+        logln("   'LOCK' means to analyze the lock contention as a wait-for graph, and to detect deadlock cycles.");
+        logln("      Usage) record view lock ThreadList [RangeExpression] [--top N]");
+        logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
+        logln("        arg 2) RangeExpression : {AbsoluteTimeRange|RelativeTimeRange|SampleOrderRange}");
+        logln("        arg 3) --top N : the number of locks and wait-for edges to show. (default: 10)");
+        logln("      Locks are ranked by the delta of the thread BlockedTime between samples. (needs ThreadContentionMonitoringEnabled)");
+        logln("   'RESOURCE' means to show the cpu usage and allocation rate of threads per interval. (recorded with '--resource')");
+        logln("      Usage) record view resource ThreadList [--rank N]");
+        logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
+        logln("        arg 2) --rank N : the number of top threads to show for each interval. 0 to hide. (default: 3)");
+        logln("   'ALLOC' means to rank methods by the estimated allocated bytes per second. (recorded with '--resource')");
+        logln("      Usage) record view alloc ThreadList [RangeExpression] [--by self|total] [--top N]");
+        logln("        arg 1) ThreadList : {*|ThreadIds|ThreadNames}");
+        logln("        arg 2) RangeExpression : {AbsoluteTimeRange|RelativeTimeRange|SampleOrderRange}");
+        logln("        arg 3) --by : 'self' ranks by the bytes attributed to the leaf method, 'total' by the bytes of all methods in the stack. (default: self)");
+        logln("        arg 4) --top N : the number of methods to show. (default: 30)");
+        logln("   'CHURN' means to show the threads started or terminated while recording, grouped by name pattern. (recorded with '--churn')");
+        logln("      Usage) record view churn");
         logln("   * RangeExpression :");
         logln("       - AbsoluteTimeRange : time_pattern~[time_pattern]  ex) 2022.10.28/12:35:00~2022.10.28/12:35:10");
         logln("       - RelativeTimeRange : relative_ms~[relative_ms]    ex) 1000ms~5000ms");
@@ -106,19 +197,133 @@ public class JmxRecordCommand extends JmxCommand {
 	public void doExecute() throws Exception {
 		if(!checkArgument(1, -1)) return;
 		String arg = StringUtil.stripQuote(commandArgs.nextArgument(), new char[]{'"','\''}, true);
-		if(IOUtil.isIncludeEquals(arg, "res", "ource") || IOUtil.isIncludeEquals(arg, "stack", "trace")) {
+		if(IOUtil.isIncludeEquals(arg, "res", "ource") || IOUtil.isIncludeEquals(arg, "stack", "trace") || arg.equalsIgnoreCase("state")) {
 			commandArgs.setArguments(ListArgumentsHelper.concatSpaceWithQuotes(commandArgs, '"'));
-			if(!checkArgument(2)) {
-				if(IOUtil.isIncludeEquals(arg, "res", "ource")) {
-			        logln("  Usage) REC[ORD] RES[OURCE] ThreadList");					
+			boolean isResource = IOUtil.isIncludeEquals(arg, "res", "ource");
+			boolean stateOnly = arg.equalsIgnoreCase("state");
+			if(!(isResource ? checkArgument(2, 4) : checkArgument(2, -1))) {
+				if(isResource) {
+			        logln("  Usage) REC[ORD] RES[OURCE] ThreadList [--rank N]");					
+				} else if(stateOnly) {
+			        logln("  Usage) REC[ORD] STATE ThreadList [StateOptions...]");					
+				} else {
+			        logln("  Usage) REC[ORD] STACK[TRACE] ThreadList [StackOptions...]");					
+				}
+				return;
+			}
+			String threadArgs = commandArgs.nextArgument().trim();
+			boolean useAgent = false;
+			long window_ms = 0L;
+			int shards = 1;
+			int depth = 0;
+			boolean adaptive = false;
+			int budget = DEFAULT_ADAPTIVE_BUDGET;
+			int cpuLimit = DEFAULT_ADAPTIVE_CPU_LIMIT;
+			boolean withResource = false;
+			boolean withChurn = false;
+			boolean withIndex = false;
+			int rank = -1;
+			while(commandArgs.hasMoreArgument()) {
+				String option = commandArgs.nextArgument();
+				if(isResource != (option.equalsIgnoreCase("--rank") || option.equalsIgnoreCase("-r"))) {
+					logln(isResource ? "Only '--rank' option is available for REC RESOURCE." : "Invalid option for record command : " + option);
+					return;
+				}
+				if(option.equalsIgnoreCase("--rank") || option.equalsIgnoreCase("-r")) {
+					String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+					if(!NumberUtil.isNumber(value) || Integer.parseInt(value) < 0) {
+						logln("Invalid value for rank : " + value);
+						return;
+					}
+					rank = Integer.parseInt(value);
+				} else if(option.equalsIgnoreCase("--resource")) {
+					withResource = true;
+				} else if(option.equalsIgnoreCase("--churn")) {
+					withChurn = true;
+				} else if(option.equalsIgnoreCase("--index")) {
+					withIndex = true;
+				} else if(option.equalsIgnoreCase("--agent") || option.equalsIgnoreCase("-a")) {
+					useAgent = true;
+				} else if(option.equalsIgnoreCase("--depth") || option.equalsIgnoreCase("-d")) {
+					String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+					if(!NumberUtil.isNumber(value) || Integer.parseInt(value) < 1) {
+						logln("Invalid value for depth : " + value);
+						return;
+					}
+					depth = Integer.parseInt(value);
+				} else if(option.equalsIgnoreCase("--top") || option.equalsIgnoreCase("-t")) {
+					depth = 1;
+				} else if(option.equalsIgnoreCase("--adaptive")) {
+					adaptive = true;
+				} else if(option.equalsIgnoreCase("--budget")) {
+					String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+					if(!NumberUtil.isNumber(value) || Integer.parseInt(value) < 1 || Integer.parseInt(value) > 100) {
+						logln("Invalid value for budget(1~100) : " + value);
+						return;
+					}
+					budget = Integer.parseInt(value);
+					adaptive = true;
+				} else if(option.equalsIgnoreCase("--cpu-limit")) {
+					String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+					if(!NumberUtil.isNumber(value) || Integer.parseInt(value) < 0 || Integer.parseInt(value) > 100) {
+						logln("Invalid value for cpu-limit(0~100) : " + value);
+						return;
+					}
+					cpuLimit = Integer.parseInt(value);
+					adaptive = true;
+				} else if(option.equalsIgnoreCase("--shards")) {
+					String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+					if(!NumberUtil.isNumber(value) || Integer.parseInt(value) < 1 || Integer.parseInt(value) > MAX_SHARDS) {
+						logln("Invalid value for shards(1~" + MAX_SHARDS + ") : " + value);
+						return;
+					}
+					shards = Integer.parseInt(value);
+				} else if(option.equalsIgnoreCase("--window") || option.equalsIgnoreCase("-w") || option.toLowerCase().startsWith("--window=")) {
+					String value = (option.indexOf('=') > -1) ? option.substring(option.indexOf('=')+1) : (commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "");
+					window_ms = parseDuration(value);
+					if(window_ms < 1) {
+						logln("Invalid value for window : " + value);
+						return;
+					}
 				} else {
-			        logln("  Usage) REC[ORD] STACK[TRACE] ThreadList");					
+					logln("Invalid option for record command : " + option);
+					return;
 				}
+			}
+			if(stateOnly && (useAgent || depth > 0 || adaptive || withIndex)) {
+				logln("Only '--shards', '--window', '--resource' and '--churn' options are available for REC STATE.");
+				return;
+			}
+			if(withResource && (useAgent || window_ms > 0)) {
+				logln("The '--resource' option cannot be used with the '--agent' or '--window' option.");
+				return;
+			}
+			if(withChurn && (useAgent || window_ms > 0)) {
+				logln("The '--churn' option cannot be used with the '--agent' or '--window' option.");
+				return;
+			}
+			if(withIndex && (withResource || window_ms > 0)) {
+				logln("The '--index' option cannot be used with the '--resource' or '--window' option.");
+				return;
+			}
+			if(window_ms > 0 && isBackgroundRunning()) {
+				logln("A background recording is already running. Stop it first with REC STOP.");
+				return;
+			}
+			if(useAgent && mbeanConnector.getConnectType() != ConnectType.ATTACH_BY_PID && mbeanConnector.getConnectType() != ConnectType.ATTACH_BY_NAME) {
+				logln("The '--agent' option is available only when connected by PID or NAME.");
+				return;
+			}
+			if(useAgent && shards > 1) {
+				logln("The '--shards' option cannot be used with the '--agent' option.");
+				return;
+			}
+			if(useAgent && adaptive) {
+				logln("The '--adaptive' option cannot be used with the '--agent' option.");
 				return;
 			}
 			String[] threadIds = null;
 			try {
-				String threadArgs = commandArgs.nextArgument().trim();
 				threadIds = JmxThreadCommand.getTargetThreads(getMBeanConnection(), threadArgs);
 				if(!threadArgs.equals("*") && threadIds != null && threadIds.length > 0) {
 					logln(Level.DEBUG, "List of Thread ID : Count=" + threadIds.length + ", List=[" + StringUtil.arrayToString(threadIds, ",") + "]");
@@ -133,6 +338,14 @@ public class JmxRecordCommand extends JmxCommand {
 		    		return;
 		    	}
 				long interval_ms = 1000L;
+				String interval = IOUtil.readLine("Sampling Interval in milliseconds(" + interval_ms + "): ", Logger.Level.RESULT);
+				if("".equals(interval.trim())) {
+				} else if(NumberUtil.isNumber(interval) && Integer.parseInt(interval) > 0) {
+					interval_ms = Integer.valueOf(interval);
+				} else {
+					logln("Invalid value for interval. The default of " + interval_ms + "ms will be applied.");
+					return;
+				}
 				String time = IOUtil.readLine("Sampling Time in milliseconds(0, Until the enter key is pressed): ", Logger.Level.RESULT);
 				long time_ms = 0L;
 				if("".equals(time.trim())) {
@@ -152,6 +365,9 @@ public class JmxRecordCommand extends JmxCommand {
 				}
 				if("Y".equals(yn)) {
 					ResourceRecordThread recordThread = new ResourceRecordThread(getMBeanConnection(), threadIds);
+					if(rank > -1) {
+						recordThread.setTopCount(rank);
+					}
 					recordThread.startRecording(interval_ms, time_ms);
 					if(time_ms == 0) {
 						IOUtil.readLine("Press enter key to stop recording.\n", Logger.Level.RESULT);
@@ -159,46 +375,100 @@ public class JmxRecordCommand extends JmxCommand {
 					}
 					recordThread.printResult();
 				}
-			} else if(IOUtil.isIncludeEquals(arg, "stack", "trace")) {
+			} else {
 		    	if(threadIds == null || threadIds.length < 1) {
 		    		logln("No target thread(s) specified.");
 		    		return;
 		    	}
-				String interval = IOUtil.readLine("Sampling Interval in milliseconds(500): ", Logger.Level.RESULT);
-				long interval_ms = 500L;
+				long interval_ms = stateOnly ? DEFAULT_STATE_INTERVAL : 500L;
+				String interval = IOUtil.readLine("Sampling Interval in milliseconds(" + interval_ms + "): ", Logger.Level.RESULT);
 				if("".equals(interval.trim())) {
 				} else if(NumberUtil.isNumber(interval)) {
 					interval_ms = Integer.valueOf(interval);
 				} else {
-					logln("Invalid value for interval. The default of 500ms will be applied.");
+					logln("Invalid value for interval. The default of " + interval_ms + "ms will be applied.");
 					return;
 				}
-				String time = IOUtil.readLine("Sampling Time in milliseconds(0, Until the enter key is pressed): ", Logger.Level.RESULT);
 				long time_ms = 0L;
-				if("".equals(time.trim())) {
-				} else if(NumberUtil.isNumber(time) && Integer.parseInt(time) > -1) {
-					time_ms = Integer.valueOf(time);
-				} else {
-					logln("Invalid value for time. The default of 0 will be applied.");
-					return;
+				if(window_ms < 1) {
+					String time = IOUtil.readLine("Sampling Time in milliseconds(0, Until the enter key is pressed): ", Logger.Level.RESULT);
+					if("".equals(time.trim())) {
+					} else if(NumberUtil.isNumber(time) && Integer.parseInt(time) > -1) {
+						time_ms = Integer.valueOf(time);
+					} else {
+						logln("Invalid value for time. The default of 0 will be applied.");
+						return;
+					}
 				}
 				logln("");
 				logln("[WARNING]");
 				logln(" - If the sampling interval is short or the number of threads is large, it may be slow.");
-				if(time_ms == 0) {
-					logln(" - Do not record for too long. Recording will continue until you press the enter key.");
+				if(window_ms > 0) {
+					logln(" - Recording will continue in background until REC STOP. Only the samples of the last " + window_ms + "ms are kept.");
+				} else if(time_ms == 0) {
+					logln(" - Recording will continue until you press the enter key. Samples exceeding " + StackRecordThread.SPILL_SAMPLE_THRESHOLD + " are spilled to a temporary file.");
 				}
 				logln("");
 				String yn = null;
 				while(true) {
-					yn = IOUtil.readLine("Do you want to sample stacktrace for " + ("*".equals(threadIds[0])?"all":threadIds.length) + " threads(Y/N)? ", Logger.Level.RESULT);
+					yn = IOUtil.readLine("Do you want to sample " + (stateOnly ? "thread state" : "stacktrace") + " for " + ("*".equals(threadIds[0])?"all":threadIds.length) + " threads(Y/N)? ", Logger.Level.RESULT);
 					yn = yn.trim().toUpperCase();
 					if("Y".equals(yn) || "N".equals(yn)) {
 						break;
 					}
 				}
 				if("Y".equals(yn)) {	
-					StackRecordThread recordThread = new StackRecordThread(getMBeanConnection(), threadIds);
+					StackRecordThread recordThread = null;
+					if(useAgent) {
+						AgentStackRecordThread agentRecordThread = new AgentStackRecordThread(getMBeanConnection(), threadIds, mbeanConnector.getConnectType(), mbeanConnector.getTargetName());
+						try {
+							agentRecordThread.setMaxStackDepth(depth);
+							agentRecordThread.connectAgent(interval_ms);
+						} catch(Exception e) {
+							logln(Level.ERROR, "Failed to start the sampling agent : " + e.getMessage());
+							return;
+						}
+						recordThread = agentRecordThread;
+						if(withIndex) {
+							recordThread.setStackIndex(RecordStackIndex.DEFAULT_BUCKET_MS);
+						}
+					} else {
+						recordThread = stateOnly ? new StateRecordThread(getMBeanConnection(), threadIds) : new StackRecordThread(getMBeanConnection(), threadIds);
+						recordThread.setMaxStackDepth(depth);
+						if(adaptive) {
+							recordThread.setAdaptive(budget, cpuLimit);
+						}
+						if(withResource) {
+							try {
+								recordThread.setResourceSeries();
+							} catch(Exception e) {
+								logln(Level.ERROR, e.getMessage());
+								return;
+							}
+						}
+						if(withChurn) {
+							recordThread.setThreadChurn();
+						}
+						if(withIndex) {
+							recordThread.setStackIndex(RecordStackIndex.DEFAULT_BUCKET_MS);
+						}
+						if(shards > 1) {
+							try {
+								recordThread.setShards(shards, mbeanConnector.getConnectType(), mbeanConnector.getTargetName(), new String[]{mbeanConnector.getAuthUser(), mbeanConnector.getAuthPass()});
+							} catch(Exception e) {
+								logln(Level.ERROR, e.getMessage());
+								return;
+							}
+						}
+					}
+					if(window_ms > 0) {
+						recordThread.setRetentionWindow(window_ms, interval_ms);
+						recordThread.setBackground(true);
+						recordThread.startRecording(interval_ms, 0L);
+						backgroundRecordThread = recordThread;
+						logln("Recording in background. Use REC SNAPSHOT to capture the last " + window_ms + "ms, and REC STOP to stop recording.");
+						return;
+					}
 					recordThread.startRecording(interval_ms, time_ms);
 					if(time_ms == 0) {
 						IOUtil.readLine("Press enter key to stop recording.\n", Logger.Level.RESULT);
@@ -215,7 +485,7 @@ public class JmxRecordCommand extends JmxCommand {
 		} else {
 			if(arg.equalsIgnoreCase("view")) {
 				commandArgs.setArguments(ListArgumentsHelper.concatSpaceWithQuotes(commandArgs, '"'));
-				if(!checkArgument(2, 4)) {
+				if(!checkArgument(2, 7)) {
 					logln("  Usage) REC[ORD] VIEW ViewType [ViewTypeArgs...]");					
 					return;
 				}
@@ -228,17 +498,76 @@ public class JmxRecordCommand extends JmxCommand {
 					viewArgs.add(commandArgs.nextArgument());
 				}					
 				lastRecordResult.printResult(viewArgs, getSettings().getRecordViewMode(), getSettings().showEmptyThreadInRecordView());
+			} else if(arg.equalsIgnoreCase("watch")) {
+				doWatch();
+			} else if(arg.equalsIgnoreCase("snapshot") || arg.equalsIgnoreCase("stop")) {
+				if(!checkArgument(1, 1)) {
+			        logln("  Usage) REC[ORD] " + arg.toUpperCase());					
+					return;
+				}
+				boolean stopRecording = arg.equalsIgnoreCase("stop");
+				if(watchThread != null) {
+					if(stopRecording) {
+						watchThread.stopWatching();
+						logln("Stopped watching. Sampled " + watchThread.getBurstCount() + " time(s).");
+					}
+					RecordResult burstResult = watchThread.getLastBurstResult();
+					if(stopRecording) {
+						watchThread = null;
+					}
+					if(burstResult == null) {
+						logln("No finished sampling by the watch condition.");
+						return;
+					}
+					lastRecordResult = burstResult;
+					logln("Captured the last sampling of " + burstResult.sampleStore.getThreadCount() + " threads (" + (burstResult.endTime-burstResult.startTime) + "ms). It can be analyzed with the view command.");
+					return;
+				}
+				if(backgroundRecordThread == null) {
+					logln("No background recording is running. Start it with REC STACK ThreadList --window Duration or REC WATCH.");
+					return;
+				}
+				if(stopRecording) {
+					if(backgroundRecordThread.isRecording()) {
+						backgroundRecordThread.stopRecording();
+					}
+					backgroundRecordThread.printResult();
+				}
+				RecordResult snapshot = backgroundRecordThread.snapshot();
+				if(stopRecording) {
+					backgroundRecordThread = null;
+				}
+				if(snapshot == null) {
+					logln("No samples in the retention window.");
+					return;
+				}
+				snapshot.vmInfo = InfoCommand.getTargetVMInfo(getMBeanConnection());
+				snapshot.toolInfo = InfoCommand.getToolInfo();
+				lastRecordResult = snapshot;
+				logln("Captured " + snapshot.sampleStore.getTotalSampleCount() + " samples of " + snapshot.sampleStore.getThreadCount() + " threads (" + (snapshot.endTime-snapshot.startTime) + "ms). It can be analyzed with the view command.");
 			} else if(arg.equalsIgnoreCase("save")) {
 				commandArgs.setArguments(ListArgumentsHelper.stripQuotes(commandArgs, new char[]{'"','\''}));
-				if(!checkArgument(1, 2)) {
-			        logln("  Usage) REC[ORD] SAVE [FileName]");					
+				if(!checkArgument(1, 3)) {
+			        logln("  Usage) REC[ORD] SAVE [FileName] [--no-compress]");					
 					return;
 				}
 				if(lastRecordResult == null) {
 					logln("No record result in memory. Please record a stacktrace or load a dump file.");
 					return;
 				}
-				String path = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : JMXerConstant.DEFAULT_DUMP_FILE_PATH;
+				String path = JMXerConstant.DEFAULT_DUMP_FILE_PATH;
+				boolean compress = true;
+				while(commandArgs.hasMoreArgument()) {
+					String saveArg = commandArgs.nextArgument();
+					if(saveArg.equalsIgnoreCase("--no-compress")) {
+						compress = false;
+					} else if(saveArg.startsWith("-")) {
+						logln("Invalid option for record command : " + saveArg);
+						return;
+					} else {
+						path = saveArg;
+					}
+				}
 				String yn = "Y";
 				File dumpfile = new File(path);
 				if(dumpfile.exists() && dumpfile.isDirectory()) {
@@ -255,7 +584,7 @@ public class JmxRecordCommand extends JmxCommand {
 					}
 				}
 				if("Y".equals(yn)) {
-					if(lastRecordResult.saveToFile(dumpfile)) {
+					if(lastRecordResult.saveToFile(dumpfile, compress)) {
 						logln("Successfully saved stacktrace data to the dump file : " + dumpfile.getAbsolutePath());
 					}
 				}
@@ -302,4 +631,145 @@ public class JmxRecordCommand extends JmxCommand {
 		}
 	}
 
+	private void doWatch() throws Exception {
+		commandArgs.setArguments(ListArgumentsHelper.concatSpaceWithQuotes(commandArgs, '"'));
+		if(!checkArgument(3, -1)) {
+	        logln("  Usage) REC[ORD] WATCH ThreadList Condition [WatchOptions...]");					
+			return;
+		}
+		String threadArgs = commandArgs.nextArgument().trim();
+		String conditionArg = StringUtil.stripQuote(commandArgs.nextArgument(), new char[]{'\''}, true);
+		long poll_ms = 5000L;
+		long cooldown_ms = 30000L;
+		File saveDir = null;
+		boolean useAgent = false;
+		while(commandArgs.hasMoreArgument()) {
+			String option = commandArgs.nextArgument();
+			if(option.equalsIgnoreCase("--agent") || option.equalsIgnoreCase("-a")) {
+				useAgent = true;
+			} else if(option.equalsIgnoreCase("--poll") || option.equalsIgnoreCase("-p") || option.equalsIgnoreCase("--cooldown") || option.equalsIgnoreCase("-c")) {
+				String value = commandArgs.hasMoreArgument() ? commandArgs.nextArgument() : "";
+				long duration = parseDuration(value);
+				if(duration < 1) {
+					logln("Invalid value for " + option + " : " + value);
+					return;
+				}
+				if(option.equalsIgnoreCase("--poll") || option.equalsIgnoreCase("-p")) {
+					poll_ms = duration;
+				} else {
+					cooldown_ms = duration;
+				}
+			} else if(option.equalsIgnoreCase("--save") || option.equalsIgnoreCase("-s")) {
+				String value = commandArgs.hasMoreArgument() ? StringUtil.stripQuote(commandArgs.nextArgument(), new char[]{'"','\''}, true) : "";
+				saveDir = new File(value);
+				if(!saveDir.isDirectory()) {
+					logln("The directory to save does not exist : " + saveDir.getAbsolutePath());
+					return;
+				}
+			} else {
+				logln("Invalid option for record command : " + option);
+				return;
+			}
+		}
+		if(isBackgroundRunning()) {
+			logln("A background recording is already running. Stop it first with REC STOP.");
+			return;
+		}
+		if(useAgent && mbeanConnector.getConnectType() != ConnectType.ATTACH_BY_PID && mbeanConnector.getConnectType() != ConnectType.ATTACH_BY_NAME) {
+			logln("The '--agent' option is available only when connected by PID or NAME.");
+			return;
+		}
+		if(useAgent) {
+			try {
+				AgentStackRecordThread.getAgentJarPath();
+			} catch(Exception e) {
+				logln(Level.ERROR, e.getMessage());
+				return;
+			}
+		}
+		RecordWatchCondition condition = null;
+		try {
+			condition = RecordWatchCondition.parse(conditionArg);
+			boolean fired = condition.evaluate(getMBeanConnection());
+			logln("Current value of the condition : " + condition.getLastValue() + (fired ? " (met)" : " (not met)"));
+		} catch(Exception e) {
+			logln(Level.ERROR, "Failed to check the watch condition : " + e.getMessage());
+			return;
+		}
+		try {
+			String[] threadIds = JmxThreadCommand.getTargetThreads(getMBeanConnection(), threadArgs);
+	    	if(threadIds == null || threadIds.length < 1) {
+	    		logln("No target thread(s) specified.");
+	    		return;
+	    	}
+		} catch(Exception e) {
+			logln(Level.ERROR, "Failed to get thread id from the argument : " + e.getMessage());
+			return;
+		}
+		String interval = IOUtil.readLine("Sampling Interval in milliseconds(500): ", Logger.Level.RESULT);
+		long interval_ms = 500L;
+		if("".equals(interval.trim())) {
+		} else if(NumberUtil.isNumber(interval)) {
+			interval_ms = Integer.valueOf(interval);
+		} else {
+			logln("Invalid value for interval. The default of 500ms will be applied.");
+			return;
+		}
+		logln("");
+		logln("[WARNING]");
+		logln(" - The condition is checked every " + poll_ms + "ms in background until REC STOP.");
+		logln(" - When the condition is met, stacktrace is sampled every " + interval_ms + "ms, and stopped after the condition is not met for " + cooldown_ms + "ms.");
+		if(saveDir == null) {
+			logln(" - Only the result of the last sampling is kept. Use '--save Directory' to keep all results.");
+		}
+		logln("");
+		String yn = null;
+		while(true) {
+			yn = IOUtil.readLine("Do you want to watch the condition(Y/N)? ", Logger.Level.RESULT);
+			yn = yn.trim().toUpperCase();
+			if("Y".equals(yn) || "N".equals(yn)) {
+				break;
+			}
+		}
+		if("Y".equals(yn)) {
+			RecordWatchThread newWatchThread = new RecordWatchThread(getMBeanConnection(), condition, threadArgs, poll_ms, cooldown_ms, interval_ms);
+			if(useAgent) {
+				newWatchThread.setAgent(mbeanConnector.getConnectType(), mbeanConnector.getTargetName());
+			}
+			newWatchThread.setSaveDir(saveDir);
+			newWatchThread.startWatching();
+			watchThread = newWatchThread;
+			logln("Watching in background. Use REC SNAPSHOT to capture the last sampling, and REC STOP to stop watching.");
+		}
+	}
+
+	private static boolean isBackgroundRunning() {
+		return (backgroundRecordThread != null && backgroundRecordThread.isRecording()) || (watchThread != null && watchThread.isWatching());
+	}
+
+	/**
+	 * 단위(ms, s, m, h)가 붙은 시간 표현을 ms로 변환한다. 단위가 없으면 ms로 처리한다.
+	 * @return 잘못된 표현이면 -1
+	 */
+	private static long parseDuration(String value) {
+		String str = value.trim().toLowerCase();
+		long unit = 1L;
+		if(str.endsWith("ms")) {
+			str = str.substring(0, str.length()-2);
+		} else if(str.endsWith("s")) {
+			unit = 1000L;
+			str = str.substring(0, str.length()-1);
+		} else if(str.endsWith("m")) {
+			unit = 60*1000L;
+			str = str.substring(0, str.length()-1);
+		} else if(str.endsWith("h")) {
+			unit = 60*60*1000L;
+			str = str.substring(0, str.length()-1);
+		}
+		if(str.length() < 1 || !NumberUtil.isNumber(str)) {
+			return -1L;
+		}
+		return Long.parseLong(str) * unit;
+	}
+
 }
@@ -21,6 +21,7 @@ import dal.tool.trace.jmxer.cli.helper.ListArgumentsHelper;
 import dal.tool.trace.jmxer.util.JMXPrintUtil;
 import dal.tool.util.NumberUtil;
 import dal.tool.util.StringUtil;
+import dal.tool.util.WildcardMatcher;
 import dal.tool.util.jmx.JMXUtil;
 
 public class JmxThreadCommand extends JmxCommand {
@@ -236,17 +237,18 @@ public class JmxThreadCommand extends JmxCommand {
 					// thread name
 					if(target.length() > 1 && target.endsWith("\"")) {
 						target = target.substring(1, target.length()-1);
+						// thread name pattern
+						WildcardMatcher matcher = (target.indexOf('*') < 0 && target.indexOf('?') < 0) ? null : WildcardMatcher.compile(target);
 						Iterator<Long> iter = threadMap.keySet().iterator();
 						while(iter.hasNext()) {
 							Long id = iter.next();
 							String name = threadMap.get(id);
-							if(target.indexOf('*') < 0 && target.indexOf('?') < 0) {
+							if(matcher == null) {
 								if(name.equals(target)) {
 									thrSet.add(id);
 								}
 							} else {
-								// thread name pattern
-								if(StringUtil.isMatchStringWithPattern(name, target)) {
+								if(matcher.matches(name)) {
 									thrSet.add(id);
 								}
 							}
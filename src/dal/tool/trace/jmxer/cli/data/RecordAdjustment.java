@@ -0,0 +1,57 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * 적응형 샘플링(adaptive sampling)에서 샘플링 설정을 변경한 이력<br/>
+ * time 이후의 샘플은 이 설정(주기, 스택 깊이, 스레드 범위)으로 수집되었다.
+ */
+public class RecordAdjustment implements Serializable {
+
+	private static final long serialVersionUID = 2716502954918320477L;
+
+	public long time;
+	public int level;
+	public long intervalMS;
+	/** 스택 깊이 제한. 0이면 제한하지 않았다. */
+	public int maxStackDepth;
+	/** 스레드 범위. N이면 tick마다 전체 스레드의 1/N씩 번갈아 수집했다. */
+	public int coverage;
+	public double latencyMS;
+	/** 대상 JVM의 ProcessCpuLoad(0~1). 조회하지 못했으면 음수 */
+	public double cpuLoad;
+	public String reason;
+
+
+	public RecordAdjustment() {}
+
+	public RecordAdjustment(long time, int level, long intervalMS, int maxStackDepth, int coverage, double latencyMS, double cpuLoad, String reason) {
+		this.time = time;
+		this.level = level;
+		this.intervalMS = intervalMS;
+		this.maxStackDepth = maxStackDepth;
+		this.coverage = coverage;
+		this.latencyMS = latencyMS;
+		this.cpuLoad = cpuLoad;
+		this.reason = reason;
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeLong(time);
+		out.writeInt(level);
+		out.writeLong(intervalMS);
+		out.writeInt(maxStackDepth);
+		out.writeInt(coverage);
+		out.writeDouble(latencyMS);
+		out.writeDouble(cpuLoad);
+		out.writeUTF(reason == null ? "" : reason);
+	}
+
+	static RecordAdjustment read(DataInput in) throws IOException {
+		return new RecordAdjustment(in.readLong(), in.readInt(), in.readLong(), in.readInt(), in.readInt(), in.readDouble(), in.readDouble(), in.readUTF());
+	}
+
+}
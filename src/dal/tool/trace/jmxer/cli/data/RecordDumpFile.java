@@ -0,0 +1,955 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import dal.tool.cli.Logger;
+import dal.tool.cli.Logger.Level;
+
+/**
+ * 레코드 결과를 저장하는 바이너리 dump 파일 포맷<br/>
+ * 모든 정수는 big-endian이며, 문자열은 modified UTF-8(DataOutput.writeUTF)로 기록된다.
+ * <pre>
+ * Header : MAGIC(int "JMXR") VERSION(short) FLAGS(short)
+ *          startTime(long) endTime(long) recordLimitMS(long) recordIntervalMS(long) sampleCount(int)
+ * Blocks : type(byte) codec(byte) rawLength(int) storedLength(int) payload(storedLength bytes)
+ *          - INFO     : toolInfo, vmInfo (count(int), {key, value}...)
+ *          - STRING   : 문자열 사전. count(int), {UTF}...
+ *          - FRAME    : frameCount(int), {classLoaderName, moduleName, moduleVersion, className, methodName, fileName (문자열 id, 없으면 -1), line(int)}...
+ *                       stackCount(int), {depth(int), frameId(int)...}...
+ *          - RESOURCE : count(int), {threadId(long), threadName(UTF), startCpu, startMem, currCpu, currMem (long)}...
+ *          - THREAD   : 스레드별 샘플 블록 ({@link RecordThreadSamples} 컬럼 순서)
+ *                       스레드의 샘플을 시간 순서로 최대 {@link #THREAD_CHUNK_SAMPLES}개씩 나누어 여러 블록으로 기록한다.
+ *          - TICK     : 수집 지연시간 통계({@link RecordTickStats}). 통계가 있을 때만 기록된다.
+ *          - OPTION   : 레코딩 옵션 (count(int), {key, value}...). 기본값이 아닌 옵션이 있을 때만 기록된다. ex) maxStackDepth, stateOnly
+ *          - ADJUST   : 적응형 샘플링의 설정 변경 이력. count(int), {{@link RecordAdjustment}}... 적응형 샘플링을 사용했을 때만 기록된다.
+ *          - SERIES   : 주기별 스레드 CPU 시간/할당 바이트 시계열({@link RecordResourceSeries}). 시계열이 있을 때만 기록된다.
+ *          - CHURN    : 스레드 생성/종료 이력({@link RecordThreadChurn}). 이력이 있을 때만 기록된다.
+ * Index  : count(int), {type(byte), threadId(long), offset(long), sampleCount(int), minTime(long), maxTime(long), threadNameId(int), waitingRequestCount(int)}...
+ *          - threadNameId, waitingRequestCount는 스레드 샘플 블록의 첫번째 샘플의 스레드명 id와 요청 대기(WAITING_REQUEST) 샘플 수이며,
+ *            블록을 디코딩하지 않고 조회하기 위해 사용한다.
+ *          - 스레드 샘플 블록의 minTime, maxTime은 블록의 첫번째 샘플의 시작 시간과 마지막 샘플의 종료 시간이며, 시간 구간 조회시 읽을 블록을 고르는데 사용한다.
+ * Footer : indexOffset(long) END_MAGIC(int)
+ * </pre>
+ * codec이 {@link #CODEC_DEFLATE}이면 payload는 Deflate로 압축되어 있다.
+ * 압축해도 크기가 줄지 않는 블록은 압축하지 않고 저장한다.
+ */
+public class RecordDumpFile implements RecordSampleSource {
+
+	public static final int MAGIC = 0x4A4D5852;
+	public static final int END_MAGIC = 0x454E4421;
+	public static final short VERSION = 1;
+
+	public static final short FLAG_COMPRESSED = 0x01;
+
+	static final byte BLOCK_INFO = 1;
+	static final byte BLOCK_STRING = 2;
+	static final byte BLOCK_FRAME = 3;
+	static final byte BLOCK_RESOURCE = 4;
+	static final byte BLOCK_THREAD = 5;
+	static final byte BLOCK_TICK = 6;
+	static final byte BLOCK_OPTION = 7;
+	static final byte BLOCK_ADJUST = 8;
+	static final byte BLOCK_SERIES = 9;
+	static final byte BLOCK_CHURN = 10;
+
+	static final byte CODEC_NONE = 0;
+	static final byte CODEC_DEFLATE = 1;
+
+	/** 스레드 샘플 블록 하나에 기록하는 최대 샘플 수 */
+	static final int THREAD_CHUNK_SAMPLES = 8192;
+
+	private static final int HEADER_LENGTH = 44;
+	private static final int BLOCK_HEADER_LENGTH = 10;
+	private static final String OPTION_MAX_STACK_DEPTH = "maxStackDepth";
+	private static final String OPTION_STATE_ONLY = "stateOnly";
+	private static final int FOOTER_LENGTH = 12;
+	/** 블록 영역을 나누어 매핑하는 최대 크기 */
+	private static final long MAX_REGION_LENGTH = 256L*1024*1024;
+
+	private static final Method GET_CLASS_LOADER_NAME = findMethod("getClassLoaderName");
+	private static final Method GET_MODULE_NAME = findMethod("getModuleName");
+	private static final Method GET_MODULE_VERSION = findMethod("getModuleVersion");
+	private static final Constructor<StackTraceElement> MODULE_CONSTRUCTOR = findModuleConstructor();
+	private static final Object UNSAFE = findUnsafe();
+	private static final Method INVOKE_CLEANER = findInvokeCleaner();
+
+	private final String path;
+	/** 스레드별 샘플 블록. 블록은 파일에 기록된 순서(시간 순서)이다. */
+	private final Map<Long,List<IndexEntry>> threadEntries = new HashMap<Long,List<IndexEntry>>();
+	private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+	private volatile boolean closed = false;
+
+
+	private RecordDumpFile(File f) throws IOException {
+		this.path = f.getCanonicalPath();
+	}
+
+
+	/**
+	 * 파일이 바이너리 dump 파일인지 확인한다. 이전 버전의 Java 직렬화 dump 파일이면 false를 리턴한다.
+	 */
+	public static boolean isDumpFile(File f) {
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(f));
+			return in.readInt() == MAGIC;
+		} catch(Exception e) {
+			return false;
+		} finally {
+			try {
+				if(in != null) in.close();
+			} catch(Exception e) {
+			}
+		}
+	}
+
+	/**
+	 * 레코드 결과를 dump 파일로 기록한다.<br/>
+	 * 스레드 샘플은 스레드별로 chunk 단위로 읽어서 바로 기록하므로, dump 파일이나 임시 segment 파일에 있는 샘플을 한꺼번에 heap에 올리지 않는다.
+	 * 결과를 읽어온 dump 파일에 다시 기록하는 경우에는 같은 디렉토리의 임시 파일에 기록하고, 기존 파일의 매핑을 해제한 후 대상 파일을 교체한다.
+	 * 교체한 후에는 저장소가 새 파일에서 샘플을 읽도록 다시 연결한다.
+	 */
+	public static void write(RecordResult result, File f, boolean compress) throws Exception {
+		RecordSampleStore store = result.sampleStore;
+		RecordStackTable stackTable = result.stackTable;
+		List<String> strings = new ArrayList<String>();
+		Map<String,Integer> stringIndex = new HashMap<String,Integer>();
+		for(int i = 0; i < store.getStringCount(); i++) {
+			strings.add(store.getString(i));
+			stringIndex.put(store.getString(i), i);
+		}
+		byte[] framePayload = makeFramePayload(stackTable, strings, stringIndex);
+		File target = f.getCanonicalFile();
+		// 샘플을 읽고 있는 dump 파일을 덮어쓰면 안되므로 임시 파일에 기록한다.
+		RecordDumpFile sourceFile = null;
+		File outFile = target;
+		if(store.getSource() instanceof RecordDumpFile && ((RecordDumpFile)store.getSource()).path.equals(target.getPath())) {
+			sourceFile = (RecordDumpFile)store.getSource();
+			outFile = File.createTempFile("JMXer_Dump_", ".tmp", target.getParentFile());
+		}
+
+		List<IndexEntry> index = new ArrayList<IndexEntry>();
+		CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(outFile), 64*1024));
+		DataOutputStream out = new DataOutputStream(counter);
+		boolean written = false;
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(compress ? FLAG_COMPRESSED : 0);
+			out.writeLong(result.startTime);
+			out.writeLong(result.endTime);
+			out.writeLong(result.recordLimitMS);
+			out.writeLong(result.recordIntervalMS);
+			out.writeInt(result.sampleCount);
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream payload = new DataOutputStream(bytes);
+			writeMap(payload, result.toolInfo);
+			writeMap(payload, result.vmInfo);
+			index.add(writeBlock(out, counter, BLOCK_INFO, bytes.toByteArray(), compress));
+
+			bytes.reset();
+			payload.writeInt(strings.size());
+			for(String s : strings) {
+				payload.writeUTF(s);
+			}
+			index.add(writeBlock(out, counter, BLOCK_STRING, bytes.toByteArray(), compress));
+
+			index.add(writeBlock(out, counter, BLOCK_FRAME, framePayload, compress));
+
+			bytes.reset();
+			Map<Long,ResourceUsage> resourceData = (result.resourceData == null) ? new HashMap<Long,ResourceUsage>() : result.resourceData;
+			payload.writeInt(resourceData.size());
+			for(Map.Entry<Long,ResourceUsage> entry : resourceData.entrySet()) {
+				ResourceUsage usage = entry.getValue();
+				payload.writeLong(entry.getKey());
+				payload.writeUTF(usage.threadName == null ? "" : usage.threadName);
+				payload.writeLong(usage.startCpu);
+				payload.writeLong(usage.startMem);
+				payload.writeLong(usage.currCpu);
+				payload.writeLong(usage.currMem);
+			}
+			index.add(writeBlock(out, counter, BLOCK_RESOURCE, bytes.toByteArray(), compress));
+
+			Map<String,String> options = new HashMap<String,String>();
+			if(result.maxStackDepth > 0) {
+				options.put(OPTION_MAX_STACK_DEPTH, String.valueOf(result.maxStackDepth));
+			}
+			if(result.stateOnly) {
+				options.put(OPTION_STATE_ONLY, "true");
+			}
+			if(options.size() > 0) {
+				bytes.reset();
+				writeMap(payload, options);
+				index.add(writeBlock(out, counter, BLOCK_OPTION, bytes.toByteArray(), compress));
+			}
+
+			if(result.adjustments != null) {
+				bytes.reset();
+				payload.writeInt(result.adjustments.size());
+				for(RecordAdjustment adjustment : result.adjustments) {
+					adjustment.write(payload);
+				}
+				index.add(writeBlock(out, counter, BLOCK_ADJUST, bytes.toByteArray(), compress));
+			}
+
+			if(result.resourceSeries != null) {
+				bytes.reset();
+				result.resourceSeries.write(payload);
+				index.add(writeBlock(out, counter, BLOCK_SERIES, bytes.toByteArray(), compress));
+			}
+
+			if(result.threadChurn != null) {
+				bytes.reset();
+				result.threadChurn.write(payload);
+				index.add(writeBlock(out, counter, BLOCK_CHURN, bytes.toByteArray(), compress));
+			}
+
+			if(result.tickStats != null) {
+				bytes.reset();
+				result.tickStats.write(payload);
+				index.add(writeBlock(out, counter, BLOCK_TICK, bytes.toByteArray(), compress));
+			}
+
+			for(Long threadId : store.getThreadIds()) {
+				writeThreadBlocks(out, counter, bytes, payload, store, threadId, index, compress);
+			}
+
+			long indexOffset = counter.count;
+			out.writeInt(index.size());
+			for(IndexEntry entry : index) {
+				out.writeByte(entry.type);
+				out.writeLong(entry.threadId);
+				out.writeLong(entry.offset);
+				out.writeInt(entry.sampleCount);
+				out.writeLong(entry.minTime);
+				out.writeLong(entry.maxTime);
+				out.writeInt(entry.threadNameId);
+				out.writeInt(entry.waitingRequestCount);
+			}
+			out.writeLong(indexOffset);
+			out.writeInt(END_MAGIC);
+			out.flush();
+			written = true;
+		} finally {
+			try {
+				out.close();
+			} catch(Exception e) {
+			}
+			if(!written && outFile != target) {
+				outFile.delete();
+			}
+		}
+		if(sourceFile != null) {
+			sourceFile.close();
+			IOException moveError = null;
+			try {
+				Files.move(outFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch(IOException e) {
+				outFile.delete();
+				moveError = e;
+			}
+			// 교체에 실패했으면 기존 파일을 다시 연다.
+			RecordDumpFile reopened = new RecordDumpFile(target);
+			reopened.open(null);
+			store.setSource(reopened, true);
+			if(moveError != null) {
+				throw new Exception("Failed to replace the dump file(" + target.getPath() + ") : " + moveError.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * 스레드의 샘플을 저장소의 chunk 단위로 읽어서 {@link #THREAD_CHUNK_SAMPLES}개씩 스레드 샘플 블록으로 기록한다.
+	 * 블록을 채우지 못한 나머지 샘플은 다음 chunk와 합쳐서 기록하며, 샘플이 없는 스레드도 빈 블록 하나를 기록한다.
+	 */
+	private static void writeThreadBlocks(DataOutputStream out, CountingOutputStream counter, ByteArrayOutputStream bytes, DataOutputStream payload, RecordSampleStore store, long threadId, List<IndexEntry> index, boolean compress) throws IOException {
+		int blockCount = 0;
+		RecordThreadSamples pending = new RecordThreadSamples(store, threadId, 1);
+		int chunkCount = store.getChunkCount(threadId);
+		for(int c = 0; c < chunkCount; c++) {
+			RecordThreadSamples samples = store.getChunk(threadId, c);
+			if(samples == null) {
+				continue;
+			}
+			if(pending.size() > 0) {
+				pending.addAll(samples);
+				samples = pending;
+			}
+			int from = 0;
+			for(; samples.size() - from >= THREAD_CHUNK_SAMPLES; from += THREAD_CHUNK_SAMPLES) {
+				writeThreadBlock(out, counter, bytes, payload, samples, from, from + THREAD_CHUNK_SAMPLES, index, compress);
+				blockCount++;
+			}
+			pending = new RecordThreadSamples(store, threadId, Math.max(samples.size() - from, 1));
+			pending.addRange(samples, from, samples.size() - from);
+		}
+		if(pending.size() > 0 || blockCount == 0) {
+			writeThreadBlock(out, counter, bytes, payload, pending, 0, pending.size(), index, compress);
+		}
+	}
+
+	private static void writeThreadBlock(DataOutputStream out, CountingOutputStream counter, ByteArrayOutputStream bytes, DataOutputStream payload, RecordThreadSamples samples, int from, int to, List<IndexEntry> index, boolean compress) throws IOException {
+		bytes.reset();
+		samples.write(payload, from, to);
+		IndexEntry entry = writeBlock(out, counter, BLOCK_THREAD, bytes.toByteArray(), compress);
+		entry.threadId = samples.getThreadId();
+		entry.sampleCount = to - from;
+		if(to > from) {
+			entry.minTime = samples.getStartTime(from);
+			entry.maxTime = samples.getEndTime(to-1);
+			entry.threadNameId = samples.getThreadNameId(from);
+		}
+		entry.waitingRequestCount = samples.countSampleState(RecordThreadSampleState.WAITING_REQUEST, from, to);
+		index.add(entry);
+	}
+
+	/**
+	 * dump 파일을 메모리 맵으로 열어서 레코드 결과를 만든다.<br/>
+	 * 문자열/프레임 사전 등은 바로 읽지만, 스레드별 샘플 블록은 해당 스레드의 샘플이 조회될 때 디코딩된다.
+	 * 각 블록은 FileChannel.map으로 매핑되므로 파일 크기만큼 heap을 사용하지 않는다.
+	 */
+	public static RecordResult read(File f) throws Exception {
+		RecordResult result = new RecordResult();
+		RecordDumpFile dumpFile = new RecordDumpFile(f);
+		List<IndexEntry> index = dumpFile.open(result);
+		try {
+			List<String> strings = new ArrayList<String>();
+			for(IndexEntry entry : index) {
+				if(entry.type == BLOCK_STRING) {
+					DataInputStream in = readBlock(entry);
+					int size = in.readInt();
+					for(int i = 0; i < size; i++) {
+						strings.add(in.readUTF());
+					}
+				}
+			}
+			RecordSampleStore store = new RecordSampleStore(strings);
+			result.sampleStore = store;
+			result.stackTable = new RecordStackTable();
+			result.resourceData = new HashMap<Long,ResourceUsage>();
+			for(IndexEntry entry : index) {
+				if(entry.type == BLOCK_THREAD) {
+					continue;
+				}
+				DataInputStream in = readBlock(entry);
+				if(entry.type == BLOCK_INFO) {
+					result.toolInfo = readMap(in);
+					result.vmInfo = readMap(in);
+				} else if(entry.type == BLOCK_FRAME) {
+					readFramePayload(in, result.stackTable, strings);
+				} else if(entry.type == BLOCK_RESOURCE) {
+					int size = in.readInt();
+					for(int i = 0; i < size; i++) {
+						long threadId = in.readLong();
+						ResourceUsage usage = new ResourceUsage(in.readUTF(), in.readLong(), in.readLong());
+						usage.update(in.readLong(), in.readLong());
+						result.resourceData.put(threadId, usage);
+					}
+				} else if(entry.type == BLOCK_TICK) {
+					result.tickStats = RecordTickStats.read(in);
+				} else if(entry.type == BLOCK_ADJUST) {
+					int size = in.readInt();
+					result.adjustments = new ArrayList<RecordAdjustment>(size);
+					for(int i = 0; i < size; i++) {
+						result.adjustments.add(RecordAdjustment.read(in));
+					}
+				} else if(entry.type == BLOCK_SERIES) {
+					result.resourceSeries = RecordResourceSeries.read(in);
+				} else if(entry.type == BLOCK_CHURN) {
+					result.threadChurn = RecordThreadChurn.read(in);
+				} else if(entry.type == BLOCK_OPTION) {
+					Map<String,String> options = readMap(in);
+					if(options.containsKey(OPTION_MAX_STACK_DEPTH)) {
+						result.maxStackDepth = Integer.parseInt(options.get(OPTION_MAX_STACK_DEPTH));
+					}
+					result.stateOnly = "true".equals(options.get(OPTION_STATE_ONLY));
+				}
+			}
+			store.setSource(dumpFile, true);
+			return result;
+		} catch(Exception e) {
+			dumpFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * 파일의 헤더와 인덱스를 읽고, 블록 영역을 {@link #MAX_REGION_LENGTH} 이하의 큰 영역으로 나누어 매핑한다.
+	 * 블록마다 매핑하지 않으므로 블록 수와 관계없이 매핑 수는 파일 크기에 비례한다.
+	 * @param result 헤더의 값을 설정할 레코드 결과. null이면 설정하지 않는다.
+	 * @return 파일에 기록된 순서의 인덱스
+	 */
+	private List<IndexEntry> open(RecordResult result) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(path, "r");
+		FileChannel channel = raf.getChannel();
+		try {
+			long fileLength = channel.size();
+			if(fileLength < HEADER_LENGTH + FOOTER_LENGTH) {
+				throw new Exception("Invalid dump file.");
+			}
+			ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+			if(header.getInt() != MAGIC) {
+				throw new Exception("Invalid dump file.");
+			}
+			short version = header.getShort();
+			if(version != VERSION) {
+				throw new Exception("Unsupported dump file version : " + version);
+			}
+			header.getShort();
+			if(result != null) {
+				result.startTime = header.getLong();
+				result.endTime = header.getLong();
+				result.recordLimitMS = header.getLong();
+				result.recordIntervalMS = header.getLong();
+				result.sampleCount = header.getInt();
+			}
+
+			ByteBuffer footer = readFully(channel, fileLength - FOOTER_LENGTH, FOOTER_LENGTH);
+			long indexOffset = footer.getLong();
+			if(footer.getInt() != END_MAGIC || indexOffset < HEADER_LENGTH || indexOffset > fileLength - FOOTER_LENGTH) {
+				throw new Exception("The dump file is truncated.");
+			}
+			ByteBuffer indexBuffer = readFully(channel, indexOffset, (int)(fileLength - FOOTER_LENGTH - indexOffset));
+			List<IndexEntry> index = new ArrayList<IndexEntry>();
+			int count = indexBuffer.getInt();
+			for(int i = 0; i < count; i++) {
+				IndexEntry entry = new IndexEntry(indexBuffer.get(), 0L);
+				entry.threadId = indexBuffer.getLong();
+				entry.offset = indexBuffer.getLong();
+				entry.sampleCount = indexBuffer.getInt();
+				entry.minTime = indexBuffer.getLong();
+				entry.maxTime = indexBuffer.getLong();
+				entry.threadNameId = indexBuffer.getInt();
+				entry.waitingRequestCount = indexBuffer.getInt();
+				index.add(entry);
+			}
+			mapRegions(channel, index, indexOffset);
+			for(IndexEntry entry : index) {
+				if(entry.type == BLOCK_THREAD) {
+					List<IndexEntry> entries = threadEntries.get(entry.threadId);
+					if(entries == null) {
+						entries = new ArrayList<IndexEntry>(1);
+						threadEntries.put(entry.threadId, entries);
+					}
+					entries.add(entry);
+				}
+			}
+			return index;
+		} catch(Exception e) {
+			close();
+			throw e;
+		} finally {
+			try {
+				raf.close();
+			} catch(Exception e) {
+			}
+		}
+	}
+
+	/**
+	 * 블록들을 파일 순서대로 묶어서 영역 단위로 매핑한다. 영역의 크기는 {@link #MAX_REGION_LENGTH}를 넘지 않으며, 이보다 큰 블록은 단독으로 매핑한다.
+	 */
+	private void mapRegions(FileChannel channel, List<IndexEntry> index, long indexOffset) throws Exception {
+		List<IndexEntry> sorted = new ArrayList<IndexEntry>(index);
+		Collections.sort(sorted, new Comparator<IndexEntry>() {
+			public int compare(IndexEntry e1, IndexEntry e2) {
+				return (e1.offset < e2.offset) ? -1 : ((e1.offset == e2.offset) ? 0 : 1);
+			}
+		});
+		ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+		long regionStart = -1L;
+		long regionEnd = -1L;
+		int regionFirst = 0;
+		for(int i = 0; i <= sorted.size(); i++) {
+			long blockEnd = -1L;
+			if(i < sorted.size()) {
+				IndexEntry entry = sorted.get(i);
+				blockHeader.clear();
+				readFully(channel, blockHeader, entry.offset);
+				int storedLength = blockHeader.getInt(6);
+				blockEnd = entry.offset + BLOCK_HEADER_LENGTH + storedLength;
+				if(entry.offset < HEADER_LENGTH || storedLength < 0 || blockEnd > indexOffset) {
+					throw new Exception("Invalid block at offset " + entry.offset + ".");
+				}
+				if(regionStart > -1L && blockEnd - regionStart <= MAX_REGION_LENGTH) {
+					regionEnd = Math.max(regionEnd, blockEnd);
+					continue;
+				}
+			}
+			if(regionStart > -1L) {
+				MappedByteBuffer region = channel.map(MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+				regions.add(region);
+				for(int j = regionFirst; j < i; j++) {
+					sorted.get(j).region = region;
+					sorted.get(j).regionOffset = (int)(sorted.get(j).offset - regionStart);
+				}
+			}
+			if(i < sorted.size()) {
+				regionStart = sorted.get(i).offset;
+				regionEnd = blockEnd;
+				regionFirst = i;
+			}
+		}
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		readFully(channel, buffer, position);
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of the dump file.");
+			}
+		}
+	}
+
+	/**
+	 * 매핑한 영역을 해제한다. 해제한 후에는 샘플을 읽을 수 없다.<br/>
+	 * Windows에서는 매핑이 남아 있는 파일을 교체할 수 없으므로, 같은 파일에 다시 저장할 때 사용한다.
+	 */
+	synchronized void close() {
+		closed = true;
+		for(MappedByteBuffer region : regions) {
+			unmap(region);
+		}
+		regions.clear();
+		for(List<IndexEntry> entries : threadEntries.values()) {
+			for(IndexEntry entry : entries) {
+				entry.region = null;
+			}
+		}
+	}
+
+	public Set<Long> getThreadIds() {
+		return threadEntries.keySet();
+	}
+
+	public int getSampleCount(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		if(entries == null) {
+			return 0;
+		}
+		int count = 0;
+		for(IndexEntry entry : entries) {
+			count += entry.sampleCount;
+		}
+		return count;
+	}
+
+	public int getThreadNameId(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		return (entries == null) ? -2 : entries.get(0).threadNameId;
+	}
+
+	public int getWaitingRequestCount(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		if(entries == null) {
+			return -1;
+		}
+		int count = 0;
+		for(IndexEntry entry : entries) {
+			count += entry.waitingRequestCount;
+		}
+		return count;
+	}
+
+	public long getMinTime(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		return (entries == null) ? -1L : entries.get(0).minTime;
+	}
+
+	public long getMaxTime(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		return (entries == null) ? -1L : entries.get(entries.size()-1).maxTime;
+	}
+
+	public int getChunkCount(long threadId) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		return (entries == null) ? 0 : entries.size();
+	}
+
+	public int getChunkSampleCount(long threadId, int chunk) {
+		return threadEntries.get(threadId).get(chunk).sampleCount;
+	}
+
+	public int getChunkWaitingRequestCount(long threadId, int chunk) {
+		return threadEntries.get(threadId).get(chunk).waitingRequestCount;
+	}
+
+	public long getChunkMinTime(long threadId, int chunk) {
+		return threadEntries.get(threadId).get(chunk).minTime;
+	}
+
+	public long getChunkMaxTime(long threadId, int chunk) {
+		return threadEntries.get(threadId).get(chunk).maxTime;
+	}
+
+	/**
+	 * 매핑된 스레드 샘플 블록 하나를 디코딩한다.
+	 */
+	public RecordThreadSamples loadChunk(RecordSampleStore store, long threadId, int chunk) {
+		List<IndexEntry> entries = threadEntries.get(threadId);
+		if(entries == null) {
+			return null;
+		}
+		try {
+			IndexEntry entry = entries.get(chunk);
+			if(closed) {
+				throw new Exception("The dump file is already closed.");
+			}
+			return RecordThreadSamples.read(store, readBlock(entry));
+		} catch(Exception e) {
+			throw new IllegalStateException("Failed to read the samples of thread " + threadId + " from the dump file(" + path + ") : " + e.getMessage(), e);
+		}
+	}
+
+	private static IndexEntry writeBlock(DataOutputStream out, CountingOutputStream counter, byte type, byte[] raw, boolean compress) throws IOException {
+		IndexEntry entry = new IndexEntry(type, counter.count);
+		byte[] stored = compress ? deflate(raw) : null;
+		byte codec = CODEC_DEFLATE;
+		if(stored == null || stored.length >= raw.length) {
+			stored = raw;
+			codec = CODEC_NONE;
+		}
+		out.writeByte(type);
+		out.writeByte(codec);
+		out.writeInt(raw.length);
+		out.writeInt(stored.length);
+		out.write(stored);
+		return entry;
+	}
+
+	private static DataInputStream readBlock(IndexEntry entry) throws Exception {
+		if(entry.region == null) {
+			throw new Exception("The dump file is already closed.");
+		}
+		ByteBuffer block = entry.region.duplicate();
+		block.position(entry.regionOffset);
+		if(block.get() != entry.type) {
+			throw new Exception("Invalid block at offset " + entry.offset + ".");
+		}
+		byte codec = block.get();
+		int rawLength = block.getInt();
+		int storedLength = block.getInt();
+		if(codec == CODEC_DEFLATE) {
+			byte[] stored = new byte[storedLength];
+			block.get(stored);
+			return new DataInputStream(new ByteArrayInputStream(inflate(stored, rawLength)));
+		}
+		block.limit(block.position() + storedLength);
+		return new DataInputStream(new ByteBufferInputStream(block));
+	}
+
+	private static byte[] deflate(byte[] raw) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(raw.length/4, 64));
+			byte[] buf = new byte[8192];
+			while(!deflater.finished()) {
+				int len = deflater.deflate(buf);
+				bytes.write(buf, 0, len);
+			}
+			return bytes.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] stored, int rawLength) throws Exception {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(stored);
+			byte[] raw = new byte[rawLength];
+			int off = 0;
+			while(off < rawLength) {
+				int len = inflater.inflate(raw, off, rawLength-off);
+				if(len == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				off += len;
+			}
+			if(off != rawLength) {
+				throw new Exception("The compressed block is corrupted.");
+			}
+			return raw;
+		} catch(DataFormatException e) {
+			throw new Exception("The compressed block is corrupted : " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static byte[] makeFramePayload(RecordStackTable stackTable, List<String> strings, Map<String,Integer> stringIndex) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(stackTable.getFrameCount());
+		for(int i = 0; i < stackTable.getFrameCount(); i++) {
+			StackTraceElement el = stackTable.getFrame(i);
+			out.writeInt(internString(invokeString(GET_CLASS_LOADER_NAME, el), strings, stringIndex));
+			out.writeInt(internString(invokeString(GET_MODULE_NAME, el), strings, stringIndex));
+			out.writeInt(internString(invokeString(GET_MODULE_VERSION, el), strings, stringIndex));
+			out.writeInt(internString(el.getClassName(), strings, stringIndex));
+			out.writeInt(internString(el.getMethodName(), strings, stringIndex));
+			out.writeInt(internString(el.getFileName(), strings, stringIndex));
+			out.writeInt(el.getLineNumber());
+		}
+		out.writeInt(stackTable.getStackCount());
+		for(int i = 0; i < stackTable.getStackCount(); i++) {
+			int[] frameIds = stackTable.getStackFrameIds(i);
+			out.writeInt(frameIds.length);
+			for(int frameId : frameIds) {
+				out.writeInt(frameId);
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void readFramePayload(DataInputStream in, RecordStackTable stackTable, List<String> strings) throws Exception {
+		int frameCount = in.readInt();
+		for(int i = 0; i < frameCount; i++) {
+			String classLoaderName = getString(strings, in.readInt());
+			String moduleName = getString(strings, in.readInt());
+			String moduleVersion = getString(strings, in.readInt());
+			String className = getString(strings, in.readInt());
+			String methodName = getString(strings, in.readInt());
+			String fileName = getString(strings, in.readInt());
+			int line = in.readInt();
+			StackTraceElement el = null;
+			if(MODULE_CONSTRUCTOR != null) {
+				el = MODULE_CONSTRUCTOR.newInstance(classLoaderName, moduleName, moduleVersion, className, methodName, fileName, line);
+			} else {
+				el = new StackTraceElement(className, methodName, fileName, line);
+			}
+			stackTable.appendFrame(el);
+		}
+		int stackCount = in.readInt();
+		for(int i = 0; i < stackCount; i++) {
+			int[] frameIds = new int[in.readInt()];
+			for(int j = 0; j < frameIds.length; j++) {
+				frameIds[j] = in.readInt();
+			}
+			stackTable.appendStack(frameIds);
+		}
+	}
+
+	private static int internString(String value, List<String> strings, Map<String,Integer> stringIndex) {
+		if(value == null) {
+			return -1;
+		}
+		Integer id = stringIndex.get(value);
+		if(id == null) {
+			id = strings.size();
+			strings.add(value);
+			stringIndex.put(value, id);
+		}
+		return id;
+	}
+
+	private static String getString(List<String> strings, int id) {
+		return (id < 0) ? null : strings.get(id);
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String,String> map) throws IOException {
+		if(map == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(map.size());
+		for(Map.Entry<String,String> entry : map.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeUTF(entry.getValue() == null ? "" : entry.getValue());
+		}
+	}
+
+	private static Map<String,String> readMap(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if(size < 0) {
+			return null;
+		}
+		Map<String,String> map = new LinkedHashMap<String,String>();
+		for(int i = 0; i < size; i++) {
+			map.put(in.readUTF(), in.readUTF());
+		}
+		return map;
+	}
+
+	/**
+	 * Java 9 이상에서만 제공되는 StackTraceElement의 모듈 정보를 가져오기 위해 reflection을 사용한다.
+	 */
+	private static Method findMethod(String name) {
+		try {
+			return StackTraceElement.class.getMethod(name);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+
+	private static Constructor<StackTraceElement> findModuleConstructor() {
+		try {
+			return StackTraceElement.class.getConstructor(String.class, String.class, String.class, String.class, String.class, String.class, int.class);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 매핑 해제는 Java 9 이상에서는 Unsafe.invokeCleaner로, Java 8에서는 DirectByteBuffer의 cleaner로 수행한다.
+	 */
+	private static Object findUnsafe() {
+		try {
+			Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			return field.get(null);
+		} catch(Throwable e) {
+			return null;
+		}
+	}
+
+	private static Method findInvokeCleaner() {
+		try {
+			return Class.forName("sun.misc.Unsafe").getMethod("invokeCleaner", ByteBuffer.class);
+		} catch(Throwable e) {
+			return null;
+		}
+	}
+
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			if(INVOKE_CLEANER != null && UNSAFE != null) {
+				INVOKE_CLEANER.invoke(UNSAFE, buffer);
+			} else {
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if(cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+			}
+		} catch(Throwable e) {
+			Logger.logln(Level.DEBUG, "Failed to unmap the dump file : " + e.getMessage());
+		}
+	}
+
+	private static String invokeString(Method method, StackTraceElement el) {
+		if(method == null) {
+			return null;
+		}
+		try {
+			return (String)method.invoke(el);
+		} catch(Exception e) {
+			return null;
+		}
+	}
+
+
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		long count = 0L;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+	}
+
+
+	private static class ByteBufferInputStream extends InputStream {
+
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(!buffer.hasRemaining()) {
+				return -1;
+			}
+			int n = Math.min(len, buffer.remaining());
+			buffer.get(b, off, n);
+			return n;
+		}
+
+	}
+
+
+	static class IndexEntry {
+
+		byte type;
+		long threadId = -1L;
+		long offset;
+		int sampleCount = 0;
+		long minTime = -1L;
+		long maxTime = -1L;
+		int threadNameId = -2;
+		int waitingRequestCount = -1;
+		/** 블록이 포함된 매핑 영역과 영역 안에서 블록의 시작 위치 */
+		MappedByteBuffer region;
+		int regionOffset;
+
+		IndexEntry(byte type, long offset) {
+			this.type = type;
+			this.offset = offset;
+		}
+
+	}
+
+}
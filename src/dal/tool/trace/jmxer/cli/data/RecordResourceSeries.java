@@ -0,0 +1,219 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 스레드별 CPU 시간과 할당 바이트의 시계열<br/>
+ * 매 주기마다 getThreadCpuTime/getThreadAllocatedBytes의 누적값을 스레드별 primitive 배열에 순서대로 저장하고,
+ * 구간별 CPU 사용률과 할당 속도는 인접한 두 값의 차이로 계산한다. 조회하지 못한 값은 -1로 저장된다.
+ */
+public class RecordResourceSeries implements Serializable {
+
+	private static final long serialVersionUID = -1906337284613597409L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] threadIds;
+	private String[] threadNames;
+	private long[] times;
+	private long[][] cpuTimes;
+	private long[][] allocBytes;
+	private int size = 0;
+
+
+	public RecordResourceSeries(long[] threadIds, String[] threadNames) {
+		this(threadIds, threadNames, INITIAL_CAPACITY);
+	}
+
+	private RecordResourceSeries(long[] threadIds, String[] threadNames, int capacity) {
+		this.threadIds = threadIds.clone();
+		this.threadNames = threadNames.clone();
+		this.times = new long[capacity];
+		this.cpuTimes = new long[threadIds.length][capacity];
+		this.allocBytes = new long[threadIds.length][capacity];
+	}
+
+	/**
+	 * 한 시점의 누적값을 추가한다. 배열의 순서는 생성할 때 지정한 스레드 순서와 같다.
+	 * @param cpus 스레드별 CPU 시간(ns). 수집하지 않았으면 null
+	 * @param mems 스레드별 할당 바이트. 수집하지 않았으면 null
+	 */
+	public synchronized void add(long time, long[] cpus, long[] mems) {
+		if(size == times.length) {
+			int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			for(int t = 0; t < threadIds.length; t++) {
+				cpuTimes[t] = Arrays.copyOf(cpuTimes[t], capacity);
+				allocBytes[t] = Arrays.copyOf(allocBytes[t], capacity);
+			}
+		}
+		times[size] = time;
+		for(int t = 0; t < threadIds.length; t++) {
+			cpuTimes[t][size] = (cpus == null) ? -1L : cpus[t];
+			allocBytes[t][size] = (mems == null) ? -1L : mems[t];
+		}
+		size++;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * 구간 수. i번째 구간은 (i-1)번째 시점부터 i번째 시점까지이다. (1 <= i < size)
+	 */
+	public synchronized int getIntervalCount() {
+		return Math.max(size - 1, 0);
+	}
+
+	public int getThreadCount() {
+		return threadIds.length;
+	}
+
+	public long getThreadId(int t) {
+		return threadIds[t];
+	}
+
+	public String getThreadName(int t) {
+		return threadNames[t];
+	}
+
+	public synchronized long getTime(int i) {
+		return times[i];
+	}
+
+	/**
+	 * 스레드 ID의 위치
+	 * @return 시계열에 없는 스레드이면 -1
+	 */
+	public int indexOf(long threadId) {
+		for(int t = 0; t < threadIds.length; t++) {
+			if(threadIds[t] == threadId) {
+				return t;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * time 이후(같은 시간 포함)의 첫번째 시점의 위치
+	 * @return 해당하는 시점이 없으면 size()
+	 */
+	public synchronized int indexOfTime(long time) {
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(times[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * i번째 시점의 CPU 시간 누적값(ns). 조회하지 못했으면 -1
+	 */
+	public synchronized long getCpuTime(int t, int i) {
+		return cpuTimes[t][i];
+	}
+
+	/**
+	 * i번째 시점의 할당 바이트 누적값. 조회하지 못했으면 -1
+	 */
+	public synchronized long getAllocBytes(int t, int i) {
+		return allocBytes[t][i];
+	}
+
+	/**
+	 * i번째 시점으로 끝나는 구간의 CPU 사용률(%). 코어 하나를 모두 사용하면 100이다.
+	 * @return 값이 없거나 스레드가 종료/변경되었으면 -1
+	 */
+	public synchronized double getCpuPercent(int t, int i) {
+		long delta = getDelta(cpuTimes[t], i);
+		long wall = times[i] - times[i-1];
+		if(delta < 0 || wall < 1) {
+			return -1D;
+		}
+		return delta / 1000000D * 100D / wall;
+	}
+
+	/**
+	 * i번째 시점으로 끝나는 구간의 할당 속도(bytes/s)
+	 * @return 값이 없거나 스레드가 종료/변경되었으면 -1
+	 */
+	public synchronized double getAllocRate(int t, int i) {
+		long delta = getDelta(allocBytes[t], i);
+		long wall = times[i] - times[i-1];
+		if(delta < 0 || wall < 1) {
+			return -1D;
+		}
+		return delta * 1000D / wall;
+	}
+
+	public synchronized boolean hasCpuTime() {
+		return size > 0 && threadIds.length > 0 && hasValue(cpuTimes);
+	}
+
+	public synchronized boolean hasAllocBytes() {
+		return size > 0 && threadIds.length > 0 && hasValue(allocBytes);
+	}
+
+	private boolean hasValue(long[][] values) {
+		for(long[] threadValues : values) {
+			for(int i = 0; i < size; i++) {
+				if(threadValues[i] > -1L) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static long getDelta(long[] values, int i) {
+		if(values[i] < 0 || values[i-1] < 0 || values[i] < values[i-1]) {
+			return -1L;
+		}
+		return values[i] - values[i-1];
+	}
+
+	synchronized void write(DataOutput out) throws IOException {
+		out.writeInt(threadIds.length);
+		for(int t = 0; t < threadIds.length; t++) {
+			out.writeLong(threadIds[t]);
+			out.writeUTF(threadNames[t] == null ? "" : threadNames[t]);
+		}
+		out.writeInt(size);
+		for(int i = 0; i < size; i++) out.writeLong(times[i]);
+		for(int t = 0; t < threadIds.length; t++) {
+			for(int i = 0; i < size; i++) out.writeLong(cpuTimes[t][i]);
+			for(int i = 0; i < size; i++) out.writeLong(allocBytes[t][i]);
+		}
+	}
+
+	static RecordResourceSeries read(DataInput in) throws IOException {
+		int threadCount = in.readInt();
+		long[] threadIds = new long[threadCount];
+		String[] threadNames = new String[threadCount];
+		for(int t = 0; t < threadCount; t++) {
+			threadIds[t] = in.readLong();
+			threadNames[t] = in.readUTF();
+		}
+		int size = in.readInt();
+		RecordResourceSeries series = new RecordResourceSeries(threadIds, threadNames, Math.max(size, 1));
+		for(int i = 0; i < size; i++) series.times[i] = in.readLong();
+		for(int t = 0; t < threadCount; t++) {
+			for(int i = 0; i < size; i++) series.cpuTimes[t][i] = in.readLong();
+			for(int i = 0; i < size; i++) series.allocBytes[t][i] = in.readLong();
+		}
+		series.size = size;
+		return series;
+	}
+
+}
@@ -2,7 +2,6 @@ package dal.tool.trace.jmxer.cli.data;
 
 import java.io.File;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -25,8 +24,25 @@ public class RecordResult implements Serializable {
 	public int sampleCount = 0;
 	public Map<String,String> toolInfo;
 	public Map<String,String> vmInfo;
+	/** 이전 버전의 dump 파일을 읽을 때만 사용된다. 로딩 후 {@link #sampleStore}로 옮겨지고 null이 된다. */
 	public Map<Long,List<RecordThreadInfo>> recordData;
+	public RecordSampleStore sampleStore;
+	public RecordStackTable stackTable;
 	public Map<Long,ResourceUsage> resourceData;
+	/** 수집 지연시간 통계. 이전 버전의 dump 파일에는 없으므로 null일 수 있다. */
+	public RecordTickStats tickStats;
+	/** 수집한 스택의 최대 깊이. 0이면 제한하지 않았다. */
+	public int maxStackDepth = 0;
+	/** 적응형 샘플링의 설정 변경 이력. 적응형 샘플링을 사용하지 않았으면 null */
+	public List<RecordAdjustment> adjustments;
+	/** true이면 스택트레이스 없이 스레드 상태만 수집한 결과이다. (REC STATE) */
+	public boolean stateOnly = false;
+	/** 주기별 스레드 CPU 시간/할당 바이트 시계열. '--resource' 옵션으로 레코딩하지 않았으면 null */
+	public RecordResourceSeries resourceSeries;
+	/** 스레드 생성/종료 이력. '--churn' 옵션으로 레코딩하지 않았으면 null */
+	public RecordThreadChurn threadChurn;
+	/** 레코딩 중에 만든 스택 집계 색인. '--index' 옵션으로 레코딩하지 않았으면 null이며, dump 파일에는 저장되지 않는다. */
+	public transient RecordStackIndex stackIndex;
 
 
 	public RecordResult() {}
@@ -36,12 +52,13 @@ public class RecordResult implements Serializable {
 		viewer.printResult(viewArgs);			
 	}
 
-	public boolean saveToFile(File f) {
+	/**
+	 * 레코드 결과를 바이너리 dump 파일({@link RecordDumpFile})로 저장한다.
+	 * @param compress 샘플 블록을 Deflate로 압축할지 여부
+	 */
+	public boolean saveToFile(File f, boolean compress) {
 		try {
-			List<Object> writeData = new ArrayList<Object>();
-			writeData.add(JMXerConstant.DUMP_FILE_VALIDATION_HEADER);
-			writeData.add(this);
-			FileUtil.writeObjectFile(f, writeData);
+			RecordDumpFile.write(this, f, compress);
 			this.dmpFilePath = f.getCanonicalPath();
 			return true;
 		} catch(Exception e) {
@@ -50,14 +67,17 @@ public class RecordResult implements Serializable {
 		return false;
 	}
 
+	/**
+	 * dump 파일을 로딩한다. 바이너리 dump 파일이 아니면 이전 버전의 Java 직렬화 dump 파일로 읽는다.
+	 */
 	public static RecordResult loadFromFile(File f) {
 		try {
-			List<Object> loadData = FileUtil.readObjectFile(f);
-			if(loadData.size() != 2 || loadData.get(0).getClass() != String.class || loadData.get(1).getClass() != RecordResult.class || 
-			   ((String)loadData.get(0)).equals(JMXerConstant.DUMP_FILE_VALIDATION_HEADER) == false) {
-				throw new Exception("Invalid Setting File.");
+			RecordResult result = null;
+			if(RecordDumpFile.isDumpFile(f)) {
+				result = RecordDumpFile.read(f);
+			} else {
+				result = loadFromLegacyFile(f);
 			}
-			RecordResult result = (RecordResult)loadData.get(1);
 			result.dmpFilePath = f.getCanonicalPath();
 			return result;			
 		} catch(Exception e) {
@@ -66,4 +86,41 @@ public class RecordResult implements Serializable {
 		}
 	}
 
+	private static RecordResult loadFromLegacyFile(File f) throws Exception {
+		List<Object> loadData = FileUtil.readObjectFile(f);
+		if(loadData.size() != 2 || loadData.get(0).getClass() != String.class || loadData.get(1).getClass() != RecordResult.class || 
+		   ((String)loadData.get(0)).equals(JMXerConstant.DUMP_FILE_VALIDATION_HEADER) == false) {
+			throw new Exception("Invalid Setting File.");
+		}
+		RecordResult result = (RecordResult)loadData.get(1);
+		result.migrateLegacyRecordData();
+		return result;
+	}
+
+	/**
+	 * 샘플 객체 목록(recordData)을 가지고 있던 이전 버전의 레코드 결과를 {@link RecordSampleStore} 기반으로 변환한다.<br/>
+	 * 샘플마다 스택트레이스를 가지고 있던 경우에는 {@link RecordStackTable}도 함께 만든다.
+	 */
+	private void migrateLegacyRecordData() {
+		if(recordData == null) {
+			return;
+		}
+		boolean hasStackTrace = (stackTable == null);
+		if(hasStackTrace) {
+			stackTable = new RecordStackTable();
+		}
+		sampleStore = new RecordSampleStore();
+		for(List<RecordThreadInfo> recThrInfoList : recordData.values()) {
+			for(RecordThreadInfo recThrInfo : recThrInfoList) {
+				if(hasStackTrace) {
+					recThrInfo.stackId = stackTable.internStack(recThrInfo.stackTrace);
+					recThrInfo.stackTrace = null;
+				}
+				sampleStore.add(recThrInfo);
+			}
+		}
+		sampleStore.trimToSize();
+		recordData = null;
+	}
+
 }
@@ -0,0 +1,150 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.util.Arrays;
+
+/**
+ * {@link RecordThreadSamples}에 저장된 샘플 중 일부를 순서대로 가리키는 목록<br/>
+ * 샘플 객체를 만들지 않고 (스레드 샘플, index) 쌍만 보관하며, index 기반으로 각 컬럼 값을 조회한다.
+ * 여러 스레드의 샘플을 함께 담을 수도 있다.
+ */
+public class RecordSampleList {
+
+	private RecordThreadSamples[] owners;
+	private int[] indexes;
+	private int size = 0;
+
+
+	public RecordSampleList() {
+		this(16);
+	}
+
+	public RecordSampleList(int capacity) {
+		owners = new RecordThreadSamples[Math.max(capacity, 1)];
+		indexes = new int[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * 스레드의 모든 샘플을 담은 목록을 만든다.
+	 */
+	public static RecordSampleList of(RecordThreadSamples samples) {
+		if(samples == null) {
+			return new RecordSampleList(1);
+		}
+		RecordSampleList list = new RecordSampleList(samples.size());
+		for(int i = 0; i < samples.size(); i++) {
+			list.add(samples, i);
+		}
+		return list;
+	}
+
+	/**
+	 * 스레드의 from번째부터 to번째 전까지의 샘플을 담은 목록을 만든다.
+	 */
+	public static RecordSampleList of(RecordThreadSamples samples, int from, int to) {
+		RecordSampleList list = new RecordSampleList(to - from);
+		for(int i = from; i < to; i++) {
+			list.add(samples, i);
+		}
+		return list;
+	}
+
+	public void add(RecordThreadSamples samples, int idx) {
+		if(size == indexes.length) {
+			owners = Arrays.copyOf(owners, size * 2);
+			indexes = Arrays.copyOf(indexes, size * 2);
+		}
+		owners[size] = samples;
+		indexes[size] = idx;
+		size++;
+	}
+
+	public void add(RecordSampleList list, int i) {
+		add(list.owners[i], list.indexes[i]);
+	}
+
+	public void addAll(RecordSampleList list) {
+		for(int i = 0; i < list.size; i++) {
+			add(list.owners[i], list.indexes[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public RecordThreadInfo get(int i) {
+		return owners[i].get(indexes[i]);
+	}
+
+	/**
+	 * i번째 샘플의 스레드 내 위치. ({@link RecordThreadSamples}의 샘플 순서)
+	 */
+	public int getSampleIndex(int i) {
+		return indexes[i];
+	}
+
+	public long getThreadId(int i) {
+		return owners[i].getThreadId();
+	}
+
+	public String getThreadName(int i) {
+		return owners[i].getThreadName(indexes[i]);
+	}
+
+	public long getStartTime(int i) {
+		return owners[i].getStartTime(indexes[i]);
+	}
+
+	public long getEndTime(int i) {
+		return owners[i].getEndTime(indexes[i]);
+	}
+
+	public long getPreviousEndTime(int i) {
+		return owners[i].getPreviousEndTime(indexes[i]);
+	}
+
+	public long getBlockedTime(int i) {
+		return owners[i].getBlockedTime(indexes[i]);
+	}
+
+	public long getBlockedCount(int i) {
+		return owners[i].getBlockedCount(indexes[i]);
+	}
+
+	public long getWaitedTime(int i) {
+		return owners[i].getWaitedTime(indexes[i]);
+	}
+
+	public long getWaitedCount(int i) {
+		return owners[i].getWaitedCount(indexes[i]);
+	}
+
+	public String getThreadState(int i) {
+		return owners[i].getThreadState(indexes[i]);
+	}
+
+	public String getLockName(int i) {
+		return owners[i].getLockName(indexes[i]);
+	}
+
+	public long getLockOwnerId(int i) {
+		return owners[i].getLockOwnerId(indexes[i]);
+	}
+
+	public String getLockOwnerName(int i) {
+		return owners[i].getLockOwnerName(indexes[i]);
+	}
+
+	public int getStackId(int i) {
+		return owners[i].getStackId(indexes[i]);
+	}
+
+	public RecordThreadSampleState getSampleState(int i) {
+		return owners[i].getSampleState(indexes[i]);
+	}
+
+}
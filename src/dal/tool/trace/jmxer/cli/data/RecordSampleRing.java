@@ -0,0 +1,159 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 최근 일정 시간(window)의 샘플만 보관하는 링 버퍼<br/>
+ * 스레드별로 고정 크기의 샘플 chunk({@link RecordThreadSamples})들을 순환하며 사용하므로, 레코딩 시간이 길어져도 스레드별 메모리 사용량이 일정하다.
+ * 가장 오래된 chunk는 버려지지 않고 비워서 다시 사용된다.
+ * 마지막 샘플이 window를 벗어난(종료된) 스레드의 링은 제거되고, 문자열 사전은 커지면 남아있는 샘플이 사용하는 문자열만으로 다시 만든다.
+ * {@link #snapshot(long)}을 호출하면 그 시점의 window 내의 샘플을 복사한 {@link RecordSampleStore}를 만든다.
+ */
+public class RecordSampleRing {
+
+	private static final int MIN_CHUNK_SIZE = 16;
+	private static final int CHUNKS_PER_WINDOW = 8;
+	/** 문자열 사전을 다시 만드는 최소 문자열 수 */
+	private static final int MIN_COMPACT_STRING_COUNT = 1024;
+
+	private final long windowMS;
+	private final int chunkSize;
+	private final int maxChunks;
+	private final long evictIntervalMS;
+	private RecordSampleStore dictionary = new RecordSampleStore();
+	private final Map<Long,ArrayDeque<RecordThreadSamples>> rings = new HashMap<Long,ArrayDeque<RecordThreadSamples>>();
+	private long nextEvictTime = Long.MIN_VALUE;
+	private int compactStringCount = MIN_COMPACT_STRING_COUNT;
+
+
+	/**
+	 * @param windowMS 보관할 시간(ms)
+	 * @param intervalMS 샘플링 간격(ms). 스레드별 보관할 샘플 수를 정하는데 사용한다.
+	 */
+	public RecordSampleRing(long windowMS, long intervalMS) {
+		this.windowMS = windowMS;
+		long capacity = windowMS / Math.max(intervalMS, 1L) + 1;
+		this.chunkSize = (int)Math.max(MIN_CHUNK_SIZE, Math.min(Integer.MAX_VALUE, (capacity + CHUNKS_PER_WINDOW - 1) / CHUNKS_PER_WINDOW));
+		this.maxChunks = (int)((capacity + chunkSize - 1) / chunkSize) + 1;
+		this.evictIntervalMS = Math.max(windowMS / CHUNKS_PER_WINDOW, 1L);
+	}
+
+	public long getWindowMS() {
+		return windowMS;
+	}
+
+	/**
+	 * 샘플을 추가한다. 해당 스레드의 링이 가득 차면 가장 오래된 chunk를 비워서 재사용한다.
+	 * window의 1/8 시간마다 window를 벗어난 스레드의 링을 제거한다.
+	 */
+	public synchronized void add(RecordThreadInfo recThrInfo) {
+		if(recThrInfo.recordStartTime >= nextEvictTime) {
+			evictExpired(recThrInfo.recordStartTime);
+			nextEvictTime = recThrInfo.recordStartTime + evictIntervalMS;
+		}
+		ArrayDeque<RecordThreadSamples> ring = rings.get(recThrInfo.threadId);
+		if(ring == null) {
+			ring = new ArrayDeque<RecordThreadSamples>(maxChunks);
+			rings.put(recThrInfo.threadId, ring);
+		}
+		RecordThreadSamples chunk = ring.peekLast();
+		if(chunk == null || chunk.size() >= chunkSize) {
+			if(ring.size() >= maxChunks) {
+				chunk = ring.pollFirst();
+				chunk.clear();
+			} else {
+				chunk = new RecordThreadSamples(dictionary, recThrInfo.threadId, chunkSize);
+			}
+			ring.addLast(chunk);
+		}
+		chunk.add(recThrInfo);
+	}
+
+	/**
+	 * now 기준으로 window 내의 샘플(시작시간이 now-window 이후인 샘플)을 복사하여 새 저장소를 만든다.
+	 * 링은 계속 사용되며, 리턴된 저장소는 이후 추가되는 샘플의 영향을 받지 않는다.
+	 */
+	public synchronized RecordSampleStore snapshot(long now) {
+		evictExpired(now);
+		long from = now - windowMS;
+		List<String> strings = new ArrayList<String>(dictionary.getStringCount());
+		for(int i = 0; i < dictionary.getStringCount(); i++) {
+			strings.add(dictionary.getString(i));
+		}
+		RecordSampleStore store = new RecordSampleStore(strings);
+		for(Map.Entry<Long,ArrayDeque<RecordThreadSamples>> entry : rings.entrySet()) {
+			int total = 0;
+			for(RecordThreadSamples chunk : entry.getValue()) {
+				total += chunk.size();
+			}
+			RecordThreadSamples samples = new RecordThreadSamples(store, entry.getKey(), Math.max(total, 1));
+			for(RecordThreadSamples chunk : entry.getValue()) {
+				int first = 0;
+				while(first < chunk.size() && chunk.getStartTime(first) < from) {
+					first++;
+				}
+				samples.addRange(chunk, first, chunk.size() - first);
+			}
+			if(samples.size() > 0) {
+				samples.trimToSize();
+				store.putThreadSamples(samples);
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * 마지막 샘플의 시작시간이 now-window 이전인 스레드의 링을 제거한다.
+	 * 문자열 사전이 마지막으로 정리했을 때의 두배를 넘으면 남아있는 샘플이 사용하는 문자열만으로 다시 만든다.
+	 */
+	private void evictExpired(long now) {
+		long from = now - windowMS;
+		Iterator<ArrayDeque<RecordThreadSamples>> iter = rings.values().iterator();
+		while(iter.hasNext()) {
+			RecordThreadSamples last = iter.next().peekLast();
+			if(last == null || last.size() < 1 || last.getStartTime(last.size()-1) < from) {
+				iter.remove();
+			}
+		}
+		if(dictionary.getStringCount() > compactStringCount) {
+			RecordSampleStore compacted = new RecordSampleStore();
+			for(ArrayDeque<RecordThreadSamples> ring : rings.values()) {
+				for(RecordThreadSamples chunk : ring) {
+					chunk.moveStrings(compacted);
+				}
+			}
+			dictionary = compacted;
+			compactStringCount = Math.max(MIN_COMPACT_STRING_COUNT, compacted.getStringCount() * 2);
+		}
+	}
+
+	/**
+	 * 보관 중인 샘플이 사용하는 stack id를 표시한다.
+	 */
+	public synchronized void collectStackIds(BitSet stackIds) {
+		for(ArrayDeque<RecordThreadSamples> ring : rings.values()) {
+			for(RecordThreadSamples chunk : ring) {
+				chunk.collectStackIds(stackIds);
+			}
+		}
+	}
+
+	/**
+	 * 보관 중인 샘플의 stack id를 바꾼다. 스택 테이블을 정리할 때 사용한다.
+	 * @param stackIdMap 기존 stack id 위치에 새 stack id를 저장한 배열
+	 */
+	public synchronized void remapStackIds(int[] stackIdMap) {
+		for(ArrayDeque<RecordThreadSamples> ring : rings.values()) {
+			for(RecordThreadSamples chunk : ring) {
+				chunk.remapStackIds(stackIdMap);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.util.Set;
+
+/**
+ * {@link RecordSampleStore}가 heap에 올리지 않은 스레드별 샘플을 제공하는 저장소<br/>
+ * 스레드별 샘플 수/시간 범위 등 요약 정보는 샘플을 디코딩하지 않고 조회할 수 있어야 한다.
+ * 스레드의 샘플은 시간 순서로 나뉜 하나 이상의 chunk로 저장되며, chunk 단위로 디코딩한다.
+ */
+interface RecordSampleSource {
+
+	Set<Long> getThreadIds();
+
+	int getSampleCount(long threadId);
+
+	/**
+	 * 첫번째 샘플의 스레드명 id를 리턴한다. 알 수 없으면 -2를 리턴한다.
+	 */
+	int getThreadNameId(long threadId);
+
+	/**
+	 * 요청 대기(WAITING_REQUEST) 샘플 수를 리턴한다. 알 수 없으면 -1을 리턴한다.
+	 */
+	int getWaitingRequestCount(long threadId);
+
+	long getMinTime(long threadId);
+
+	long getMaxTime(long threadId);
+
+	/**
+	 * 스레드의 샘플이 나뉘어 저장된 chunk 수. chunk는 시간 순서이다.
+	 */
+	int getChunkCount(long threadId);
+
+	int getChunkSampleCount(long threadId, int chunk);
+
+	/**
+	 * chunk의 요청 대기(WAITING_REQUEST) 샘플 수를 리턴한다. 알 수 없으면 -1을 리턴한다.
+	 */
+	int getChunkWaitingRequestCount(long threadId, int chunk);
+
+	/**
+	 * chunk의 첫번째 샘플의 시작 시간
+	 */
+	long getChunkMinTime(long threadId, int chunk);
+
+	/**
+	 * chunk의 마지막 샘플의 종료 시간
+	 */
+	long getChunkMaxTime(long threadId, int chunk);
+
+	RecordThreadSamples loadChunk(RecordSampleStore store, long threadId, int chunk);
+
+}
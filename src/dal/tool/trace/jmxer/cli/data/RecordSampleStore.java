@@ -0,0 +1,379 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 레코딩된 샘플 저장소<br/>
+ * 스레드별 샘플은 {@link RecordThreadSamples}에 컬럼 단위로 저장되고,
+ * 스레드명/Lock명 등의 문자열은 저장소의 문자열 사전에 한번만 저장된다.
+ * dump 파일에서 로딩되었거나 레코딩 중 디스크로 내보낸 경우({@link RecordSampleSource}),
+ * 스레드별 샘플은 조회될 때 해당 저장소에서 디코딩된다. dump 파일에서 디코딩된 샘플은 최근에 조회한 스레드만
+ * 최대 {@link #MAX_CACHED_SAMPLES}개까지 보관하므로, 전체 스레드를 조회해도 저장소 전체가 heap에 올라오지 않는다.
+ * 레코딩 중 디스크로 내보낸 샘플은 디코딩해도 보관하지 않는다.
+ */
+public class RecordSampleStore implements Serializable {
+
+	private static final long serialVersionUID = 6417903420195813387L;
+
+	/** 저장소에서 디코딩한 스레드 샘플을 보관하는 최대 샘플 수 */
+	public static final int MAX_CACHED_SAMPLES = 1000000;
+
+	private HashMap<Long,RecordThreadSamples> threadSamples = new HashMap<Long,RecordThreadSamples>();
+	private ArrayList<String> strings = new ArrayList<String>();
+
+	private transient Map<String,Integer> stringIndex;
+	private transient RecordSampleSource source;
+	private transient boolean cacheDecoded;
+	/** 저장소에서 디코딩한 스레드 샘플. 최근에 조회한 순서이다. */
+	private transient LinkedHashMap<Long,RecordThreadSamples> decodedSamples;
+	private transient int decodedSampleCount;
+
+
+	public RecordSampleStore() {}
+
+	/**
+	 * dump 파일을 읽을 때 사용한다. 문자열 사전은 dump 파일의 것을 그대로 사용한다.
+	 */
+	RecordSampleStore(List<String> strings) {
+		this.strings = new ArrayList<String>(strings);
+	}
+
+	/**
+	 * 스레드별 샘플을 디코딩할 저장소를 지정한다. 아직 디코딩되지 않은 스레드는 null 값으로 등록된다.
+	 * @param cacheDecoded 디코딩한 샘플을 {@link #MAX_CACHED_SAMPLES}개까지 보관할지 여부
+	 */
+	synchronized void setSource(RecordSampleSource source, boolean cacheDecoded) {
+		this.source = source;
+		this.cacheDecoded = cacheDecoded;
+		for(Long threadId : source.getThreadIds()) {
+			if(!threadSamples.containsKey(threadId)) {
+				threadSamples.put(threadId, null);
+			}
+		}
+	}
+
+	/**
+	 * 샘플을 해당 스레드에 추가한다. 전달된 RecordThreadInfo 객체는 값만 복사되므로 재사용해도 된다.
+	 * 저장소가 지정된 이후에는 추가할 수 없다.
+	 */
+	public void add(RecordThreadInfo recThrInfo) {
+		RecordThreadSamples samples = threadSamples.get(recThrInfo.threadId);
+		if(samples == null) {
+			samples = new RecordThreadSamples(this, recThrInfo.threadId);
+			threadSamples.put(recThrInfo.threadId, samples);
+		}
+		samples.add(recThrInfo);
+	}
+
+	/**
+	 * 스레드의 모든 샘플을 가져온다. 저장소에서 디코딩한 샘플은 보관하도록 지정된 경우 최근에 조회한 스레드만 보관된다.<br/>
+	 * 디코딩은 lock 밖에서 수행하므로, 여러 스레드가 서로 다른 스레드의 샘플을 동시에 디코딩할 수 있다.
+	 */
+	public RecordThreadSamples getThreadSamples(long threadId) {
+		RecordSampleSource source;
+		synchronized(this) {
+			RecordThreadSamples samples = threadSamples.get(threadId);
+			if(samples != null || !isSourceThread(threadId)) {
+				return samples;
+			}
+			samples = (decodedSamples == null) ? null : decodedSamples.get(threadId);
+			if(samples != null) {
+				return samples;
+			}
+			source = this.source;
+		}
+		RecordThreadSamples samples = loadChunks(source, threadId, 0, source.getChunkCount(threadId));
+		if(cacheDecoded && samples != null && samples.size() <= MAX_CACHED_SAMPLES) {
+			synchronized(this) {
+				if(decodedSamples == null) {
+					decodedSamples = new LinkedHashMap<Long,RecordThreadSamples>(16, 0.75f, true);
+				}
+				RecordThreadSamples cached = decodedSamples.get(threadId);
+				if(cached != null) {
+					return cached;
+				}
+				decodedSamples.put(threadId, samples);
+				decodedSampleCount += samples.size();
+				Iterator<RecordThreadSamples> iter = decodedSamples.values().iterator();
+				while(decodedSampleCount > MAX_CACHED_SAMPLES && iter.hasNext()) {
+					decodedSampleCount -= iter.next().size();
+					iter.remove();
+				}
+			}
+		}
+		return samples;
+	}
+
+	/**
+	 * 스레드의 샘플 중 from~to 구간에 시작하는 샘플을 모두 포함하는 샘플을 가져온다.<br/>
+	 * 저장소에서 디코딩하는 스레드는 구간에 걸치는 chunk와, 구간 뒤의 첫번째 요청 대기가 아닌 샘플이 있는 chunk까지만 디코딩하며 보관하지 않는다.
+	 * 구간 뒤의 샘플은 구간의 마지막 샘플의 샘플 시간을 정하는데 사용된다. 구간 값이 -1이면 모든 샘플을 가져온다.
+	 */
+	public RecordThreadSamples getThreadSamples(long threadId, long from, long to) {
+		RecordSampleSource source;
+		synchronized(this) {
+			if(!isSourceThread(threadId) || from <= -1L || to <= -1L || (decodedSamples != null && decodedSamples.containsKey(threadId))) {
+				return getThreadSamples(threadId);
+			}
+			source = this.source;
+		}
+		int chunkCount = source.getChunkCount(threadId);
+		int first = 0;
+		while(first < chunkCount && source.getChunkMaxTime(threadId, first) < from) {
+			first++;
+		}
+		int end = first;
+		while(end < chunkCount && source.getChunkMinTime(threadId, end) <= to) {
+			end++;
+		}
+		while(end < chunkCount) {
+			int waitingCount = source.getChunkWaitingRequestCount(threadId, end);
+			end++;
+			if(waitingCount < 0 || waitingCount < source.getChunkSampleCount(threadId, end-1)) {
+				break;
+			}
+		}
+		if(first == 0 && end == chunkCount) {
+			return getThreadSamples(threadId);
+		}
+		if(first == end) {
+			return new RecordThreadSamples(this, threadId, 1);
+		}
+		return loadChunks(source, threadId, first, end);
+	}
+
+	/**
+	 * 스레드의 샘플을 chunk 단위로 읽기 위한 chunk 수. heap에 있는 스레드는 chunk 하나이다.
+	 */
+	synchronized int getChunkCount(long threadId) {
+		return isSourceThread(threadId) ? source.getChunkCount(threadId) : 1;
+	}
+
+	/**
+	 * 스레드의 chunk번째 샘플을 가져온다. 저장소에서 디코딩한 chunk는 보관하지 않는다.
+	 * @return 샘플이 없는 스레드이면 null
+	 */
+	RecordThreadSamples getChunk(long threadId, int chunk) {
+		RecordSampleSource source;
+		synchronized(this) {
+			if(!isSourceThread(threadId)) {
+				return threadSamples.get(threadId);
+			}
+			source = this.source;
+		}
+		return source.loadChunk(this, threadId, chunk);
+	}
+
+	synchronized RecordSampleSource getSource() {
+		return source;
+	}
+
+	private boolean isSourceThread(long threadId) {
+		return source != null && threadSamples.containsKey(threadId) && threadSamples.get(threadId) == null;
+	}
+
+	/**
+	 * 저장소에서 first번째부터 end번째 전까지의 chunk를 디코딩하여 이어 붙인다. lock 없이 호출한다.<br/>
+	 * 앞 chunk가 있으면 그 chunk의 마지막 샘플의 종료 시간을 첫번째 샘플의 이전 종료 시간으로 지정한다.
+	 */
+	private RecordThreadSamples loadChunks(RecordSampleSource source, long threadId, int first, int end) {
+		RecordThreadSamples samples;
+		if(end - first == 1) {
+			samples = source.loadChunk(this, threadId, first);
+			if(samples == null) {
+				return null;
+			}
+			samples.trimToSize();
+		} else {
+			int total = 0;
+			for(int c = first; c < end; c++) {
+				total += source.getChunkSampleCount(threadId, c);
+			}
+			samples = new RecordThreadSamples(this, threadId, Math.max(total, 1));
+			for(int c = first; c < end; c++) {
+				samples.addAll(source.loadChunk(this, threadId, c));
+			}
+		}
+		if(first > 0) {
+			samples.setPreviousEndTime(source.getChunkMaxTime(threadId, first-1));
+		}
+		return samples;
+	}
+
+	synchronized void putThreadSamples(RecordThreadSamples samples) {
+		threadSamples.put(samples.getThreadId(), samples);
+	}
+
+	/**
+	 * heap에 있는 스레드의 샘플을 제거한다. 문자열 사전은 유지된다.
+	 */
+	synchronized void removeThreadSamples(long threadId) {
+		threadSamples.remove(threadId);
+	}
+
+	/**
+	 * 샘플을 디코딩하지 않고 스레드의 첫번째 샘플의 스레드명을 가져온다.
+	 */
+	public String getThreadName(long threadId) {
+		RecordThreadSamples samples = getHeapSamples(threadId);
+		RecordSampleSource source = getSource();
+		if(samples == null && source != null) {
+			int nameId = source.getThreadNameId(threadId);
+			if(nameId > -2) {
+				return getString(nameId);
+			}
+			samples = getThreadSamples(threadId);
+		}
+		return (samples == null || samples.size() < 1) ? null : samples.getThreadName(0);
+	}
+
+	/**
+	 * 샘플을 디코딩하지 않고 스레드의 샘플 수를 가져온다.
+	 */
+	public int getSampleCount(long threadId) {
+		RecordThreadSamples samples = getHeapSamples(threadId);
+		RecordSampleSource source = getSource();
+		if(samples == null) {
+			return (source == null) ? 0 : source.getSampleCount(threadId);
+		}
+		return samples.size();
+	}
+
+	/**
+	 * 스레드의 샘플 중 요청 대기(WAITING_REQUEST)로 분류된 샘플 수를 가져온다. 가능하면 저장소의 요약 정보를 사용한다.
+	 */
+	public int getWaitingRequestCount(long threadId) {
+		RecordThreadSamples samples = getHeapSamples(threadId);
+		RecordSampleSource source = getSource();
+		if(samples == null && source != null) {
+			int count = source.getWaitingRequestCount(threadId);
+			if(count > -1) {
+				return count;
+			}
+			samples = getThreadSamples(threadId);
+		}
+		return (samples == null) ? 0 : samples.countSampleState(RecordThreadSampleState.WAITING_REQUEST);
+	}
+
+	/**
+	 * 스레드의 샘플 중 from~to 구간에 걸치는 샘플이 있을 수 있는지 확인한다. 구간 값이 -1이면 제한하지 않는다.<br/>
+	 * 디코딩되지 않은 스레드는 저장소의 최소/최대 시간으로 판단한다.
+	 */
+	public boolean mayOverlap(long threadId, long from, long to) {
+		long minTime;
+		long maxTime;
+		RecordThreadSamples samples = getHeapSamples(threadId);
+		RecordSampleSource source = getSource();
+		if(samples != null) {
+			if(samples.size() < 1) {
+				return false;
+			}
+			minTime = samples.getStartTime(0);
+			maxTime = samples.getEndTime(samples.size()-1);
+		} else if(source != null && source.getSampleCount(threadId) > 0) {
+			minTime = source.getMinTime(threadId);
+			maxTime = source.getMaxTime(threadId);
+		} else {
+			return false;
+		}
+		if(from > -1L && maxTime < from) {
+			return false;
+		}
+		if(to > -1L && minTime > to) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * heap에 있는 스레드의 샘플. 저장소에서 디코딩하는 스레드이면 null을 리턴한다.
+	 */
+	private synchronized RecordThreadSamples getHeapSamples(long threadId) {
+		return threadSamples.get(threadId);
+	}
+
+	/**
+	 * 스레드 id 목록의 복사본을 가져온다.
+	 */
+	public synchronized Set<Long> getThreadIds() {
+		return new HashSet<Long>(threadSamples.keySet());
+	}
+
+	public synchronized boolean containsThread(long threadId) {
+		return threadSamples.containsKey(threadId);
+	}
+
+	/**
+	 * heap에 있는 모든 스레드의 샘플을 가져온다. 저장소에서 디코딩하는 스레드는 포함되지 않는다.
+	 */
+	public synchronized Collection<RecordThreadSamples> getAllThreadSamples() {
+		List<RecordThreadSamples> allSamples = new ArrayList<RecordThreadSamples>(threadSamples.size());
+		for(RecordThreadSamples samples : threadSamples.values()) {
+			if(samples != null) {
+				allSamples.add(samples);
+			}
+		}
+		return allSamples;
+	}
+
+	public synchronized int getThreadCount() {
+		return threadSamples.size();
+	}
+
+	public synchronized int getTotalSampleCount() {
+		int count = 0;
+		for(Long threadId : threadSamples.keySet()) {
+			count += getSampleCount(threadId);
+		}
+		return count;
+	}
+
+	public synchronized void trimToSize() {
+		for(RecordThreadSamples samples : threadSamples.values()) {
+			if(samples != null) {
+				samples.trimToSize();
+			}
+		}
+		strings.trimToSize();
+	}
+
+	/**
+	 * 문자열을 사전에 등록하고 id를 리턴한다. null이면 -1을 리턴한다.
+	 */
+	public int internString(String value) {
+		if(value == null) {
+			return -1;
+		}
+		if(stringIndex == null) {
+			stringIndex = new HashMap<String,Integer>();
+			for(int i = 0; i < strings.size(); i++) {
+				stringIndex.put(strings.get(i), i);
+			}
+		}
+		Integer id = stringIndex.get(value);
+		if(id == null) {
+			id = strings.size();
+			strings.add(value);
+			stringIndex.put(value, id);
+		}
+		return id;
+	}
+
+	public String getString(int id) {
+		return (id < 0) ? null : strings.get(id);
+	}
+
+	public int getStringCount() {
+		return strings.size();
+	}
+
+}
@@ -0,0 +1,286 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 레코딩 중 샘플을 디스크로 내보내는 임시 segment 파일<br/>
+ * {@link #spill(RecordSampleStore, int)}가 호출되면 샘플이 많은 스레드부터 heap의 샘플을 segment로 파일 끝에 추가한다.
+ * {@link #SEGMENT_SAMPLES}개 이상 쌓인 스레드는 항상 내보내고, 나머지는 heap의 샘플 수가 지정한 수 이하가 될 때까지만 내보낸다.
+ * 스레드가 많아서 작은 segment가 만들어지면, 크기가 비슷한 마지막 두 segment를 {@link #SEGMENT_SAMPLES}개까지 하나로 합친다.
+ * 따라서 스레드별 segment 수는 샘플 수를 {@link #SEGMENT_SAMPLES}로 나눈 수에 비례한다.
+ * 레코딩이 끝나면 {@link #finish(RecordSampleStore)}로 남은 샘플을 내보내고 저장소에 연결하며,
+ * 이후 스레드별 샘플은 조회될 때 해당 스레드의 segment들을 이어 붙여서 만든다.
+ * segment는 {@link RecordSampleSource}의 chunk로 제공되므로, 시간 구간 조회시에는 구간에 걸치는 segment만 읽는다.
+ * 파일은 하나의 FileChannel로 쓰고 읽으며, JMXer 종료시 닫고 삭제된다.
+ */
+public class RecordSpillFile implements RecordSampleSource {
+
+	/** segment를 합칠 때의 최대 샘플 수. 이 수 이상 쌓인 스레드는 바로 내보낸다. */
+	public static final int SEGMENT_SAMPLES = RecordDumpFile.THREAD_CHUNK_SAMPLES;
+
+	private static final List<FileChannel> openChannels = new ArrayList<FileChannel>();
+
+	private final File file;
+	private final FileChannel channel;
+	private boolean finished = false;
+	private long length = 0L;
+	private final Map<Long,ThreadSegments> threadSegments = new HashMap<Long,ThreadSegments>();
+	private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64*1024);
+
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("JMXer-SpillFileCloser") {
+			public void run() {
+				synchronized(openChannels) {
+					for(FileChannel channel : openChannels) {
+						try {
+							channel.close();
+						} catch(Exception e) {
+						}
+					}
+				}
+			}
+		});
+	}
+
+	public RecordSpillFile() throws IOException {
+		this.file = File.createTempFile("JMXer_Record_", ".seg");
+		this.file.deleteOnExit();
+		this.channel = new RandomAccessFile(file, "rw").getChannel();
+		synchronized(openChannels) {
+			openChannels.add(channel);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * 샘플이 많은 스레드부터 heap의 샘플을 내보내고 저장소에서 제거한다.
+	 * {@link #SEGMENT_SAMPLES}개 이상 쌓인 스레드는 모두 내보내고, 그 외의 스레드는 heap의 샘플 수가 keepSamples개 이하가 되면 멈춘다.
+	 * @return heap에 남은 샘플 수
+	 */
+	public synchronized int spill(RecordSampleStore store, int keepSamples) throws IOException {
+		if(finished) {
+			throw new IOException("The spill file is already closed.");
+		}
+		List<RecordThreadSamples> allSamples = new ArrayList<RecordThreadSamples>(store.getAllThreadSamples());
+		Collections.sort(allSamples, new Comparator<RecordThreadSamples>() {
+			public int compare(RecordThreadSamples s1, RecordThreadSamples s2) {
+				return s2.size() - s1.size();
+			}
+		});
+		int heapSampleCount = 0;
+		for(RecordThreadSamples samples : allSamples) {
+			heapSampleCount += samples.size();
+		}
+		for(RecordThreadSamples samples : allSamples) {
+			if(samples.size() < SEGMENT_SAMPLES && heapSampleCount <= keepSamples) {
+				break;
+			}
+			if(samples.size() > 0) {
+				append(store, samples);
+				heapSampleCount -= samples.size();
+			}
+			store.removeThreadSamples(samples.getThreadId());
+		}
+		return heapSampleCount;
+	}
+
+	/**
+	 * 남은 샘플을 모두 내보낸 후, 저장소가 이 파일에서 샘플을 읽도록 연결한다.
+	 * 내보낸 샘플이 다시 heap에 쌓이지 않도록 저장소는 디코딩한 샘플을 보관하지 않는다.
+	 */
+	public synchronized void finish(RecordSampleStore store) throws IOException {
+		if(finished) {
+			return;
+		}
+		spill(store, 0);
+		finished = true;
+		store.setSource(this, false);
+	}
+
+	/**
+	 * 스레드의 샘플을 segment로 추가한다. 마지막 segment보다 샘플 수가 같거나 많으면, 합쳐서 {@link #SEGMENT_SAMPLES}개를 넘지 않는 동안 계속 합친다.
+	 * 합쳐진 이전 segment는 파일에 남지만 더 이상 읽지 않는다.
+	 */
+	private void append(RecordSampleStore store, RecordThreadSamples samples) throws IOException {
+		long threadId = samples.getThreadId();
+		ThreadSegments segments = threadSegments.get(threadId);
+		if(segments == null) {
+			segments = new ThreadSegments(samples.getThreadNameId(0));
+			threadSegments.put(threadId, segments);
+		}
+		while(segments.count > 0) {
+			int last = segments.count - 1;
+			int lastCount = segments.sampleCounts[last];
+			if(lastCount > samples.size() || lastCount + samples.size() > SEGMENT_SAMPLES) {
+				break;
+			}
+			RecordThreadSamples merged = readSegment(store, threadId, segments, last);
+			merged.addAll(samples);
+			segments.removeLast();
+			samples = merged;
+		}
+		buffer.reset();
+		DataOutputStream payload = new DataOutputStream(buffer);
+		samples.write(payload);
+		payload.flush();
+		ByteBuffer bb = ByteBuffer.wrap(buffer.toByteArray());
+		long offset = length;
+		while(bb.hasRemaining()) {
+			channel.write(bb, offset + bb.position());
+		}
+		length += bb.limit();
+		segments.add(offset, bb.limit(), samples);
+	}
+
+	private RecordThreadSamples readSegment(RecordSampleStore store, long threadId, ThreadSegments segments, int idx) throws IOException {
+		byte[] bytes = new byte[segments.lengths[idx]];
+		ByteBuffer bb = ByteBuffer.wrap(bytes);
+		long pos = segments.offsets[idx];
+		while(bb.hasRemaining()) {
+			if(channel.read(bb, pos + bb.position()) < 0) {
+				throw new IOException("Unexpected end of the spill file.");
+			}
+		}
+		return RecordThreadSamples.read(store, new DataInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	public Set<Long> getThreadIds() {
+		return threadSegments.keySet();
+	}
+
+	public int getSampleCount(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? 0 : segments.sampleCount;
+	}
+
+	public int getThreadNameId(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? -2 : segments.threadNameId;
+	}
+
+	public int getWaitingRequestCount(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? -1 : segments.waitingRequestCount;
+	}
+
+	public long getMinTime(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? -1L : segments.minTimes[0];
+	}
+
+	public long getMaxTime(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? -1L : segments.maxTimes[segments.count-1];
+	}
+
+	public int getChunkCount(long threadId) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		return (segments == null) ? 0 : segments.count;
+	}
+
+	public int getChunkSampleCount(long threadId, int chunk) {
+		return threadSegments.get(threadId).sampleCounts[chunk];
+	}
+
+	public int getChunkWaitingRequestCount(long threadId, int chunk) {
+		return threadSegments.get(threadId).waitingCounts[chunk];
+	}
+
+	public long getChunkMinTime(long threadId, int chunk) {
+		return threadSegments.get(threadId).minTimes[chunk];
+	}
+
+	public long getChunkMaxTime(long threadId, int chunk) {
+		return threadSegments.get(threadId).maxTimes[chunk];
+	}
+
+	/**
+	 * 스레드의 segment 하나를 읽어서 디코딩한다. segment가 chunk가 된다.
+	 */
+	public RecordThreadSamples loadChunk(RecordSampleStore store, long threadId, int chunk) {
+		ThreadSegments segments = threadSegments.get(threadId);
+		if(segments == null) {
+			return null;
+		}
+		try {
+			return readSegment(store, threadId, segments, chunk);
+		} catch(Exception e) {
+			throw new IllegalStateException("Failed to read the samples of thread " + threadId + " from the spill file(" + file.getAbsolutePath() + ") : " + e.getMessage(), e);
+		}
+	}
+
+
+	/**
+	 * 스레드별 segment 목록. segment마다 객체를 만들지 않고 컬럼 배열로 보관한다.
+	 */
+	private static class ThreadSegments {
+
+		final int threadNameId;
+		int sampleCount = 0;
+		int waitingRequestCount = 0;
+		int count = 0;
+		long[] offsets = new long[4];
+		int[] lengths = new int[4];
+		int[] sampleCounts = new int[4];
+		int[] waitingCounts = new int[4];
+		long[] minTimes = new long[4];
+		long[] maxTimes = new long[4];
+
+		ThreadSegments(int threadNameId) {
+			this.threadNameId = threadNameId;
+		}
+
+		void add(long offset, int length, RecordThreadSamples samples) {
+			if(count == offsets.length) {
+				int capacity = count * 2;
+				offsets = Arrays.copyOf(offsets, capacity);
+				lengths = Arrays.copyOf(lengths, capacity);
+				sampleCounts = Arrays.copyOf(sampleCounts, capacity);
+				waitingCounts = Arrays.copyOf(waitingCounts, capacity);
+				minTimes = Arrays.copyOf(minTimes, capacity);
+				maxTimes = Arrays.copyOf(maxTimes, capacity);
+			}
+			offsets[count] = offset;
+			lengths[count] = length;
+			sampleCounts[count] = samples.size();
+			waitingCounts[count] = samples.countSampleState(RecordThreadSampleState.WAITING_REQUEST);
+			minTimes[count] = samples.getStartTime(0);
+			maxTimes[count] = samples.getEndTime(samples.size()-1);
+			sampleCount += sampleCounts[count];
+			waitingRequestCount += waitingCounts[count];
+			count++;
+		}
+
+		void removeLast() {
+			count--;
+			sampleCount -= sampleCounts[count];
+			waitingRequestCount -= waitingCounts[count];
+		}
+
+	}
+
+}
@@ -1,7 +1,10 @@
 package dal.tool.trace.jmxer.cli.data;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 
+import dal.tool.util.FileUtil;
 import dal.tool.util.NumberUtil;
 import dal.tool.util.StringUtil;
 
@@ -15,6 +18,13 @@ public class RecordStackFrame {
 	public long realRecordTime;
 	public long sampleRecordTime;
 	public HashSet<Long> threadSet;
+	/** 샘플에 배분된 추정 CPU 시간(ns)과 할당 바이트. '--resource'로 수집한 시계열이 있을 때만 집계된다. */
+	public long cpuTime = 0L;
+	public long allocBytes = 0L;
+	public long totalCpuTime = -1L;
+	public long totalAllocBytes = -1L;
+	/** 마지막으로 추가한 스레드 ID. 같은 스레드의 스택은 연속해서 더해지므로, 같은 ID는 threadSet에 다시 넣지 않는다. */
+	private long lastThreadId = Long.MIN_VALUE;
 
 	
 	public RecordStackFrame(StackTraceElement stackTraceElement) {
@@ -39,34 +49,112 @@ public class RecordStackFrame {
 		realRecordTime += realTime;
 		sampleRecordTime += sampleTime;
 	}
+
+	public void hit(int count, long realTime, long sampleTime) {
+		hitCount += count;
+		realRecordTime += realTime;
+		sampleRecordTime += sampleTime;
+	}
 	
+	public void hit(int count, long realTime, long sampleTime, long cpuTime, long allocBytes) {
+		hit(count, realTime, sampleTime);
+		this.cpuTime += cpuTime;
+		this.allocBytes += allocBytes;
+	}
+
+	public void addThread(long threadId) {
+		if(threadId != lastThreadId) {
+			threadSet.add(threadId);
+			lastThreadId = threadId;
+		}
+	}
+
+	/**
+	 * 다른 스레드 범위에서 집계한 같은 프레임의 값을 더한다.<br/>
+	 * other의 스레드는 threadOrder 순서(집계한 순서)대로 추가하여, 한번에 집계한 것과 threadSet의 상태가 같도록 한다.
+	 */
+	public void merge(RecordStackFrame other, Comparator<Long> threadOrder) {
+		hit(other.hitCount, other.realRecordTime, other.sampleRecordTime, other.cpuTime, other.allocBytes);
+		Long[] threadIds = other.threadSet.toArray(new Long[other.threadSet.size()]);
+		Arrays.sort(threadIds, threadOrder);
+		for(Long threadId : threadIds) {
+			addThread(threadId);
+		}
+	}
+
+	public void setUsageTotal(long totalCpuTime, long totalAllocBytes) {
+		this.totalCpuTime = totalCpuTime;
+		this.totalAllocBytes = totalAllocBytes;
+	}
+
 	public void setTotal(int totalCount, long totalRecordTime) {
 		this.totalCount = totalCount;
 		this.totalRecordTime = totalRecordTime;
 	}
 
 	public String toMethodHeaderString() {
+		return toMethodHeaderString("");
+	}
+
+	/**
+	 * @param usageHeader {@link #toUsageHeaderString}으로 만든 사용량 컬럼의 헤더. 없으면 빈 문자열
+	 */
+	public String toMethodHeaderString(String usageHeader) {
 		int countDigit = String.valueOf(totalCount).length();
 		int timeDigit = String.valueOf(totalRecordTime).length();
-		return String.format("[%8s](%"+(2*countDigit+1)+"s)(%"+(2*timeDigit+1)+"s) [%s]   %s", "Ratio", "Count", "Time_ms", "ThrC", "Class/Method");
+		return String.format("[%8s](%"+(2*countDigit+1)+"s)(%"+(2*timeDigit+1)+"s) [%s]%s   %s", "Ratio", "Count", "Time_ms", "ThrC", usageHeader, "Class/Method");
 	}
 
 	public String toMethodRootString(String name) {
+		return toMethodRootString(name, "");
+	}
+
+	public String toMethodRootString(String name, String usageStr) {
 		String pctCountStr = NumberUtil.numberToString((double)hitCount/totalCount*100, "0.000'%'");
 		int countDigit = String.valueOf(totalCount).length();
 		int timeDigit = String.valueOf(totalRecordTime).length();
 		int thrCountDigit = 4;
-		return String.format("[%8s](%"+countDigit+"d/%d)(%"+timeDigit+"d/%d) [%"+thrCountDigit+"d]   %s", pctCountStr, hitCount, totalCount, sampleRecordTime, totalRecordTime, threadSet.size(), name);
+		return String.format("[%8s](%"+countDigit+"d/%d)(%"+timeDigit+"d/%d) [%"+thrCountDigit+"d]%s   %s", pctCountStr, hitCount, totalCount, sampleRecordTime, totalRecordTime, threadSet.size(), usageStr, name);
 	}
 
 	public String toMethodLineString() {
+		return toMethodLineString("");
+	}
+
+	public String toMethodLineString(String usageStr) {
 		String pctCountStr = NumberUtil.numberToString((double)hitCount/totalCount*100, "0.000'%'");
 		int countDigit = String.valueOf(totalCount).length();
 		int timeDigit = String.valueOf(totalRecordTime).length();
 		String stackStr = stackTraceElement.toString();
 		String lineStr = stackStr.substring(stackStr.indexOf('(')+1, stackStr.indexOf(')'));
 		String threadListStr = "ThreadList=" + StringUtil.arrayToString(threadSet.toArray(), ",");
-		return String.format("      - line %-30s [%8s](%"+countDigit+"d/%d)(%"+timeDigit+"d/%d) (%s)", lineStr, pctCountStr, hitCount, totalCount, sampleRecordTime, totalRecordTime, threadListStr);
+		return String.format("      - line %-30s [%8s](%"+countDigit+"d/%d)(%"+timeDigit+"d/%d)%s (%s)", lineStr, pctCountStr, hitCount, totalCount, sampleRecordTime, totalRecordTime, usageStr, threadListStr);
+	}
+
+	/**
+	 * 추정 CPU 시간/할당 바이트 컬럼의 헤더
+	 */
+	public static String toUsageHeaderString(boolean cpu, boolean alloc) {
+		StringBuilder sb = new StringBuilder();
+		if(cpu) sb.append(String.format(" [%8s](%9s)", "CPU", "CPU_ms"));
+		if(alloc) sb.append(String.format(" [%8s](%9s)", "Alloc", "Allocated"));
+		return sb.toString();
+	}
+
+	/**
+	 * 추정 CPU 시간/할당 바이트 컬럼. 비율은 전체 대비이다.
+	 */
+	public String toUsageString(boolean cpu, boolean alloc) {
+		StringBuilder sb = new StringBuilder();
+		if(cpu) {
+			String pctStr = NumberUtil.numberToString((totalCpuTime > 0) ? (double)cpuTime/totalCpuTime*100 : 0D, "0.000'%'");
+			sb.append(String.format(" [%8s](%9d)", pctStr, cpuTime / 1000000L));
+		}
+		if(alloc) {
+			String pctStr = NumberUtil.numberToString((totalAllocBytes > 0) ? (double)allocBytes/totalAllocBytes*100 : 0D, "0.000'%'");
+			sb.append(String.format(" [%8s](%9s)", pctStr, FileUtil.humanReadableSize(allocBytes)));
+		}
+		return sb.toString();
 	}
 
 	public String toMethodString(String name, boolean root) {
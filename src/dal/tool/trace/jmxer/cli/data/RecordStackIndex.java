@@ -0,0 +1,280 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 레코딩 중에 샘플이 추가될 때마다 갱신하는 스레드별 스택 집계 색인<br/>
+ * 스레드마다 시간 구간(bucket)별, 그리고 전체 구간의 stack id별 샘플 수/수집 시간/샘플 시간을 집계한다.
+ * stack id는 호출 경로 전체를 나타내므로, METHOD/THREAD 뷰는 샘플을 다시 읽지 않고 스택별 집계로 메소드/라인 표와 호출 트리를 만들 수 있다.
+ * 샘플 시간은 다음 샘플과의 시작 시간 차이이므로 다음 샘플이 추가될 때 정해진다.
+ * 아직 정해지지 않았거나 차이가 없어 주기로 계산해야 하는 샘플은 미정(unsettled) 샘플로 남겨두고 조회할 때 계산한다.
+ * 요청 대기(WAITING_REQUEST)를 제외하는 뷰 모드는 다음 샘플이 다르므로 샘플 시간을 따로 집계한다. dump 파일에는 저장되지 않는다.
+ */
+public class RecordStackIndex {
+
+	public static final long DEFAULT_BUCKET_MS = 10000L;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final long bucketMS;
+	private final Map<Long,ThreadIndex> threadIndexes = new HashMap<Long,ThreadIndex>();
+
+
+	/**
+	 * 한 스레드의 한 시간 구간(또는 전체 구간)에 대한 stack id별 집계
+	 */
+	public static class Bucket {
+
+		private int firstSample;
+		private int endSample;
+		private long minStartTime = Long.MAX_VALUE;
+		private long maxStartTime = Long.MIN_VALUE;
+		private long maxEndTime = Long.MIN_VALUE;
+		/** 집계 항목은 stack id와 요청 대기 여부로 구분하며, 처음 나온 순서대로 저장한다. 구간이 끝나면 null이 된다. */
+		private Map<Long,Integer> entryIndex = new HashMap<Long,Integer>();
+		private int size = 0;
+		private int[] stackIds = new int[INITIAL_CAPACITY];
+		private boolean[] waitings = new boolean[INITIAL_CAPACITY];
+		private int[] counts = new int[INITIAL_CAPACITY];
+		private long[] realTimes = new long[INITIAL_CAPACITY];
+		/** [0] 전체 모드, [1] 요청 대기 제외 모드의 샘플 시간 */
+		private long[][] sampleTimes = new long[2][INITIAL_CAPACITY];
+		/** 모드별 미정 샘플의 집계 항목 위치, 시작 시간, 수집 시간 */
+		private int[] unsettledSizes = new int[2];
+		private int[][] unsettledEntries = new int[2][0];
+		private long[][] unsettledStartTimes = new long[2][0];
+		private long[][] unsettledRealTimes = new long[2][0];
+
+		Bucket(int firstSample) {
+			this.firstSample = firstSample;
+			this.endSample = firstSample;
+		}
+
+		private int hit(int stackId, boolean waiting, long startTime, long realTime) {
+			Long key = ((long)stackId << 1) | (waiting ? 1L : 0L);
+			Integer pos = entryIndex.get(key);
+			if(pos == null) {
+				if(size == stackIds.length) {
+					int capacity = size * 2;
+					stackIds = Arrays.copyOf(stackIds, capacity);
+					waitings = Arrays.copyOf(waitings, capacity);
+					counts = Arrays.copyOf(counts, capacity);
+					realTimes = Arrays.copyOf(realTimes, capacity);
+					sampleTimes[0] = Arrays.copyOf(sampleTimes[0], capacity);
+					sampleTimes[1] = Arrays.copyOf(sampleTimes[1], capacity);
+				}
+				pos = size++;
+				stackIds[pos] = stackId;
+				waitings[pos] = waiting;
+				entryIndex.put(key, pos);
+			}
+			counts[pos]++;
+			realTimes[pos] += realTime;
+			endSample++;
+			minStartTime = Math.min(minStartTime, startTime);
+			maxStartTime = Math.max(maxStartTime, startTime);
+			maxEndTime = Math.max(maxEndTime, startTime + realTime);
+			return pos;
+		}
+
+		private void addUnsettled(int mode, int pos, long startTime, long realTime) {
+			int n = unsettledSizes[mode];
+			if(n == unsettledEntries[mode].length) {
+				int capacity = Math.max(n * 2, 4);
+				unsettledEntries[mode] = Arrays.copyOf(unsettledEntries[mode], capacity);
+				unsettledStartTimes[mode] = Arrays.copyOf(unsettledStartTimes[mode], capacity);
+				unsettledRealTimes[mode] = Arrays.copyOf(unsettledRealTimes[mode], capacity);
+			}
+			unsettledEntries[mode][n] = pos;
+			unsettledStartTimes[mode][n] = startTime;
+			unsettledRealTimes[mode][n] = realTime;
+			unsettledSizes[mode]++;
+		}
+
+		private void close() {
+			entryIndex = null;
+		}
+
+		/** 구간의 첫번째 샘플 위치(스레드 내 샘플 순서) */
+		public int getFirstSample() {
+			return firstSample;
+		}
+
+		/** 구간의 마지막 샘플 다음 위치 */
+		public int getEndSample() {
+			return endSample;
+		}
+
+		public long getMinStartTime() {
+			return minStartTime;
+		}
+
+		public long getMaxStartTime() {
+			return maxStartTime;
+		}
+
+		public long getMaxEndTime() {
+			return maxEndTime;
+		}
+
+		public int getEntryCount() {
+			return size;
+		}
+
+		public int getStackId(int pos) {
+			return stackIds[pos];
+		}
+
+		/** 요청 대기(WAITING_REQUEST)로 분류된 샘플의 항목인지 여부 */
+		public boolean isWaitingRequest(int pos) {
+			return waitings[pos];
+		}
+
+		public int getCount(int pos) {
+			return counts[pos];
+		}
+
+		public long getRealTime(int pos) {
+			return realTimes[pos];
+		}
+
+		/**
+		 * 정해진 샘플 시간의 합. 미정 샘플의 샘플 시간은 포함되지 않는다.
+		 * @param noWaitRequest 요청 대기 제외 모드의 값인지 여부
+		 */
+		public long getSampleTime(int pos, boolean noWaitRequest) {
+			return sampleTimes[noWaitRequest ? 1 : 0][pos];
+		}
+
+		public int getUnsettledCount(boolean noWaitRequest) {
+			return unsettledSizes[noWaitRequest ? 1 : 0];
+		}
+
+		/** i번째 미정 샘플의 집계 항목 위치 */
+		public int getUnsettledEntry(boolean noWaitRequest, int i) {
+			return unsettledEntries[noWaitRequest ? 1 : 0][i];
+		}
+
+		public long getUnsettledStartTime(boolean noWaitRequest, int i) {
+			return unsettledStartTimes[noWaitRequest ? 1 : 0][i];
+		}
+
+		public long getUnsettledRealTime(boolean noWaitRequest, int i) {
+			return unsettledRealTimes[noWaitRequest ? 1 : 0][i];
+		}
+
+	}
+
+
+	/** 스레드별 bucket 목록과 전체 구간 집계, 샘플 시간이 정해지지 않은 모드별 마지막 샘플 */
+	private static class ThreadIndex {
+		final List<Bucket> buckets = new ArrayList<Bucket>();
+		final Bucket total = new Bucket(0);
+		long lastBucketKey = Long.MIN_VALUE;
+		int sampleCount = 0;
+		Bucket[] pendingBuckets = new Bucket[2];
+		int[] pendingEntries = new int[2];
+		int[] pendingTotalEntries = new int[2];
+		long[] pendingStartTimes = new long[2];
+	}
+
+
+	/**
+	 * @param bucketMS 시간 구간의 크기(ms)
+	 */
+	public RecordStackIndex(long bucketMS) {
+		this.bucketMS = Math.max(bucketMS, 1L);
+	}
+
+	public long getBucketMS() {
+		return bucketMS;
+	}
+
+	/**
+	 * 샘플을 색인에 더한다. {@link RecordSampleStore}에 추가하는 순서와 같은 순서로 호출해야 한다.
+	 */
+	public synchronized void add(RecordThreadInfo recThrInfo) {
+		ThreadIndex threadIndex = threadIndexes.get(recThrInfo.threadId);
+		if(threadIndex == null) {
+			threadIndex = new ThreadIndex();
+			threadIndexes.put(recThrInfo.threadId, threadIndex);
+		}
+		long startTime = recThrInfo.recordStartTime;
+		long realTime = recThrInfo.recordEndTime - recThrInfo.recordStartTime;
+		long bucketKey = startTime - (startTime % bucketMS);
+		if(bucketKey != threadIndex.lastBucketKey) {
+			if(!threadIndex.buckets.isEmpty()) {
+				threadIndex.buckets.get(threadIndex.buckets.size()-1).close();
+			}
+			threadIndex.buckets.add(new Bucket(threadIndex.sampleCount));
+			threadIndex.lastBucketKey = bucketKey;
+		}
+		Bucket bucket = threadIndex.buckets.get(threadIndex.buckets.size()-1);
+		boolean waiting = recThrInfo.sampleState == RecordThreadSampleState.WAITING_REQUEST;
+		int pos = bucket.hit(recThrInfo.stackId, waiting, startTime, realTime);
+		int totalPos = threadIndex.total.hit(recThrInfo.stackId, waiting, startTime, realTime);
+		threadIndex.sampleCount++;
+		settle(threadIndex, 0, startTime);
+		setPending(threadIndex, 0, bucket, pos, totalPos, startTime, realTime);
+		if(!waiting) {
+			settle(threadIndex, 1, startTime);
+			setPending(threadIndex, 1, bucket, pos, totalPos, startTime, realTime);
+		}
+	}
+
+	/**
+	 * 모드의 마지막 샘플 시간을 다음 샘플의 시작 시간으로 정한다. 차이가 없으면 미정 샘플로 남긴다.
+	 */
+	private static void settle(ThreadIndex threadIndex, int mode, long nextStartTime) {
+		Bucket bucket = threadIndex.pendingBuckets[mode];
+		if(bucket == null) {
+			return;
+		}
+		long sampleTime = nextStartTime - threadIndex.pendingStartTimes[mode];
+		if(sampleTime > 0L) {
+			// 마지막 샘플은 항상 그 bucket의 마지막 미정 샘플이다.
+			bucket.unsettledSizes[mode]--;
+			bucket.sampleTimes[mode][threadIndex.pendingEntries[mode]] += sampleTime;
+			threadIndex.total.sampleTimes[mode][threadIndex.pendingTotalEntries[mode]] += sampleTime;
+		}
+		threadIndex.pendingBuckets[mode] = null;
+	}
+
+	private static void setPending(ThreadIndex threadIndex, int mode, Bucket bucket, int pos, int totalPos, long startTime, long realTime) {
+		bucket.addUnsettled(mode, pos, startTime, realTime);
+		threadIndex.pendingBuckets[mode] = bucket;
+		threadIndex.pendingEntries[mode] = pos;
+		threadIndex.pendingTotalEntries[mode] = totalPos;
+		threadIndex.pendingStartTimes[mode] = startTime;
+	}
+
+	/**
+	 * 색인된 샘플 수
+	 */
+	public synchronized int getSampleCount(long threadId) {
+		ThreadIndex threadIndex = threadIndexes.get(threadId);
+		return (threadIndex == null) ? 0 : threadIndex.sampleCount;
+	}
+
+	/**
+	 * 스레드의 bucket 목록. 시간 순서이다.
+	 */
+	public synchronized List<Bucket> getBuckets(long threadId) {
+		ThreadIndex threadIndex = threadIndexes.get(threadId);
+		return (threadIndex == null) ? new ArrayList<Bucket>() : new ArrayList<Bucket>(threadIndex.buckets);
+	}
+
+	/**
+	 * 스레드의 전체 구간 집계. 미정 샘플은 각 bucket에 있다.
+	 * @return 색인된 샘플이 없으면 null
+	 */
+	public synchronized Bucket getTotal(long threadId) {
+		ThreadIndex threadIndex = threadIndexes.get(threadId);
+		return (threadIndex == null) ? null : threadIndex.total;
+	}
+
+}
@@ -0,0 +1,190 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 레코딩 중 수집된 스택 프레임과 스택트레이스를 중복없이 보관하는 테이블<br/>
+ * 프레임은 frame id로, 프레임 id 배열로 표현되는 스택트레이스는 stack id로 관리된다.
+ * 각 샘플({@link RecordThreadInfo})은 stack id만 가지므로, 메모리 사용량은 샘플 수가 아닌 고유 스택 수에 비례한다.
+ */
+public class RecordStackTable implements Serializable {
+
+	private static final long serialVersionUID = 3188705937241606291L;
+
+	/** depth 제한으로 잘린 스택의 가장 바깥쪽에 추가되는 표시용 프레임의 클래스명 */
+	public static final String TRUNCATED_FRAME_CLASS = "<truncated>";
+
+	private ArrayList<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+	private ArrayList<int[]> stacks = new ArrayList<int[]>();
+
+	private transient Map<StackTraceElement,Integer> frameIndex;
+	private transient Map<StackKey,Integer> stackIndex;
+
+
+	/**
+	 * depth 제한(maxDepth)으로 잘린 스택임을 표시하는 프레임을 만든다. 잘린 스택의 가장 바깥쪽(root) 프레임으로 추가된다.
+	 */
+	public static StackTraceElement createTruncatedFrame(int maxDepth) {
+		return new StackTraceElement(TRUNCATED_FRAME_CLASS, "<deeper frames>", "max depth " + maxDepth, -1);
+	}
+
+	public static boolean isTruncatedFrame(StackTraceElement frame) {
+		return frame != null && TRUNCATED_FRAME_CLASS.equals(frame.getClassName());
+	}
+
+	public synchronized int internFrame(StackTraceElement frame) {
+		ensureIndex();
+		Integer id = frameIndex.get(frame);
+		if(id == null) {
+			id = frames.size();
+			frames.add(frame);
+			frameIndex.put(frame, id);
+		}
+		return id;
+	}
+
+	public synchronized int internStack(StackTraceElement[] stackTrace) {
+		int[] frameIds = new int[(stackTrace == null) ? 0 : stackTrace.length];
+		for(int i = 0; i < frameIds.length; i++) {
+			frameIds[i] = internFrame(stackTrace[i]);
+		}
+		return internStack(frameIds);
+	}
+
+	public synchronized int internStack(int[] frameIds) {
+		ensureIndex();
+		StackKey key = new StackKey(frameIds);
+		Integer id = stackIndex.get(key);
+		if(id == null) {
+			id = stacks.size();
+			stacks.add(frameIds);
+			stackIndex.put(key, id);
+		}
+		return id;
+	}
+
+	/**
+	 * dump 파일을 읽을 때 사용한다. 중복 검사없이 순서대로 추가하여 기록 당시의 frame id/stack id를 유지한다.
+	 */
+	void appendFrame(StackTraceElement frame) {
+		frames.add(frame);
+		frameIndex = null;
+	}
+
+	void appendStack(int[] frameIds) {
+		stacks.add(frameIds);
+		frameIndex = null;
+	}
+
+	/**
+	 * 현재까지 등록된 프레임/스택트레이스를 복사한 테이블을 만든다. 레코딩 중 스냅샷을 만들 때 사용한다.
+	 */
+	public synchronized RecordStackTable copy() {
+		RecordStackTable table = new RecordStackTable();
+		table.frames.addAll(frames);
+		table.stacks.addAll(stacks);
+		return table;
+	}
+
+	/**
+	 * 사용 중인 스택만 남기고 stack id를 순서대로 다시 매긴다. window 레코딩에서 오래된 스택을 정리할 때 사용한다.
+	 * 프레임은 수집 중인 쪽이 frame id를 가지고 있고 대상 JVM의 코드 위치 수를 넘지 않으므로 정리하지 않는다.
+	 * @param used 남길 stack id
+	 * @return 기존 stack id 위치에 새 stack id를 저장한 배열. 제거된 스택은 -1
+	 */
+	public synchronized int[] retainStacks(BitSet used) {
+		int[] stackIdMap = new int[stacks.size()];
+		ArrayList<int[]> retained = new ArrayList<int[]>(used.cardinality());
+		for(int i = 0; i < stackIdMap.length; i++) {
+			if(used.get(i)) {
+				stackIdMap[i] = retained.size();
+				retained.add(stacks.get(i));
+			} else {
+				stackIdMap[i] = -1;
+			}
+		}
+		stacks = retained;
+		frameIndex = null;
+		stackIndex = null;
+		return stackIdMap;
+	}
+
+	public int getFrameCount() {
+		return frames.size();
+	}
+
+	public int getStackCount() {
+		return stacks.size();
+	}
+
+	public StackTraceElement getFrame(int frameId) {
+		return frames.get(frameId);
+	}
+
+	/**
+	 * 스택트레이스를 구성하는 frame id 배열을 가져온다. 0번째가 최상위(가장 최근 호출) 프레임이다.<br/>
+	 * 리턴된 배열은 테이블 내부 데이터이므로 수정하면 안된다.
+	 */
+	public int[] getStackFrameIds(int stackId) {
+		return stacks.get(stackId);
+	}
+
+	public int getStackDepth(int stackId) {
+		return stacks.get(stackId).length;
+	}
+
+	public StackTraceElement[] getStackTrace(int stackId) {
+		int[] frameIds = stacks.get(stackId);
+		StackTraceElement[] stackTrace = new StackTraceElement[frameIds.length];
+		for(int i = 0; i < frameIds.length; i++) {
+			stackTrace[i] = frames.get(frameIds[i]);
+		}
+		return stackTrace;
+	}
+
+	private void ensureIndex() {
+		if(frameIndex != null) {
+			return;
+		}
+		frameIndex = new HashMap<StackTraceElement,Integer>();
+		for(int i = 0; i < frames.size(); i++) {
+			frameIndex.put(frames.get(i), i);
+		}
+		stackIndex = new HashMap<StackKey,Integer>();
+		for(int i = 0; i < stacks.size(); i++) {
+			stackIndex.put(new StackKey(stacks.get(i)), i);
+		}
+	}
+
+
+	private static class StackKey {
+
+		private final int[] frameIds;
+		private final int hash;
+
+		StackKey(int[] frameIds) {
+			this.frameIds = frameIds;
+			this.hash = Arrays.hashCode(frameIds);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) return true;
+			if(!(obj instanceof StackKey)) return false;
+			StackKey other = (StackKey)obj;
+			return hash == other.hash && Arrays.equals(frameIds, other.frameIds);
+		}
+
+	}
+
+}
@@ -0,0 +1,215 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * 레코딩 동안의 스레드 생성/종료 이력<br/>
+ * 스레드 하나의 생애(lifecycle)마다 항목 하나를 가지며, 같은 스레드 ID가 재사용되면 별도의 항목으로 기록된다.
+ * 생성/종료 시간은 처음/마지막으로 확인한 tick의 시간이므로 주기만큼의 오차가 있다.
+ * 두 tick 사이에 생성되어 종료된 스레드는 항목이 없으며, TotalStartedThreadCount의 차이로 개수만 알 수 있다.
+ */
+public class RecordThreadChurn implements Serializable {
+
+	private static final long serialVersionUID = 4470912538260931754L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	public long startTime = 0L;
+	public long endTime = 0L;
+	public int startThreadCount = 0;
+	public int endThreadCount = 0;
+	public int maxThreadCount = 0;
+	/** 레코딩 시작/종료 시점의 TotalStartedThreadCount. 조회하지 못했으면 -1 */
+	public long startedCountAtStart = -1L;
+	public long startedCountAtEnd = -1L;
+
+	private long[] threadIds = new long[INITIAL_CAPACITY];
+	private String[] threadNames = new String[INITIAL_CAPACITY];
+	private long[] birthTimes = new long[INITIAL_CAPACITY];
+	private long[] deathTimes = new long[INITIAL_CAPACITY];
+	private long[] cpuTimes = new long[INITIAL_CAPACITY];
+	private long[] allocBytes = new long[INITIAL_CAPACITY];
+	private int size = 0;
+
+
+	/**
+	 * 스레드 항목을 추가한다.
+	 * @param birthTime 레코딩 중에 생성된 스레드이면 처음 확인한 시간, 시작할 때부터 있던 스레드이면 -1
+	 * @return 항목의 위치
+	 */
+	public synchronized int add(long threadId, String threadName, long birthTime) {
+		if(size == threadIds.length) {
+			int capacity = size * 2;
+			threadIds = Arrays.copyOf(threadIds, capacity);
+			threadNames = Arrays.copyOf(threadNames, capacity);
+			birthTimes = Arrays.copyOf(birthTimes, capacity);
+			deathTimes = Arrays.copyOf(deathTimes, capacity);
+			cpuTimes = Arrays.copyOf(cpuTimes, capacity);
+			allocBytes = Arrays.copyOf(allocBytes, capacity);
+		}
+		threadIds[size] = threadId;
+		threadNames[size] = threadName;
+		birthTimes[size] = birthTime;
+		deathTimes[size] = -1L;
+		cpuTimes[size] = -1L;
+		allocBytes[size] = -1L;
+		return size++;
+	}
+
+	public synchronized void setDeathTime(int idx, long time) {
+		deathTimes[idx] = time;
+	}
+
+	/**
+	 * 레코딩 동안 사용한 CPU 시간(ns)과 할당 바이트를 지정한다. -1이면 이전 값을 유지한다.
+	 */
+	public synchronized void setUsage(int idx, long cpuTime, long allocated) {
+		if(cpuTime > -1L) cpuTimes[idx] = cpuTime;
+		if(allocated > -1L) allocBytes[idx] = allocated;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized long getThreadId(int idx) {
+		return threadIds[idx];
+	}
+
+	public synchronized String getThreadName(int idx) {
+		return threadNames[idx];
+	}
+
+	public synchronized long getBirthTime(int idx) {
+		return birthTimes[idx];
+	}
+
+	public synchronized long getDeathTime(int idx) {
+		return deathTimes[idx];
+	}
+
+	public synchronized long getCpuTime(int idx) {
+		return cpuTimes[idx];
+	}
+
+	public synchronized long getAllocBytes(int idx) {
+		return allocBytes[idx];
+	}
+
+	public synchronized boolean isBorn(int idx) {
+		return birthTimes[idx] > -1L;
+	}
+
+	public synchronized boolean isDead(int idx) {
+		return deathTimes[idx] > -1L;
+	}
+
+	/**
+	 * 레코딩 중에 생성되어 종료된 스레드의 생존 시간(ms). 해당하지 않으면 -1
+	 */
+	public synchronized long getLifetime(int idx) {
+		if(birthTimes[idx] < 0 || deathTimes[idx] < 0) {
+			return -1L;
+		}
+		return deathTimes[idx] - birthTimes[idx];
+	}
+
+	/**
+	 * 스레드 ID에 해당하는 항목들의 위치. 생성 순서대로 리턴한다.
+	 */
+	public synchronized int[] find(long threadId) {
+		int count = 0;
+		for(int i = 0; i < size; i++) {
+			if(threadIds[i] == threadId) count++;
+		}
+		int[] result = new int[count];
+		for(int i = 0, j = 0; i < size; i++) {
+			if(threadIds[i] == threadId) result[j++] = i;
+		}
+		return result;
+	}
+
+	public synchronized int getBornCount() {
+		int count = 0;
+		for(int i = 0; i < size; i++) {
+			if(birthTimes[i] > -1L) count++;
+		}
+		return count;
+	}
+
+	public synchronized int getDiedCount() {
+		int count = 0;
+		for(int i = 0; i < size; i++) {
+			if(deathTimes[i] > -1L) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * 레코딩 동안 JVM에서 시작된 스레드 수. TotalStartedThreadCount를 조회하지 못했으면 확인한 생성 수
+	 */
+	public synchronized long getStartedCount() {
+		if(startedCountAtStart < 0 || startedCountAtEnd < startedCountAtStart) {
+			return getBornCount();
+		}
+		return Math.max(startedCountAtEnd - startedCountAtStart, getBornCount());
+	}
+
+	public synchronized boolean hasCpuTime() {
+		for(int i = 0; i < size; i++) {
+			if(cpuTimes[i] > -1L) return true;
+		}
+		return false;
+	}
+
+	public synchronized boolean hasAllocBytes() {
+		for(int i = 0; i < size; i++) {
+			if(allocBytes[i] > -1L) return true;
+		}
+		return false;
+	}
+
+	synchronized void write(DataOutput out) throws IOException {
+		out.writeLong(startTime);
+		out.writeLong(endTime);
+		out.writeInt(startThreadCount);
+		out.writeInt(endThreadCount);
+		out.writeInt(maxThreadCount);
+		out.writeLong(startedCountAtStart);
+		out.writeLong(startedCountAtEnd);
+		out.writeInt(size);
+		for(int i = 0; i < size; i++) {
+			out.writeLong(threadIds[i]);
+			out.writeUTF(threadNames[i] == null ? "" : threadNames[i]);
+			out.writeLong(birthTimes[i]);
+			out.writeLong(deathTimes[i]);
+			out.writeLong(cpuTimes[i]);
+			out.writeLong(allocBytes[i]);
+		}
+	}
+
+	static RecordThreadChurn read(DataInput in) throws IOException {
+		RecordThreadChurn churn = new RecordThreadChurn();
+		churn.startTime = in.readLong();
+		churn.endTime = in.readLong();
+		churn.startThreadCount = in.readInt();
+		churn.endThreadCount = in.readInt();
+		churn.maxThreadCount = in.readInt();
+		churn.startedCountAtStart = in.readLong();
+		churn.startedCountAtEnd = in.readLong();
+		int size = in.readInt();
+		for(int i = 0; i < size; i++) {
+			int idx = churn.add(in.readLong(), in.readUTF(), -1L);
+			churn.birthTimes[idx] = in.readLong();
+			churn.deathTimes[idx] = in.readLong();
+			churn.cpuTimes[idx] = in.readLong();
+			churn.allocBytes[idx] = in.readLong();
+		}
+		return churn;
+	}
+
+}
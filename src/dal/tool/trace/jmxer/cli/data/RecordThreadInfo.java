@@ -18,7 +18,9 @@ public class RecordThreadInfo implements Serializable {
 	public boolean inNative;
 	public boolean suspended;
 	public String threadState;
+	/** 이전 버전의 dump 파일을 읽을 때만 사용된다. 로딩 후 {@link RecordStackTable}로 옮겨지고 null이 된다. */
 	public StackTraceElement[] stackTrace;
+	public int stackId;
 	public RecordThreadSampleState sampleState;
 	public long recordStartTime;
 	public long recordEndTime;
@@ -63,8 +65,8 @@ public class RecordThreadInfo implements Serializable {
 		return lockOwnerName;
 	}
 
-	public StackTraceElement[] getStackTrace() {
-		return stackTrace;
+	public int getStackId() {
+		return stackId;
 	}
 
 	public RecordThreadSampleState getSampleState() {
@@ -0,0 +1,416 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 한 스레드의 샘플들을 컬럼(primitive 배열) 단위로 보관하는 클래스<br/>
+ * 샘플마다 객체를 만들지 않고, 시간/상태/카운터/stack id를 각각의 배열에 순서대로 저장한다.
+ * 스레드명과 Lock명은 {@link RecordSampleStore}의 문자열 사전 id로 저장된다.
+ */
+public class RecordThreadSamples implements Serializable {
+
+	private static final long serialVersionUID = -2429614839458526155L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final int FLAG_IN_NATIVE = 0x01;
+	private static final int FLAG_SUSPENDED = 0x02;
+	private static final int FLAG_STATE_SHIFT = 2;
+	private static final int FLAG_STATE_MASK = 0x03 << FLAG_STATE_SHIFT;
+
+	private static final Thread.State[] THREAD_STATES = Thread.State.values();
+	private static final RecordThreadSampleState[] SAMPLE_STATES = RecordThreadSampleState.values();
+
+	private RecordSampleStore store;
+	private final long threadId;
+	private int size = 0;
+
+	private long[] startTimes;
+	private long[] endTimes;
+	private long[] blockedTimes;
+	private long[] blockedCounts;
+	private long[] waitedTimes;
+	private long[] waitedCounts;
+	private long[] lockOwnerIds;
+	private int[] threadNameIds;
+	private int[] lockNameIds;
+	private int[] lockOwnerNameIds;
+	private int[] stackIds;
+	private byte[] threadStates;
+	private byte[] flags;
+	private long previousEndTime = -1L;
+
+
+	RecordThreadSamples(RecordSampleStore store, long threadId) {
+		this(store, threadId, INITIAL_CAPACITY);
+	}
+
+	RecordThreadSamples(RecordSampleStore store, long threadId, int capacity) {
+		this.store = store;
+		this.threadId = threadId;
+		if(capacity > 0) {
+			allocate(capacity);
+		}
+	}
+
+	private void allocate(int capacity) {
+		startTimes = new long[capacity];
+		endTimes = new long[capacity];
+		blockedTimes = new long[capacity];
+		blockedCounts = new long[capacity];
+		waitedTimes = new long[capacity];
+		waitedCounts = new long[capacity];
+		lockOwnerIds = new long[capacity];
+		threadNameIds = new int[capacity];
+		lockNameIds = new int[capacity];
+		lockOwnerNameIds = new int[capacity];
+		stackIds = new int[capacity];
+		threadStates = new byte[capacity];
+		flags = new byte[capacity];
+	}
+
+	private void resize(int capacity) {
+		startTimes = Arrays.copyOf(startTimes, capacity);
+		endTimes = Arrays.copyOf(endTimes, capacity);
+		blockedTimes = Arrays.copyOf(blockedTimes, capacity);
+		blockedCounts = Arrays.copyOf(blockedCounts, capacity);
+		waitedTimes = Arrays.copyOf(waitedTimes, capacity);
+		waitedCounts = Arrays.copyOf(waitedCounts, capacity);
+		lockOwnerIds = Arrays.copyOf(lockOwnerIds, capacity);
+		threadNameIds = Arrays.copyOf(threadNameIds, capacity);
+		lockNameIds = Arrays.copyOf(lockNameIds, capacity);
+		lockOwnerNameIds = Arrays.copyOf(lockOwnerNameIds, capacity);
+		stackIds = Arrays.copyOf(stackIds, capacity);
+		threadStates = Arrays.copyOf(threadStates, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+	}
+
+	/**
+	 * 샘플을 추가한다. 전달된 RecordThreadInfo 객체는 값만 복사되므로 재사용해도 된다.
+	 * @return 추가된 샘플의 index
+	 */
+	public int add(RecordThreadInfo recThrInfo) {
+		if(size == startTimes.length) {
+			resize(size * 2);
+		}
+		int idx = size;
+		startTimes[idx] = recThrInfo.recordStartTime;
+		endTimes[idx] = recThrInfo.recordEndTime;
+		blockedTimes[idx] = recThrInfo.blockedTime;
+		blockedCounts[idx] = recThrInfo.blockedCount;
+		waitedTimes[idx] = recThrInfo.waitedTime;
+		waitedCounts[idx] = recThrInfo.waitedCount;
+		lockOwnerIds[idx] = recThrInfo.lockOwnerId;
+		threadNameIds[idx] = store.internString(recThrInfo.threadName);
+		lockNameIds[idx] = store.internString(recThrInfo.lockName);
+		lockOwnerNameIds[idx] = store.internString(recThrInfo.lockOwnerName);
+		stackIds[idx] = recThrInfo.stackId;
+		threadStates[idx] = (byte)((recThrInfo.threadState == null) ? -1 : Thread.State.valueOf(recThrInfo.threadState).ordinal());
+		int flag = 0;
+		if(recThrInfo.inNative) flag |= FLAG_IN_NATIVE;
+		if(recThrInfo.suspended) flag |= FLAG_SUSPENDED;
+		if(recThrInfo.sampleState != null) flag |= ((recThrInfo.sampleState.ordinal()+1) << FLAG_STATE_SHIFT);
+		flags[idx] = (byte)flag;
+		size++;
+		return idx;
+	}
+
+	/**
+	 * 같은 스레드의 샘플들을 뒤에 이어 붙인다. 두 샘플은 같은 문자열 사전을 사용해야 한다.
+	 */
+	void addAll(RecordThreadSamples other) {
+		addRange(other, 0, other.size);
+	}
+
+	/**
+	 * other의 from번째부터 n개의 샘플을 뒤에 이어 붙인다. 두 샘플은 같은 문자열 id 체계를 사용해야 한다.
+	 */
+	void addRange(RecordThreadSamples other, int from, int n) {
+		if(n < 1) {
+			return;
+		}
+		if(size + n > startTimes.length) {
+			resize(Math.max(size + n, size * 2));
+		}
+		System.arraycopy(other.startTimes, from, startTimes, size, n);
+		System.arraycopy(other.endTimes, from, endTimes, size, n);
+		System.arraycopy(other.blockedTimes, from, blockedTimes, size, n);
+		System.arraycopy(other.blockedCounts, from, blockedCounts, size, n);
+		System.arraycopy(other.waitedTimes, from, waitedTimes, size, n);
+		System.arraycopy(other.waitedCounts, from, waitedCounts, size, n);
+		System.arraycopy(other.lockOwnerIds, from, lockOwnerIds, size, n);
+		System.arraycopy(other.threadNameIds, from, threadNameIds, size, n);
+		System.arraycopy(other.lockNameIds, from, lockNameIds, size, n);
+		System.arraycopy(other.lockOwnerNameIds, from, lockOwnerNameIds, size, n);
+		System.arraycopy(other.stackIds, from, stackIds, size, n);
+		System.arraycopy(other.threadStates, from, threadStates, size, n);
+		System.arraycopy(other.flags, from, flags, size, n);
+		size += n;
+	}
+
+	/**
+	 * 샘플을 모두 비운다. 배열은 그대로 두고 재사용한다.
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	int capacity() {
+		return startTimes.length;
+	}
+
+	/**
+	 * 문자열 id를 다른 문자열 사전의 id로 바꾸고, 이후에는 그 사전을 사용한다. 링 버퍼의 사전을 정리할 때 사용한다.
+	 */
+	void moveStrings(RecordSampleStore target) {
+		for(int i = 0; i < size; i++) {
+			threadNameIds[i] = target.internString(store.getString(threadNameIds[i]));
+			lockNameIds[i] = target.internString(store.getString(lockNameIds[i]));
+			lockOwnerNameIds[i] = target.internString(store.getString(lockOwnerNameIds[i]));
+		}
+		store = target;
+	}
+
+	void collectStackIds(BitSet used) {
+		for(int i = 0; i < size; i++) {
+			used.set(stackIds[i]);
+		}
+	}
+
+	void remapStackIds(int[] stackIdMap) {
+		for(int i = 0; i < size; i++) {
+			stackIds[i] = stackIdMap[stackIds[i]];
+		}
+	}
+
+	/**
+	 * 사용하지 않는 배열 공간을 정리한다.
+	 */
+	public void trimToSize() {
+		if(size < startTimes.length) {
+			resize(Math.max(size, 1));
+		}
+	}
+
+	/**
+	 * 샘플을 RecordThreadInfo 객체로 만든다. 샘플 하나를 출력하는 용도로만 사용한다.
+	 */
+	public RecordThreadInfo get(int idx) {
+		RecordThreadInfo recThrInfo = new RecordThreadInfo();
+		recThrInfo.threadId = threadId;
+		recThrInfo.threadName = getThreadName(idx);
+		recThrInfo.recordStartTime = startTimes[idx];
+		recThrInfo.recordEndTime = endTimes[idx];
+		recThrInfo.blockedTime = blockedTimes[idx];
+		recThrInfo.blockedCount = blockedCounts[idx];
+		recThrInfo.waitedTime = waitedTimes[idx];
+		recThrInfo.waitedCount = waitedCounts[idx];
+		recThrInfo.lockName = getLockName(idx);
+		recThrInfo.lockOwnerId = lockOwnerIds[idx];
+		recThrInfo.lockOwnerName = getLockOwnerName(idx);
+		recThrInfo.inNative = isInNative(idx);
+		recThrInfo.suspended = isSuspended(idx);
+		recThrInfo.threadState = getThreadState(idx);
+		recThrInfo.stackId = stackIds[idx];
+		recThrInfo.sampleState = getSampleState(idx);
+		return recThrInfo;
+	}
+
+	/**
+	 * dump 파일의 스레드 샘플 블록으로 기록한다. 시작시간은 이전 샘플과의 차이로, 종료시간은 시작시간과의 차이로 기록한다.
+	 */
+	void write(DataOutput out) throws IOException {
+		write(out, 0, size);
+	}
+
+	/**
+	 * from번째부터 to번째 전까지의 샘플을 하나의 스레드 샘플 블록으로 기록한다.
+	 */
+	void write(DataOutput out, int from, int to) throws IOException {
+		out.writeLong(threadId);
+		out.writeInt(to - from);
+		long prevStart = 0L;
+		for(int i = from; i < to; i++) {
+			out.writeLong(startTimes[i] - prevStart);
+			out.writeLong(endTimes[i] - startTimes[i]);
+			prevStart = startTimes[i];
+		}
+		for(int i = from; i < to; i++) out.writeLong(blockedTimes[i]);
+		for(int i = from; i < to; i++) out.writeLong(blockedCounts[i]);
+		for(int i = from; i < to; i++) out.writeLong(waitedTimes[i]);
+		for(int i = from; i < to; i++) out.writeLong(waitedCounts[i]);
+		for(int i = from; i < to; i++) out.writeLong(lockOwnerIds[i]);
+		for(int i = from; i < to; i++) out.writeInt(threadNameIds[i]);
+		for(int i = from; i < to; i++) out.writeInt(lockNameIds[i]);
+		for(int i = from; i < to; i++) out.writeInt(lockOwnerNameIds[i]);
+		for(int i = from; i < to; i++) out.writeInt(stackIds[i]);
+		out.write(threadStates, from, to - from);
+		out.write(flags, from, to - from);
+	}
+
+	/**
+	 * {@link #write(DataOutput)}로 기록된 스레드 샘플 블록을 읽는다. 문자열 id는 store의 문자열 사전을 가리킨다.
+	 */
+	static RecordThreadSamples read(RecordSampleStore store, DataInput in) throws IOException {
+		RecordThreadSamples samples = new RecordThreadSamples(store, in.readLong(), 0);
+		int size = in.readInt();
+		samples.allocate(Math.max(size, 1));
+		long prevStart = 0L;
+		for(int i = 0; i < size; i++) {
+			samples.startTimes[i] = prevStart + in.readLong();
+			samples.endTimes[i] = samples.startTimes[i] + in.readLong();
+			prevStart = samples.startTimes[i];
+		}
+		for(int i = 0; i < size; i++) samples.blockedTimes[i] = in.readLong();
+		for(int i = 0; i < size; i++) samples.blockedCounts[i] = in.readLong();
+		for(int i = 0; i < size; i++) samples.waitedTimes[i] = in.readLong();
+		for(int i = 0; i < size; i++) samples.waitedCounts[i] = in.readLong();
+		for(int i = 0; i < size; i++) samples.lockOwnerIds[i] = in.readLong();
+		for(int i = 0; i < size; i++) samples.threadNameIds[i] = in.readInt();
+		for(int i = 0; i < size; i++) samples.lockNameIds[i] = in.readInt();
+		for(int i = 0; i < size; i++) samples.lockOwnerNameIds[i] = in.readInt();
+		for(int i = 0; i < size; i++) samples.stackIds[i] = in.readInt();
+		in.readFully(samples.threadStates, 0, size);
+		in.readFully(samples.flags, 0, size);
+		samples.size = size;
+		return samples;
+	}
+
+	/**
+	 * 샘플 분류 상태가 state인 샘플 수를 센다.
+	 */
+	public int countSampleState(RecordThreadSampleState state) {
+		return countSampleState(state, 0, size);
+	}
+
+	/**
+	 * from번째부터 to번째 전까지의 샘플 중 분류 상태가 state인 샘플 수를 센다.
+	 */
+	public int countSampleState(RecordThreadSampleState state, int from, int to) {
+		int stateBits = (state == null) ? 0 : ((state.ordinal()+1) << FLAG_STATE_SHIFT);
+		int count = 0;
+		for(int i = from; i < to; i++) {
+			if((flags[i] & FLAG_STATE_MASK) == stateBits) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public long getThreadId() {
+		return threadId;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getStartTime(int idx) {
+		return startTimes[idx];
+	}
+
+	/**
+	 * 시작 시간이 time 이상인 첫번째 샘플의 위치. 샘플은 시작 시간 순서로 저장되어 있으므로 이진 탐색한다.
+	 * @return 해당하는 샘플이 없으면 size()
+	 */
+	public int indexOfStartTime(long time) {
+		int low = 0;
+		int high = size;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(startTimes[mid] < time) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * 시작 시간이 time보다 큰 첫번째 샘플의 위치
+	 * @return 해당하는 샘플이 없으면 size()
+	 */
+	public int indexAfterStartTime(long time) {
+		return (time == Long.MAX_VALUE) ? size : indexOfStartTime(time + 1);
+	}
+
+	public long getEndTime(int idx) {
+		return endTimes[idx];
+	}
+
+	/**
+	 * idx번째 샘플의 바로 앞 샘플의 종료 시간. 스레드의 일부 chunk만 읽었으면 첫번째 샘플은 앞 chunk의 마지막 샘플의 종료 시간을 사용한다.
+	 * @return 스레드의 첫번째 샘플이면 -1
+	 */
+	public long getPreviousEndTime(int idx) {
+		return (idx > 0) ? endTimes[idx-1] : previousEndTime;
+	}
+
+	void setPreviousEndTime(long previousEndTime) {
+		this.previousEndTime = previousEndTime;
+	}
+
+	public long getBlockedTime(int idx) {
+		return blockedTimes[idx];
+	}
+
+	public long getBlockedCount(int idx) {
+		return blockedCounts[idx];
+	}
+
+	public long getWaitedTime(int idx) {
+		return waitedTimes[idx];
+	}
+
+	public long getWaitedCount(int idx) {
+		return waitedCounts[idx];
+	}
+
+	public long getLockOwnerId(int idx) {
+		return lockOwnerIds[idx];
+	}
+
+	public String getThreadName(int idx) {
+		return store.getString(threadNameIds[idx]);
+	}
+
+	int getThreadNameId(int idx) {
+		return threadNameIds[idx];
+	}
+
+	public String getLockName(int idx) {
+		return store.getString(lockNameIds[idx]);
+	}
+
+	public String getLockOwnerName(int idx) {
+		return store.getString(lockOwnerNameIds[idx]);
+	}
+
+	public int getStackId(int idx) {
+		return stackIds[idx];
+	}
+
+	public String getThreadState(int idx) {
+		return (threadStates[idx] < 0) ? null : THREAD_STATES[threadStates[idx]].name();
+	}
+
+	public boolean isInNative(int idx) {
+		return (flags[idx] & FLAG_IN_NATIVE) != 0;
+	}
+
+	public boolean isSuspended(int idx) {
+		return (flags[idx] & FLAG_SUSPENDED) != 0;
+	}
+
+	public RecordThreadSampleState getSampleState(int idx) {
+		int state = (flags[idx] & FLAG_STATE_MASK) >> FLAG_STATE_SHIFT;
+		return (state == 0) ? null : SAMPLE_STATES[state-1];
+	}
+
+}
@@ -0,0 +1,112 @@
+package dal.tool.trace.jmxer.cli.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * 레코딩 tick(한번의 샘플 수집)별 수집 지연시간 히스토그램과 놓친 tick 수<br/>
+ * 지연시간은 {@link #BUCKET_BOUNDS_US}의 구간별 개수로 집계되며, 백분위 값은 해당 구간의 상한으로 근사한다.
+ */
+public class RecordTickStats implements Serializable {
+
+	private static final long serialVersionUID = -3418230584177093215L;
+
+	/** 구간의 상한(us, 미포함). 마지막 구간은 상한이 없다. */
+	public static final long[] BUCKET_BOUNDS_US = { 500L, 1000L, 2000L, 5000L, 10000L, 20000L, 50000L, 100000L, 200000L, 500000L, 1000000L, 2000000L, 5000000L };
+
+	/** true이면 지연시간을 샘플 제공측(Agent)이 보고한 시간(ms 단위)으로 측정한 것이다. */
+	public boolean selfPaced = false;
+	public long[] bucketCounts = new long[BUCKET_BOUNDS_US.length + 1];
+	public long tickCount = 0L;
+	public long totalNanos = 0L;
+	public long minNanos = Long.MAX_VALUE;
+	public long maxNanos = 0L;
+	public long missedTicks = 0L;
+
+
+	public synchronized void addLatency(long nanos) {
+		if(nanos < 0) {
+			nanos = 0;
+		}
+		long us = nanos / 1000L;
+		int idx = 0;
+		while(idx < BUCKET_BOUNDS_US.length && us >= BUCKET_BOUNDS_US[idx]) {
+			idx++;
+		}
+		bucketCounts[idx]++;
+		tickCount++;
+		totalNanos += nanos;
+		minNanos = Math.min(minNanos, nanos);
+		maxNanos = Math.max(maxNanos, nanos);
+	}
+
+	public synchronized void addMissedTicks(long count) {
+		missedTicks += count;
+	}
+
+	public synchronized double getAverageMS() {
+		return (tickCount < 1) ? 0D : totalNanos / (double)tickCount / 1000000D;
+	}
+
+	/**
+	 * 백분위(0~100) 지연시간의 근사값(ns). 해당 구간의 상한이며, 최대값을 넘지 않는다.
+	 */
+	public synchronized long getPercentileNanos(double percentile) {
+		if(tickCount < 1) {
+			return 0L;
+		}
+		long target = (long)Math.ceil(tickCount * percentile / 100D);
+		long cumulative = 0L;
+		for(int i = 0; i < bucketCounts.length; i++) {
+			cumulative += bucketCounts[i];
+			if(cumulative >= target) {
+				return (i < BUCKET_BOUNDS_US.length) ? Math.min(BUCKET_BOUNDS_US[i] * 1000L, maxNanos) : maxNanos;
+			}
+		}
+		return maxNanos;
+	}
+
+	public synchronized RecordTickStats copy() {
+		RecordTickStats stats = new RecordTickStats();
+		stats.selfPaced = selfPaced;
+		stats.bucketCounts = bucketCounts.clone();
+		stats.tickCount = tickCount;
+		stats.totalNanos = totalNanos;
+		stats.minNanos = minNanos;
+		stats.maxNanos = maxNanos;
+		stats.missedTicks = missedTicks;
+		return stats;
+	}
+
+	synchronized void write(DataOutput out) throws IOException {
+		out.writeBoolean(selfPaced);
+		out.writeLong(tickCount);
+		out.writeLong(totalNanos);
+		out.writeLong(minNanos);
+		out.writeLong(maxNanos);
+		out.writeLong(missedTicks);
+		out.writeInt(bucketCounts.length);
+		for(long count : bucketCounts) {
+			out.writeLong(count);
+		}
+	}
+
+	static RecordTickStats read(DataInput in) throws IOException {
+		RecordTickStats stats = new RecordTickStats();
+		stats.selfPaced = in.readBoolean();
+		stats.tickCount = in.readLong();
+		stats.totalNanos = in.readLong();
+		stats.minNanos = in.readLong();
+		stats.maxNanos = in.readLong();
+		stats.missedTicks = in.readLong();
+		int size = in.readInt();
+		for(int i = 0; i < size; i++) {
+			long count = in.readLong();
+			stats.bucketCounts[Math.min(i, stats.bucketCounts.length-1)] += count;
+		}
+		return stats;
+	}
+
+}
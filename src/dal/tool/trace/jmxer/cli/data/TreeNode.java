@@ -1,7 +1,9 @@
 package dal.tool.trace.jmxer.cli.data;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TreeNode<E> {
 
@@ -10,6 +12,12 @@ public class TreeNode<E> {
 	private TreeNode<E> child;
 	private TreeNode<E> sibling;
 	private int depth;
+	/** {@link #addChild(int, Object)}로 추가되었을 때의 key */
+	private int key;
+	/** 마지막 자식. 자식 추가시 sibling 목록을 따라가지 않기 위해 사용한다. */
+	private TreeNode<E> lastChild;
+	/** {@link #addChild(int, Object)}로 추가한 자식의 색인 */
+	private Map<Integer,TreeNode<E>> childIndex;
 
 	public TreeNode(E data) {
 		this.data = data;
@@ -51,6 +59,10 @@ public class TreeNode<E> {
 		return depth;
 	}
 
+	public int getKey() {
+		return key;
+	}
+
 	public List<TreeNode<E>> getChilds() {
 		List<TreeNode<E>> result = new ArrayList<TreeNode<E>>();
 		if(child != null) {
@@ -60,21 +72,43 @@ public class TreeNode<E> {
 	}
 	
 	public TreeNode<E> addChild(E data) {
-		TreeNode<E> child = getChild();
+		TreeNode<E> child = (lastChild != null && lastChild.getSibling() == null) ? lastChild : getChild();
 		if(child == null) {
 			TreeNode<E> ret = new TreeNode<E>(data);
 			setChild(ret);
+			lastChild = ret;
 			return ret;
 		}
 		while(true) {
 			if(child.getSibling() == null) {
 				TreeNode<E> ret = new TreeNode<E>(data);
 				child.setSibling(ret);
+				lastChild = ret;
 				return ret;
 			}
 			child = child.getSibling();
 		}
 	}
+
+	/**
+	 * 자식을 추가하고 key로 색인한다. 자식들은 추가한 순서를 유지한다.
+	 */
+	public TreeNode<E> addChild(int key, E data) {
+		TreeNode<E> ret = addChild(data);
+		ret.key = key;
+		if(childIndex == null) {
+			childIndex = new HashMap<Integer,TreeNode<E>>();
+		}
+		childIndex.put(key, ret);
+		return ret;
+	}
+
+	/**
+	 * key로 색인된 자식을 찾는다. {@link #addChild(int, Object)}로 추가한 자식만 찾을 수 있다.
+	 */
+	public TreeNode<E> getChild(int key) {
+		return (childIndex == null) ? null : childIndex.get(key);
+	}
 	
 	public TreeNode<E> deleteChild(E data) {
 		TreeNode<E> tmp = null;
@@ -82,8 +116,10 @@ public class TreeNode<E> {
 		if(tmp == null) {
 			return null;
 		}
+		lastChild = null;
 		if(tmp.getData() == data) {
 			setChild(tmp.getSibling());
+			unindexChild(tmp);
 			return tmp;
 		}
 		TreeNode<E> pre = null;
@@ -94,11 +130,18 @@ public class TreeNode<E> {
 				return null;
 			if(tmp.getData() == data) {
 				pre.setSibling(tmp.getSibling());
+				unindexChild(tmp);
 				return tmp;
 			}
 		}		
 	}
 
+	private void unindexChild(TreeNode<E> node) {
+		if(childIndex != null) {
+			childIndex.values().remove(node);
+		}
+	}
+
 	public TreeNode<E> addSibling(E data) {
 		if(parent != null) {
 			return parent.addChild(data);
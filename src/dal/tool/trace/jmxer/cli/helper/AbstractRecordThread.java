@@ -3,25 +3,28 @@ package dal.tool.trace.jmxer.cli.helper;
 import java.lang.management.ThreadInfo;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 
-import dal.tool.util.StringUtil;
+import dal.tool.trace.jmxer.cli.data.RecordTickStats;
 import dal.tool.util.jmx.JMXUtil;
 
 public abstract class AbstractRecordThread implements Runnable {
 
-	protected boolean stop = false;
+	protected volatile boolean stop = false;
 	protected String recordThreadName;
 	protected MBeanServerConnection mbeanConnection = null;
 	protected long recordLimitMS = 0L;
 	protected long recordIntervalMS = 1000L;
+	/** 현재 적용중인 수집 주기. 레코딩 중에 변경될 수 있다. */
+	protected volatile long currentIntervalMS = 1000L;
 	protected String[] threadIds = null;
-	protected String threadIdsString = null;
+	protected long[] threadIdArray = null;
 	protected String[] threadNames = null;
 	protected long startTimeMS = 0L;
 	protected long endTimeMS = 0L;
 	protected Thread recordRunnerThread = null;
+	protected boolean background = false;
+	protected RecordTickStats tickStats = new RecordTickStats();
 
 	public AbstractRecordThread(String recordThreadName, MBeanServerConnection mbeanConnection, String[] threadIds) throws Exception {
 		this.recordThreadName = recordThreadName;
@@ -31,7 +34,6 @@ public abstract class AbstractRecordThread implements Runnable {
 	}
 
 	protected void init() throws Exception {
-		ObjectName objectName = new ObjectName("java.lang:type=Threading");
 		if(threadIds == null || threadIds.length == 1 && "*".equals(threadIds[0])) {
 			long[] ids = JMXUtil.getAllThreadIds(mbeanConnection, true);
 			threadIds = new String[ids.length];
@@ -39,9 +41,12 @@ public abstract class AbstractRecordThread implements Runnable {
 				threadIds[i] = String.valueOf(ids[i]);
 			}
 		}
-		threadIdsString = StringUtil.arrayToString(threadIds, ",");
+		threadIdArray = new long[threadIds.length];
+		for(int i = 0; i < threadIds.length; i++) {
+			threadIdArray[i] = Long.parseLong(threadIds[i]);
+		}
 		threadNames = new String[threadIds.length];
-		Object resultData = JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadInfo(long[])", new String[]{threadIdsString});
+		Object resultData = JMXUtil.createThreadIdsCall("getThreadInfo", threadIdArray).invoke(mbeanConnection);
 		if(resultData == null || ((CompositeData[])resultData).length < 1) {
 			throw new Exception("Could not get thread info.");
 		}
@@ -58,8 +63,10 @@ public abstract class AbstractRecordThread implements Runnable {
 	public void startRecording(long interval, long limit) {
 		beforeStartRecording();
 	    this.recordIntervalMS = interval;
+	    this.currentIntervalMS = interval;
 		this.recordLimitMS = limit;
 		recordRunnerThread = new Thread(this, recordThreadName);
+		recordRunnerThread.setDaemon(background);
 		recordRunnerThread.start();
 		if(recordLimitMS > 0) {
 			while(!stop) {
@@ -87,38 +94,76 @@ public abstract class AbstractRecordThread implements Runnable {
 		afterStopRecording();
 	}
 	
+	/**
+	 * System.nanoTime 기준의 고정 주기(startNanos + n*interval)로 collectData()를 호출한다.<br/>
+	 * 수집이 주기보다 오래 걸려 다음 tick이 이미 지났으면, 지나간 tick들 중 마지막 하나만 바로 수행하고(coalesce) 나머지는 건너뛰어 놓친 tick으로 집계한다.
+	 * 따라서 느린 수집이 이후의 주기를 밀어내지 않으며, 시스템 시간이 변경되어도 주기가 틀어지지 않는다.
+	 * 수집 지연시간은 collectData()의 수행 시간이며, 이후의 afterCollectData()는 포함하지 않는다.
+	 */
 	public void run() {
 		startTimeMS = System.currentTimeMillis();
-		long collectStart = -1L;
-		long collectEnd = -1L;
+		long startNanos = System.nanoTime();
+		long nextTick = startNanos;
 		while(!stop) {
-			collectStart = System.currentTimeMillis();
+			long collectStart = System.nanoTime();
+			long latency = -1L;
 			try {
-				collectEnd = collectData();
-				System.out.print(".");
+				collectData();
+				latency = System.nanoTime() - collectStart;
+				afterCollectData();
+				if(!background) {
+					System.out.print(".");
+				}
 			} catch(Exception e) {
 				e.printStackTrace();
 			}
-			long total_elapsed = collectEnd - startTimeMS;
-			if(recordLimitMS > 0 && total_elapsed >= recordLimitMS) {
+			if(latency < 0L) {
+				latency = System.nanoTime() - collectStart;
+			}
+			if(!isSelfPaced()) {
+				tickStats.addLatency(latency);
+				afterTick(latency);
+			}
+			if(recordLimitMS > 0 && System.nanoTime() - startNanos >= recordLimitMS * 1000000L) {
 				stopRecording(); break;
 			}
-			long elapsed = collectEnd - collectStart;
-			if(elapsed < 0) {
+			if(isSelfPaced()) {
+				continue;
+			}
+			long intervalNanos = Math.max(currentIntervalMS, 1L) * 1000000L;
+			nextTick += intervalNanos;
+			long now = System.nanoTime();
+			if(now - nextTick > 0) {
+				long missed = (now - nextTick) / intervalNanos;
+				tickStats.addMissedTicks(missed);
+				nextTick += missed * intervalNanos;
+			} else {
+				long sleep = nextTick - now;
 				try {
-					Thread.sleep(recordIntervalMS);
+					Thread.sleep(sleep / 1000000L, (int)(sleep % 1000000L));
 				} catch(InterruptedException e) {				
 				}
-			} else {
-				if(elapsed < recordIntervalMS) {
-					try {
-						Thread.sleep(recordIntervalMS - elapsed);
-					} catch(InterruptedException e) {				
-					}
-				}
 			}
 		}
-		System.out.println();
+		if(!background) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * 백그라운드로 레코딩할지 지정한다. 백그라운드 레코딩은 진행 표시를 출력하지 않으며, daemon 스레드로 수행된다.
+	 * startRecording() 전에 호출해야 한다.
+	 */
+	public void setBackground(boolean background) {
+		this.background = background;
+	}
+
+	public RecordTickStats getTickStats() {
+		return tickStats;
+	}
+
+	public boolean isRecording() {
+		return recordRunnerThread != null && !stop;
 	}
 
 	protected void beforeStartRecording() {}
@@ -130,6 +175,24 @@ public abstract class AbstractRecordThread implements Runnable {
 	protected void afterStopRecording() {}
 	
 	protected void afterInit() throws Exception {};
+
+	/**
+	 * collectData()가 성공할 때마다 호출되어 수집한 데이터를 후처리한다. 수행 시간은 수집 지연시간에 포함되지 않는다.
+	 */
+	protected void afterCollectData() throws Exception {}
+
+	/**
+	 * 한번의 수집이 끝날 때마다 수집 지연시간(ns)과 함께 호출된다. 스스로 주기를 관리하는 경우(isSelfPaced)에는 호출되지 않는다.
+	 */
+	protected void afterTick(long latencyNanos) {}
+
+	/**
+	 * collectData()가 다음 샘플이 도착할 때까지 대기하는 경우(샘플링 주기를 데이터 제공측에서 관리하는 경우) true를 리턴한다.
+	 * true이면 수집 후 sleep 하지 않는다.
+	 */
+	protected boolean isSelfPaced() {
+		return false;
+	}
 	
 	abstract long collectData() throws Exception;
 
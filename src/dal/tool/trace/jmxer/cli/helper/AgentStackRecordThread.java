@@ -0,0 +1,171 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServerConnection;
+
+import dal.tool.cli.Logger;
+import dal.tool.trace.jmxer.JMXControl;
+import dal.tool.trace.jmxer.agent.SamplingAgent;
+import dal.tool.trace.jmxer.cli.data.RecordThreadInfo;
+import dal.tool.util.jmx.JMXHelper;
+import dal.tool.util.jmx.MBeanConnector.ConnectType;
+
+public class AgentStackRecordThread extends StackRecordThread {
+
+	private static final int AGENT_CONNECT_TIMEOUT_MS = 10000;
+	private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+	private ConnectType connectType;
+	private String connectTarget;
+	private Socket agentSocket = null;
+	private DataInputStream agentInput = null;
+	private List<String> agentStrings = new ArrayList<String>();
+	private List<Integer> agentFrameIds = new ArrayList<Integer>();
+
+	public AgentStackRecordThread(MBeanServerConnection mbeanConnection, String[] threadIds, ConnectType connectType, String connectTarget) throws Exception {
+		super(mbeanConnection, threadIds);
+		this.connectType = connectType;
+		this.connectTarget = connectTarget;
+		tickStats.selfPaced = true;
+	}
+
+	public static String getAgentJarPath() throws Exception {
+		File jarFile = new File(JMXControl.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		if(!jarFile.isFile() || !jarFile.getName().toLowerCase().endsWith(".jar")) {
+			throw new Exception("Agent sampling requires running JMXer from the jar file : " + jarFile.getAbsolutePath());
+		}
+		return jarFile.getAbsolutePath();
+	}
+
+	public void connectAgent(long interval) throws Exception {
+		String agentJarPath = getAgentJarPath();
+		String token = Long.toHexString(new SecureRandom().nextLong());
+		ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		try {
+			serverSocket.setSoTimeout(AGENT_CONNECT_TIMEOUT_MS);
+			Logger.logln(Logger.Level.DEBUG, "Loading sampling agent : " + agentJarPath);
+			JMXHelper.loadAgent(connectType, connectTarget, agentJarPath, serverSocket.getLocalPort() + ":" + token);
+			try {
+				agentSocket = serverSocket.accept();
+			} catch(SocketTimeoutException e) {
+				throw new Exception("The sampling agent did not connect within " + AGENT_CONNECT_TIMEOUT_MS + "ms.");
+			}
+		} finally {
+			serverSocket.close();
+		}
+		agentSocket.setTcpNoDelay(true);
+		agentInput = new DataInputStream(new BufferedInputStream(agentSocket.getInputStream(), 64*1024));
+		if(agentInput.readInt() != SamplingAgent.MAGIC || agentInput.readInt() != SamplingAgent.VERSION || !token.equals(agentInput.readUTF())) {
+			closeAgent();
+			throw new Exception("Invalid handshake from the sampling agent.");
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(agentSocket.getOutputStream()));
+		out.writeLong(interval);
+		out.writeInt(getRequestDepth(maxStackDepth));
+		out.writeInt(threadIdArray.length);
+		for(long tid : threadIdArray) {
+			out.writeLong(tid);
+		}
+		out.flush();
+	}
+
+	protected void beforeStopRecording() {
+		closeAgent();
+	}
+
+	private void closeAgent() {
+		if(agentSocket != null) {
+			try {
+				agentSocket.close();
+			} catch(IOException e) {
+			}
+		}
+	}
+
+	protected long collectData() throws Exception {
+		if(agentInput == null) {
+			throw new Exception("The sampling agent is not connected.");
+		}
+		try {
+			while(true) {
+				int type = agentInput.readByte();
+				if(type == SamplingAgent.TYPE_STRING_DEF) {
+					agentStrings.add(agentInput.readInt(), agentInput.readUTF());
+				} else if(type == SamplingAgent.TYPE_FRAME_DEF) {
+					int id = agentInput.readInt();
+					String className = agentInput.readUTF();
+					String methodName = agentInput.readUTF();
+					String fileName = agentInput.readUTF();
+					int lineNumber = agentInput.readInt();
+					agentFrameIds.add(id, stackTable.internFrame(new StackTraceElement(className, methodName, ("".equals(fileName) ? null : fileName), lineNumber)));
+				} else if(type == SamplingAgent.TYPE_SAMPLE) {
+					return readSample();
+				} else {
+					throw new Exception("Unknown message type from the sampling agent : " + type);
+				}
+			}
+		} catch(IOException e) {
+			if(stop) {
+				return System.currentTimeMillis();
+			}
+			Logger.logln(Logger.Level.ERROR, "The connection to the sampling agent was lost : " + e.getMessage());
+			endTimeMS = System.currentTimeMillis();
+			stop = true;
+			return endTimeMS;
+		}
+	}
+
+	protected boolean isSelfPaced() {
+		return true;
+	}
+
+	private long readSample() throws IOException {
+		long start = agentInput.readLong();
+		long end = agentInput.readLong();
+		tickStats.addLatency(agentInput.readLong());
+		tickStats.addMissedTicks(agentInput.readInt());
+		int count = agentInput.readInt();
+		for(int i = 0; i < count; i++) {
+			RecordThreadInfo recThrInfo = sampleBuffer;
+			recThrInfo.threadId = agentInput.readLong();
+			recThrInfo.threadName = getAgentString(agentInput.readInt());
+			recThrInfo.threadState = THREAD_STATES[agentInput.readByte()].name();
+			int flags = agentInput.readByte();
+			recThrInfo.inNative = (flags & SamplingAgent.FLAG_IN_NATIVE) != 0;
+			recThrInfo.suspended = (flags & SamplingAgent.FLAG_SUSPENDED) != 0;
+			recThrInfo.blockedTime = agentInput.readLong();
+			recThrInfo.blockedCount = agentInput.readLong();
+			recThrInfo.waitedTime = agentInput.readLong();
+			recThrInfo.waitedCount = agentInput.readLong();
+			recThrInfo.lockName = getAgentString(agentInput.readInt());
+			recThrInfo.lockOwnerId = agentInput.readLong();
+			recThrInfo.lockOwnerName = getAgentString(agentInput.readInt());
+			int[] frameIds = new int[agentInput.readInt()];
+			for(int j = 0; j < frameIds.length; j++) {
+				frameIds[j] = agentFrameIds.get(agentInput.readInt());
+			}
+			setStack(recThrInfo, internLimitedStack(frameIds));
+			addRecordThreadInfo(recThrInfo, start, end);
+		}
+		sampleCount++;
+		return end;
+	}
+
+	private String getAgentString(int id) {
+		return (id < 0) ? null : agentStrings.get(id);
+	}
+
+}
@@ -0,0 +1,154 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+import dal.tool.cli.Logger;
+import dal.tool.cli.Logger.Level;
+import dal.tool.trace.jmxer.cli.data.RecordAdjustment;
+import dal.tool.util.jmx.JMXUtil;
+
+/**
+ * 적응형 샘플링 제어기<br/>
+ * tick마다 수집 지연시간(EWMA)과 대상 JVM의 CPU 사용률(OperatingSystem MBean의 ProcessCpuLoad)을 확인하여,
+ * 지연시간이 주기의 budget 비율을 넘거나 CPU 사용률이 제한을 넘는 상태가 이어지면 단계(level)를 올려 샘플링 부하를 줄이고,
+ * 여유가 있는 상태가 이어지면 단계를 내려 원래 설정으로 되돌린다. 단계별 설정은 아래와 같다.
+ * <pre>
+ * level 0 : 주기 x1
+ * level 1 : 주기 x2
+ * level 2 : 주기 x4
+ * level 3 : 주기 x4, 스택 깊이 64
+ * level 4 : 주기 x8, 스택 깊이 16
+ * level 5 : 주기 x8, 스택 깊이 16, tick마다 스레드의 1/2씩 번갈아 수집
+ * </pre>
+ * 모든 변경은 {@link RecordAdjustment}로 기록된다.
+ */
+public class RecordAdaptiveController {
+
+	private static final int[] INTERVAL_FACTORS = { 1, 2, 4, 4, 8, 8 };
+	private static final int[] DEPTH_LIMITS = { 0, 0, 0, 64, 16, 16 };
+	private static final int[] COVERAGES = { 1, 1, 1, 1, 1, 2 };
+	private static final int ESCALATE_TICKS = 3;
+	private static final int RELAX_TICKS = 10;
+	private static final long CPU_POLL_MS = 1000L;
+	private static final double EWMA_WEIGHT = 0.3D;
+
+	private final StackRecordThread recorder;
+	private final MBeanServerConnection mbeanConnection;
+	private final long baseIntervalMS;
+	private final int baseDepth;
+	private final int budgetPercent;
+	private final double cpuLimit;
+	private final List<RecordAdjustment> adjustments = new ArrayList<RecordAdjustment>();
+	private ObjectName osName;
+	private int level = 0;
+	private double ewmaNanos = -1D;
+	private double cpuLoad = -1D;
+	private long lastCpuPoll = 0L;
+	private int pressureTicks = 0;
+	private int calmTicks = 0;
+
+
+	/**
+	 * @param budgetPercent 수집 지연시간의 허용 비율(주기 대비 %)
+	 * @param cpuLimitPercent 대상 JVM의 CPU 사용률 제한(%). 0 이하이면 CPU 사용률은 확인하지 않는다.
+	 */
+	public RecordAdaptiveController(StackRecordThread recorder, MBeanServerConnection mbeanConnection, long baseIntervalMS, int baseDepth, int budgetPercent, int cpuLimitPercent) {
+		this.recorder = recorder;
+		this.mbeanConnection = mbeanConnection;
+		this.baseIntervalMS = baseIntervalMS;
+		this.baseDepth = baseDepth;
+		this.budgetPercent = budgetPercent;
+		this.cpuLimit = cpuLimitPercent / 100D;
+		try {
+			this.osName = new ObjectName("java.lang:type=OperatingSystem");
+		} catch(Exception e) {
+			this.osName = null;
+		}
+	}
+
+	/**
+	 * 한번의 수집이 끝날 때마다 호출된다.
+	 */
+	public void onTick(long latencyNanos) {
+		ewmaNanos = (ewmaNanos < 0) ? latencyNanos : (EWMA_WEIGHT * latencyNanos + (1D - EWMA_WEIGHT) * ewmaNanos);
+		pollCpuLoad();
+		boolean cpuOver = cpuLimit > 0 && cpuLoad >= cpuLimit;
+		boolean pressure = ewmaNanos > getBudgetNanos(level) || cpuOver;
+		boolean calm = level > 0 && ewmaNanos < getBudgetNanos(level-1) / 2D && (cpuLimit <= 0 || cpuLoad < cpuLimit * 0.8D);
+		if(pressure) {
+			calmTicks = 0;
+			if(++pressureTicks >= ESCALATE_TICKS && level < INTERVAL_FACTORS.length-1) {
+				apply(level+1, cpuOver ? "target cpu over " + Math.round(cpuLimit*100) + "%" : "latency over " + budgetPercent + "% of interval");
+			}
+		} else if(calm) {
+			pressureTicks = 0;
+			if(++calmTicks >= RELAX_TICKS) {
+				apply(level-1, "pressure dropped");
+			}
+		} else {
+			pressureTicks = 0;
+			calmTicks = 0;
+		}
+	}
+
+	private double getBudgetNanos(int level) {
+		return baseIntervalMS * INTERVAL_FACTORS[level] * 1000000D * budgetPercent / 100D;
+	}
+
+	private void pollCpuLoad() {
+		if(cpuLimit <= 0 || osName == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if(now - lastCpuPoll < CPU_POLL_MS) {
+			return;
+		}
+		lastCpuPoll = now;
+		try {
+			Object value = JMXUtil.getAttributeValue(mbeanConnection, osName, "ProcessCpuLoad");
+			cpuLoad = (value instanceof Number) ? ((Number)value).doubleValue() : -1D;
+		} catch(Exception e) {
+			Logger.logln(Level.DEBUG, "Failed to get the process cpu load. The cpu limit is ignored : " + e.getMessage());
+			osName = null;
+			cpuLoad = -1D;
+		}
+	}
+
+	private void apply(int newLevel, String reason) {
+		level = newLevel;
+		pressureTicks = 0;
+		calmTicks = 0;
+		long intervalMS = baseIntervalMS * INTERVAL_FACTORS[level];
+		int depth = baseDepth;
+		if(DEPTH_LIMITS[level] > 0 && (depth < 1 || depth > DEPTH_LIMITS[level])) {
+			depth = DEPTH_LIMITS[level];
+		}
+		int coverage;
+		try {
+			coverage = recorder.applySamplingLevel(intervalMS, depth, COVERAGES[level]);
+		} catch(Exception e) {
+			Logger.logln(Level.ERROR, "Failed to adjust the sampling : " + e.getMessage());
+			return;
+		}
+		RecordAdjustment adjustment = new RecordAdjustment(System.currentTimeMillis(), level, intervalMS, depth, coverage, ewmaNanos / 1000000D, cpuLoad, reason);
+		synchronized(adjustments) {
+			adjustments.add(adjustment);
+		}
+		Logger.logln(Level.DEBUG, "Adaptive sampling level " + level + " (" + reason + ") : interval=" + intervalMS + "ms, depth=" + (depth < 1 ? "unlimited" : depth) + ", coverage=1/" + coverage);
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	public List<RecordAdjustment> getAdjustments() {
+		synchronized(adjustments) {
+			return new ArrayList<RecordAdjustment>(adjustments);
+		}
+	}
+
+}
@@ -1,33 +1,52 @@
 package dal.tool.trace.jmxer.cli.helper;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import dal.tool.cli.Logger;
 import dal.tool.cli.Logger.Level;
 import dal.tool.trace.jmxer.cli.JmxSettings.RecordViewMode;
 import dal.tool.trace.jmxer.cli.command.JmxThreadCommand;
+import dal.tool.trace.jmxer.cli.data.RecordAdjustment;
+import dal.tool.trace.jmxer.cli.data.RecordResourceSeries;
 import dal.tool.trace.jmxer.cli.data.RecordResult;
+import dal.tool.trace.jmxer.cli.data.RecordSampleList;
+import dal.tool.trace.jmxer.cli.data.RecordSampleStore;
 import dal.tool.trace.jmxer.cli.data.RecordSearch;
 import dal.tool.trace.jmxer.cli.data.RecordStackFrame;
+import dal.tool.trace.jmxer.cli.data.RecordStackIndex;
+import dal.tool.trace.jmxer.cli.data.RecordStackTable;
 import dal.tool.trace.jmxer.cli.data.RecordThreadInfo;
 import dal.tool.trace.jmxer.cli.data.RecordThreadSampleState;
+import dal.tool.trace.jmxer.cli.data.RecordThreadChurn;
+import dal.tool.trace.jmxer.cli.data.RecordThreadSamples;
+import dal.tool.trace.jmxer.cli.data.RecordTickStats;
 import dal.tool.trace.jmxer.cli.data.ResourceUsage;
 import dal.tool.trace.jmxer.cli.data.Tree;
 import dal.tool.trace.jmxer.cli.data.TreeNode;
 import dal.tool.util.DateUtil;
+import dal.tool.util.FileUtil;
 import dal.tool.util.NumberUtil;
 import dal.tool.util.StringUtil;
+import dal.tool.util.WildcardMatcher;
 
 public class RecordResultViewer {
 
@@ -35,35 +54,259 @@ public class RecordResultViewer {
 	private static final class ThreadViewSegment {
 		final Tree<RecordStackFrame> tree;
 		/** NO_REQUEST_WAIT일 때만 stacktrace time 계산에 사용; FULL이면 비어 있음 */
-		final List<RecordThreadInfo> viewSamples;
+		final RecordSampleList viewSamples;
 
-		ThreadViewSegment(Tree<RecordStackFrame> tree, List<RecordThreadInfo> viewSamples) {
+		ThreadViewSegment(Tree<RecordStackFrame> tree, RecordSampleList viewSamples) {
 			this.tree = tree;
 			this.viewSamples = viewSamples;
 		}
 	}
 
+	/** 같은 스택(stack id)을 가진 샘플들의 집계. 스택 프레임은 샘플마다가 아니라 스택당 한번만 순회한다. */
+	private static final class StackHit {
+		final int stackId;
+		final long threadId;
+		int count;
+		long realTime;
+		long sampleTime;
+		long cpuTime;
+		long allocBytes;
+
+		StackHit(int stackId, long threadId) {
+			this.stackId = stackId;
+			this.threadId = threadId;
+		}
+	}
+
+	/** METHOD 뷰의 스레드 범위별 부분 집계. 병합 후 첫 등장 순서를 유지하도록 LinkedHashMap을 사용한다. */
+	private static final class MethodPartial {
+		final Map<String,Map<Integer,RecordStackFrame>> map = new LinkedHashMap<String,Map<Integer,RecordStackFrame>>();
+		int totalCount;
+		long totalRecordTime;
+		long totalCpuTime;
+		long totalAllocBytes;
+	}
+
+	/** 병합 THREAD 뷰의 스레드 범위별 스택 집계 */
+	private static final class StackHitPartial {
+		final List<List<StackHit>> stackHitsList = new ArrayList<List<StackHit>>();
+		int totalCount;
+		long totalRecordTime;
+		long totalCpuTime;
+		long totalAllocBytes;
+	}
+
+	/** 연속된 항목 범위의 부분 집계와, 앞 범위(left)에 뒤 범위(right)를 더하는 병합 */
+	private interface PartialAggregator<E,T> {
+		T aggregate(List<E> items);
+		T merge(T left, T right);
+	}
+
+	/** 항목 목록을 연속된 범위로 나누어 집계하고 범위 순서대로 병합하는 fork-join 작업 */
+	private static final class AggregateTask<E,T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = -3168466071207545382L;
+		final List<E> items;
+		final int from;
+		final int to;
+		final int leafSize;
+		final PartialAggregator<E,T> aggregator;
+
+		AggregateTask(List<E> items, int from, int to, int leafSize, PartialAggregator<E,T> aggregator) {
+			this.items = items;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+			this.aggregator = aggregator;
+		}
+
+		@Override
+		protected T compute() {
+			if(to - from <= leafSize) {
+				return aggregator.aggregate(items.subList(from, to));
+			}
+			int mid = (from + to) >>> 1;
+			AggregateTask<E,T> right = new AggregateTask<E,T>(items, mid, to, leafSize, aggregator);
+			right.fork();
+			T left = new AggregateTask<E,T>(items, from, mid, leafSize, aggregator).compute();
+			return aggregator.merge(left, right.join());
+		}
+	}
+
+	/** STATE 뷰에서 한 Lock의 경합 집계 */
+	private static final class LockContention {
+		final String lockName;
+		int blockedCount;
+		int waitingCount;
+		long blockedTime;
+		final TreeSet<Long> waiters = new TreeSet<Long>();
+		final Map<String,Integer> owners = new HashMap<String,Integer>();
+
+		LockContention(String lockName) {
+			this.lockName = lockName;
+		}
+	}
+
+	/** CHURN 뷰에서 이름 패턴(숫자를 '#'으로 바꾼 스레드명)별 생성/종료 집계 */
+	private static final class ChurnGroup {
+		final String pattern;
+		int bornCount;
+		int diedCount;
+		int aliveCount;
+		int lifetimeCount;
+		long lifetimeSum;
+		long cpuTime = -1L;
+		long allocBytes = -1L;
+
+		ChurnGroup(String pattern) {
+			this.pattern = pattern;
+		}
+	}
+
+	/** LOCK 뷰에서 한 Lock의 대기 집계 */
+	private static final class LockWaitStat {
+		final String lockName;
+		/** 스레드별 BlockedTime/BlockedCount 누적값의 증가량 합 */
+		long blockedTime;
+		long blockedCount;
+		/** BLOCKED 샘플로 추정한 시간 */
+		long sampledTime;
+		int blockedSamples;
+		int waitingSamples;
+		final TreeSet<Long> waiters = new TreeSet<Long>();
+		final Map<Long,Integer> owners = new HashMap<Long,Integer>();
+		/** 경합 시점의 소유 스레드 스택("소유 스레드 ID:stack id")별 샘플 수 */
+		final Map<String,Integer> ownerStacks = new HashMap<String,Integer>();
+
+		LockWaitStat(String lockName) {
+			this.lockName = lockName;
+		}
+	}
+
+	/** LOCK 뷰에서 경합 시점(time)의 소유 스레드 스택을 찾아 stat에 더할 요청 */
+	private static final class OwnerStackLookup {
+		final LockWaitStat stat;
+		final long time;
+
+		OwnerStackLookup(LockWaitStat stat, long time) {
+			this.stat = stat;
+			this.time = time;
+		}
+	}
+
+	/** LOCK 뷰 wait-for 그래프의 간선(대기 스레드 -> 소유 스레드) */
+	private static final class WaitForEdge {
+		final long waiter;
+		final long owner;
+		final String lockName;
+		int count;
+		long firstTime;
+		long lastTime;
+
+		WaitForEdge(long waiter, long owner, String lockName, long time) {
+			this.waiter = waiter;
+			this.owner = owner;
+			this.lockName = lockName;
+			this.firstTime = time;
+		}
+	}
+
+	/** LOCK 뷰에서 같은 tick에 발견된 wait-for 순환(deadlock) */
+	private static final class LockCycle {
+		final long[] threadIds;
+		final String[] lockNames;
+		int tickCount;
+		long firstTime;
+		long lastTime;
+
+		LockCycle(long[] threadIds, String[] lockNames, long time) {
+			this.threadIds = threadIds;
+			this.lockNames = lockNames;
+			this.firstTime = time;
+		}
+	}
+
+	/** ALLOC 뷰에서 한 메소드의 추정 할당 바이트 집계 */
+	private static final class AllocHotSpot {
+		final String method;
+		long selfBytes;
+		long totalBytes;
+		int selfCount;
+		int totalCount;
+		final TreeSet<Long> threads = new TreeSet<Long>();
+
+		AllocHotSpot(String method) {
+			this.method = method;
+		}
+	}
+
+	/** STATE 뷰 타임라인의 컬럼 수 */
+	private static final int STATE_TIMELINE_WIDTH = 60;
+	/** STATE 뷰 타임라인에서 상태별 표시 문자. Thread.State 순서(NEW, RUNNABLE, BLOCKED, WAITING, TIMED_WAITING, TERMINATED)와 같다. */
+	private static final char[] STATE_CHARS = { 'N', 'R', 'B', 'W', 'T', 'X' };
+	/** 한 컬럼에서 샘플 수가 같을 때 우선하는 상태 순서 */
+	private static final int[] STATE_PRIORITY = { 0, 3, 5, 2, 1, 0 };
+	/** STATE 뷰에서 출력하는 최대 Lock 수 */
+	private static final int STATE_CONTENTION_TOP = 20;
+
+	/** RESOURCE 뷰 sparkline의 최대 컬럼 수 */
+	private static final int SPARKLINE_WIDTH = 40;
+	/** sparkline 문자. 값이 0이면 첫번째, 최대값이면 마지막 문자로 표시한다. */
+	private static final String SPARKLINE_CHARS = "_.-:=+*#%@";
+	/** RESOURCE 뷰의 구간별 순위에서 기본으로 보여주는 스레드 수 */
+	public static final int DEFAULT_RESOURCE_TOP = 3;
+
+	/** METHOD/THREAD 뷰의 정렬 기준 */
+	private static final int SORT_BY_COUNT = 0;
+	private static final int SORT_BY_CPU = 1;
+	private static final int SORT_BY_ALLOC = 2;
+
+	/** LOCK 뷰에서 기본으로 보여주는 Lock/간선 수 */
+	private static final int DEFAULT_LOCK_TOP = 10;
+	/** LOCK 뷰에서 소유 스레드 스택을 보여주는 Lock 수와 최대 프레임 수 */
+	private static final int LOCK_OWNER_STACK_TOP = 5;
+	private static final int LOCK_OWNER_STACK_DEPTH = 12;
+
+	/** ALLOC 뷰에서 기본으로 보여주는 메소드 수 */
+	private static final int DEFAULT_ALLOC_TOP = 30;
+
+	/** CHURN 뷰에서 출력하는 최대 이름 패턴/스레드 수 */
+	private static final int CHURN_LIST_TOP = 20;
+
+	/** METHOD/THREAD(--merge) 뷰를 병렬로 집계할 최소 스레드 수 */
+	private static final int PARALLEL_MIN_THREADS = 64;
+	/** 병렬 집계에서 작업 하나가 맡는 최소 스레드 수 */
+	private static final int PARALLEL_MIN_TASK_THREADS = 16;
+
 	/** THREAD 뷰 stacktrace time 구간 표기(절대시간, 24시간). */
 	private static final String STACK_TRACE_ABS_TIME_FORMAT = "yyyy.MM.dd/HH:mm:ss.SSS";
 
 	RecordResult result;
+	RecordSampleStore sampleStore;
+	RecordStackTable stackTable;
 	RecordViewMode recordViewMode;
 	boolean showEmptyThread;
 	HashMap<Long,String> threadList = new HashMap<Long,String>();
+	int sortBy = SORT_BY_COUNT;
+	boolean usageCpu;
+	boolean usageAlloc;
+	int[] callSiteIds;
 	
 	
 	public RecordResultViewer(RecordResult result, RecordViewMode mode, boolean showEmptyThread) {
 		this.result = result;
+		this.sampleStore = result.sampleStore;
+		this.stackTable = result.stackTable;
 		this.recordViewMode = (mode == null) ? RecordViewMode.NO_REQUEST_WAIT : mode;
 		this.showEmptyThread = showEmptyThread;
+		this.usageCpu = result.resourceSeries != null && result.resourceSeries.hasCpuTime();
+		this.usageAlloc = result.resourceSeries != null && result.resourceSeries.hasAllocBytes();
 		extractThreadList();
 	}
 
 	private void extractThreadList() {
-		for(Long id : new TreeSet<Long>(result.recordData.keySet())) {
-			List<RecordThreadInfo> threadInfoList = result.recordData.get(id);
-			if(threadInfoList != null && threadInfoList.size() > 0) {
-				threadList.put(id, threadInfoList.get(0).getThreadName());
+		for(Long id : new TreeSet<Long>(sampleStore.getThreadIds())) {
+			if(sampleStore.getSampleCount(id) > 0) {
+				threadList.put(id, sampleStore.getThreadName(id));
 			}
 		}
 	}
@@ -79,34 +322,69 @@ public class RecordResultViewer {
 		return true;
 	}
 
-	private boolean includeSample(RecordThreadInfo recThrInfo) {
+	private boolean includeSample(RecordThreadSampleState state) {
 		if(recordViewMode == RecordViewMode.FULL) {
 			return true;
 		}
-		RecordThreadSampleState state = recThrInfo.getSampleState();
 		if(state == null) {
 			return true;
 		}
 		return state != RecordThreadSampleState.WAITING_REQUEST;
 	}
 
-	private boolean isWaitingRequestSample(RecordThreadInfo recThrInfo) {
-		return recThrInfo.getSampleState() == RecordThreadSampleState.WAITING_REQUEST;
+	private boolean includeSample(RecordSampleList samples, int i) {
+		return includeSample(samples.getSampleState(i));
+	}
+
+	private boolean isWaitingRequestSample(RecordSampleList samples, int i) {
+		return samples.getSampleState(i) == RecordThreadSampleState.WAITING_REQUEST;
 	}
 
 	/**
 	 * {@link #makeThreadResultTree}와 동일: 뷰에 포함되는 샘플(모드 필터 + 시간 구간).
 	 */
-	private boolean isSampleInThreadView(RecordThreadInfo recThrInfo, long from, long to) {
-		if(!includeSample(recThrInfo)) {
+	private boolean isSampleInThreadView(RecordSampleList samples, int i, long from, long to) {
+		if(!includeSample(samples, i)) {
 			return false;
 		}
-		if((from > -1L && from > recThrInfo.recordStartTime) || (to > -1L && to < recThrInfo.recordEndTime)) {
+		if((from > -1L && from > samples.getStartTime(i)) || (to > -1L && to < samples.getEndTime(i))) {
 			return false;
 		}
 		return true;
 	}
 
+	private RecordSampleList getSamples(Long tid) {
+		RecordThreadSamples samples = sampleStore.getThreadSamples(tid);
+		return (samples == null) ? null : RecordSampleList.of(samples);
+	}
+
+	/**
+	 * from~to 구간에 포함될 샘플이 없는 스레드는 샘플을 읽지 않고 빈 목록을 리턴한다.<br/>
+	 * 구간의 시작과 끝이 모두 지정되면 시작 시간으로 이진 탐색하여, 구간의 샘플과 마지막 샘플의 샘플 시간을 정하는 다음 샘플({@link #getSampleTime})까지만 담는다.
+	 * dump 파일 등의 저장소에서 읽는 스레드는 구간에 걸치는 chunk만 디코딩한다.
+	 */
+	private RecordSampleList getSamples(Long tid, long from, long to) {
+		if(!sampleStore.containsThread(tid)) {
+			return null;
+		}
+		if(!sampleStore.mayOverlap(tid, from, to)) {
+			return new RecordSampleList(1);
+		}
+		if(from <= -1L || to <= -1L) {
+			return getSamples(tid);
+		}
+		RecordThreadSamples samples = sampleStore.getThreadSamples(tid, from, to);
+		if(samples == null) {
+			return null;
+		}
+		int fromIdx = samples.indexOfStartTime(from);
+		int toIdx = samples.indexAfterStartTime(to);
+		while(toIdx < samples.size() && !includeSample(samples.getSampleState(toIdx))) {
+			toIdx++;
+		}
+		return RecordSampleList.of(samples, fromIdx, Math.min(toIdx + 1, samples.size()));
+	}
+
 	private boolean isThreadViewMergeOption(String token) {
 		return "--merge".equalsIgnoreCase(token) || "-m".equalsIgnoreCase(token);
 	}
@@ -119,19 +397,19 @@ public class RecordResultViewer {
 	 * NO_REQUEST_WAIT에서 요청 대기 샘플 사이를 기준으로, THREAD 뷰에 넣을 연속 샘플 구간을 나눈다.
 	 * (시간 구간 필터는 {@link #isSampleInThreadView}에 포함.)
 	 */
-	private List<List<RecordThreadInfo>> splitIntoNonWaitViewSegments(List<RecordThreadInfo> fullList, long from, long to) {
-		List<List<RecordThreadInfo>> segments = new ArrayList<List<RecordThreadInfo>>();
+	private List<RecordSampleList> splitIntoNonWaitViewSegments(RecordSampleList fullList, long from, long to) {
+		List<RecordSampleList> segments = new ArrayList<RecordSampleList>();
 		if(fullList == null || fullList.isEmpty()) {
 			return segments;
 		}
-		List<RecordThreadInfo> current = null;
-		for(RecordThreadInfo r : fullList) {
-			if(isSampleInThreadView(r, from, to)) {
+		RecordSampleList current = null;
+		for(int i = 0; i < fullList.size(); i++) {
+			if(isSampleInThreadView(fullList, i, from, to)) {
 				if(current == null) {
-					current = new ArrayList<RecordThreadInfo>();
+					current = new RecordSampleList();
 				}
-				current.add(r);
-			} else if(isWaitingRequestSample(r)) {
+				current.add(fullList, i);
+			} else if(isWaitingRequestSample(fullList, i)) {
 				if(current != null) {
 					segments.add(current);
 					current = null;
@@ -157,15 +435,14 @@ public class RecordResultViewer {
 	 * Time_ms와 동일한 기준(샘플 가중 시간 합계)으로 구간 시각을 계산한다.
 	 * NOTE: recordStart~recordEnd 실제 구간과 다를 수 있으며, THREAD 뷰의 Time_ms와 일치시키기 위한 값이다.
 	 */
-	private String formatSegmentStackTraceTime(List<RecordThreadInfo> viewSamples) {
+	private String formatSegmentStackTraceTime(RecordSampleList viewSamples) {
 		if(viewSamples == null || viewSamples.isEmpty()) {
 			return "";
 		}
-		long segStartMs = viewSamples.get(0).recordStartTime;
+		long segStartMs = viewSamples.getStartTime(0);
 		long weightedDuration = 0L;
 		for(int i = 0; i < viewSamples.size(); i++) {
-			RecordThreadInfo recThrInfo = viewSamples.get(i);
-			long realTime = recThrInfo.recordEndTime - recThrInfo.recordStartTime;
+			long realTime = viewSamples.getEndTime(i) - viewSamples.getStartTime(i);
 			weightedDuration += getSampleTime(viewSamples, i, realTime);
 		}
 		if(weightedDuration <= 0L) {
@@ -175,33 +452,311 @@ public class RecordResultViewer {
 		return formatAbsoluteStackTraceTimeRange(segStartMs, segEndMs);
 	}
 
-	private List<RecordThreadInfo> filterSamples(List<RecordThreadInfo> recThrInfoList) {
-		List<RecordThreadInfo> filtered = new ArrayList<RecordThreadInfo>();
-		for(RecordThreadInfo recThrInfo : recThrInfoList) {
-			if(includeSample(recThrInfo)) {
-				filtered.add(recThrInfo);
+	/**
+	 * 스레드의 샘플 중 뷰 모드에 포함되는 샘플 수. 저장소의 요약 정보를 사용하므로 샘플을 디코딩하지 않는다.
+	 */
+	private int getIncludedSampleCount(long tid) {
+		if(!sampleStore.containsThread(tid)) {
+			return 0;
+		}
+		int count = sampleStore.getSampleCount(tid);
+		if(recordViewMode != RecordViewMode.FULL) {
+			count -= sampleStore.getWaitingRequestCount(tid);
+		}
+		return count;
+	}
+
+	private RecordSampleList filterSamples(Long tid) {
+		RecordThreadSamples samples = sampleStore.getThreadSamples(tid);
+		RecordSampleList filtered = new RecordSampleList();
+		for(int i = 0; i < samples.size(); i++) {
+			if(includeSample(samples.getSampleState(i))) {
+				filtered.add(samples, i);
 			}
 		}
 		return filtered;
 	}
 
-	private long getSampleTime(List<RecordThreadInfo> recThrInfoList, int idx, long realTime) {
+	/**
+	 * 뷰에 포함되는 샘플(모드 필터 + 시간 구간)을 stack id 별로 집계한다. 결과는 stack id가 처음 나온 순서를 따른다.
+	 */
+	private List<StackHit> aggregateByStack(RecordSampleList recThrInfoList, long from, long to) {
+		Map<Integer,StackHit> stackHitMap = new LinkedHashMap<Integer,StackHit>();
+		addStackHits(stackHitMap, recThrInfoList, 0, recThrInfoList.size(), from, to);
+		return new ArrayList<StackHit>(stackHitMap.values());
+	}
+
+	/**
+	 * fromIdx~toIdx 위치의 샘플 중 뷰에 포함되는 샘플을 stackHitMap에 더한다.
+	 */
+	private void addStackHits(Map<Integer,StackHit> stackHitMap, RecordSampleList recThrInfoList, int fromIdx, int toIdx, long from, long to) {
+		long seriesTid = -1L;
+		int seriesIdx = -1;
+		for(int idx = fromIdx; idx < toIdx; idx++) {
+			if(!isSampleInThreadView(recThrInfoList, idx, from, to)) {
+				continue;
+			}
+			long realTime = recThrInfoList.getEndTime(idx)-recThrInfoList.getStartTime(idx);
+			int stackId = recThrInfoList.getStackId(idx);
+			StackHit stackHit = stackHitMap.get(stackId);
+			if(stackHit == null) {
+				stackHit = new StackHit(stackId, recThrInfoList.getThreadId(idx));
+				stackHitMap.put(stackId, stackHit);
+			}
+			stackHit.count++;
+			stackHit.realTime += realTime;
+			stackHit.sampleTime += getSampleTime(recThrInfoList, idx, realTime);
+			if(usageCpu || usageAlloc) {
+				if(seriesTid != recThrInfoList.getThreadId(idx)) {
+					seriesTid = recThrInfoList.getThreadId(idx);
+					seriesIdx = result.resourceSeries.indexOf(seriesTid);
+				}
+				if(seriesIdx > -1) {
+					addSampleUsage(stackHit, recThrInfoList, idx, seriesIdx);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 스레드의 스택별 집계. '--index'로 레코딩한 결과이면 색인을 사용한다.
+	 */
+	private List<StackHit> getStackHits(Long tid, long from, long to) {
+		List<StackHit> stackHits = aggregateByStackIndex(tid, from, to);
+		return (stackHits != null) ? stackHits : aggregateByStack(getSamples(tid, from, to), from, to);
+	}
+
+	/**
+	 * 레코딩 중에 만든 색인({@link RecordStackIndex})으로 {@link #aggregateByStack}과 같은 결과를 만든다.<br/>
+	 * 전체 구간이면 스레드의 전체 집계를, 아니면 구간에 완전히 포함되는 bucket의 집계를 bucket 순서대로 더하고,
+	 * 구간의 경계에 걸친 bucket만 샘플을 읽어서 집계한다. 미정 샘플의 샘플 시간은 {@link #getSampleTime}과 같이 주기로 계산한다.
+	 * 색인에는 샘플별 사용량이 없으므로, 사용량(CPU/할당)을 배분해야 하면 구간의 샘플을 읽어서 집계하도록 null을 리턴한다.
+	 * @return 색인이 없거나, 사용량(CPU/할당)을 배분해야 하거나, 색인과 샘플 수가 다르면 null
+	 */
+	private List<StackHit> aggregateByStackIndex(Long tid, long from, long to) {
+		RecordStackIndex stackIndex = result.stackIndex;
+		if(stackIndex == null || usageCpu || usageAlloc || stackIndex.getSampleCount(tid) != sampleStore.getSampleCount(tid)) {
+			return null;
+		}
+		boolean noWaitRequest = recordViewMode != RecordViewMode.FULL;
+		Map<Integer,StackHit> stackHitMap = new LinkedHashMap<Integer,StackHit>();
+		List<RecordStackIndex.Bucket> buckets = stackIndex.getBuckets(tid);
+		if(from <= -1L && to <= -1L) {
+			RecordStackIndex.Bucket total = stackIndex.getTotal(tid);
+			if(total != null) {
+				addIndexedStackHits(stackHitMap, tid, total, noWaitRequest);
+			}
+			for(RecordStackIndex.Bucket bucket : buckets) {
+				addUnsettledStackHits(stackHitMap, bucket, noWaitRequest);
+			}
+			return new ArrayList<StackHit>(stackHitMap.values());
+		}
+		RecordSampleList samples = null;
+		for(RecordStackIndex.Bucket bucket : buckets) {
+			if((to > -1L && bucket.getMinStartTime() > to) || (from > -1L && bucket.getMaxStartTime() < from)) {
+				continue;
+			}
+			if((from <= -1L || bucket.getMinStartTime() >= from) && (to <= -1L || bucket.getMaxEndTime() <= to)) {
+				addIndexedStackHits(stackHitMap, tid, bucket, noWaitRequest);
+				addUnsettledStackHits(stackHitMap, bucket, noWaitRequest);
+			} else {
+				if(samples == null) {
+					samples = getSamples(tid);
+				}
+				addStackHits(stackHitMap, samples, bucket.getFirstSample(), bucket.getEndSample(), from, to);
+			}
+		}
+		return new ArrayList<StackHit>(stackHitMap.values());
+	}
+
+	private void addIndexedStackHits(Map<Integer,StackHit> stackHitMap, Long tid, RecordStackIndex.Bucket bucket, boolean noWaitRequest) {
+		for(int pos = 0; pos < bucket.getEntryCount(); pos++) {
+			if(noWaitRequest && bucket.isWaitingRequest(pos)) {
+				continue;
+			}
+			int stackId = bucket.getStackId(pos);
+			StackHit stackHit = stackHitMap.get(stackId);
+			if(stackHit == null) {
+				stackHit = new StackHit(stackId, tid);
+				stackHitMap.put(stackId, stackHit);
+			}
+			stackHit.count += bucket.getCount(pos);
+			stackHit.realTime += bucket.getRealTime(pos);
+			stackHit.sampleTime += bucket.getSampleTime(pos, noWaitRequest);
+		}
+	}
+
+	private void addUnsettledStackHits(Map<Integer,StackHit> stackHitMap, RecordStackIndex.Bucket bucket, boolean noWaitRequest) {
+		for(int i = 0; i < bucket.getUnsettledCount(noWaitRequest); i++) {
+			StackHit stackHit = stackHitMap.get(bucket.getStackId(bucket.getUnsettledEntry(noWaitRequest, i)));
+			stackHit.sampleTime += getIntervalSampleTime(bucket.getUnsettledStartTime(noWaitRequest, i), bucket.getUnsettledRealTime(noWaitRequest, i));
+		}
+	}
+
+	/**
+	 * 샘플의 추정 CPU 시간(ns)과 할당 바이트를 stackHit에 더한다. ('--resource'로 수집한 시계열)<br/>
+	 * 샘플 직후에 수집한 누적값과 이전 샘플 직후의 누적값(첫번째 샘플은 레코딩 시작시의 값)의 차이를 그 샘플의 스택에 배분한다.
+	 * 두 시점은 샘플과 이전 샘플의 종료 시간으로 시계열을 이진 탐색하여 찾으므로, 스레드 전체 샘플을 읽지 않는다.
+	 * @param t 시계열에서 스레드의 위치
+	 */
+	private void addSampleUsage(StackHit stackHit, RecordSampleList samples, int idx, int t) {
+		RecordResourceSeries series = result.resourceSeries;
+		int last = series.size() - 1;
+		int j = Math.min(series.indexOfTime(samples.getEndTime(idx)), last);
+		long prevEndTime = samples.getPreviousEndTime(idx);
+		int prevJ = (prevEndTime < 0L) ? -1 : Math.min(series.indexOfTime(prevEndTime), last);
+		stackHit.cpuTime += getUsageDelta(samples.getThreadId(idx), t, true, prevJ, j);
+		stackHit.allocBytes += getUsageDelta(samples.getThreadId(idx), t, false, prevJ, j);
+	}
+
+	/**
+	 * j번째 시점의 누적값과 prevJ번째 이전의 마지막으로 조회된 누적값(없으면 레코딩 시작시의 값)의 차이
+	 * @return 값이 없거나 누적값이 줄었으면(스레드 종료/변경) 0
+	 */
+	private long getUsageDelta(long tid, int t, boolean cpu, int prevJ, int j) {
+		RecordResourceSeries series = result.resourceSeries;
+		long value = cpu ? series.getCpuTime(t, j) : series.getAllocBytes(t, j);
+		if(value < 0L) {
+			return 0L;
+		}
+		long prevValue = -1L;
+		for(int i = prevJ; i > -1 && prevValue < 0L; i--) {
+			prevValue = cpu ? series.getCpuTime(t, i) : series.getAllocBytes(t, i);
+		}
+		if(prevValue < 0L) {
+			ResourceUsage startUsage = (result.resourceData == null) ? null : result.resourceData.get(tid);
+			if(startUsage != null) {
+				prevValue = cpu ? startUsage.startCpu : startUsage.startMem;
+			}
+		}
+		return (prevValue < 0L || value < prevValue) ? 0L : value - prevValue;
+	}
+
+	/**
+	 * '--by' 옵션 값을 정렬 기준으로 바꾼다.
+	 * @return 잘못된 값이거나 사용량을 집계할 수 없으면 -1
+	 */
+	private int parseSortBy(String value) {
+		if("count".equalsIgnoreCase(value)) {
+			return SORT_BY_COUNT;
+		}
+		if(!"cpu".equalsIgnoreCase(value) && !"alloc".equalsIgnoreCase(value)) {
+			Logger.logln("Invalid value for the '--by' option : " + value + ". Available values are 'count', 'cpu' and 'alloc'.");
+			return -1;
+		}
+		if(result.resourceSeries == null) {
+			Logger.logln("The record result has no resource series. Record with the '--resource' option to sort by cpu or alloc.");
+			return -1;
+		}
+		boolean cpu = "cpu".equalsIgnoreCase(value);
+		if(cpu ? !usageCpu : !usageAlloc) {
+			Logger.logln("The resource series has no " + (cpu ? "cpu time" : "allocated bytes") + ". ThreadCpuTime or ThreadAllocatedMemory may be disabled.");
+			return -1;
+		}
+		return cpu ? SORT_BY_CPU : SORT_BY_ALLOC;
+	}
+
+	private boolean isSortByOption(String token) {
+		return "--by".equalsIgnoreCase(token) || "-b".equalsIgnoreCase(token);
+	}
+
+	private long getSortValue(RecordStackFrame stackFrame) {
+		if(sortBy == SORT_BY_CPU) {
+			return stackFrame.cpuTime;
+		} else if(sortBy == SORT_BY_ALLOC) {
+			return stackFrame.allocBytes;
+		}
+		return stackFrame.hitCount;
+	}
+
+	private String getSortByString() {
+		if(sortBy == SORT_BY_CPU) {
+			return " (sorted by estimated cpu time)";
+		} else if(sortBy == SORT_BY_ALLOC) {
+			return " (sorted by estimated allocated bytes)";
+		}
+		return "";
+	}
+
+	private String getUsageHeaderString() {
+		return RecordStackFrame.toUsageHeaderString(usageCpu, usageAlloc);
+	}
+
+	private String getUsageString(RecordStackFrame stackFrame) {
+		return stackFrame.toUsageString(usageCpu, usageAlloc);
+	}
+
+	/**
+	 * 프레임 사전(frame id별 프레임)에서 NameExpression과 일치하는 프레임을 한번에 찾는다.
+	 * @return frame id 위치에 일치하는 프레임 문자열을 저장한 배열. 일치하지 않으면 null이다.
+	 */
+	private String[] matchFrameDictionary(WildcardMatcher matcher) {
+		String[] frameMatches = new String[stackTable.getFrameCount()];
+		for(int frameId = 0; frameId < frameMatches.length; frameId++) {
+			frameMatches[frameId] = matchFrame(stackTable.getFrame(frameId), matcher);
+		}
+		return frameMatches;
+	}
+
+	private static String matchFrame(StackTraceElement el, WildcardMatcher matcher) {
+		return matcher.matches(el.getClassName()+"."+el.getMethodName()) ? el.toString() : null;
+	}
+
+	/**
+	 * 스택에서 NameExpression과 일치하는 프레임 문자열 목록을 찾는다.
+	 * 사전을 만든 이후에 추가된 프레임은 직접 비교한다.
+	 */
+	private String[] findMatchFrameStrings(int stackId, String[] frameMatches, WildcardMatcher matcher) {
+		List<String> foundStrings = new ArrayList<String>();
+		for(int frameId : stackTable.getStackFrameIds(stackId)) {
+			String foundString = (frameId < frameMatches.length) ? frameMatches[frameId] : matchFrame(stackTable.getFrame(frameId), matcher);
+			if(foundString != null) {
+				foundStrings.add(foundString);
+			}
+		}
+		return foundStrings.toArray(new String[foundStrings.size()]);
+	}
+
+	private long getSampleTime(RecordSampleList recThrInfoList, int idx, long realTime) {
 		for(int i = idx + 1; i < recThrInfoList.size(); i++) {
-			RecordThreadInfo next = recThrInfoList.get(i);
-			if(includeSample(next)) {
-				long sampleTime = next.recordStartTime - recThrInfoList.get(idx).recordStartTime;
+			if(includeSample(recThrInfoList, i)) {
+				long sampleTime = recThrInfoList.getStartTime(i) - recThrInfoList.getStartTime(idx);
 				if(sampleTime > 0L) {
 					return sampleTime;
 				}
 				break;
 			}
 		}
-		if(result.recordIntervalMS > 0L) {
-			return result.recordIntervalMS;
+		return getIntervalSampleTime(recThrInfoList.getStartTime(idx), realTime);
+	}
+
+	/**
+	 * 다음 샘플로 샘플 시간을 정할 수 없을 때의 샘플 시간. 그 시점의 주기이며, 주기를 알 수 없으면 수집 시간이다.
+	 */
+	private long getIntervalSampleTime(long startTime, long realTime) {
+		long intervalMS = getIntervalAt(startTime);
+		if(intervalMS > 0L) {
+			return intervalMS;
 		}
 		return realTime;
 	}
 
+	/**
+	 * time 시점에 한 스레드가 샘플링되는 주기. 적응형 샘플링으로 변경된 주기와 스레드 범위를 반영한다.
+	 */
+	private long getIntervalAt(long time) {
+		long intervalMS = result.recordIntervalMS;
+		if(result.adjustments != null) {
+			for(RecordAdjustment adjustment : result.adjustments) {
+				if(adjustment.time > time) {
+					break;
+				}
+				intervalMS = adjustment.intervalMS * Math.max(adjustment.coverage, 1);
+			}
+		}
+		return intervalMS;
+	}
+
 	private Long[] getThreadIdsWithPattern(String pattern) {
 		try {
 			Long[] targetThreads = JmxThreadCommand.getTargetThreadIds(threadList, pattern);
@@ -215,8 +770,71 @@ public class RecordResultViewer {
 		}
 	}
 	
+	/**
+	 * RangeExpression(AbsoluteTimeRange, RelativeTimeRange, SampleOrderRange)을 from~to 시간 구간으로 변환한다.
+	 * SampleOrderRange는 첫번째 대상 스레드의 샘플 순서를 기준으로 한다.
+	 * @return {from, to}. 잘못된 표현식이거나 범위를 벗어나면 메시지를 출력하고 null을 리턴한다.
+	 */
+	private long[] parseRangeExpression(String expStr, Long[] targetThreads) {
+		String[] range = expStr.split("~");
+		if(range.length != 2) {
+			Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
+			return null;
+		}
+		String fromStr = range[0];
+		String toStr = range[1];
+		long from, to;
+		if(fromStr.endsWith("ms") && NumberUtil.isNumber(fromStr.substring(0, fromStr.length()-2)) && toStr.endsWith("ms") && NumberUtil.isNumber(toStr.substring(0, toStr.length()-2))) {
+			// 1000ms~5000ms
+			int from_ms = Integer.parseInt(fromStr.substring(0, fromStr.length()-2));
+			int to_ms = Integer.parseInt(toStr.substring(0, toStr.length()-2));
+			long startTime = result.startTime;
+			long endTime = result.endTime;
+			from = startTime + from_ms;
+			to = startTime + to_ms;
+			if(from < startTime || from > endTime || to < startTime || to > endTime) {
+				Logger.logln("The relative time(" + expStr + ") is out of range. It must be 0 to " + (endTime-startTime) + "ms");
+				return null;
+			}				
+		} else if(NumberUtil.isNumber(fromStr) && NumberUtil.isNumber(toStr)) {
+			// 10~20
+			int fromIdx = Integer.parseInt(fromStr);
+			int toIdx = Integer.parseInt(toStr);
+			if(fromIdx < 1 || fromIdx > result.sampleCount || toIdx < 1 || toIdx > result.sampleCount) {
+				Logger.logln("The order(" + expStr + ") is out of range. It must be 1 to " + result.sampleCount);
+				return null;
+			}
+			from = sampleStore.getThreadSamples(targetThreads[0]).getStartTime(fromIdx);
+			to = sampleStore.getThreadSamples(targetThreads[0]).getEndTime(toIdx);
+		} else {
+			Date fromDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, fromStr);
+			Date toDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, toStr);
+			if(fromDt != null && toDt != null) {
+				// 2022.10.28/12:34:17~2022.10.28/12:34:21
+				String startTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.startTime));
+				String endTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.endTime));
+				long startTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, startTimeStr).getTime();
+				long endTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, endTimeStr).getTime() + 999;
+				from = fromDt.getTime();
+				to = toDt.getTime() + 999;
+				if(from < startTime || from > endTime || to < startTime || to > endTime) {
+					Logger.logln("The absolute time(" + expStr + ") is out of range. It must be " + startTimeStr + " to " + endTimeStr);
+					return null;
+				}
+			} else {
+				Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
+				return null;
+			}
+		}
+		return new long[] { from, to };
+	}
+
 	public void printResult(List<String> viewArgs) {
 		String type = StringUtil.stripQuote(viewArgs.get(0), new char[]{'"','\''}, true);
+		if(result.stateOnly && (type.equalsIgnoreCase("method") || type.equalsIgnoreCase("thread") || type.equalsIgnoreCase("stack") || type.equalsIgnoreCase("search") || type.equalsIgnoreCase("alloc"))) {
+			Logger.logln("The record result has no stacktrace. It was recorded by REC STATE. Use the 'INFO' or 'STATE' view.");
+			return;
+		}
 		if(type.equalsIgnoreCase("info")) {
 			if(!checkArgument(viewArgs, 1, 1)) {
 				Logger.logln("  Usage) REC[ORD] VIEW INFO");
@@ -224,77 +842,46 @@ public class RecordResultViewer {
 			}
 			Logger.logln(getInfoString());
 		} else if(type.equalsIgnoreCase("method")) {
-			if(!checkArgument(viewArgs, 2, 3)) {
-				Logger.logln("  Usage) REC[ORD] VIEW METHOD ThreadList [RangeExpression]");
+			if(!checkArgument(viewArgs, 2, 5)) {
+				Logger.logln("  Usage) REC[ORD] VIEW METHOD ThreadList [RangeExpression] [--by count|cpu|alloc]");
 				return;
 			}
 			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
 			if(targetThreads == null) return;		
+			String rangeExpression = null;
+			for(int i = 2; i < viewArgs.size(); i++) {
+				String optOrRange = StringUtil.stripQuote(viewArgs.get(i), new char[]{'"','\''}, true);
+				if(isSortByOption(optOrRange) && i+1 < viewArgs.size()) {
+					sortBy = parseSortBy(StringUtil.stripQuote(viewArgs.get(++i), new char[]{'"','\''}, true));
+					if(sortBy < 0) return;
+				} else if(rangeExpression == null && !isSortByOption(optOrRange)) {
+					rangeExpression = optOrRange;
+				} else {
+					Logger.logln("Invalid argument for METHOD view: " + optOrRange);
+					Logger.logln("  Usage) REC[ORD] VIEW METHOD ThreadList [RangeExpression] [--by count|cpu|alloc]");
+					return;
+				}
+			}
 			Map<String,Map<Integer,RecordStackFrame>> methodResultMap;
 			long from, to;
-			if(viewArgs.size() == 2) {
+			if(rangeExpression == null) {
 				// without range expression
 				// record view method 1,"pool-*"
 				from = -1L;
 				to = -1L;
 			} else {			
 				// with range expression
-				String expStr = StringUtil.stripQuote(viewArgs.get(2), new char[]{'"','\''}, true);
-				String[] range = expStr.split("~");
-				if(range.length != 2) {
-					Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
-					return;
-				}
-				String fromStr = range[0];
-				String toStr = range[1];
-				if(fromStr.endsWith("ms") && NumberUtil.isNumber(fromStr.substring(0, fromStr.length()-2)) && toStr.endsWith("ms") && NumberUtil.isNumber(toStr.substring(0, toStr.length()-2))) {
-					// record view method 1,"pool-*" 1000ms~5000ms
-					int from_ms = Integer.parseInt(fromStr.substring(0, fromStr.length()-2));
-					int to_ms = Integer.parseInt(toStr.substring(0, toStr.length()-2));
-					long startTime = result.startTime;
-					long endTime = result.endTime;
-					from = startTime + from_ms;
-					to = startTime + to_ms;
-					if(from < startTime || from > endTime || to < startTime || to > endTime) {
-						Logger.logln("The relative time(" + expStr + ") is out of range. It must be 0 to " + (endTime-startTime) + "ms");
-						return;
-					}				
-				} else if(NumberUtil.isNumber(fromStr) && NumberUtil.isNumber(toStr)) {
-					// record view method 1,"pool-*" 10~20
-					int fromIdx = Integer.parseInt(fromStr);
-					int toIdx = Integer.parseInt(toStr);
-					if(fromIdx < 1 || fromIdx > result.sampleCount || toIdx < 1 || toIdx > result.sampleCount) {
-						Logger.logln("The order(" + expStr + ") is out of range. It must be 1 to " + result.sampleCount);
-						return;
-					}
-					from = result.recordData.get(targetThreads[0]).get(fromIdx).recordStartTime;
-					to = result.recordData.get(targetThreads[0]).get(toIdx).recordEndTime;
-				} else {
-					Date fromDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, fromStr);
-					Date toDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, toStr);
-					if(fromDt != null && toDt != null) {
-						// record view method 1,"pool-*" 2022.10.28/12:34:17~2022.10.28/12:34:21
-						String startTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.startTime));
-						String endTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.endTime));
-						long startTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, startTimeStr).getTime();
-						long endTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, endTimeStr).getTime() + 999;
-						from = fromDt.getTime();
-						to = toDt.getTime() + 999;
-						if(from < startTime || from > endTime || to < startTime || to > endTime) {
-							Logger.logln("The absolute time(" + expStr + ") is out of range. It must be " + startTimeStr + " to " + endTimeStr);
-							return;
-						}
-					} else {
-						Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
-						return;
-					}
-				}
+				// record view method 1,"pool-*" 1000ms~5000ms
+				long[] range = parseRangeExpression(rangeExpression, targetThreads);
+				if(range == null) return;
+				from = range[0];
+				to = range[1];
 			}
-			methodResultMap = makeMethodResultMap(result.recordData, Arrays.asList(targetThreads), from, to);
+			methodResultMap = makeMethodResultMap(Arrays.asList(targetThreads), from, to);
 			Logger.logln(getMethodString(methodResultMap));
 		} else if(type.equalsIgnoreCase("thread")) {
-			if(!checkArgument(viewArgs, 2, 4)) {
-				Logger.logln("  Usage) REC[ORD] VIEW THREAD ThreadList [RangeExpression] [--merge|--split]");
+			if(!checkArgument(viewArgs, 2, 6)) {
+				Logger.logln("  Usage) REC[ORD] VIEW THREAD ThreadList [RangeExpression] [--merge|--split] [--by count|cpu|alloc]");
 				return;
 			}
 			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
@@ -307,11 +894,14 @@ public class RecordResultViewer {
 					mergeThreads = true;
 				} else if(isThreadViewSplitOption(optOrRange)) {
 					mergeThreads = false;
-				} else if(rangeExpression == null) {
+				} else if(isSortByOption(optOrRange) && i+1 < viewArgs.size()) {
+					sortBy = parseSortBy(StringUtil.stripQuote(viewArgs.get(++i), new char[]{'"','\''}, true));
+					if(sortBy < 0) return;
+				} else if(rangeExpression == null && !isSortByOption(optOrRange)) {
 					rangeExpression = optOrRange;
 				} else {
 					Logger.logln("Invalid argument for THREAD view: " + optOrRange);
-					Logger.logln("  Usage) REC[ORD] VIEW THREAD ThreadList [RangeExpression] [--merge|--split]");
+					Logger.logln("  Usage) REC[ORD] VIEW THREAD ThreadList [RangeExpression] [--merge|--split] [--by count|cpu|alloc]");
 					return;
 				}
 			}
@@ -324,84 +914,41 @@ public class RecordResultViewer {
 				to = -1L;
 			} else {
 				// with range expression
-				String expStr = rangeExpression;
-				String[] range = expStr.split("~");
-				if(range.length != 2) {
-					Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
-					return;
-				}
-				String fromStr = range[0];
-				String toStr = range[1];
-				if(fromStr.endsWith("ms") && NumberUtil.isNumber(fromStr.substring(0, fromStr.length()-2)) && toStr.endsWith("ms") && NumberUtil.isNumber(toStr.substring(0, toStr.length()-2))) {
-					// record view thread 1,"pool-*" 1000ms~5000ms
-					int from_ms = Integer.parseInt(fromStr.substring(0, fromStr.length()-2));
-					int to_ms = Integer.parseInt(toStr.substring(0, toStr.length()-2));
-					long startTime = result.startTime;
-					long endTime = result.endTime;
-					from = startTime + from_ms;
-					to = startTime + to_ms;
-					if(from < startTime || from > endTime || to < startTime || to > endTime) {
-						Logger.logln("The relative time(" + expStr + ") is out of range. It must be 0 to " + (endTime-startTime) + "ms");
-						return;
-					}				
-				} else if(NumberUtil.isNumber(fromStr) && NumberUtil.isNumber(toStr)) {
-					// record view thread 1,"pool-*" 10~20
-					int fromIdx = Integer.parseInt(fromStr);
-					int toIdx = Integer.parseInt(toStr);
-					if(fromIdx < 1 || fromIdx > result.sampleCount || toIdx < 1 || toIdx > result.sampleCount) {
-						Logger.logln("The order(" + expStr + ") is out of range. It must be 1 to " + result.sampleCount);
-						return;
-					}
-					from = result.recordData.get(targetThreads[0]).get(fromIdx).recordStartTime;
-					to = result.recordData.get(targetThreads[0]).get(toIdx).recordEndTime;
-				} else {
-					Date fromDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, fromStr);
-					Date toDt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, toStr);
-					if(fromDt != null && toDt != null) {
-						// record view thread 1,"pool-*" 2022.10.28/12:34:17~2022.10.28/12:34:21
-						String startTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.startTime));
-						String endTimeStr = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_SEC, new Date(result.endTime));
-						long startTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, startTimeStr).getTime();
-						long endTime = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, endTimeStr).getTime() + 999;
-						from = fromDt.getTime();
-						to = toDt.getTime() + 999;
-						if(from < startTime || from > endTime || to < startTime || to > endTime) {
-							Logger.logln("The absolute time(" + expStr + ") is out of range. It must be " + startTimeStr + " to " + endTimeStr);
-							return;
-						}
-					} else {
-						Logger.logln("Invalid argument for RangeExpression. See the help of record command.");
-						return;
-					}
-				}
+				// record view thread 1,"pool-*" 1000ms~5000ms
+				long[] range = parseRangeExpression(rangeExpression, targetThreads);
+				if(range == null) return;
+				from = range[0];
+				to = range[1];
 			}
 			if(mergeThreads) {
-				List<RecordThreadInfo> mergedViewSamples = new ArrayList<RecordThreadInfo>();
+				RecordSampleList mergedViewSamples = new RecordSampleList();
 				for(Long tid : targetThreads) {
-					List<RecordThreadInfo> fullList = result.recordData.get(tid);
 					if(recordViewMode == RecordViewMode.NO_REQUEST_WAIT) {
-						for(List<RecordThreadInfo> viewSeg : splitIntoNonWaitViewSegments(fullList, from, to)) {
+						for(RecordSampleList viewSeg : splitIntoNonWaitViewSegments(getSamples(tid, from, to), from, to)) {
 							mergedViewSamples.addAll(viewSeg);
 						}
-					} else if(fullList != null) {
-						mergedViewSamples.addAll(fullList);
+					} else {
+						RecordSampleList fullList = getSamples(tid);
+						if(fullList != null) {
+							mergedViewSamples.addAll(fullList);
+						}
 					}
 				}
-				Tree<RecordStackFrame> mergedTree = makeMergedThreadResultTree(result.recordData, Arrays.asList(targetThreads), from, to);
+				Tree<RecordStackFrame> mergedTree = makeMergedThreadResultTree(Arrays.asList(targetThreads), from, to);
 				List<ThreadViewSegment> mergedSegments = new ArrayList<ThreadViewSegment>();
 				mergedSegments.add(new ThreadViewSegment(mergedTree, mergedViewSamples));
 				threadViewByTid.put(-1L, mergedSegments);
 				threadList.put(-1L, "Merged Threads(" + targetThreads.length + ")");
 			} else {
 				for(Long tid : targetThreads) {
-					List<RecordThreadInfo> fullList = result.recordData.get(tid);
+					RecordSampleList fullList = getSamples(tid, from, to);
 					List<ThreadViewSegment> segments = new ArrayList<ThreadViewSegment>();
 					if(recordViewMode == RecordViewMode.NO_REQUEST_WAIT) {
-						for(List<RecordThreadInfo> viewSeg : splitIntoNonWaitViewSegments(fullList, from, to)) {
+						for(RecordSampleList viewSeg : splitIntoNonWaitViewSegments(fullList, from, to)) {
 							segments.add(new ThreadViewSegment(makeThreadResultTree(viewSeg, from, to), viewSeg));
 						}
 					} else {
-						segments.add(new ThreadViewSegment(makeThreadResultTree(fullList, from, to), Collections.<RecordThreadInfo>emptyList()));
+						segments.add(new ThreadViewSegment(makeThreadResultTree(fullList, from, to), new RecordSampleList(1)));
 					}
 					threadViewByTid.put(tid, segments);
 				}
@@ -442,8 +989,7 @@ public class RecordResultViewer {
 			StringBuilder sb = new StringBuilder();
 			boolean firstThread = true;
 			for(Long tid : targetThreads) {
-				List<RecordThreadInfo> recThrInfoList = filterSamples(result.recordData.get(tid));
-				String str = resolveStackStringForPoint(recThrInfoList, expStr);
+				String str = resolveStackStringForPoint(tid, expStr);
 				if(str == null) {
 					continue;
 				}
@@ -475,26 +1021,32 @@ public class RecordResultViewer {
 					return;
 				}
 				Map<Long,List<RecordSearch>> foundSearchMap = new HashMap<Long,List<RecordSearch>>();
+				Map<Integer,String[]> stackMatches = new HashMap<Integer,String[]>();
+				WildcardMatcher matcher = WildcardMatcher.compile(expStr);
+				String[] frameMatches = matchFrameDictionary(matcher);
 				for(Long tid : targetThreads) {
-					List<RecordThreadInfo> recThrInfoList = filterSamples(result.recordData.get(tid));
+					RecordSampleList recThrInfoList = filterSamples(tid);
 					List<RecordSearch> recSearchList = new ArrayList<RecordSearch>();
 					for(int i = 0; i < recThrInfoList.size(); i++) {
-						RecordThreadInfo recThrInfo = recThrInfoList.get(i);
-						for(StackTraceElement el : recThrInfo.stackTrace) {
-							if(StringUtil.isMatchStringWithPattern(el.getClassName()+"."+el.getMethodName(), expStr)) {
-								boolean match = false;
-								for(RecordSearch recSearch : recSearchList) {
-									if(recSearch.foundString.equals(el.toString()) && recSearch.toIndex+1 >= i) {
-										recSearch.toIndex = i;
-										recSearch.count++;
-										match = true;
-									}
-								}
-								if(!match) {
-									RecordSearch search = new RecordSearch(el.toString(), i);
-									recSearchList.add(search);
+						int stackId = recThrInfoList.getStackId(i);
+						String[] foundStrings = stackMatches.get(stackId);
+						if(foundStrings == null) {
+							foundStrings = findMatchFrameStrings(stackId, frameMatches, matcher);
+							stackMatches.put(stackId, foundStrings);
+						}
+						for(String foundString : foundStrings) {
+							boolean match = false;
+							for(RecordSearch recSearch : recSearchList) {
+								if(recSearch.foundString.equals(foundString) && recSearch.toIndex+1 >= i) {
+									recSearch.toIndex = i;
+									recSearch.count++;
+									match = true;
 								}
 							}
+							if(!match) {
+								RecordSearch search = new RecordSearch(foundString, i);
+								recSearchList.add(search);
+							}
 						}
 					}
 					if(recSearchList.size() > 0) {
@@ -507,57 +1059,190 @@ public class RecordResultViewer {
 					Logger.logln("The thread could not find a stack matching the pattern \"" + expStr + "\"");
 				}
 			}			
-		} else {
-			Logger.logln("Invalid argument for ViewType. Available ViewTypes are 'INFO','METHOD','THREAD','STACK' and 'SEARCH'.");
-		}
-	}
-
-	/**
-	 * Stack dump for one thread at {@code expStr}. Global range for relative ms / absolute time must be validated by the caller.
-	 * @return text to print, or {@code null} if this thread has no data or the point cannot be resolved (errors logged).
-	 */
-	private String resolveStackStringForPoint(List<RecordThreadInfo> recThrInfoList, String expStr) {
-		if(recThrInfoList == null || recThrInfoList.isEmpty()) {
-			Logger.logln("No stacktrace samples for this thread.");
-			return null;
-		}
-		String str = null;
-		if(expStr.endsWith("ms") && expStr.length() > 2 && NumberUtil.isNumber(expStr.substring(0, expStr.length()-2))) {
-			int ms = Integer.parseInt(expStr.substring(0, expStr.length()-2));
-			long targetTime = result.startTime + ms;
-			for(int i = recThrInfoList.size()-1; i >= 0; i--) {
-				RecordThreadInfo recThrInfo = recThrInfoList.get(i);
-				if(targetTime < recThrInfo.recordStartTime) {
-					continue;
-				}
-				if(targetTime >= recThrInfo.recordStartTime && targetTime <= recThrInfo.recordEndTime) {
-					str = getStackString(new RecordThreadInfo[]{recThrInfo});
-				} else {
-					str = getStackString(new RecordThreadInfo[]{recThrInfo, recThrInfoList.get(i+1)});
-				}
-				break;
+		} else if(type.equalsIgnoreCase("state")) {
+			if(!checkArgument(viewArgs, 2, 3)) {
+				Logger.logln("  Usage) REC[ORD] VIEW STATE ThreadList [RangeExpression]");
+				return;
 			}
-			if(str == null) {
-				Logger.logln("Could not resolve stack at relative time " + expStr + " for thread id " + recThrInfoList.get(0).getThreadId() + ".");
-				return null;
+			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
+			if(targetThreads == null) return;
+			long from = -1L;
+			long to = -1L;
+			if(viewArgs.size() == 3) {
+				// record view state 1,"pool-*" 1000ms~5000ms
+				long[] range = parseRangeExpression(StringUtil.stripQuote(viewArgs.get(2), new char[]{'"','\''}, true), targetThreads);
+				if(range == null) return;
+				from = range[0];
+				to = range[1];
+			}
+			Logger.logln(getStateString(targetThreads, from, to));
+		} else if(type.equalsIgnoreCase("resource")) {
+			if(!checkArgument(viewArgs, 2, 4)) {
+				Logger.logln("  Usage) REC[ORD] VIEW RESOURCE ThreadList [--rank N]");
+				return;
+			}
+			if(result.resourceSeries == null) {
+				Logger.logln("The record result has no resource series. Record with the '--resource' option.");
+				return;
+			}
+			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
+			if(targetThreads == null) return;
+			int topN = DEFAULT_RESOURCE_TOP;
+			if(viewArgs.size() > 2) {
+				String option = StringUtil.stripQuote(viewArgs.get(2), new char[]{'"','\''}, true);
+				String value = (viewArgs.size() > 3) ? StringUtil.stripQuote(viewArgs.get(3), new char[]{'"','\''}, true) : "";
+				if(!(option.equalsIgnoreCase("--rank") || option.equalsIgnoreCase("-r")) || !NumberUtil.isNumber(value) || Integer.parseInt(value) < 0) {
+					Logger.logln("Invalid argument for RESOURCE view: " + option + " " + value);
+					Logger.logln("  Usage) REC[ORD] VIEW RESOURCE ThreadList [--rank N]");
+					return;
+				}
+				topN = Integer.parseInt(value);
+			}
+			Logger.logln(getResourceSeriesString(result.resourceSeries, Arrays.asList(targetThreads), topN));
+		} else if(type.equalsIgnoreCase("lock")) {
+			if(!checkArgument(viewArgs, 2, 5)) {
+				Logger.logln("  Usage) REC[ORD] VIEW LOCK ThreadList [RangeExpression] [--top N]");
+				return;
+			}
+			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
+			if(targetThreads == null) return;
+			int topN = DEFAULT_LOCK_TOP;
+			String rangeExpression = null;
+			for(int i = 2; i < viewArgs.size(); i++) {
+				String optOrRange = StringUtil.stripQuote(viewArgs.get(i), new char[]{'"','\''}, true);
+				String value = (i+1 < viewArgs.size()) ? StringUtil.stripQuote(viewArgs.get(i+1), new char[]{'"','\''}, true) : "";
+				if((optOrRange.equalsIgnoreCase("--top") || optOrRange.equalsIgnoreCase("-t")) && NumberUtil.isNumber(value) && Integer.parseInt(value) > 0) {
+					topN = Integer.parseInt(value);
+					i++;
+				} else if(rangeExpression == null && !optOrRange.startsWith("-")) {
+					rangeExpression = optOrRange;
+				} else {
+					Logger.logln("Invalid argument for LOCK view: " + optOrRange);
+					Logger.logln("  Usage) REC[ORD] VIEW LOCK ThreadList [RangeExpression] [--top N]");
+					return;
+				}
+			}
+			long from = -1L;
+			long to = -1L;
+			if(rangeExpression != null) {
+				long[] range = parseRangeExpression(rangeExpression, targetThreads);
+				if(range == null) return;
+				from = range[0];
+				to = range[1];
+			}
+			Logger.logln(getLockString(Arrays.asList(targetThreads), from, to, topN));
+		} else if(type.equalsIgnoreCase("alloc")) {
+			if(!checkArgument(viewArgs, 2, 7)) {
+				Logger.logln("  Usage) REC[ORD] VIEW ALLOC ThreadList [RangeExpression] [--by self|total] [--top N]");
+				return;
+			}
+			if(result.resourceSeries == null) {
+				Logger.logln("The record result has no resource series. Record with the '--resource' option.");
+				return;
+			}
+			if(!usageAlloc) {
+				Logger.logln("The resource series has no allocated bytes. ThreadAllocatedMemory may be disabled.");
+				return;
+			}
+			Long[] targetThreads = getThreadIdsWithPattern(viewArgs.get(1));
+			if(targetThreads == null) return;
+			boolean bySelf = true;
+			int topN = DEFAULT_ALLOC_TOP;
+			String rangeExpression = null;
+			for(int i = 2; i < viewArgs.size(); i++) {
+				String optOrRange = StringUtil.stripQuote(viewArgs.get(i), new char[]{'"','\''}, true);
+				String value = (i+1 < viewArgs.size()) ? StringUtil.stripQuote(viewArgs.get(i+1), new char[]{'"','\''}, true) : "";
+				if(isSortByOption(optOrRange) && (value.equalsIgnoreCase("self") || value.equalsIgnoreCase("total"))) {
+					bySelf = value.equalsIgnoreCase("self");
+					i++;
+				} else if((optOrRange.equalsIgnoreCase("--top") || optOrRange.equalsIgnoreCase("-t")) && NumberUtil.isNumber(value) && Integer.parseInt(value) > 0) {
+					topN = Integer.parseInt(value);
+					i++;
+				} else if(rangeExpression == null && !optOrRange.startsWith("-")) {
+					rangeExpression = optOrRange;
+				} else {
+					Logger.logln("Invalid argument for ALLOC view: " + optOrRange);
+					Logger.logln("  Usage) REC[ORD] VIEW ALLOC ThreadList [RangeExpression] [--by self|total] [--top N]");
+					return;
+				}
+			}
+			long from = -1L;
+			long to = -1L;
+			if(rangeExpression != null) {
+				long[] range = parseRangeExpression(rangeExpression, targetThreads);
+				if(range == null) return;
+				from = range[0];
+				to = range[1];
+			}
+			Logger.logln(getAllocString(Arrays.asList(targetThreads), from, to, bySelf, topN));
+		} else if(type.equalsIgnoreCase("churn")) {
+			if(!checkArgument(viewArgs, 1, 1)) {
+				Logger.logln("  Usage) REC[ORD] VIEW CHURN");
+				return;
+			}
+			if(result.threadChurn == null) {
+				Logger.logln("The record result has no thread churn. Record with the '--churn' option.");
+				return;
+			}
+			Logger.logln(getThreadChurnString(result.threadChurn));
+		} else {
+			Logger.logln("Invalid argument for ViewType. Available ViewTypes are 'INFO','METHOD','THREAD','STACK','SEARCH','STATE','LOCK','RESOURCE','ALLOC' and 'CHURN'.");
+		}
+	}
+
+	/**
+	 * Stack dump for one thread at {@code expStr}. Global range for relative ms / absolute time must be validated by the caller.
+	 * Relative ms and absolute time are resolved by binary search on the sample start times.
+	 * @return text to print, or {@code null} if this thread has no data or the point cannot be resolved (errors logged).
+	 */
+	private String resolveStackStringForPoint(Long tid, String expStr) {
+		RecordThreadSamples samples = sampleStore.containsThread(tid) ? sampleStore.getThreadSamples(tid) : null;
+		if(samples == null || getIncludedSampleCount(tid) < 1) {
+			Logger.logln("No stacktrace samples for this thread.");
+			return null;
+		}
+		String str = null;
+		if(expStr.endsWith("ms") && expStr.length() > 2 && NumberUtil.isNumber(expStr.substring(0, expStr.length()-2))) {
+			int ms = Integer.parseInt(expStr.substring(0, expStr.length()-2));
+			long targetTime = result.startTime + ms;
+			// targetTime 이전에 시작한 마지막 샘플
+			int i = samples.indexAfterStartTime(targetTime) - 1;
+			while(i >= 0 && !includeSample(samples.getSampleState(i))) {
+				i--;
+			}
+			if(i > -1) {
+				int next = i + 1;
+				while(next < samples.size() && !includeSample(samples.getSampleState(next))) {
+					next++;
+				}
+				if(targetTime <= samples.getEndTime(i) || next >= samples.size()) {
+					str = getStackString(new RecordThreadInfo[]{samples.get(i)});
+				} else {
+					str = getStackString(new RecordThreadInfo[]{samples.get(i), samples.get(next)});
+				}
+			}
+			if(str == null) {
+				Logger.logln("Could not resolve stack at relative time " + expStr + " for thread id " + tid + ".");
+				return null;
 			}
 		} else if(NumberUtil.isNumber(expStr)) {
+			RecordSampleList recThrInfoList = filterSamples(tid);
 			int order = Integer.parseInt(expStr);
 			int total = recThrInfoList.size();
 			if(order < 1 || order > total) {
-				Logger.logln("The order(" + order + ") is out of range for thread id " + recThrInfoList.get(0).getThreadId() + ". It must be 1 to " + total);
+				Logger.logln("The order(" + order + ") is out of range for thread id " + tid + ". It must be 1 to " + total);
 				return null;
 			}
-			RecordThreadInfo recThrInfo = recThrInfoList.get(order-1);
-			str = getStackString(new RecordThreadInfo[]{recThrInfo});
+			str = getStackString(new RecordThreadInfo[]{recThrInfoList.get(order-1)});
 		} else {
 			Date dt = DateUtil.stringToDate(DateUtil.FORMAT_DATETIME_SEC, expStr);
 			long rangeTime_from = dt.getTime();
 			long rangeTime_to = rangeTime_from + 999;
 			List<RecordThreadInfo> matchList = new ArrayList<RecordThreadInfo>();
-			for(RecordThreadInfo recThrInfo : recThrInfoList) {
-				if(recThrInfo.recordStartTime >= rangeTime_from && recThrInfo.recordEndTime <= rangeTime_to) {
-					matchList.add(recThrInfo);
+			int toIdx = samples.indexAfterStartTime(rangeTime_to);
+			for(int i = samples.indexOfStartTime(rangeTime_from); i < toIdx; i++) {
+				if(includeSample(samples.getSampleState(i)) && samples.getEndTime(i) <= rangeTime_to) {
+					matchList.add(samples.get(i));
 				}
 			}
 			str = getStackString(matchList.toArray(new RecordThreadInfo[]{}));
@@ -572,9 +1257,34 @@ public class RecordResultViewer {
 
 	private int getIncludedSampleCount() {
 		int count = 0;
-		for(List<RecordThreadInfo> recThrInfoList : result.recordData.values()) {
-			for(RecordThreadInfo recThrInfo : recThrInfoList) {
-				if(includeSample(recThrInfo)) {
+		for(Long tid : sampleStore.getThreadIds()) {
+			count += getIncludedSampleCount(tid);
+		}
+		return count;
+	}
+
+	private int getIncludedSampleCount(Long tid) {
+		int count = sampleStore.getSampleCount(tid);
+		if(recordViewMode != RecordViewMode.FULL) {
+			count -= sampleStore.getWaitingRequestCount(tid);
+		}
+		return count;
+	}
+
+	/**
+	 * depth 제한으로 잘린(잘림 표시 프레임으로 끝나는) 스택을 가진 샘플 수
+	 */
+	private int getTruncatedSampleCount() {
+		boolean[] truncated = new boolean[stackTable.getStackCount()];
+		for(int stackId = 0; stackId < truncated.length; stackId++) {
+			int[] frameIds = stackTable.getStackFrameIds(stackId);
+			truncated[stackId] = frameIds.length > 0 && RecordStackTable.isTruncatedFrame(stackTable.getFrame(frameIds[frameIds.length-1]));
+		}
+		int count = 0;
+		for(Long tid : sampleStore.getThreadIds()) {
+			RecordSampleList samples = getSamples(tid);
+			for(int i = 0; samples != null && i < samples.size(); i++) {
+				if(truncated[samples.getStackId(i)]) {
 					count++;
 				}
 			}
@@ -583,94 +1293,156 @@ public class RecordResultViewer {
 	}
 
 	private int getTotalSampleCount() {
-		int count = 0;
-		for(List<RecordThreadInfo> recThrInfoList : result.recordData.values()) {
-			count += recThrInfoList.size();
-		}
-		return count;
+		return sampleStore.getTotalSampleCount();
 	}
 	
-	private int getTotalCount(List<RecordThreadInfo> recThrInfoList, long from, long to) {
+	private int getTotalCount(RecordSampleList recThrInfoList, long from, long to) {
 		int totalCount = 0;
-		for(RecordThreadInfo recThrInfo : recThrInfoList) {
-			if(!includeSample(recThrInfo)) {
+		for(int i = 0; i < recThrInfoList.size(); i++) {
+			if(!includeSample(recThrInfoList, i)) {
 				continue;
 			}
-			if(from <= recThrInfo.recordStartTime && to >= recThrInfo.recordEndTime) {
+			if(from <= recThrInfoList.getStartTime(i) && to >= recThrInfoList.getEndTime(i)) {
 				totalCount++;
 			}
 		}
 		return totalCount;
 	}
 	
-	private long getTotalRecordTime(List<RecordThreadInfo> recThrInfoList, long from, long to) {
+	private long getTotalRecordTime(RecordSampleList recThrInfoList, long from, long to) {
 		long totalRecordTime = 0L;
 		for(int idx = 0; idx < recThrInfoList.size(); idx++) {
-			RecordThreadInfo recThrInfo = recThrInfoList.get(idx);
-			if(!includeSample(recThrInfo)) {
+			if(!includeSample(recThrInfoList, idx)) {
 				continue;
 			}
-			if((from > -1 && from > recThrInfo.recordStartTime) || (to > -1 && to < recThrInfo.recordEndTime)) {
+			if((from > -1 && from > recThrInfoList.getStartTime(idx)) || (to > -1 && to < recThrInfoList.getEndTime(idx))) {
 				continue;
 			}
-			long realTime = recThrInfo.recordEndTime-recThrInfo.recordStartTime;
+			long realTime = recThrInfoList.getEndTime(idx)-recThrInfoList.getStartTime(idx);
 			totalRecordTime += getSampleTime(recThrInfoList, idx, realTime);
 		}
 		return totalRecordTime;
 	}
 	
-	private Map<String,Map<Integer,RecordStackFrame>> makeMethodResultMap(Map<Long,List<RecordThreadInfo>> recThrInfoListMap, List<Long> targetThreadList, long from, long to) {
-		Map<String,Map<Integer,RecordStackFrame>> map = new HashMap<String,Map<Integer,RecordStackFrame>>();
-		int totalCount = 0;
-		long totalRecordTime = 0;
-		for(Long tid : recThrInfoListMap.keySet()) {
-			if(!targetThreadList.contains(tid)) {
-				continue;
+	/**
+	 * 스레드별 스택을 메소드/라인 단위로 집계한다.<br/>
+	 * 대상 스레드가 많으면 연속된 스레드 범위별로 common ForkJoinPool에서 집계한 후 스레드 순서대로 병합한다.
+	 * 적은 경우에도 같은 부분 집계와 마무리 과정을 거치므로 결과는 같다.
+	 */
+	private Map<String,Map<Integer,RecordStackFrame>> makeMethodResultMap(List<Long> targetThreadList, final long from, final long to) {
+		Set<Long> targetThreadSet = new HashSet<Long>(targetThreadList);
+		List<Long> threadIds = new ArrayList<Long>();
+		final Map<Long,Integer> threadOrderMap = new HashMap<Long,Integer>();
+		for(Long tid : sampleStore.getThreadIds()) {
+			if(targetThreadSet.contains(tid)) {
+				threadOrderMap.put(tid, threadIds.size());
+				threadIds.add(tid);
 			}
-			List<RecordThreadInfo> recThrInfoList = recThrInfoListMap.get(tid);
-			for(int idx = 0; idx < recThrInfoList.size(); idx++) {
-				RecordThreadInfo recThrInfo = recThrInfoList.get(idx);
-				if(!includeSample(recThrInfo)) {
-					continue;
+		}
+		final Comparator<Long> threadOrder = new Comparator<Long>() {
+			public int compare(Long o1, Long o2) {
+				return threadOrderMap.get(o1).compareTo(threadOrderMap.get(o2));
+			}
+		};
+		MethodPartial partial = aggregateInParallel(threadIds, new PartialAggregator<Long,MethodPartial>() {
+			public MethodPartial aggregate(List<Long> tids) {
+				return aggregateMethods(tids, from, to);
+			}
+			public MethodPartial merge(MethodPartial left, MethodPartial right) {
+				for(Map.Entry<String,Map<Integer,RecordStackFrame>> entry : right.map.entrySet()) {
+					Map<Integer,RecordStackFrame> stackFrameMap = left.map.get(entry.getKey());
+					if(stackFrameMap == null) {
+						left.map.put(entry.getKey(), entry.getValue());
+						continue;
+					}
+					for(Map.Entry<Integer,RecordStackFrame> lineEntry : entry.getValue().entrySet()) {
+						RecordStackFrame stackFrame = stackFrameMap.get(lineEntry.getKey());
+						if(stackFrame == null) {
+							stackFrameMap.put(lineEntry.getKey(), lineEntry.getValue());
+						} else {
+							stackFrame.merge(lineEntry.getValue(), threadOrder);
+						}
+					}
 				}
-				if((from > -1 && from > recThrInfo.recordStartTime) || (to > -1 && to < recThrInfo.recordEndTime)) {
-					continue;
-				}				
-				long realTime = recThrInfo.recordEndTime-recThrInfo.recordStartTime;
-				long sampleTime = getSampleTime(recThrInfoList, idx, realTime);
-				for(int i = recThrInfo.stackTrace.length-1; i >= 0; i--) {
-					StackTraceElement el = recThrInfo.stackTrace[i];
-					String key = el.getClassName() + "." + el.getMethodName() + "()"; 
+				left.totalCount += right.totalCount;
+				left.totalRecordTime += right.totalRecordTime;
+				left.totalCpuTime += right.totalCpuTime;
+				left.totalAllocBytes += right.totalAllocBytes;
+				return left;
+			}
+		});
+		// 한번에 집계한 것과 같은 순서로 넣어 HashMap의 상태(순회 순서)를 같게 한다.
+		Map<String,Map<Integer,RecordStackFrame>> map = new HashMap<String,Map<Integer,RecordStackFrame>>();
+		for(Map.Entry<String,Map<Integer,RecordStackFrame>> entry : partial.map.entrySet()) {
+			Map<Integer,RecordStackFrame> stackFrameMap = new HashMap<Integer,RecordStackFrame>();
+			for(Map.Entry<Integer,RecordStackFrame> lineEntry : entry.getValue().entrySet()) {
+				RecordStackFrame stackFrame = lineEntry.getValue();
+				stackFrame.setTotal(partial.totalCount, partial.totalRecordTime);
+				stackFrame.setUsageTotal(partial.totalCpuTime, partial.totalAllocBytes);
+				stackFrameMap.put(lineEntry.getKey(), stackFrame);
+			}
+			map.put(entry.getKey(), stackFrameMap);
+		}
+		return map;
+	}
+
+	private MethodPartial aggregateMethods(List<Long> threadIds, long from, long to) {
+		MethodPartial partial = new MethodPartial();
+		Map<String,Map<Integer,RecordStackFrame>> map = partial.map;
+		String[] methodKeys = new String[stackTable.getFrameCount()];
+		for(Long tid : threadIds) {
+			for(StackHit stackHit : getStackHits(tid, from, to)) {
+				// 사용량의 비율은 프레임이 아니라 샘플 전체의 사용량 대비이다.
+				partial.totalCpuTime += stackHit.cpuTime;
+				partial.totalAllocBytes += stackHit.allocBytes;
+				int[] frameIds = stackTable.getStackFrameIds(stackHit.stackId);
+				for(int i = frameIds.length-1; i >= 0; i--) {
+					StackTraceElement el = stackTable.getFrame(frameIds[i]);
+					if(i == frameIds.length-1 && RecordStackTable.isTruncatedFrame(el)) {
+						// 잘림 표시 프레임은 메소드가 아니므로 집계하지 않는다.
+						continue;
+					}
+					String key = methodKeys[frameIds[i]];
+					if(key == null) {
+						key = el.getClassName() + "." + el.getMethodName() + "()";
+						methodKeys[frameIds[i]] = key;
+					}
 					Map<Integer,RecordStackFrame> stackFrameMap = map.get(key);
 					if(stackFrameMap == null) {
-						stackFrameMap = new HashMap<Integer,RecordStackFrame>();
+						stackFrameMap = new LinkedHashMap<Integer,RecordStackFrame>();
 						RecordStackFrame stackFrame = new RecordStackFrame(el);
 						stackFrameMap.put(Integer.MIN_VALUE, stackFrame);
 						map.put(key, stackFrameMap);
 					}
 					RecordStackFrame rootStackFrame = stackFrameMap.get(Integer.MIN_VALUE);
-					rootStackFrame.threadSet.add(tid);
-					rootStackFrame.hit(realTime, sampleTime);
-					totalCount++;
-					totalRecordTime += sampleTime;
+					rootStackFrame.addThread(tid);
+					rootStackFrame.hit(stackHit.count, stackHit.realTime, stackHit.sampleTime, stackHit.cpuTime, stackHit.allocBytes);
+					partial.totalCount += stackHit.count;
+					partial.totalRecordTime += stackHit.sampleTime;
 					RecordStackFrame lineStackFrame = stackFrameMap.get(el.getLineNumber());
 					if(lineStackFrame == null) {
 						lineStackFrame = new RecordStackFrame(el);
 						stackFrameMap.put(el.getLineNumber(), lineStackFrame);
 					}
-					lineStackFrame.threadSet.add(tid);
-					lineStackFrame.hit(realTime, sampleTime);
+					lineStackFrame.addThread(tid);
+					lineStackFrame.hit(stackHit.count, stackHit.realTime, stackHit.sampleTime, stackHit.cpuTime, stackHit.allocBytes);
 				}
 			}
 		}
-		for(String key : map.keySet()) {
-			Map<Integer,RecordStackFrame> stackFrameMap = map.get(key);
-			for(Integer line : stackFrameMap.keySet()) {
-				RecordStackFrame stackFrame = stackFrameMap.get(line);
-				stackFrame.setTotal(totalCount, totalRecordTime);
-			}
+		return partial;
+	}
+
+	/**
+	 * 항목 목록을 부분 집계하고 병합한다. 항목이 {@link #PARALLEL_MIN_THREADS}개 이상이고 common ForkJoinPool의 병렬도가 2 이상이면
+	 * 연속된 범위로 나누어 병렬로 집계하며, 병합은 항상 범위 순서대로 한다. 그렇지 않으면 전체를 한번에 집계한다.
+	 */
+	private static <E,T> T aggregateInParallel(List<E> items, PartialAggregator<E,T> aggregator) {
+		int parallelism = ForkJoinPool.getCommonPoolParallelism();
+		if(items.size() < PARALLEL_MIN_THREADS || parallelism < 2) {
+			return aggregator.aggregate(items);
 		}
-		return map;
+		int leafSize = Math.max(PARALLEL_MIN_TASK_THREADS, items.size() / (parallelism * 4));
+		return ForkJoinPool.commonPool().invoke(new AggregateTask<E,T>(items, 0, items.size(), leafSize, aggregator));
 	}
 	
 	private String getMethodString(Map<String,Map<Integer,RecordStackFrame>> methodResultMap) {
@@ -678,15 +1450,15 @@ public class RecordResultViewer {
 		if(methodResultMap == null || methodResultMap.size() < 1) {
 			return "No method data.";
 		}
-		sb.append("Aggregation of the record results for " + methodResultMap.size() + " method(s).\n\n");
+		sb.append("Aggregation of the record results for " + methodResultMap.size() + " method(s)." + getSortByString() + "\n\n");
 		List<Map.Entry<String,Map<Integer,RecordStackFrame>>> entryList = new LinkedList<Map.Entry<String,Map<Integer,RecordStackFrame>>>(methodResultMap.entrySet());
 		Collections.sort(entryList, new Comparator<Map.Entry<String,Map<Integer,RecordStackFrame>>>() {
 			@Override
 			public int compare(Entry<String,Map<Integer,RecordStackFrame>> o1, Entry<String,Map<Integer,RecordStackFrame>> o2) {
 				Map<Integer,RecordStackFrame> v1 = o1.getValue();
 				Map<Integer,RecordStackFrame> v2 = o2.getValue();
-				int x = v1.get(Integer.MIN_VALUE).hitCount;
-				int y = v2.get(Integer.MIN_VALUE).hitCount;
+				long x = getSortValue(v1.get(Integer.MIN_VALUE));
+				long y = getSortValue(v2.get(Integer.MIN_VALUE));
 				return (x > y) ? -1 : ((x == y) ? 0 : 1);
 			}
 		});
@@ -696,20 +1468,18 @@ public class RecordResultViewer {
 			Map<Integer,RecordStackFrame> stackFrameMap = entry.getValue();
 			RecordStackFrame rootStackFrame = stackFrameMap.get(Integer.MIN_VALUE);
 			if(first) {
-				sb.append("    " + rootStackFrame.toMethodHeaderString() + "\n");
+				sb.append("    " + rootStackFrame.toMethodHeaderString(getUsageHeaderString()) + "\n");
 				first = false;
 			}
-			sb.append("    " + rootStackFrame.toMethodRootString(key) + "\n");
+			sb.append("    " + rootStackFrame.toMethodRootString(key, getUsageString(rootStackFrame)) + "\n");
 			if(stackFrameMap.size() > 2) {
 				sb.append("      line stats\n");
 				List<Map.Entry<Integer,RecordStackFrame>> subEntryList = new LinkedList<Map.Entry<Integer,RecordStackFrame>>(stackFrameMap.entrySet());
 				Collections.sort(subEntryList, new Comparator<Map.Entry<Integer,RecordStackFrame>>() {
 					@Override
 					public int compare(Entry<Integer,RecordStackFrame> o1, Entry<Integer,RecordStackFrame> o2) {
-						RecordStackFrame v1 = o1.getValue();
-						RecordStackFrame v2 = o2.getValue();
-						int x = v1.hitCount;
-						int y = v2.hitCount;
+						long x = getSortValue(o1.getValue());
+						long y = getSortValue(o2.getValue());
 						return (x > y) ? -1 : ((x == y) ? 0 : 1);
 					}
 				});
@@ -717,14 +1487,14 @@ public class RecordResultViewer {
 					Integer line = subEntry.getKey();
 					if(line == Integer.MIN_VALUE) continue;					
 					RecordStackFrame stackFrame = subEntry.getValue();
-					sb.append("    " + stackFrame.toMethodLineString() + "\n");
+					sb.append("    " + stackFrame.toMethodLineString(getUsageString(stackFrame)) + "\n");
 				}
 			}
 		}
 		return sb.toString().trim();
 	}
 
-	private Tree<RecordStackFrame> makeThreadResultTree(List<RecordThreadInfo> recThrInfoList, long from, long to) {
+	private Tree<RecordStackFrame> makeThreadResultTree(RecordSampleList recThrInfoList, long from, long to) {
 		int totalCount = 0;
 		long totalRecordTime = 0;
 		if(from > -1 && to > -1) {
@@ -734,97 +1504,179 @@ public class RecordResultViewer {
 			totalCount = getTotalCount(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
 			totalRecordTime = getTotalRecordTime(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
 		}
+		List<StackHit> stackHits = aggregateByStack(recThrInfoList, from, to);
+		long totalCpuTime = 0L;
+		long totalAllocBytes = 0L;
+		for(StackHit stackHit : stackHits) {
+			totalCpuTime += stackHit.cpuTime;
+			totalAllocBytes += stackHit.allocBytes;
+		}
 		Tree<RecordStackFrame> tree = new Tree<RecordStackFrame>(new RecordStackFrame(null));
-		for(int idx = 0; idx < recThrInfoList.size(); idx++) {
-			RecordThreadInfo recThrInfo = recThrInfoList.get(idx);
-			if(!includeSample(recThrInfo)) {
-				continue;
-			}
-			if((from > -1 && from > recThrInfo.recordStartTime) || (to > -1 && to < recThrInfo.recordEndTime)) {
-				continue;
-			}				
-			long realTime = recThrInfo.recordEndTime-recThrInfo.recordStartTime;
-			long sampleTime = getSampleTime(recThrInfoList, idx, realTime);
-			tree.toRoot();
-			for(int i = recThrInfo.stackTrace.length-1; i >= 0; i--) {
-				StackTraceElement el = recThrInfo.stackTrace[i];
-				RecordStackFrame nodeData;
-				boolean match = false;
-				for(TreeNode<RecordStackFrame> node : tree.getCurrent().getChilds()) {
-					nodeData = node.getData();
-					if(nodeData.stackTraceElement.getClassName().equals(el.getClassName()) && nodeData.stackTraceElement.getMethodName().equals(el.getMethodName()) && nodeData.stackTraceElement.getLineNumber() == el.getLineNumber()) {
-						nodeData.hit(realTime, sampleTime);
-						tree.setCurrent(node);
-						match = true;
-					}	
-				}
-				if(!match) {
-					nodeData = new RecordStackFrame(el, totalCount, totalRecordTime);
-					nodeData.threadSet.add(recThrInfo.threadId);
-					nodeData.hit(realTime, sampleTime);
-					tree.setCurrent(tree.getCurrent().addChild(nodeData));
-				}
-			}
+		for(StackHit stackHit : stackHits) {
+			addToThreadResultTree(tree, stackHit, totalCount, totalRecordTime, totalCpuTime, totalAllocBytes);
 		}
 		return tree;
 	}
 
-	private Tree<RecordStackFrame> makeMergedThreadResultTree(Map<Long,List<RecordThreadInfo>> recThrInfoListMap, List<Long> targetThreadList, long from, long to) {
-		int totalCount = 0;
-		long totalRecordTime = 0L;
-		for(Long tid : targetThreadList) {
-			List<RecordThreadInfo> recThrInfoList = recThrInfoListMap.get(tid);
-			if(recThrInfoList == null) {
-				continue;
+	/**
+	 * 대상 스레드들의 스택을 하나의 트리로 집계한다.<br/>
+	 * 대상 스레드가 많으면 스레드별 스택 집계와 트리 생성을 각각 연속된 스레드 범위별로 병렬 수행하고, 부분 트리는 스레드 순서대로 병합한다.
+	 */
+	private Tree<RecordStackFrame> makeMergedThreadResultTree(List<Long> targetThreadList, final long from, final long to) {
+		final StackHitPartial hits = aggregateInParallel(targetThreadList, new PartialAggregator<Long,StackHitPartial>() {
+			public StackHitPartial aggregate(List<Long> tids) {
+				return aggregateStackHits(tids, from, to);
 			}
-			if(from > -1L && to > -1L) {
-				totalCount += getTotalCount(recThrInfoList, from, to);
-				totalRecordTime += getTotalRecordTime(recThrInfoList, from, to);
-			} else {
-				totalCount += getTotalCount(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
-				totalRecordTime += getTotalRecordTime(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
+			public StackHitPartial merge(StackHitPartial left, StackHitPartial right) {
+				left.stackHitsList.addAll(right.stackHitsList);
+				left.totalCount += right.totalCount;
+				left.totalRecordTime += right.totalRecordTime;
+				left.totalCpuTime += right.totalCpuTime;
+				left.totalAllocBytes += right.totalAllocBytes;
+				return left;
 			}
-		}
-		Tree<RecordStackFrame> tree = new Tree<RecordStackFrame>(new RecordStackFrame(null));
-		for(Long tid : targetThreadList) {
-			List<RecordThreadInfo> recThrInfoList = recThrInfoListMap.get(tid);
-			if(recThrInfoList == null) {
-				continue;
+		});
+		// 작업들이 공유하므로 미리 만들어 둔다.
+		getCallSiteIds();
+		return aggregateInParallel(hits.stackHitsList, new PartialAggregator<List<StackHit>,Tree<RecordStackFrame>>() {
+			public Tree<RecordStackFrame> aggregate(List<List<StackHit>> stackHitsList) {
+				Tree<RecordStackFrame> tree = new Tree<RecordStackFrame>(new RecordStackFrame(null));
+				for(List<StackHit> stackHits : stackHitsList) {
+					for(StackHit stackHit : stackHits) {
+						addToThreadResultTree(tree, stackHit, hits.totalCount, hits.totalRecordTime, hits.totalCpuTime, hits.totalAllocBytes);
+					}
+				}
+				return tree;
+			}
+			public Tree<RecordStackFrame> merge(Tree<RecordStackFrame> left, Tree<RecordStackFrame> right) {
+				mergeThreadResultTree(left, right);
+				return left;
 			}
-			for(int idx = 0; idx < recThrInfoList.size(); idx++) {
-				RecordThreadInfo recThrInfo = recThrInfoList.get(idx);
-				if(!includeSample(recThrInfo)) {
+		});
+	}
+
+	private StackHitPartial aggregateStackHits(List<Long> threadIds, long from, long to) {
+		StackHitPartial partial = new StackHitPartial();
+		for(Long tid : threadIds) {
+			List<StackHit> stackHits = getIndexedThreadStackHits(tid, from, to, partial);
+			if(stackHits == null) {
+				RecordSampleList recThrInfoList = getSamples(tid, from, to);
+				if(recThrInfoList == null) {
 					continue;
 				}
-				if((from > -1L && from > recThrInfo.recordStartTime) || (to > -1L && to < recThrInfo.recordEndTime)) {
-					continue;
+				if(from > -1L && to > -1L) {
+					partial.totalCount += getTotalCount(recThrInfoList, from, to);
+					partial.totalRecordTime += getTotalRecordTime(recThrInfoList, from, to);
+				} else {
+					partial.totalCount += getTotalCount(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
+					partial.totalRecordTime += getTotalRecordTime(recThrInfoList, Long.MIN_VALUE, Long.MAX_VALUE);
 				}
-				long realTime = recThrInfo.recordEndTime-recThrInfo.recordStartTime;
-				long sampleTime = getSampleTime(recThrInfoList, idx, realTime);
-				tree.toRoot();
-				for(int i = recThrInfo.stackTrace.length-1; i >= 0; i--) {
-					StackTraceElement el = recThrInfo.stackTrace[i];
-					RecordStackFrame nodeData;
-					boolean match = false;
-					for(TreeNode<RecordStackFrame> node : tree.getCurrent().getChilds()) {
-						nodeData = node.getData();
-						if(nodeData.stackTraceElement.getClassName().equals(el.getClassName()) && nodeData.stackTraceElement.getMethodName().equals(el.getMethodName()) && nodeData.stackTraceElement.getLineNumber() == el.getLineNumber()) {
-							nodeData.threadSet.add(recThrInfo.threadId);
-							nodeData.hit(realTime, sampleTime);
-							tree.setCurrent(node);
-							match = true;
-						}
-					}
-					if(!match) {
-						nodeData = new RecordStackFrame(el, totalCount, totalRecordTime);
-						nodeData.threadSet.add(recThrInfo.threadId);
-						nodeData.hit(realTime, sampleTime);
-						tree.setCurrent(tree.getCurrent().addChild(nodeData));
-					}
+				stackHits = aggregateByStack(recThrInfoList, from, to);
+			}
+			for(StackHit stackHit : stackHits) {
+				partial.totalCpuTime += stackHit.cpuTime;
+				partial.totalAllocBytes += stackHit.allocBytes;
+			}
+			partial.stackHitsList.add(stackHits);
+		}
+		return partial;
+	}
+
+	/**
+	 * 색인으로 스레드의 스택별 집계를 만들고, 샘플 수와 샘플 시간의 합을 partial에 더한다.
+	 * 합계는 샘플을 읽는 경우와 같이 시작과 끝이 모두 지정된 구간이 아니면 전체 구간의 값이다.
+	 * @return 색인을 사용할 수 없으면 null. 대상 스레드의 샘플이 없어도 null
+	 */
+	private List<StackHit> getIndexedThreadStackHits(Long tid, long from, long to, StackHitPartial partial) {
+		if(!sampleStore.containsThread(tid)) {
+			return null;
+		}
+		List<StackHit> stackHits = aggregateByStackIndex(tid, from, to);
+		if(stackHits == null) {
+			return null;
+		}
+		boolean wholeTotal = (from > -1L) != (to > -1L);
+		for(StackHit stackHit : wholeTotal ? aggregateByStackIndex(tid, -1L, -1L) : stackHits) {
+			partial.totalCount += stackHit.count;
+			partial.totalRecordTime += stackHit.sampleTime;
+		}
+		return stackHits;
+	}
+
+	/**
+	 * 뒤 스레드 범위의 트리(from)를 앞 범위의 트리(into)에 더한다.<br/>
+	 * 자식은 호출 위치 ID로 찾고, into에 없는 자식은 from의 순서대로 뒤에 붙이므로 한번에 만든 트리와 자식 순서가 같다.
+	 */
+	private static void mergeThreadResultTree(Tree<RecordStackFrame> into, Tree<RecordStackFrame> from) {
+		Deque<TreeNode<RecordStackFrame>> fromNodes = new ArrayDeque<TreeNode<RecordStackFrame>>();
+		Deque<TreeNode<RecordStackFrame>> intoNodes = new ArrayDeque<TreeNode<RecordStackFrame>>();
+		fromNodes.push(from.getRoot());
+		intoNodes.push(into.getRoot());
+		while(!fromNodes.isEmpty()) {
+			TreeNode<RecordStackFrame> fromParent = fromNodes.pop();
+			TreeNode<RecordStackFrame> intoParent = intoNodes.pop();
+			for(TreeNode<RecordStackFrame> fromNode = fromParent.getChild(); fromNode != null; fromNode = fromNode.getSibling()) {
+				TreeNode<RecordStackFrame> intoNode = intoParent.getChild(fromNode.getKey());
+				if(intoNode == null) {
+					intoNode = intoParent.addChild(fromNode.getKey(), fromNode.getData());
+				} else {
+					// THREAD 뷰의 프레임은 threadSet을 채우지 않으므로 스레드 순서는 필요 없다.
+					intoNode.getData().merge(fromNode.getData(), null);
+				}
+				if(fromNode == from.getCurrent()) {
+					into.setCurrent(intoNode);
 				}
+				fromNodes.push(fromNode);
+				intoNodes.push(intoNode);
 			}
 		}
-		return tree;
+	}
+
+	/**
+	 * 스택을 바깥쪽 프레임부터 따라가며 트리에 더한다.<br/>
+	 * 자식 노드는 호출 위치 ID({@link #getCallSiteIds()})로 색인된 map에서 찾고, 집계값은 노드에 바로 더한다.
+	 * THREAD 뷰는 프레임별 스레드 목록을 출력하지 않으므로 threadSet은 채우지 않는다.
+	 */
+	private void addToThreadResultTree(Tree<RecordStackFrame> tree, StackHit stackHit, int totalCount, long totalRecordTime, long totalCpuTime, long totalAllocBytes) {
+		int[] siteIds = getCallSiteIds();
+		int[] frameIds = stackTable.getStackFrameIds(stackHit.stackId);
+		TreeNode<RecordStackFrame> current = tree.getRoot();
+		for(int i = frameIds.length-1; i >= 0; i--) {
+			int siteId = siteIds[frameIds[i]];
+			TreeNode<RecordStackFrame> node = current.getChild(siteId);
+			if(node == null) {
+				RecordStackFrame nodeData = new RecordStackFrame(stackTable.getFrame(frameIds[i]), totalCount, totalRecordTime);
+				nodeData.setUsageTotal(totalCpuTime, totalAllocBytes);
+				node = current.addChild(siteId, nodeData);
+			}
+			node.getData().hit(stackHit.count, stackHit.realTime, stackHit.sampleTime, stackHit.cpuTime, stackHit.allocBytes);
+			current = node;
+		}
+		tree.setCurrent(current);
+	}
+
+	/**
+	 * frame id별 호출 위치 ID. 클래스/메소드/라인이 같은 프레임은 파일명이나 모듈이 달라도 같은 ID를 가진다.
+	 */
+	private int[] getCallSiteIds() {
+		int frameCount = stackTable.getFrameCount();
+		if(callSiteIds != null && callSiteIds.length == frameCount) {
+			return callSiteIds;
+		}
+		int[] siteIds = new int[frameCount];
+		Map<String,Integer> siteMap = new HashMap<String,Integer>();
+		for(int frameId = 0; frameId < frameCount; frameId++) {
+			StackTraceElement el = stackTable.getFrame(frameId);
+			String key = el.getClassName() + "." + el.getMethodName() + ":" + el.getLineNumber();
+			Integer siteId = siteMap.get(key);
+			if(siteId == null) {
+				siteId = siteMap.size();
+				siteMap.put(key, siteId);
+			}
+			siteIds[frameId] = siteId;
+		}
+		callSiteIds = siteIds;
+		return siteIds;
 	}
 
 	/**
@@ -856,19 +1708,6 @@ public class RecordResultViewer {
 		while(iter.hasNext()) {
 			Long tid = iter.next();
 			List<ThreadViewSegment> segments = threadViewByTid.get(tid);
-			List<RecordThreadInfo> recThrInfoList = new ArrayList<RecordThreadInfo>();
-			if(tid != null && tid.longValue() >= 0L) {
-				List<RecordThreadInfo> byTid = result.recordData.get(tid);
-				if(byTid != null) {
-					recThrInfoList = filterSamples(byTid);
-				}
-			} else if(segments != null) {
-				for(ThreadViewSegment seg : segments) {
-					if(seg.viewSamples != null) {
-						recThrInfoList.addAll(seg.viewSamples);
-					}
-				}
-			}
 			boolean hasData = false;
 			if(segments != null) {
 				for(ThreadViewSegment seg : segments) {
@@ -881,9 +1720,24 @@ public class RecordResultViewer {
 			if(!showEmptyThread && !hasData) {
 				continue;
 			}
+			int totalFoundStacktraceCount = 0;
+			String threadName = null;
+			if(tid != null && tid.longValue() >= 0L) {
+				totalFoundStacktraceCount = getIncludedSampleCount(tid);
+				if(totalFoundStacktraceCount > 0) {
+					threadName = sampleStore.getThreadName(tid);
+				}
+			} else if(segments != null) {
+				for(ThreadViewSegment seg : segments) {
+					if(seg.viewSamples != null) {
+						totalFoundStacktraceCount += seg.viewSamples.size();
+					}
+				}
+			}
+			if(threadName == null) {
+				threadName = threadList.get(tid);
+			}
 			shownThreadCount++;
-			String threadName = (tid != null && tid.longValue() >= 0L && recThrInfoList.size() > 0) ? recThrInfoList.get(0).getThreadName() : threadList.get(tid);
-			int totalFoundStacktraceCount = recThrInfoList.size();
 			sb.append("  @ \"" + threadName + "\"" + " Id=" + tid + " (FoundStacktrace=" + totalFoundStacktraceCount + ")\n");
 			if(!hasData || segments == null || segments.isEmpty()) {
 				sb.append("    No stacktrace data.\n");
@@ -909,7 +1763,7 @@ public class RecordResultViewer {
 				}
 			}
 			if(headerNode != null) {
-				sb.append("    " + headerNode.getData().toThreadHeaderString(maxStatWidths[0], maxStatWidths[1]) + "\n");
+				sb.append("    " + headerNode.getData().toThreadHeaderString(maxStatWidths[0], maxStatWidths[1]) + getUsageHeaderString() + "\n");
 			}
 			boolean firstPrintedTree = true;
 			for(ThreadViewSegment seg : segments) {
@@ -937,20 +1791,20 @@ public class RecordResultViewer {
 		if(shownThreadCount < 1) {
 			return "No thread data.";
 		}
-		sb.insert(0, "Aggregation of the record results for " + shownThreadCount + " thread(s).\n\n");
+		sb.insert(0, "Aggregation of the record results for " + shownThreadCount + " thread(s)." + getSortByString() + "\n\n");
 		return sb.toString().trim();
 	}
 	
 	private void appendThreadBranchString(StringBuilder sb, TreeNode<RecordStackFrame> branchRoot, List<Boolean> ancestorsHasNext, boolean isLastBranch, boolean rootBranch, int countNumW, int timeNumW, String rootStatSuffix) {
 		if(branchRoot == null) return;
 		if(rootBranch) {
-			String rootLine = branchRoot.getData().toThreadBranchString(countNumW, timeNumW);
+			String rootLine = branchRoot.getData().toThreadBranchString(countNumW, timeNumW) + getUsageString(branchRoot.getData());
 			if(rootStatSuffix != null && rootStatSuffix.length() > 0) {
 				rootLine = rootLine + rootStatSuffix;
 			}
 			sb.append("    " + rootLine + "\n");
 		} else {
-			appendThreadTreeLine(sb, ancestorsHasNext, isLastBranch, branchRoot.getData().toThreadBranchString(countNumW, timeNumW));
+			appendThreadTreeLine(sb, ancestorsHasNext, isLastBranch, branchRoot.getData().toThreadBranchString(countNumW, timeNumW) + getUsageString(branchRoot.getData()));
 		}
 		List<Boolean> pathAncestors = new ArrayList<Boolean>(ancestorsHasNext);
 		if(!rootBranch) {
@@ -999,8 +1853,8 @@ public class RecordResultViewer {
 		Collections.sort(childList, new Comparator<TreeNode<RecordStackFrame>>() {
 			@Override
 			public int compare(TreeNode<RecordStackFrame> o1, TreeNode<RecordStackFrame> o2) {
-				int x = (Integer)o1.getData().hitCount;
-				int y = (Integer)o2.getData().hitCount;
+				long x = getSortValue(o1.getData());
+				long y = getSortValue(o2.getData());
 				return (x > y) ? -1 : ((x == y) ? 0 : 1);
 			}
 		});
@@ -1016,12 +1870,12 @@ public class RecordResultViewer {
 		Iterator<Long> iter = foundSearchMap.keySet().iterator();
 		while(iter.hasNext()) {
 			Long tid = iter.next();
-			List<RecordThreadInfo> recThrInfoList = filterSamples(result.recordData.get(tid));
+			RecordSampleList recThrInfoList = filterSamples(tid);
 			List<RecordSearch> searchList = foundSearchMap.get(tid);
-			sb.append("  @ \"" + recThrInfoList.get(0).getThreadName() + "\"" + " Id=" + tid + "\n");
+			sb.append("  @ \"" + recThrInfoList.getThreadName(0) + "\"" + " Id=" + tid + "\n");
 			for(RecordSearch recSearch : searchList) {
-				long startTime = recThrInfoList.get(recSearch.fromIndex).recordStartTime;
-				long endTime = recThrInfoList.get(recSearch.toIndex).recordEndTime;
+				long startTime = recThrInfoList.getStartTime(recSearch.fromIndex);
+				long endTime = recThrInfoList.getEndTime(recSearch.toIndex);
 				String from = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_MSEC, new Date(startTime));
 				String to = DateUtil.dateToString(DateUtil.FORMAT_DATETIME_MSEC, new Date(endTime));
 				sb.append("      - Found Stack Frame : " + recSearch.foundString + "\n");
@@ -1064,13 +1918,811 @@ public class RecordResultViewer {
 			} else {
 				sb.append("  - Traces  : \n");
 			}
-			for(StackTraceElement el : recThrInfo.stackTrace) {
-				sb.append("       at " + el.toString() + "\n");
+			for(int frameId : stackTable.getStackFrameIds(recThrInfo.stackId)) {
+				sb.append("       at " + stackTable.getFrame(frameId).toString() + "\n");
 			}			
 		}
 		return sb.toString();
 	}
 	
+	private void appendTickStats(StringBuilder sb, RecordTickStats stats) {
+		sb.append("  - Tick Latency    : avg=" + formatLatency(stats.getAverageMS()*1000000D) + ", p50<=" + formatLatency(stats.getPercentileNanos(50)) + ", p90<=" + formatLatency(stats.getPercentileNanos(90)) + ", p99<=" + formatLatency(stats.getPercentileNanos(99)));
+		sb.append(", min=" + formatLatency(stats.minNanos) + ", max=" + formatLatency(stats.maxNanos) + (stats.selfPaced ? " (measured by agent)" : " (JMX round trip)") + "\n");
+		int first = -1;
+		int last = -1;
+		long maxCount = 0L;
+		for(int i = 0; i < stats.bucketCounts.length; i++) {
+			if(stats.bucketCounts[i] > 0) {
+				if(first < 0) first = i;
+				last = i;
+				maxCount = Math.max(maxCount, stats.bucketCounts[i]);
+			}
+		}
+		for(int i = first; i > -1 && i <= last; i++) {
+			String label = (i < RecordTickStats.BUCKET_BOUNDS_US.length) ? "< " + formatLatency(RecordTickStats.BUCKET_BOUNDS_US[i]*1000D) : ">= " + formatLatency(RecordTickStats.BUCKET_BOUNDS_US[i-1]*1000D);
+			int bar = (int)Math.ceil(stats.bucketCounts[i] * 30D / maxCount);
+			sb.append(String.format("      . %-9s : %-30s %d (%.1f%%)", label, StringUtil.getRepeatString("#", bar), stats.bucketCounts[i], stats.bucketCounts[i]*100D/stats.tickCount) + "\n");
+		}
+		sb.append("  - Missed Ticks    : " + stats.missedTicks + (stats.missedTicks > 0 ? " (skipped because the collection was slower than the interval)" : "") + "\n");
+		if(stats.getPercentileNanos(90) > result.recordIntervalMS*1000000L || stats.missedTicks > stats.tickCount/10) {
+			sb.append("    * Collection often takes longer than the interval. Time weights(Time_ms) are approximate.\n");
+		}
+	}
+
+	private static String formatLatency(double nanos) {
+		if(nanos >= 1000000000D) {
+			return String.format("%.1fs", nanos/1000000000D);
+		} else if(nanos >= 1000000D) {
+			return String.format("%.1fms", nanos/1000000D);
+		}
+		return String.format("%dus", (long)(nanos/1000D));
+	}
+
+	/**
+	 * 스레드별 상태 타임라인과 Lock 경합 요약을 만든다. 상태 분포를 보기 위한 것이므로 RECORD_VIEW_MODE와 관계없이 모든 샘플을 사용한다.<br/>
+	 * 타임라인의 각 컬럼은 해당 시간 구간에서 가장 많이 샘플링된 상태이다.
+	 * 경합은 BLOCKED 샘플과, 소유 스레드가 있는 Lock을 기다리는 WAITING/TIMED_WAITING 샘플을 Lock별로 집계한다.
+	 */
+	private String getStateString(Long[] targetThreads, long from, long to) {
+		Thread.State[] states = Thread.State.values();
+		long viewStart = (from > -1L) ? from : result.startTime;
+		long viewEnd = (to > -1L) ? to : result.endTime;
+		long columnMS = Math.max(1L, (viewEnd - viewStart + STATE_TIMELINE_WIDTH - 1) / STATE_TIMELINE_WIDTH);
+		Map<String,LockContention> contentionMap = new HashMap<String,LockContention>();
+		StringBuilder timelines = new StringBuilder();
+		int[] totalCounts = new int[states.length];
+		for(Long tid : targetThreads) {
+			RecordSampleList samples = getSamples(tid, from, to);
+			if(samples == null) {
+				continue;
+			}
+			int[][] columnCounts = new int[STATE_TIMELINE_WIDTH][states.length];
+			int[] counts = new int[states.length];
+			int sampleCount = 0;
+			for(int i = 0; i < samples.size(); i++) {
+				long startTime = samples.getStartTime(i);
+				if((from > -1L && from > startTime) || (to > -1L && to < samples.getEndTime(i))) {
+					continue;
+				}
+				String stateName = samples.getThreadState(i);
+				if(stateName == null) {
+					continue;
+				}
+				int state = Thread.State.valueOf(stateName).ordinal();
+				int column = (int)Math.min(STATE_TIMELINE_WIDTH-1, Math.max(0L, (startTime - viewStart) / columnMS));
+				columnCounts[column][state]++;
+				counts[state]++;
+				sampleCount++;
+				String lockName = samples.getLockName(i);
+				boolean blocked = (states[state] == Thread.State.BLOCKED);
+				boolean ownedWait = (states[state] == Thread.State.WAITING || states[state] == Thread.State.TIMED_WAITING) && samples.getLockOwnerId(i) > -1L;
+				if(lockName != null && (blocked || ownedWait)) {
+					LockContention contention = contentionMap.get(lockName);
+					if(contention == null) {
+						contention = new LockContention(lockName);
+						contentionMap.put(lockName, contention);
+					}
+					if(blocked) {
+						contention.blockedCount++;
+						contention.blockedTime += getSampleTime(samples, i, samples.getEndTime(i)-startTime);
+					} else {
+						contention.waitingCount++;
+					}
+					contention.waiters.add(tid);
+					if(samples.getLockOwnerId(i) > -1L) {
+						String owner = "\"" + samples.getLockOwnerName(i) + "\"(" + samples.getLockOwnerId(i) + ")";
+						Integer ownerCount = contention.owners.get(owner);
+						contention.owners.put(owner, (ownerCount == null) ? 1 : ownerCount+1);
+					}
+				}
+			}
+			if(sampleCount < 1 && !showEmptyThread) {
+				continue;
+			}
+			StringBuilder timeline = new StringBuilder(STATE_TIMELINE_WIDTH);
+			for(int c = 0; c < STATE_TIMELINE_WIDTH; c++) {
+				int best = -1;
+				for(int st = 0; st < states.length; st++) {
+					if(columnCounts[c][st] > 0 && (best < 0 || columnCounts[c][st] > columnCounts[c][best] || (columnCounts[c][st] == columnCounts[c][best] && STATE_PRIORITY[st] > STATE_PRIORITY[best]))) {
+						best = st;
+					}
+				}
+				timeline.append((best < 0) ? '.' : STATE_CHARS[best]);
+			}
+			timelines.append(String.format("    tid [%5d] %-30s |%s| ", tid, "\"" + threadList.get(tid) + "\"", timeline.toString()));
+			for(int st = 0; st < states.length; st++) {
+				if(counts[st] > 0) {
+					timelines.append(String.format(" %c %5.1f%%", STATE_CHARS[st], counts[st] * 100D / sampleCount));
+				}
+				totalCounts[st] += counts[st];
+			}
+			timelines.append("\n");
+		}
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("State timeline of the recorded data.\n\n");
+		sb.append("  - Time Range : " + formatAbsoluteStackTraceTimeRange(viewStart, viewEnd) + " (" + columnMS + "ms per column)\n");
+		sb.append("  - Legend     : ");
+		for(int st = 0; st < states.length; st++) {
+			sb.append(STATE_CHARS[st] + "=" + states[st].name() + "  ");
+		}
+		sb.append(".=no sample\n");
+		int total = 0;
+		for(int count : totalCounts) {
+			total += count;
+		}
+		sb.append("  - Overall    : " + total + " samples");
+		for(int st = 0; st < states.length; st++) {
+			if(totalCounts[st] > 0) {
+				sb.append(String.format(", %s %.1f%%", states[st].name(), totalCounts[st] * 100D / total));
+			}
+		}
+		sb.append("\n\n");
+		sb.append(timelines);
+
+		List<LockContention> contentions = new ArrayList<LockContention>(contentionMap.values());
+		Collections.sort(contentions, new Comparator<LockContention>() {
+			public int compare(LockContention o1, LockContention o2) {
+				if(o1.blockedCount != o2.blockedCount) {
+					return (o2.blockedCount > o1.blockedCount) ? 1 : -1;
+				}
+				if(o1.waitingCount != o2.waitingCount) {
+					return (o2.waitingCount > o1.waitingCount) ? 1 : -1;
+				}
+				return o1.lockName.compareTo(o2.lockName);
+			}
+		});
+		sb.append("\n  - Contention : " + ((contentions.size() > 0) ? contentions.size() + " lock(s)" + ((contentions.size() > STATE_CONTENTION_TOP) ? ", top " + STATE_CONTENTION_TOP : "") : "none") + "\n");
+		if(contentions.size() > 0) {
+			sb.append(String.format("    %-60s %8s %10s %8s %8s  %s\n", "Lock", "Blocked", "Blocked_ms", "Waiting", "Threads", "Owners(Count)"));
+			for(int i = 0; i < contentions.size() && i < STATE_CONTENTION_TOP; i++) {
+				LockContention contention = contentions.get(i);
+				List<Entry<String,Integer>> owners = new ArrayList<Entry<String,Integer>>(contention.owners.entrySet());
+				Collections.sort(owners, new Comparator<Entry<String,Integer>>() {
+					public int compare(Entry<String,Integer> o1, Entry<String,Integer> o2) {
+						return o2.getValue().compareTo(o1.getValue());
+					}
+				});
+				StringBuilder ownerStr = new StringBuilder();
+				for(int j = 0; j < owners.size() && j < 3; j++) {
+					ownerStr.append((j > 0) ? ", " : "").append(owners.get(j).getKey()).append(" ").append(owners.get(j).getValue());
+				}
+				if(owners.size() > 3) {
+					ownerStr.append(", ... (" + owners.size() + " owners)");
+				}
+				sb.append(String.format("    %-60s %8d %10d %8d %8d  %s\n", contention.lockName, contention.blockedCount, contention.blockedTime, contention.waitingCount, contention.waiters.size(), (ownerStr.length() > 0) ? ownerStr.toString() : "N/A"));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Lock 경합을 wait-for 그래프로 분석한다.<br/>
+	 * BLOCKED 샘플과 소유 스레드가 있는 Lock을 기다리는 WAITING 샘플을 간선(대기 스레드 -> 소유 스레드)으로 보고,
+	 * Lock별 대기 시간은 샘플 사이의 BlockedTime 증가량을 현재(BLOCKED가 아니면 직전) 샘플이 기다리던 Lock에 배분한다.
+	 * 같은 tick의 간선들로 순환을 찾아 deadlock으로 보여준다. 순환은 ThreadList와 관계없이 모든 스레드로 찾는다.
+	 */
+	private String getLockString(List<Long> targetThreadList, long from, long to, int topN) {
+		Map<String,LockWaitStat> statMap = new HashMap<String,LockWaitStat>();
+		Map<String,WaitForEdge> edgeMap = new HashMap<String,WaitForEdge>();
+		Map<Long,Map<Long,Long>> waitForByTick = new HashMap<Long,Map<Long,Long>>();
+		Map<Long,Map<Long,String>> lockByTick = new HashMap<Long,Map<Long,String>>();
+		Map<Long,List<OwnerStackLookup>> ownerStackLookups = new HashMap<Long,List<OwnerStackLookup>>();
+		boolean hasBlockedTime = false;
+		long unattributedTime = 0L;
+		for(Long tid : sampleStore.getThreadIds()) {
+			boolean target = targetThreadList.contains(tid);
+			RecordSampleList samples = getSamples(tid);
+			if(samples == null) {
+				continue;
+			}
+			long prevBlockedTime = -1L;
+			long prevBlockedCount = -1L;
+			String prevBlockedLock = null;
+			for(int i = 0; i < samples.size(); i++) {
+				long blockedTime = samples.getBlockedTime(i);
+				long blockedCount = samples.getBlockedCount(i);
+				String stateName = samples.getThreadState(i);
+				String lockName = samples.getLockName(i);
+				long ownerId = samples.getLockOwnerId(i);
+				boolean blocked = "BLOCKED".equals(stateName);
+				boolean ownedWait = ("WAITING".equals(stateName) || "TIMED_WAITING".equals(stateName)) && ownerId > -1L;
+				long startTime = samples.getStartTime(i);
+				boolean inRange = !((from > -1L && from > startTime) || (to > -1L && to < samples.getEndTime(i)));
+				if(inRange && lockName != null && (blocked || ownedWait) && ownerId > -1L) {
+					Map<Long,Long> waitFor = waitForByTick.get(startTime);
+					if(waitFor == null) {
+						waitFor = new HashMap<Long,Long>();
+						waitForByTick.put(startTime, waitFor);
+						lockByTick.put(startTime, new HashMap<Long,String>());
+					}
+					waitFor.put(tid, ownerId);
+					lockByTick.get(startTime).put(tid, lockName);
+				}
+				if(inRange && target) {
+					if(lockName != null && (blocked || ownedWait)) {
+						LockWaitStat stat = getLockWaitStat(statMap, lockName);
+						if(blocked) {
+							stat.blockedSamples++;
+							stat.sampledTime += getSampleTime(samples, i, samples.getEndTime(i)-startTime);
+						} else {
+							stat.waitingSamples++;
+						}
+						stat.waiters.add(tid);
+						if(ownerId > -1L) {
+							Integer ownerCount = stat.owners.get(ownerId);
+							stat.owners.put(ownerId, (ownerCount == null) ? 1 : ownerCount+1);
+							if(!result.stateOnly) {
+								List<OwnerStackLookup> lookups = ownerStackLookups.get(ownerId);
+								if(lookups == null) {
+									lookups = new ArrayList<OwnerStackLookup>();
+									ownerStackLookups.put(ownerId, lookups);
+								}
+								lookups.add(new OwnerStackLookup(stat, startTime));
+							}
+							String edgeKey = tid + ">" + ownerId + ">" + lockName;
+							WaitForEdge edge = edgeMap.get(edgeKey);
+							if(edge == null) {
+								edge = new WaitForEdge(tid, ownerId, lockName, startTime);
+								edgeMap.put(edgeKey, edge);
+							}
+							edge.count++;
+							edge.lastTime = startTime;
+						}
+					}
+					if(blockedTime > -1L && prevBlockedTime > -1L && blockedTime >= prevBlockedTime) {
+						hasBlockedTime = true;
+						long delta = blockedTime - prevBlockedTime;
+						String blockedLock = (blocked && lockName != null) ? lockName : prevBlockedLock;
+						if(blockedLock != null) {
+							LockWaitStat stat = getLockWaitStat(statMap, blockedLock);
+							stat.blockedTime += delta;
+							stat.blockedCount += Math.max(0L, blockedCount - prevBlockedCount);
+						} else {
+							unattributedTime += delta;
+						}
+					}
+				}
+				prevBlockedTime = blockedTime;
+				prevBlockedCount = blockedCount;
+				prevBlockedLock = (blocked && lockName != null) ? lockName : null;
+			}
+		}
+		addOwnerStacks(ownerStackLookups);
+
+		List<LockCycle> cycles = findLockCycles(waitForByTick, lockByTick);
+		long viewStart = (from > -1L) ? from : result.startTime;
+		long viewEnd = (to > -1L) ? to : result.endTime;
+		StringBuilder sb = new StringBuilder();
+		sb.append("Lock contention of the recorded data.\n\n");
+		sb.append("  - Time Range   : " + formatAbsoluteStackTraceTimeRange(viewStart, viewEnd) + "\n");
+		sb.append("  - Blocked Time : " + (hasBlockedTime ? "delta of the thread BlockedTime between samples" : "estimated from BLOCKED samples (ThreadContentionMonitoring is disabled)") + "\n");
+		if(hasBlockedTime && unattributedTime > 0L) {
+			sb.append("                   " + unattributedTime + "ms blocked between samples on unknown lock(s)\n");
+		}
+
+		final boolean byBlockedTime = hasBlockedTime;
+		List<LockWaitStat> stats = new ArrayList<LockWaitStat>(statMap.values());
+		Collections.sort(stats, new Comparator<LockWaitStat>() {
+			public int compare(LockWaitStat o1, LockWaitStat o2) {
+				int c = byBlockedTime ? Long.compare(o2.blockedTime, o1.blockedTime) : 0;
+				if(c == 0) c = Long.compare(o2.sampledTime, o1.sampledTime);
+				if(c == 0) c = Integer.compare(o2.waitingSamples, o1.waitingSamples);
+				return (c != 0) ? c : o1.lockName.compareTo(o2.lockName);
+			}
+		});
+		sb.append("\n  - Monitors : " + ((stats.size() > 0) ? stats.size() + " lock(s)" + ((stats.size() > topN) ? ", top " + topN : "") : "none") + "\n");
+		if(stats.size() > 0) {
+			sb.append(String.format("    %-60s %10s %8s %10s %8s %8s %8s  %s\n", "Lock", "Blocked_ms", "Enter", "Sampled_ms", "Blocked", "Waiting", "Threads", "Owners(Count)"));
+			for(int i = 0; i < stats.size() && i < topN; i++) {
+				LockWaitStat stat = stats.get(i);
+				sb.append(String.format("    %-60s %10s %8s %10d %8d %8d %8d  %s\n", stat.lockName, hasBlockedTime ? String.valueOf(stat.blockedTime) : "N/A", hasBlockedTime ? String.valueOf(stat.blockedCount) : "N/A", stat.sampledTime, stat.blockedSamples, stat.waitingSamples, stat.waiters.size(), getLockOwnersString(stat)));
+			}
+			int shown = 0;
+			for(int i = 0; i < stats.size() && i < topN && shown < LOCK_OWNER_STACK_TOP; i++) {
+				String ownerStack = getLockOwnerStackString(stats.get(i));
+				if(ownerStack != null) {
+					sb.append((shown == 0) ? "\n  - Owner Stack at Contention (most sampled)\n" : "");
+					sb.append(ownerStack);
+					shown++;
+				}
+			}
+		}
+
+		List<WaitForEdge> edges = new ArrayList<WaitForEdge>(edgeMap.values());
+		Collections.sort(edges, new Comparator<WaitForEdge>() {
+			public int compare(WaitForEdge o1, WaitForEdge o2) {
+				int c = Integer.compare(o2.count, o1.count);
+				if(c == 0) c = Long.compare(o1.waiter, o2.waiter);
+				return (c != 0) ? c : Long.compare(o1.owner, o2.owner);
+			}
+		});
+		sb.append("\n  - Wait-for Edges : " + ((edges.size() > 0) ? edges.size() + " edge(s)" + ((edges.size() > topN) ? ", top " + topN : "") : "none") + "\n");
+		for(int i = 0; i < edges.size() && i < topN; i++) {
+			WaitForEdge edge = edges.get(i);
+			sb.append(String.format("    %-30s -> %-30s %5d sample(s) +%dms ~ +%dms  on %s\n", getLockThreadString(edge.waiter), getLockThreadString(edge.owner), edge.count, edge.firstTime - result.startTime, edge.lastTime - result.startTime, edge.lockName));
+		}
+
+		sb.append("\n  - Deadlock : " + ((cycles.size() > 0) ? cycles.size() + " cycle(s) found" : "none") + "\n");
+		for(LockCycle cycle : cycles) {
+			sb.append("    . " + cycle.tickCount + " tick(s) +" + (cycle.firstTime - result.startTime) + "ms ~ +" + (cycle.lastTime - result.startTime) + "ms\n");
+			for(int i = 0; i < cycle.threadIds.length; i++) {
+				long next = cycle.threadIds[(i+1) % cycle.threadIds.length];
+				sb.append("        " + getLockThreadString(cycle.threadIds[i]) + " waits " + cycle.lockNames[i] + " held by " + getLockThreadString(next) + "\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static LockWaitStat getLockWaitStat(Map<String,LockWaitStat> statMap, String lockName) {
+		LockWaitStat stat = statMap.get(lockName);
+		if(stat == null) {
+			stat = new LockWaitStat(lockName);
+			statMap.put(lockName, stat);
+		}
+		return stat;
+	}
+
+	/**
+	 * 경합 시점의 소유 스레드 스택을 찾아 {@link LockWaitStat#ownerStacks}에 더한다. 소유 스레드의 샘플은 뷰마다 한 번만 읽는다.
+	 */
+	private void addOwnerStacks(Map<Long,List<OwnerStackLookup>> ownerStackLookups) {
+		for(Entry<Long,List<OwnerStackLookup>> entry : ownerStackLookups.entrySet()) {
+			long ownerId = entry.getKey();
+			RecordThreadSamples samples = sampleStore.getThreadSamples(ownerId);
+			if(samples == null) {
+				continue;
+			}
+			for(OwnerStackLookup lookup : entry.getValue()) {
+				int ownerStackId = findStackIdAt(samples, lookup.time);
+				if(ownerStackId > -1) {
+					String key = ownerId + ":" + ownerStackId;
+					Integer stackCount = lookup.stat.ownerStacks.get(key);
+					lookup.stat.ownerStacks.put(key, (stackCount == null) ? 1 : stackCount+1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 스레드의 샘플 중 시작 시간이 time인(같은 tick) 샘플의 stack id
+	 * @return 해당하는 샘플이 없으면 -1
+	 */
+	private int findStackIdAt(RecordThreadSamples samples, long time) {
+		int idx = samples.indexOfStartTime(time);
+		return (idx < samples.size() && samples.getStartTime(idx) == time) ? samples.getStackId(idx) : -1;
+	}
+
+	/**
+	 * tick별 wait-for 간선에서 순환을 찾는다. 같은 스레드/Lock으로 이루어진 순환은 하나로 합친다.
+	 */
+	private static List<LockCycle> findLockCycles(Map<Long,Map<Long,Long>> waitForByTick, Map<Long,Map<Long,String>> lockByTick) {
+		Map<String,LockCycle> cycleMap = new LinkedHashMap<String,LockCycle>();
+		List<Long> ticks = new ArrayList<Long>(waitForByTick.keySet());
+		Collections.sort(ticks);
+		for(Long tick : ticks) {
+			Map<Long,Long> waitFor = waitForByTick.get(tick);
+			Map<Long,String> locks = lockByTick.get(tick);
+			Set<Long> visited = new HashSet<Long>();
+			for(Long start : waitFor.keySet()) {
+				if(visited.contains(start)) {
+					continue;
+				}
+				List<Long> path = new ArrayList<Long>();
+				Long current = start;
+				while(current != null && !visited.contains(current)) {
+					visited.add(current);
+					path.add(current);
+					current = waitFor.get(current);
+				}
+				int cycleStart = (current == null) ? -1 : path.indexOf(current);
+				if(cycleStart < 0) {
+					continue;
+				}
+				// 가장 작은 스레드 ID부터 시작하도록 회전한다.
+				List<Long> cyclePath = path.subList(cycleStart, path.size());
+				int minIdx = cyclePath.indexOf(Collections.min(cyclePath));
+				long[] threadIds = new long[cyclePath.size()];
+				String[] lockNames = new String[cyclePath.size()];
+				StringBuilder key = new StringBuilder();
+				for(int i = 0; i < threadIds.length; i++) {
+					threadIds[i] = cyclePath.get((minIdx + i) % threadIds.length);
+					lockNames[i] = locks.get(threadIds[i]);
+					key.append(threadIds[i]).append('>').append(lockNames[i]).append('>');
+				}
+				LockCycle cycle = cycleMap.get(key.toString());
+				if(cycle == null) {
+					cycle = new LockCycle(threadIds, lockNames, tick);
+					cycleMap.put(key.toString(), cycle);
+				}
+				cycle.tickCount++;
+				cycle.lastTime = tick;
+			}
+		}
+		return new ArrayList<LockCycle>(cycleMap.values());
+	}
+
+	private String getLockThreadString(long threadId) {
+		String name = sampleStore.getThreadName(threadId);
+		return "\"" + ((name == null) ? "?" : name) + "\"(" + threadId + ")";
+	}
+
+	private String getLockOwnersString(LockWaitStat stat) {
+		List<Entry<Long,Integer>> owners = new ArrayList<Entry<Long,Integer>>(stat.owners.entrySet());
+		Collections.sort(owners, new Comparator<Entry<Long,Integer>>() {
+			public int compare(Entry<Long,Integer> o1, Entry<Long,Integer> o2) {
+				return o2.getValue().compareTo(o1.getValue());
+			}
+		});
+		StringBuilder ownerStr = new StringBuilder();
+		for(int j = 0; j < owners.size() && j < 3; j++) {
+			ownerStr.append((j > 0) ? ", " : "").append(getLockThreadString(owners.get(j).getKey())).append(" ").append(owners.get(j).getValue());
+		}
+		if(owners.size() > 3) {
+			ownerStr.append(", ... (" + owners.size() + " owners)");
+		}
+		return (ownerStr.length() > 0) ? ownerStr.toString() : "N/A";
+	}
+
+	/**
+	 * Lock을 기다리는 샘플에서 가장 많이 확인된 소유 스레드의 스택
+	 * @return 소유 스레드의 샘플이 없으면 null
+	 */
+	private String getLockOwnerStackString(LockWaitStat stat) {
+		String bestKey = null;
+		int bestCount = 0;
+		int total = 0;
+		for(Entry<String,Integer> entry : stat.ownerStacks.entrySet()) {
+			total += entry.getValue();
+			if(entry.getValue() > bestCount || (entry.getValue() == bestCount && entry.getKey().compareTo(bestKey) < 0)) {
+				bestKey = entry.getKey();
+				bestCount = entry.getValue();
+			}
+		}
+		if(bestKey == null) {
+			return null;
+		}
+		long ownerId = Long.parseLong(bestKey.substring(0, bestKey.indexOf(':')));
+		int stackId = Integer.parseInt(bestKey.substring(bestKey.indexOf(':')+1));
+		StringBuilder sb = new StringBuilder();
+		sb.append("    . " + stat.lockName + " : held by " + getLockThreadString(ownerId) + " (" + bestCount + "/" + total + " sample(s))\n");
+		int[] frameIds = stackTable.getStackFrameIds(stackId);
+		for(int i = 0; i < frameIds.length && i < LOCK_OWNER_STACK_DEPTH; i++) {
+			sb.append("         at " + stackTable.getFrame(frameIds[i]).toString() + "\n");
+		}
+		if(frameIds.length > LOCK_OWNER_STACK_DEPTH) {
+			sb.append("         ... " + (frameIds.length - LOCK_OWNER_STACK_DEPTH) + " more\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 스레드별 CPU 사용률/할당 속도 시계열을 출력용 문자열로 만든다.<br/>
+	 * 스레드별 요약(평균/최대값과 sparkline)을 전체 CPU 시간 순으로 보여주고, 구간별로 CPU 사용률과 할당 속도 상위 topN 스레드를 보여준다.
+	 * @param threadIds 출력할 스레드. null이면 모든 스레드
+	 */
+	public static String getResourceSeriesString(RecordResourceSeries series, Collection<Long> threadIds, int topN) {
+		StringBuilder sb = new StringBuilder();
+		int intervals = series.getIntervalCount();
+		if(intervals < 1) {
+			return "No resource interval recorded.";
+		}
+		final List<Integer> targets = new ArrayList<Integer>();
+		for(int t = 0; t < series.getThreadCount(); t++) {
+			if(threadIds == null || threadIds.contains(series.getThreadId(t))) {
+				targets.add(t);
+			}
+		}
+		boolean hasCpu = series.hasCpuTime();
+		boolean hasAlloc = series.hasAllocBytes();
+		final double[] cpuSum = new double[series.getThreadCount()];
+		double[] cpuMax = new double[series.getThreadCount()];
+		double[] allocSum = new double[series.getThreadCount()];
+		double[] allocMax = new double[series.getThreadCount()];
+		int[] validCount = new int[series.getThreadCount()];
+		for(int t : targets) {
+			for(int i = 1; i <= intervals; i++) {
+				double cpu = series.getCpuPercent(t, i);
+				double alloc = series.getAllocRate(t, i);
+				if(cpu < 0 && alloc < 0) {
+					continue;
+				}
+				validCount[t]++;
+				cpuSum[t] += Math.max(cpu, 0D);
+				cpuMax[t] = Math.max(cpuMax[t], cpu);
+				allocSum[t] += Math.max(alloc, 0D);
+				allocMax[t] = Math.max(allocMax[t], alloc);
+			}
+		}
+		Collections.sort(targets, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return Double.compare(cpuSum[o2], cpuSum[o1]);
+			}
+		});
+		long intervalMS = (series.getTime(intervals) - series.getTime(0)) / intervals;
+		sb.append("Resource usage per interval of " + targets.size() + " threads. (" + intervals + " intervals, about " + intervalMS + "ms each, CPU% of one core)\n\n");
+		sb.append("  - Time Range : " + DateUtil.dateToString(STACK_TRACE_ABS_TIME_FORMAT, new Date(series.getTime(0))) + " ~ " + DateUtil.dateToString(STACK_TRACE_ABS_TIME_FORMAT, new Date(series.getTime(intervals))) + "\n");
+		sb.append("  - Sparkline  : '" + SPARKLINE_CHARS.charAt(0) + "' is zero and '" + SPARKLINE_CHARS.charAt(SPARKLINE_CHARS.length()-1) + "' is the maximum of the thread, " + ((intervals + SPARKLINE_WIDTH - 1) / SPARKLINE_WIDTH) + " interval(s) per column\n\n");
+		for(int t : targets) {
+			String thrStr = "\"" + StringUtil.shortenStringWithSuffix(series.getThreadName(t), 28, "...") + "\"";
+			sb.append(String.format("    tid [%5d] %-30s", series.getThreadId(t), thrStr));
+			if(validCount[t] < 1) {
+				sb.append(" : no data (terminated or changed)\n");
+				continue;
+			}
+			if(hasCpu) {
+				sb.append(String.format(" CPU avg %5.1f%% max %5.1f%% |%s|", cpuSum[t] / validCount[t], cpuMax[t], getSparkline(series, t, true)));
+			}
+			if(hasAlloc) {
+				sb.append(String.format(" Alloc avg %9s max %9s |%s|", FileUtil.humanReadableSize((long)(allocSum[t] / validCount[t])) + "/s", FileUtil.humanReadableSize((long)allocMax[t]) + "/s", getSparkline(series, t, false)));
+			}
+			sb.append("\n");
+		}
+		if(topN < 1) {
+			return sb.toString();
+		}
+		sb.append("\n  - Top " + topN + " per interval\n");
+		for(int i = 1; i <= intervals; i++) {
+			sb.append(String.format("    +%-8s", (series.getTime(i) - series.getTime(0)) + "ms"));
+			if(hasCpu) {
+				sb.append(" CPU " + getIntervalRanking(series, targets, i, topN, true));
+			}
+			if(hasAlloc) {
+				sb.append((hasCpu ? " |" : "") + " Alloc " + getIntervalRanking(series, targets, i, topN, false));
+			}
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	private static String getIntervalRanking(final RecordResourceSeries series, List<Integer> targets, final int i, int topN, final boolean cpu) {
+		List<Integer> ranked = new ArrayList<Integer>(targets);
+		Collections.sort(ranked, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				return cpu ? Double.compare(series.getCpuPercent(o2, i), series.getCpuPercent(o1, i)) : Double.compare(series.getAllocRate(o2, i), series.getAllocRate(o1, i));
+			}
+		});
+		double total = 0D;
+		for(int t : targets) {
+			total += Math.max(cpu ? series.getCpuPercent(t, i) : series.getAllocRate(t, i), 0D);
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append(cpu ? String.format("%6.1f%%", total) : String.format("%9s", FileUtil.humanReadableSize((long)total) + "/s"));
+		sb.append(" :");
+		for(int r = 0; r < ranked.size() && r < topN; r++) {
+			int t = ranked.get(r);
+			double value = cpu ? series.getCpuPercent(t, i) : series.getAllocRate(t, i);
+			if(value <= 0D) {
+				break;
+			}
+			sb.append((r > 0) ? ", " : " ").append(StringUtil.shortenStringWithSuffix(series.getThreadName(t), 20, "...")).append(" ");
+			sb.append(cpu ? String.format("%.1f%%", value) : FileUtil.humanReadableSize((long)value) + "/s");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 스레드의 구간별 값을 sparkline 문자열로 만든다. 구간이 많으면 여러 구간의 평균을 한 컬럼으로 표시한다.
+	 */
+	private static String getSparkline(RecordResourceSeries series, int t, boolean cpu) {
+		int intervals = series.getIntervalCount();
+		int perColumn = (intervals + SPARKLINE_WIDTH - 1) / SPARKLINE_WIDTH;
+		int columns = (intervals + perColumn - 1) / perColumn;
+		double[] values = new double[columns];
+		double max = 0D;
+		for(int c = 0; c < columns; c++) {
+			double sum = 0D;
+			int count = 0;
+			for(int i = c * perColumn + 1; i <= Math.min(intervals, (c+1) * perColumn); i++) {
+				double value = cpu ? series.getCpuPercent(t, i) : series.getAllocRate(t, i);
+				if(value >= 0D) {
+					sum += value;
+					count++;
+				}
+			}
+			values[c] = (count > 0) ? sum / count : -1D;
+			max = Math.max(max, values[c]);
+		}
+		StringBuilder sb = new StringBuilder(columns);
+		for(double value : values) {
+			if(value < 0D) {
+				sb.append(' ');
+			} else {
+				int level = (max <= 0D) ? 0 : (int)Math.round(value / max * (SPARKLINE_CHARS.length()-1));
+				sb.append(SPARKLINE_CHARS.charAt(level));
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 샘플별 추정 할당 바이트를 메소드별로 집계하여 초당 할당 바이트 순으로 보여준다.<br/>
+	 * Self는 스택의 가장 안쪽(leaf) 메소드에, Total은 스택에 포함된 모든 메소드에 배분한 값이다. 재귀 호출은 스택당 한번만 더한다.
+	 */
+	private String getAllocString(List<Long> targetThreadList, long from, long to, boolean bySelf, int topN) {
+		Map<String,AllocHotSpot> spots = new HashMap<String,AllocHotSpot>();
+		String[] methodKeys = new String[stackTable.getFrameCount()];
+		long totalBytes = 0L;
+		int threadCount = 0;
+		for(Long tid : sampleStore.getThreadIds()) {
+			if(!targetThreadList.contains(tid)) {
+				continue;
+			}
+			RecordSampleList samples = getSamples(tid, from, to);
+			if(samples == null) {
+				continue;
+			}
+			threadCount++;
+			for(StackHit stackHit : aggregateByStack(samples, from, to)) {
+				if(stackHit.allocBytes < 1L) {
+					continue;
+				}
+				totalBytes += stackHit.allocBytes;
+				int[] frameIds = stackTable.getStackFrameIds(stackHit.stackId);
+				Set<String> counted = new HashSet<String>();
+				for(int i = 0; i < frameIds.length; i++) {
+					StackTraceElement el = stackTable.getFrame(frameIds[i]);
+					if(RecordStackTable.isTruncatedFrame(el)) {
+						continue;
+					}
+					String key = methodKeys[frameIds[i]];
+					if(key == null) {
+						key = el.getClassName() + "." + el.getMethodName() + "()";
+						methodKeys[frameIds[i]] = key;
+					}
+					AllocHotSpot spot = spots.get(key);
+					if(spot == null) {
+						spot = new AllocHotSpot(key);
+						spots.put(key, spot);
+					}
+					if(i == 0) {
+						spot.selfBytes += stackHit.allocBytes;
+						spot.selfCount += stackHit.count;
+					}
+					if(counted.add(key)) {
+						spot.totalBytes += stackHit.allocBytes;
+						spot.totalCount += stackHit.count;
+						spot.threads.add(tid);
+					}
+				}
+			}
+		}
+		if(spots.size() < 1) {
+			return "No allocation data.";
+		}
+		long duration = (from > -1L && to > -1L) ? (to - from) : (result.endTime - result.startTime);
+		double seconds = Math.max(duration, 1L) / 1000D;
+		final boolean self = bySelf;
+		List<AllocHotSpot> spotList = new ArrayList<AllocHotSpot>(spots.values());
+		Collections.sort(spotList, new Comparator<AllocHotSpot>() {
+			public int compare(AllocHotSpot o1, AllocHotSpot o2) {
+				int c = self ? Long.compare(o2.selfBytes, o1.selfBytes) : Long.compare(o2.totalBytes, o1.totalBytes);
+				if(c == 0) c = self ? Long.compare(o2.totalBytes, o1.totalBytes) : Long.compare(o2.selfBytes, o1.selfBytes);
+				return (c != 0) ? c : o1.method.compareTo(o2.method);
+			}
+		});
+		StringBuilder sb = new StringBuilder();
+		sb.append("Allocation hot spots of " + threadCount + " thread(s). (estimated " + FileUtil.humanReadableSize(totalBytes) + " in " + duration + "ms, " + FileUtil.humanReadableSize((long)(totalBytes / seconds)) + "/s, sorted by " + (self ? "self" : "total") + " bytes)\n\n");
+		sb.append(String.format("    [%8s](%9s)(%11s) [%8s](%9s)(%11s) [%4s]   %s\n", "Self%", "Self", "Self/s", "Total%", "Total", "Total/s", "ThrC", "Class/Method"));
+		int rankCount = 0;
+		for(AllocHotSpot spot : spotList) {
+			if((self ? spot.selfBytes : spot.totalBytes) > 0L) rankCount++;
+		}
+		for(int r = 0; r < rankCount && r < topN; r++) {
+			AllocHotSpot spot = spotList.get(r);
+			sb.append(String.format("    [%8s](%9s)(%11s) [%8s](%9s)(%11s) [%4d]   %s\n",
+				NumberUtil.numberToString((double)spot.selfBytes/totalBytes*100, "0.000'%'"), FileUtil.humanReadableSize(spot.selfBytes), FileUtil.humanReadableSize((long)(spot.selfBytes / seconds)) + "/s",
+				NumberUtil.numberToString((double)spot.totalBytes/totalBytes*100, "0.000'%'"), FileUtil.humanReadableSize(spot.totalBytes), FileUtil.humanReadableSize((long)(spot.totalBytes / seconds)) + "/s",
+				spot.threads.size(), spot.method));
+		}
+		if(rankCount > topN) {
+			sb.append("    ... " + (rankCount - topN) + " more method(s). (use '--top N')\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 스레드 생성/종료 이력을 출력용 문자열로 만든다.<br/>
+	 * 생성/종료 수와 초당 생성 수, 레코딩 중에 생성되어 종료된(short-lived) 스레드의 생존 시간을 보여주고,
+	 * 이름 패턴별 집계와 생성되거나 종료된 스레드 목록을 사용량(CPU 시간, 없으면 할당 바이트) 순으로 보여준다.
+	 */
+	public static String getThreadChurnString(final RecordThreadChurn churn) {
+		StringBuilder sb = new StringBuilder();
+		long duration = churn.endTime - churn.startTime;
+		double seconds = Math.max(duration, 1L) / 1000D;
+		int born = churn.getBornCount();
+		int died = churn.getDiedCount();
+		long started = churn.getStartedCount();
+		final boolean hasCpu = churn.hasCpuTime();
+		boolean hasAlloc = churn.hasAllocBytes();
+		int shortLived = 0;
+		long lifetimeSum = 0L;
+		long lifetimeMax = 0L;
+		Map<String,ChurnGroup> groups = new HashMap<String,ChurnGroup>();
+		final List<Integer> changed = new ArrayList<Integer>();
+		for(int i = 0; i < churn.size(); i++) {
+			if(!churn.isBorn(i) && !churn.isDead(i)) {
+				continue;
+			}
+			changed.add(i);
+			String pattern = getChurnThreadName(churn, i).replaceAll("[0-9]+", "#");
+			ChurnGroup group = groups.get(pattern);
+			if(group == null) {
+				group = new ChurnGroup(pattern);
+				groups.put(pattern, group);
+			}
+			if(churn.isBorn(i)) group.bornCount++;
+			if(churn.isDead(i)) group.diedCount++; else group.aliveCount++;
+			long lifetime = churn.getLifetime(i);
+			if(lifetime > -1L) {
+				shortLived++;
+				lifetimeSum += lifetime;
+				lifetimeMax = Math.max(lifetimeMax, lifetime);
+				group.lifetimeCount++;
+				group.lifetimeSum += lifetime;
+			}
+			if(churn.getCpuTime(i) > -1L) group.cpuTime = Math.max(group.cpuTime, 0L) + churn.getCpuTime(i);
+			if(churn.getAllocBytes(i) > -1L) group.allocBytes = Math.max(group.allocBytes, 0L) + churn.getAllocBytes(i);
+		}
+		sb.append("Thread churn during recording. (" + duration + "ms, checked by AllThreadIds every " + ThreadChurnTracker.POLL_INTERVAL_MS + "ms or longer interval)\n\n");
+		sb.append("  - Thread Count : " + churn.startThreadCount + " at start, " + churn.endThreadCount + " at end, " + churn.maxThreadCount + " at most\n");
+		sb.append(String.format("  - Started      : %d threads (%.2f/s), %d observed", started, started / seconds, born));
+		if(started > born) {
+			sb.append(", " + (started - born) + " started and terminated between checks");
+		}
+		sb.append("\n");
+		sb.append(String.format("  - Terminated   : %d threads (%.2f/s)\n", died, died / seconds));
+		if(shortLived > 0) {
+			sb.append("  - Short-lived  : " + shortLived + " threads started and terminated during recording, lifetime avg " + (lifetimeSum / shortLived) + "ms, max " + lifetimeMax + "ms\n");
+		}
+		if(changed.size() < 1) {
+			return sb.toString();
+		}
+		List<ChurnGroup> groupList = new ArrayList<ChurnGroup>(groups.values());
+		Collections.sort(groupList, new Comparator<ChurnGroup>() {
+			public int compare(ChurnGroup o1, ChurnGroup o2) {
+				int c = Integer.compare(o2.bornCount + o2.diedCount, o1.bornCount + o1.diedCount);
+				return (c != 0) ? c : o1.pattern.compareTo(o2.pattern);
+			}
+		});
+		sb.append("  - Name Pattern (" + groupList.size() + " patterns, digits replaced by '#')\n");
+		for(int g = 0; g < groupList.size() && g < CHURN_LIST_TOP; g++) {
+			ChurnGroup group = groupList.get(g);
+			String patternStr = "\"" + StringUtil.shortenStringWithSuffix(group.pattern, 38, "...") + "\"";
+			sb.append(String.format("      . %-40s : Started=%d, Terminated=%d, Alive=%d", patternStr, group.bornCount, group.diedCount, group.aliveCount));
+			sb.append(", Lifetime=" + (group.lifetimeCount > 0 ? (group.lifetimeSum / group.lifetimeCount) + "ms" : "N/A"));
+			if(hasCpu) sb.append(", CpuTime=" + (group.cpuTime < 0 ? "N/A" : (group.cpuTime / 1000000L) + "ms"));
+			if(hasAlloc) sb.append(", AllocatedBytes=" + (group.allocBytes < 0 ? "N/A" : FileUtil.humanReadableSize(group.allocBytes)));
+			sb.append("\n");
+		}
+		Collections.sort(changed, new Comparator<Integer>() {
+			public int compare(Integer o1, Integer o2) {
+				int c = hasCpu ? Long.compare(churn.getCpuTime(o2), churn.getCpuTime(o1)) : Long.compare(churn.getAllocBytes(o2), churn.getAllocBytes(o1));
+				return (c != 0) ? c : Integer.compare(o1, o2);
+			}
+		});
+		sb.append("  - Started or Terminated Threads (" + Math.min(changed.size(), CHURN_LIST_TOP) + " / " + changed.size() + (hasCpu || hasAlloc ? ", by usage" : "") + ")\n");
+		for(int r = 0; r < changed.size() && r < CHURN_LIST_TOP; r++) {
+			int i = changed.get(r);
+			String thrStr = "\"" + StringUtil.shortenStringWithSuffix(getChurnThreadName(churn, i), 38, "...") + "\"";
+			String birthStr = churn.isBorn(i) ? "+" + (churn.getBirthTime(i) - churn.startTime) + "ms" : "start";
+			String deathStr = churn.isDead(i) ? "+" + (churn.getDeathTime(i) - churn.startTime) + "ms" : "end";
+			sb.append(String.format("      . tid [%5d] %-40s : %-19s", churn.getThreadId(i), thrStr, birthStr + " ~ " + deathStr));
+			if(hasCpu) sb.append(", CpuTime=" + (churn.getCpuTime(i) < 0 ? "N/A" : (churn.getCpuTime(i) / 1000000L) + "ms"));
+			if(hasAlloc) sb.append(", AllocatedBytes=" + (churn.getAllocBytes(i) < 0 ? "N/A" : FileUtil.humanReadableSize(churn.getAllocBytes(i))));
+			sb.append("\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 스레드명을 가져오기 전에 종료된 스레드는 이름이 없다.
+	 */
+	private static String getChurnThreadName(RecordThreadChurn churn, int idx) {
+		String name = churn.getThreadName(idx);
+		return (name == null || name.length() < 1) ? "<terminated before named>" : name;
+	}
+
 	public String getInfoString() {
 		StringBuilder sb = new StringBuilder();		
 		sb.append("Information of the recorded data.\n\n");
@@ -1078,6 +2730,35 @@ public class RecordResultViewer {
 		sb.append("  - Record Duration : " + (result.endTime-result.startTime) + "ms\n");
 		sb.append("  - Record Interval : " + result.recordIntervalMS + "ms\n");
 		sb.append("  - Sample Count    : " + result.sampleCount + "\n");
+		if(result.stateOnly) {
+			sb.append("  - Record Type     : thread state only (no stacktrace)\n");
+		}
+		if(result.resourceSeries != null) {
+			sb.append("  - Resource Series : " + result.resourceSeries.getIntervalCount() + " intervals of " + result.resourceSeries.getThreadCount() + " threads (see 'record view resource')\n");
+		}
+		if(result.threadChurn != null) {
+			sb.append("  - Thread Churn    : " + result.threadChurn.getStartedCount() + " started, " + result.threadChurn.getDiedCount() + " terminated (see 'record view churn')\n");
+		}
+		if(result.tickStats != null && result.tickStats.tickCount > 0) {
+			appendTickStats(sb, result.tickStats);
+		}
+		boolean depthAdjusted = false;
+		if(result.adjustments != null) {
+			for(RecordAdjustment adjustment : result.adjustments) {
+				depthAdjusted |= (adjustment.maxStackDepth > 0 && adjustment.maxStackDepth != result.maxStackDepth);
+			}
+		}
+		if(result.maxStackDepth > 0 || depthAdjusted) {
+			String depthStr = (result.maxStackDepth < 1) ? "unlimited" : ((result.maxStackDepth == 1) ? "top frame only" : "leaf " + result.maxStackDepth + " frames");
+			sb.append("  - Stack Depth     : " + depthStr + (depthAdjusted ? ", reduced by adaptive sampling" : "") + " (truncated stacks are rooted at " + RecordStackTable.TRUNCATED_FRAME_CLASS + ", " + getTruncatedSampleCount() + " samples)\n");
+		}
+		if(result.adjustments != null) {
+			sb.append("  - Adaptive        : " + result.adjustments.size() + " adjustment(s)" + (result.adjustments.size() > 0 ? ", Time_ms of each sample follows the interval at that time" : "") + "\n");
+			for(RecordAdjustment adjustment : result.adjustments) {
+				String cpuStr = (adjustment.cpuLoad < 0) ? "N/A" : String.format("%.1f%%", adjustment.cpuLoad*100D);
+				sb.append(String.format("      . %s (+%dms) : level %d, interval=%dms, depth=%s, coverage=1/%d  <- %s (latency=%.1fms, cpu=%s)", DateUtil.dateToString(STACK_TRACE_ABS_TIME_FORMAT, new Date(adjustment.time)), adjustment.time-result.startTime, adjustment.level, adjustment.intervalMS, (adjustment.maxStackDepth < 1 ? "unlimited" : String.valueOf(adjustment.maxStackDepth)), adjustment.coverage, adjustment.reason, adjustment.latencyMS, cpuStr) + "\n");
+			}
+		}
 		sb.append("  - View Mode       : " + recordViewMode.name() + "\n");
 		if(recordViewMode == RecordViewMode.NO_REQUEST_WAIT) {
 			sb.append("  - View Stacktrace : " + getIncludedSampleCount() + " / " + getTotalSampleCount() + "\n");
@@ -1097,11 +2778,9 @@ public class RecordResultViewer {
 		sb.append("      . PID     : " + result.vmInfo.get("pid") + "\n");
 		sb.append("      . Name    : " + result.vmInfo.get("name") + "\n");
 		sb.append("      . TIME    : " + DateUtil.dateToString(STACK_TRACE_ABS_TIME_FORMAT, new Date(Long.parseLong(result.vmInfo.get("time")))) + "\n");
-		sb.append("  - Record Thread List (" + result.recordData.size() + " threads)\n");
-		for(Long id : new TreeSet<Long>(result.recordData.keySet())) {
-			List<RecordThreadInfo> threadInfoList = result.recordData.get(id);
-			if(threadInfoList != null && threadInfoList.size() > 0) {
-				RecordThreadInfo threadInfo = threadInfoList.get(0);
+		sb.append("  - Record Thread List (" + sampleStore.getThreadCount() + " threads)\n");
+		for(Long id : new TreeSet<Long>(sampleStore.getThreadIds())) {
+			if(sampleStore.getSampleCount(id) > 0) {
 				ResourceUsage resourceUsage = result.resourceData.get(id);
 				String thrStr = "\"" + StringUtil.shortenStringWithSuffix(resourceUsage.threadName, 38, "...") + "\"";
 				long totalCpu = resourceUsage.currCpu - resourceUsage.startCpu;
@@ -1114,7 +2793,7 @@ public class RecordResultViewer {
 				if(totalCpu > -1) {
 					memStr = String.valueOf(totalMem);
 				}
-				sb.append(String.format("      . tid [%5d] : %-40s : CpuTime=%-12s, AllocatedBytes=%s", threadInfo.getThreadId(), thrStr, cpuStr, memStr) + "\n");
+				sb.append(String.format("      . tid [%5d] : %-40s : CpuTime=%-12s, AllocatedBytes=%s", id, thrStr, cpuStr, memStr) + "\n");
 			}
 		}		
 		return sb.toString();
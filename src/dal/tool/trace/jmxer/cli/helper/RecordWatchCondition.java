@@ -0,0 +1,106 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import dal.tool.util.jmx.JMXUtil;
+
+/**
+ * REC WATCH의 트리거 조건<br/>
+ * "ObjectName/Attribute[.Key] Operator Threshold" 형태로 표현한다. ex) java.lang:type=Threading/ThreadCount>200<br/>
+ * Attribute 값이 CompositeData이면 Key로 항목을 지정하며(ex. java.lang:type=Memory/HeapMemoryUsage.used), 숫자 또는 boolean(1/0) 값만 비교할 수 있다.
+ */
+public class RecordWatchCondition {
+
+	private static final Pattern CONDITION_PATTERN = Pattern.compile("^(.+)/([^/]+?)\\s*(>=|<=|==|!=|>|<)\\s*([-+]?[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?)$");
+
+	private final String expression;
+	private final ObjectName objectName;
+	private final String attributeName;
+	private final String compositeKey;
+	private final String operator;
+	private final double threshold;
+	private double lastValue = Double.NaN;
+
+
+	private RecordWatchCondition(String expression, ObjectName objectName, String attributeName, String compositeKey, String operator, double threshold) {
+		this.expression = expression;
+		this.objectName = objectName;
+		this.attributeName = attributeName;
+		this.compositeKey = compositeKey;
+		this.operator = operator;
+		this.threshold = threshold;
+	}
+
+	public static RecordWatchCondition parse(String expression) throws Exception {
+		String expr = expression.trim();
+		Matcher matcher = CONDITION_PATTERN.matcher(expr);
+		if(!matcher.matches()) {
+			throw new Exception("Invalid watch condition : " + expression);
+		}
+		ObjectName oName = new ObjectName(matcher.group(1).trim());
+		if(oName.isPattern()) {
+			throw new Exception("ObjectName pattern is not allowed in watch condition : " + oName);
+		}
+		String attribute = matcher.group(2).trim();
+		String key = null;
+		int idx = attribute.indexOf('.');
+		if(idx > -1) {
+			key = attribute.substring(idx+1);
+			attribute = attribute.substring(0, idx);
+		}
+		return new RecordWatchCondition(expr, oName, attribute, key, matcher.group(3), Double.parseDouble(matcher.group(4)));
+	}
+
+	/**
+	 * Attribute 값을 조회하여 조건을 만족하는지 확인한다.
+	 */
+	public boolean evaluate(MBeanServerConnection mbeanConn) throws Exception {
+		lastValue = getValue(mbeanConn);
+		if(">".equals(operator)) {
+			return lastValue > threshold;
+		} else if(">=".equals(operator)) {
+			return lastValue >= threshold;
+		} else if("<".equals(operator)) {
+			return lastValue < threshold;
+		} else if("<=".equals(operator)) {
+			return lastValue <= threshold;
+		} else if("==".equals(operator)) {
+			return lastValue == threshold;
+		} else {
+			return lastValue != threshold;
+		}
+	}
+
+	private double getValue(MBeanServerConnection mbeanConn) throws Exception {
+		Object value = JMXUtil.getAttributeValue(mbeanConn, objectName, attributeName);
+		if(compositeKey != null) {
+			if(!(value instanceof CompositeData)) {
+				throw new Exception("The attribute '" + attributeName + "' is not a CompositeData.");
+			}
+			value = ((CompositeData)value).get(compositeKey);
+		}
+		if(value instanceof Number) {
+			return ((Number)value).doubleValue();
+		} else if(value instanceof Boolean) {
+			return ((Boolean)value).booleanValue() ? 1D : 0D;
+		}
+		throw new Exception("The value of '" + attributeName + (compositeKey==null?"":"."+compositeKey) + "' is not a number : " + value);
+	}
+
+	/**
+	 * 마지막으로 조회한 값. 조회하지 않았으면 NaN
+	 */
+	public double getLastValue() {
+		return lastValue;
+	}
+
+	public String toString() {
+		return expression;
+	}
+
+}
@@ -0,0 +1,205 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.io.File;
+import java.util.Date;
+
+import javax.management.MBeanServerConnection;
+
+import dal.tool.cli.Logger;
+import dal.tool.cli.Logger.Level;
+import dal.tool.trace.jmxer.cli.command.InfoCommand;
+import dal.tool.trace.jmxer.cli.command.JmxThreadCommand;
+import dal.tool.trace.jmxer.cli.data.RecordResult;
+import dal.tool.util.DateUtil;
+import dal.tool.util.jmx.MBeanConnector.ConnectType;
+
+/**
+ * MBean Attribute를 낮은 주기로 조회하다가, 조건을 만족하면 스택트레이스 샘플링(burst)을 시작하는 백그라운드 스레드<br/>
+ * 조건을 만족하지 않는 상태가 cooldown 시간 동안 유지되면 샘플링을 종료하고 결과를 보관한다.
+ * 저장 디렉토리가 지정되면 burst마다 dump 파일로 저장한다.
+ */
+public class RecordWatchThread implements Runnable {
+
+	private static final String WATCH_FILE_NAME_FORMAT = "yyyyMMdd_HHmmss";
+
+	private volatile boolean stop = false;
+	private MBeanServerConnection mbeanConnection;
+	private RecordWatchCondition condition;
+	private String threadArgs;
+	private long pollMS;
+	private long cooldownMS;
+	private long intervalMS;
+	private ConnectType agentConnectType = null;
+	private String agentConnectTarget = null;
+	private File saveDir = null;
+	private Thread watchRunnerThread = null;
+	private StackRecordThread burstRecordThread = null;
+	private long lastFiredTime = 0L;
+	private int burstCount = 0;
+	private RecordResult lastBurstResult = null;
+
+	public RecordWatchThread(MBeanServerConnection mbeanConnection, RecordWatchCondition condition, String threadArgs, long pollMS, long cooldownMS, long intervalMS) {
+		this.mbeanConnection = mbeanConnection;
+		this.condition = condition;
+		this.threadArgs = threadArgs;
+		this.pollMS = pollMS;
+		this.cooldownMS = cooldownMS;
+		this.intervalMS = intervalMS;
+	}
+
+	/**
+	 * burst 샘플링을 Agent로 수행하도록 지정한다.
+	 */
+	public void setAgent(ConnectType connectType, String connectTarget) {
+		this.agentConnectType = connectType;
+		this.agentConnectTarget = connectTarget;
+	}
+
+	/**
+	 * burst가 끝날 때마다 결과를 저장할 디렉토리를 지정한다.
+	 */
+	public void setSaveDir(File saveDir) {
+		this.saveDir = saveDir;
+	}
+
+	public void startWatching() {
+		watchRunnerThread = new Thread(this, "StackWatcher");
+		watchRunnerThread.setDaemon(true);
+		watchRunnerThread.start();
+	}
+
+	/**
+	 * 감시를 종료한다. 샘플링 중이면 샘플링도 종료하고 결과를 보관한다.
+	 */
+	public void stopWatching() {
+		this.stop = true;
+		if(watchRunnerThread != null && watchRunnerThread != Thread.currentThread()) {
+			watchRunnerThread.interrupt();
+			try {
+				watchRunnerThread.join(pollMS + 5000L);
+			} catch(InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized(this) {
+			if(burstRecordThread != null) {
+				endBurst("watch stopped");
+			}
+		}
+	}
+
+	public boolean isWatching() {
+		return watchRunnerThread != null && !stop;
+	}
+
+	public synchronized boolean isBursting() {
+		return burstRecordThread != null;
+	}
+
+	public synchronized int getBurstCount() {
+		return burstCount;
+	}
+
+	/**
+	 * 마지막으로 완료된 burst의 결과. 완료된 burst가 없으면 null
+	 */
+	public synchronized RecordResult getLastBurstResult() {
+		return lastBurstResult;
+	}
+
+	public RecordWatchCondition getCondition() {
+		return condition;
+	}
+
+	public void run() {
+		boolean errorLogged = false;
+		while(!stop) {
+			long pollStart = System.currentTimeMillis();
+			boolean fired = false;
+			try {
+				fired = condition.evaluate(mbeanConnection);
+				errorLogged = false;
+			} catch(Exception e) {
+				if(!errorLogged) {
+					Logger.logln(Level.ERROR, "[WATCH] Failed to evaluate the condition '" + condition + "' : " + e.getMessage());
+					errorLogged = true;
+				}
+			}
+			synchronized(this) {
+				if(stop) {
+					break;
+				}
+				if(fired) {
+					lastFiredTime = pollStart;
+					if(burstRecordThread == null) {
+						startBurst();
+					}
+				} else if(burstRecordThread != null && pollStart - lastFiredTime >= cooldownMS) {
+					endBurst("cooled down for " + cooldownMS + "ms");
+				}
+			}
+			long elapsed = System.currentTimeMillis() - pollStart;
+			if(elapsed < pollMS) {
+				try {
+					Thread.sleep(pollMS - elapsed);
+				} catch(InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	private void startBurst() {
+		try {
+			String[] threadIds = JmxThreadCommand.getTargetThreads(mbeanConnection, threadArgs);
+			if(threadIds == null || threadIds.length < 1) {
+				Logger.logln(Level.ERROR, "[WATCH] No target thread(s) to sample.");
+				return;
+			}
+			StackRecordThread recordThread = null;
+			if(agentConnectType != null) {
+				AgentStackRecordThread agentRecordThread = new AgentStackRecordThread(mbeanConnection, threadIds, agentConnectType, agentConnectTarget);
+				agentRecordThread.connectAgent(intervalMS);
+				recordThread = agentRecordThread;
+			} else {
+				recordThread = new StackRecordThread(mbeanConnection, threadIds);
+			}
+			recordThread.setBackground(true);
+			recordThread.startRecording(intervalMS, 0L);
+			burstRecordThread = recordThread;
+			Logger.logln("[WATCH] Condition '" + condition + "' fired (value=" + formatValue(condition.getLastValue()) + "). Started stacktrace sampling.");
+		} catch(Exception e) {
+			Logger.logln(Level.ERROR, "[WATCH] Failed to start stacktrace sampling : " + e.getMessage());
+		}
+	}
+
+	private void endBurst(String reason) {
+		StackRecordThread recordThread = burstRecordThread;
+		burstRecordThread = null;
+		recordThread.stopRecording();
+		if(recordThread.getSampleCount() < 1) {
+			Logger.logln("[WATCH] Stopped stacktrace sampling (" + reason + "). No data collected.");
+			return;
+		}
+		RecordResult result = recordThread.getRecordResult();
+		try {
+			result.vmInfo = InfoCommand.getTargetVMInfo(mbeanConnection);
+			result.toolInfo = InfoCommand.getToolInfo();
+		} catch(Exception e) {
+			Logger.logln(Level.DEBUG, "[WATCH] Failed to get the vm information : " + e.getMessage());
+		}
+		burstCount++;
+		lastBurstResult = result;
+		Logger.logln("[WATCH] Stopped stacktrace sampling (" + reason + "). Recorded for " + (result.endTime-result.startTime) + "ms (" + result.sampleCount + " sampled)");
+		if(saveDir != null) {
+			File dumpfile = new File(saveDir, "JMXer_Record_Watch_" + DateUtil.dateToString(WATCH_FILE_NAME_FORMAT, new Date(result.startTime)) + "_" + burstCount + ".dmp");
+			if(result.saveToFile(dumpfile, true)) {
+				Logger.logln("[WATCH] Saved stacktrace data to the dump file : " + dumpfile.getAbsolutePath());
+			}
+		}
+	}
+
+	private static String formatValue(double value) {
+		return (value == Math.rint(value) && !Double.isInfinite(value)) ? String.valueOf((long)value) : String.valueOf(value);
+	}
+
+}
@@ -1,21 +1,26 @@
 package dal.tool.trace.jmxer.cli.helper;
 
-import java.lang.management.ThreadInfo;
-
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
-import javax.management.openmbean.CompositeData;
 
 import dal.tool.cli.Logger;
+import dal.tool.cli.Logger.Level;
+import dal.tool.trace.jmxer.cli.data.RecordResourceSeries;
+import dal.tool.trace.jmxer.cli.data.RecordThreadChurn;
 import dal.tool.trace.jmxer.cli.data.ResourceUsage;
 import dal.tool.util.StringUtil;
 import dal.tool.util.jmx.JMXUtil;
+import dal.tool.util.jmx.MBeanOperationCall;
 
 public class ResourceRecordThread extends AbstractRecordThread {
 
 	protected ResourceUsage[] recordData;
+	protected RecordResourceSeries series;
+	protected int topCount = RecordResultViewer.DEFAULT_RESOURCE_TOP;
 	protected boolean threadCpuTimeEnabled;
 	protected boolean threadAllocatedMemoryEnabled;
+	protected MBeanOperationCall threadCpuTimeCall;
+	protected MBeanOperationCall threadAllocatedBytesCall;
+	protected ThreadChurnTracker churnTracker;
 
 	public ResourceRecordThread(MBeanServerConnection mbeanConnection, String[] threadIds) throws Exception {
 		super("ResourceRecorder", mbeanConnection, threadIds);
@@ -29,6 +34,25 @@ public class ResourceRecordThread extends AbstractRecordThread {
 			throw new Exception("Neither ThreadCpuTime nor ThreadAllocatedMemory are enabled.");
 			
 		}
+		threadCpuTimeCall = JMXUtil.createThreadIdsCall("getThreadCpuTime", threadIdArray);
+		threadAllocatedBytesCall = JMXUtil.createThreadIdsCall("getThreadAllocatedBytes", threadIdArray);
+		series = new RecordResourceSeries(threadIdArray, threadNames);
+		churnTracker = new ThreadChurnTracker(mbeanConnection, threadCpuTimeEnabled, threadAllocatedMemoryEnabled);
+	}
+
+	/**
+	 * 구간별 순위에서 보여줄 스레드 수를 지정한다. 0이면 순위를 보여주지 않는다.
+	 */
+	public void setTopCount(int topCount) {
+		this.topCount = topCount;
+	}
+
+	public RecordResourceSeries getResourceSeries() {
+		return series;
+	}
+
+	public RecordThreadChurn getThreadChurn() {
+		return churnTracker.getThreadChurn();
 	}
 
 	protected void beforeStartRecording() {
@@ -37,6 +61,7 @@ public class ResourceRecordThread extends AbstractRecordThread {
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		pollThreadChurn(startTimeMS, null);
 	}
 	
 	protected void afterStopRecording() {
@@ -45,21 +70,47 @@ public class ResourceRecordThread extends AbstractRecordThread {
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		pollThreadChurn(endTimeMS, null);
 	}
 	
+	/**
+	 * 매 주기마다 스레드별 CPU 시간/할당 바이트의 누적값을 시계열에 추가한다.
+	 */
 	protected long collectData() throws Exception {
-		return System.currentTimeMillis();
+		long[] threadCpus = threadCpuTimeEnabled ? (long[])threadCpuTimeCall.invoke(mbeanConnection) : null;
+		long[] threadMems = threadAllocatedMemoryEnabled ? (long[])threadAllocatedBytesCall.invoke(mbeanConnection) : null;
+		long end = System.currentTimeMillis();
+		series.add(end, threadCpus, threadMems);
+		return end;
+	}
+
+	/**
+	 * {@link ThreadChurnTracker#POLL_INTERVAL_MS} 주기로 스레드 생성/종료를 확인한다. 사용량은 방금 추가한 시계열의 값을 재사용한다.
+	 * 수집 지연시간에는 포함되지 않는다.
+	 */
+	protected void afterCollectData() throws Exception {
+		long now = series.getTime(series.size()-1);
+		if(churnTracker.isPollDue(now)) {
+			pollThreadChurn(now, series);
+		}
+	}
+
+	private void pollThreadChurn(long now, RecordResourceSeries series) {
+		try {
+			churnTracker.poll(now, series);
+		} catch(Exception e) {
+			Logger.logln(Level.DEBUG, "Failed to check the thread churn : " + e.getMessage());
+		}
 	}
 	
 	private long collectResourceData() throws Exception {
-		ObjectName objectName = new ObjectName("java.lang:type=Threading");
 		long[] threadCpus = null;
 		long[] threadMems = null;
 		if(threadCpuTimeEnabled) {
-			threadCpus = (long[])JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadCpuTime", new String[]{threadIdsString});
+			threadCpus = (long[])threadCpuTimeCall.invoke(mbeanConnection);
 		}
 		if(threadAllocatedMemoryEnabled) {
-			threadMems = (long[])JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadAllocatedBytes", new String[]{threadIdsString});
+			threadMems = (long[])threadAllocatedBytesCall.invoke(mbeanConnection);
 		}
 		long end = System.currentTimeMillis();
 		for(int i = 0; i < threadIds.length; i++) {
@@ -81,28 +132,32 @@ public class ResourceRecordThread extends AbstractRecordThread {
 		}
 		Logger.logln("Recorded for " + (endTimeMS-startTimeMS) + "ms");
 		Logger.logln("");
+		RecordThreadChurn churn = churnTracker.getThreadChurn();
 		for(int i = 0; i < recordData.length; i++) {
 			ResourceUsage usage = recordData[i];
 			String thrStr = "\"" + StringUtil.shortenStringWithSuffix(usage.threadName, 38, "...") + "\"";
 			long cpuStr = (usage.currCpu - usage.startCpu) / 1000000;
 			long memStr = (usage.currMem - usage.startMem);
-			if(usage.startCpu > usage.currCpu || usage.startMem > usage.currMem) {
-				String newThreadStr = "";
-				try {
-					ObjectName objectName = new ObjectName("java.lang:type=Threading");
-					Object resultData = JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadInfo(long[])", new String[]{threadIds[i]});
-					if(resultData == null || ((CompositeData[])resultData).length < 1) {
-						throw new Exception("Could not get thread info.");
-					}
-					CompositeData[] cd = (CompositeData[])resultData;
-					ThreadInfo threadInfo = ThreadInfo.from(cd[0]);
-					if(threadInfo != null) {
-						newThreadStr = threadInfo.getThreadName();
-					}
-				} catch(Exception e) {
-					e.printStackTrace();
+			int[] entries = churn.find(threadIdArray[i]);
+			if(entries.length > 0 && churn.isDead(entries[0])) {
+				// 레코딩 중에 종료된 스레드는 마지막으로 확인한 사용량을 보여준다.
+				String reusedStr = (entries.length > 1) ? String.format(", Reused by \"%s\"", churn.getThreadName(entries[1])) : "";
+				String usageStr = "";
+				if(threadCpuTimeEnabled) {
+					usageStr += ", CpuTime=" + (churn.getCpuTime(entries[0]) / 1000000);
+				}
+				if(threadAllocatedMemoryEnabled) {
+					usageStr += ", AllocatedBytes=" + churn.getAllocBytes(entries[0]);
 				}
-				Logger.logln(String.format(" - tid [%5d] %-40s : Changed thread to \"%s\"", Long.parseLong(threadIds[i]), thrStr, newThreadStr));
+				Logger.logln(String.format(" - tid [%5d] %-40s : Terminated at +%dms%s%s", threadIdArray[i], thrStr, churn.getDeathTime(entries[0])-startTimeMS, usageStr, reusedStr));
+				continue;
+			}
+			if(entries.length < 1 && churn.size() > 0) {
+				Logger.logln(String.format(" - tid [%5d] %-40s : Terminated before recording", threadIdArray[i], thrStr));
+				continue;
+			}
+			if(usage.startCpu > usage.currCpu || usage.startMem > usage.currMem) {
+				Logger.logln(String.format(" - tid [%5d] %-40s : Terminated or changed", threadIdArray[i], thrStr));
 				continue;
 			}
 			if(!threadCpuTimeEnabled) {
@@ -113,6 +168,14 @@ public class ResourceRecordThread extends AbstractRecordThread {
 				Logger.logln(String.format(" - tid [%5d] %-40s : CpuTime=%-10d, AllocatedBytes=%d", Long.parseLong(threadIds[i]), thrStr, cpuStr, memStr));
 			}
 		}
+		if(series.getIntervalCount() > 0) {
+			Logger.logln("");
+			Logger.logln(RecordResultViewer.getResourceSeriesString(series, null, topCount));
+		}
+		if(churn.size() > 0) {
+			Logger.logln("");
+			Logger.logln(RecordResultViewer.getThreadChurnString(churn));
+		}
 	}
 
 }
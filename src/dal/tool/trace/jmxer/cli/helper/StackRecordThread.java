@@ -2,38 +2,90 @@ package dal.tool.trace.jmxer.cli.helper;
 
 import java.lang.management.ThreadInfo;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 
 import javax.management.MBeanServerConnection;
-import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 
 import dal.tool.cli.Logger;
+import dal.tool.cli.Logger.Level;
+import dal.tool.trace.jmxer.cli.data.RecordResourceSeries;
 import dal.tool.trace.jmxer.cli.data.RecordResult;
+import dal.tool.trace.jmxer.cli.data.RecordSampleRing;
+import dal.tool.trace.jmxer.cli.data.RecordSampleStore;
+import dal.tool.trace.jmxer.cli.data.RecordSpillFile;
+import dal.tool.trace.jmxer.cli.data.RecordStackIndex;
+import dal.tool.trace.jmxer.cli.data.RecordStackTable;
 import dal.tool.trace.jmxer.cli.data.RecordThreadInfo;
 import dal.tool.trace.jmxer.cli.data.RecordThreadSampleState;
+import dal.tool.trace.jmxer.cli.data.RecordThreadSamples;
 import dal.tool.trace.jmxer.cli.data.ResourceUsage;
-import dal.tool.util.StringUtil;
 import dal.tool.util.jmx.JMXUtil;
+import dal.tool.util.jmx.MBeanConnector.ConnectType;
+import dal.tool.util.jmx.MBeanOperationCall;
 
 public class StackRecordThread extends AbstractRecordThread {
 
-	protected HashMap<Long,List<RecordThreadInfo>> recordData;
+	/** heap에 보관하는 최대 샘플 수. 넘어서면 샘플을 임시 segment 파일로 내보낸다. */
+	public static final int SPILL_SAMPLE_THRESHOLD = 200000;
+	/** window 레코딩에서 스택 테이블을 정리하는 최소 스택 수 */
+	public static final int MIN_COMPACT_STACK_COUNT = 4096;
+
+	protected RecordSampleStore sampleStore;
+	protected RecordSpillFile spillFile;
+	protected RecordSampleRing sampleRing;
+	protected int tailSampleCount = 0;
+	protected RecordThreadInfo sampleBuffer;
+	protected RecordStackTable stackTable;
+	protected List<RecordThreadSampleState> stackStates;
 	protected int sampleCount = 0;
 	protected HashMap<Long,ResourceUsage> resourceData;
 	protected boolean threadCpuTimeEnabled;
 	protected boolean threadAllocatedMemoryEnabled;
+	protected MBeanOperationCall threadInfoCall;
+	protected MBeanOperationCall threadCpuTimeCall;
+	protected MBeanOperationCall threadAllocatedBytesCall;
+	protected ThreadInfoShardPool shardPool;
+	protected int maxStackDepth = 0;
+	protected int effectiveStackDepth = 0;
+	protected int truncatedFrameId = -1;
+	protected int coverage = 1;
+	protected MBeanOperationCall[] coverageCalls;
+	protected int coverageTick = 0;
+	protected int adaptiveBudgetPercent = 0;
+	protected int adaptiveCpuLimitPercent = 0;
+	protected volatile RecordAdaptiveController adaptiveController;
+	protected RecordResourceSeries resourceSeries;
+	protected ThreadChurnTracker churnTracker;
+	protected RecordStackIndex stackIndex;
+	protected int compactStackCount = MIN_COMPACT_STACK_COUNT;
 
 	public StackRecordThread(MBeanServerConnection mbeanConnection, String[] threadIds) throws Exception {
-		super("StackRecorder", mbeanConnection, threadIds);
+		this("StackRecorder", mbeanConnection, threadIds);
+	}
+
+	protected StackRecordThread(String recordThreadName, MBeanServerConnection mbeanConnection, String[] threadIds) throws Exception {
+		super(recordThreadName, mbeanConnection, threadIds);
 	}
 
 	protected void afterInit() throws Exception {
-		recordData = new HashMap<Long,List<RecordThreadInfo>>();
+		sampleStore = new RecordSampleStore();
+		sampleBuffer = new RecordThreadInfo();
+		stackTable = new RecordStackTable();
+		stackStates = new ArrayList<RecordThreadSampleState>();
 		resourceData = new HashMap<Long,ResourceUsage>();
 		threadCpuTimeEnabled = (Boolean)JMXUtil.getJMXResult(mbeanConnection, "java.lang:type=Threading", "ThreadCpuTimeEnabled", null);
 		threadAllocatedMemoryEnabled = (Boolean)JMXUtil.getJMXResult(mbeanConnection, "java.lang:type=Threading", "ThreadAllocatedMemoryEnabled", null);
+		if(threadIds.length == 1 && threadIds[0].equals("*")) {
+			threadInfoCall = JMXUtil.createDumpAllThreadsCall(false, false);
+		} else {
+			threadInfoCall = JMXUtil.createThreadInfoCall(threadIdArray, getThreadInfoDepth());
+		}
+		threadCpuTimeCall = JMXUtil.createThreadIdsCall("getThreadCpuTime", threadIdArray);
+		threadAllocatedBytesCall = JMXUtil.createThreadIdsCall("getThreadAllocatedBytes", threadIdArray);
 	}
 	
 	public int getSampleCount() {
@@ -46,6 +98,9 @@ public class StackRecordThread extends AbstractRecordThread {
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		if(churnTracker != null) {
+			pollThreadChurn(System.currentTimeMillis(), null);
+		}
 	}
 	
 	protected void afterStopRecording() {
@@ -54,23 +109,28 @@ public class StackRecordThread extends AbstractRecordThread {
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
+		if(churnTracker != null) {
+			pollThreadChurn(System.currentTimeMillis(), null);
+		}
+		if(shardPool != null) {
+			shardPool.close();
+		}
 	}
 
 	private void collectResourceData() throws Exception {
 		if(!threadCpuTimeEnabled && !threadAllocatedMemoryEnabled) {
 			return;
 		}
-		ObjectName objectName = new ObjectName("java.lang:type=Threading");
 		long[] threadCpus = null;
 		long[] threadMems = null;
 		if(threadCpuTimeEnabled) {
-			threadCpus = (long[])JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadCpuTime", new String[]{threadIdsString});
+			threadCpus = (long[])threadCpuTimeCall.invoke(mbeanConnection);
 		}
 		if(threadAllocatedMemoryEnabled) {
-			threadMems = (long[])JMXUtil.invokeAttributeOrOperation(mbeanConnection, objectName, "getThreadAllocatedBytes", new String[]{threadIdsString});
+			threadMems = (long[])threadAllocatedBytesCall.invoke(mbeanConnection);
 		}
-		for(int i = 0; i < threadIds.length; i++) {
-			Long tid = Long.parseLong(threadIds[i]);
+		for(int i = 0; i < threadIdArray.length; i++) {
+			Long tid = threadIdArray[i];
 			ResourceUsage usage = resourceData.get(tid);
 			if(usage == null) {
 				usage = new ResourceUsage(threadNames[i], threadCpus[i], threadMems[i]);
@@ -81,16 +141,170 @@ public class StackRecordThread extends AbstractRecordThread {
 		}
 	}
 	
+	/**
+	 * 수집할 스택의 최대 깊이를 지정한다. 최상위(leaf) 프레임부터 depth개만 수집하며, 1이면 최상위 프레임만 수집한다.<br/>
+	 * depth개 이상의 프레임을 가진 스택은 잘렸을 수 있으므로 가장 바깥쪽에 {@link RecordStackTable#createTruncatedFrame(int)} 프레임을 추가한다.
+	 * startRecording(), setShards() 전에 호출해야 한다.
+	 */
+	public void setMaxStackDepth(int depth) throws Exception {
+		if(depth < 1) {
+			return;
+		}
+		maxStackDepth = depth;
+		setEffectiveStackDepth(depth);
+	}
+
+	/**
+	 * 현재 수집에 적용할 스택 깊이를 변경한다. 0이면 제한하지 않는다.
+	 */
+	protected void setEffectiveStackDepth(int depth) throws Exception {
+		effectiveStackDepth = depth;
+		truncatedFrameId = (depth > 0) ? stackTable.internFrame(RecordStackTable.createTruncatedFrame(depth)) : -1;
+		threadInfoCall = JMXUtil.createThreadInfoCall(threadIdArray, getThreadInfoDepth());
+		if(shardPool != null) {
+			shardPool.setMaxDepth(getThreadInfoDepth());
+		}
+		setCoverage(coverage);
+	}
+
+	/**
+	 * tick마다 전체 스레드의 1/coverage씩 번갈아 수집하도록 지정한다. shard로 수집하는 경우에는 적용되지 않는다.
+	 */
+	protected void setCoverage(int coverage) throws Exception {
+		this.coverage = coverage;
+		if(coverage < 2 || shardPool != null || threadIdArray.length < coverage) {
+			coverageCalls = null;
+			return;
+		}
+		MBeanOperationCall[] calls = new MBeanOperationCall[coverage];
+		for(int c = 0; c < coverage; c++) {
+			long[] ids = new long[(threadIdArray.length - c + coverage - 1) / coverage];
+			for(int i = c, j = 0; i < threadIdArray.length; i += coverage, j++) {
+				ids[j] = threadIdArray[i];
+			}
+			calls[c] = JMXUtil.createThreadInfoCall(ids, getThreadInfoDepth());
+		}
+		coverageCalls = calls;
+	}
+
+	/**
+	 * 수집 지연시간이나 대상 JVM의 CPU 사용률에 따라 샘플링 주기/스택 깊이/스레드 범위를 자동으로 조정하도록 지정한다.
+	 * startRecording() 전에 호출해야 한다. ({@link RecordAdaptiveController})
+	 * @param budgetPercent 수집 지연시간의 허용 비율(주기 대비 %)
+	 * @param cpuLimitPercent 대상 JVM의 CPU 사용률 제한(%). 0이면 확인하지 않는다.
+	 */
+	public void setAdaptive(int budgetPercent, int cpuLimitPercent) {
+		this.adaptiveBudgetPercent = budgetPercent;
+		this.adaptiveCpuLimitPercent = cpuLimitPercent;
+	}
+
+	protected void afterTick(long latencyNanos) {
+		if(adaptiveBudgetPercent < 1) {
+			return;
+		}
+		if(adaptiveController == null) {
+			adaptiveController = new RecordAdaptiveController(this, mbeanConnection, recordIntervalMS, maxStackDepth, adaptiveBudgetPercent, adaptiveCpuLimitPercent);
+		}
+		adaptiveController.onTick(latencyNanos);
+	}
+
+	/**
+	 * 매 샘플마다 스레드별 CPU 시간/할당 바이트도 수집하여 시계열({@link RecordResourceSeries})로 보관하도록 지정한다.
+	 * startRecording() 전에 호출해야 한다.
+	 */
+	public void setResourceSeries() throws Exception {
+		if(!threadCpuTimeEnabled && !threadAllocatedMemoryEnabled) {
+			throw new Exception("Neither ThreadCpuTime nor ThreadAllocatedMemory are enabled.");
+		}
+		resourceSeries = new RecordResourceSeries(threadIdArray, threadNames);
+	}
+
+	private void collectResourceSeries(long now) throws Exception {
+		long[] threadCpus = threadCpuTimeEnabled ? (long[])threadCpuTimeCall.invoke(mbeanConnection) : null;
+		long[] threadMems = threadAllocatedMemoryEnabled ? (long[])threadAllocatedBytesCall.invoke(mbeanConnection) : null;
+		resourceSeries.add(now, threadCpus, threadMems);
+	}
+
+	/**
+	 * 레코딩 중에 대상 JVM의 스레드 생성/종료도 확인하여 기록하도록 지정한다. 샘플링 주기와 별도로 {@link ThreadChurnTracker#POLL_INTERVAL_MS} 주기로 확인한다.
+	 * startRecording() 전에 호출해야 한다.
+	 */
+	public void setThreadChurn() throws Exception {
+		churnTracker = new ThreadChurnTracker(mbeanConnection, threadCpuTimeEnabled, threadAllocatedMemoryEnabled);
+	}
+
+	/**
+	 * @param series 이번 tick의 값을 추가한 자원 시계열. 사용량 조회에 재사용한다.
+	 */
+	private void pollThreadChurn(long now, RecordResourceSeries series) {
+		try {
+			churnTracker.poll(now, series);
+		} catch(Exception e) {
+			Logger.logln(Level.DEBUG, "Failed to check the thread churn : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * 샘플이 추가될 때마다 스레드별/시간 구간별 스택 집계 색인({@link RecordStackIndex})도 갱신하도록 지정한다.
+	 * startRecording() 전에 호출해야 한다.
+	 */
+	public void setStackIndex(long bucketMS) {
+		stackIndex = new RecordStackIndex(bucketMS);
+	}
+
+	/**
+	 * getThreadInfo 호출에 사용할 스택의 최대 깊이. 스택이 잘렸는지 알 수 있도록 제한보다 한 프레임 더 가져온다.
+	 */
+	protected int getThreadInfoDepth() {
+		return getRequestDepth(effectiveStackDepth);
+	}
+
+	/**
+	 * 깊이 제한이 depth일 때 가져올 스택의 최대 깊이
+	 */
+	static int getRequestDepth(int depth) {
+		return (depth > 0 && depth < Integer.MAX_VALUE) ? depth + 1 : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * 적응형 샘플링 제어기가 호출한다. 다음 tick부터 적용된다.
+	 * @return 실제로 적용된 스레드 범위
+	 */
+	int applySamplingLevel(long intervalMS, int depth, int coverage) throws Exception {
+		currentIntervalMS = intervalMS;
+		if(depth != effectiveStackDepth) {
+			setEffectiveStackDepth(depth);
+		}
+		if(coverage != this.coverage) {
+			setCoverage(coverage);
+		}
+		return (coverageCalls == null) ? 1 : coverageCalls.length;
+	}
+
+	public int getMaxStackDepth() {
+		return maxStackDepth;
+	}
+
+	/**
+	 * 대상 스레드를 shardCount개로 나누어 별도의 JMX 연결로 동시에 샘플링하도록 지정한다. startRecording() 전에 호출해야 한다.
+	 */
+	public void setShards(int shardCount, ConnectType connectType, String connectTarget, String[] authenticate) throws Exception {
+		if(shardCount < 2 || threadIdArray.length < 2) {
+			return;
+		}
+		shardPool = new ThreadInfoShardPool(mbeanConnection, threadIdArray, shardCount, getThreadInfoDepth(), connectType, connectTarget, authenticate);
+	}
+
 	protected long collectData() throws Exception {
-		Object resultData = null;
-		long start = System.currentTimeMillis();
-		if(threadIds.length == 1 && threadIds[0].equals("*")) {
-			resultData = JMXUtil.getJMXResult(mbeanConnection, "java.lang:type=Threading", "dumpAllThreads", new String[]{"false","false"});
-		} else {
-			String threadIdsString = StringUtil.arrayToString(threadIds, ",");
-			String maxDepthString = String.valueOf(Integer.MAX_VALUE);
-    		resultData = JMXUtil.getJMXResult(mbeanConnection, "java.lang:type=Threading", "getThreadInfo(long[],int)", new String[]{threadIdsString,maxDepthString});
+		if(shardPool != null) {
+			return collectShardedData();
+		}
+		MBeanOperationCall call = threadInfoCall;
+		if(coverageCalls != null) {
+			call = coverageCalls[(coverageTick++) % coverageCalls.length];
 		}
+		long start = System.currentTimeMillis();
+		Object resultData = call.invoke(mbeanConnection);
 		long end = System.currentTimeMillis();
 		CompositeData[] resultDataArr = null;
 		if(resultData == null) {
@@ -105,21 +319,117 @@ public class StackRecordThread extends AbstractRecordThread {
     		if(cd == null) {
     			continue;
     		}
-    		ThreadInfo threadInfo = ThreadInfo.from(cd);
-    		List<RecordThreadInfo> threadInfoList = recordData.get(threadInfo.getThreadId());
-    		if(threadInfoList == null) {
-    			threadInfoList = new ArrayList<RecordThreadInfo>();
-    		}
-    		RecordThreadInfo recThrInfo = toRecordThreadInfo(threadInfo);
-    		recThrInfo.recordStartTime = start;
-    		recThrInfo.recordEndTime = end;
-    		threadInfoList.add(recThrInfo);
-    		recordData.put(threadInfo.getThreadId(), threadInfoList);
+    		addRecordThreadInfo(toRecordThreadInfo(ThreadInfo.from(cd), sampleBuffer), start, end);
     	}
 		sampleCount++;
 		return end;
 	}
 
+	/**
+	 * 샘플링 후에 spill, 스택 테이블 정리, 자원 시계열 수집, 스레드 생성/종료 확인을 수행한다.
+	 * 수집 지연시간(적응형 주기 조절에 사용)에는 getThreadInfo 조회만 포함되도록 collectData()와 분리한다.
+	 */
+	protected void afterCollectData() throws Exception {
+		spillIfNeeded();
+		compactStackTableIfNeeded();
+		long now = System.currentTimeMillis();
+		if(resourceSeries != null) {
+			collectResourceSeries(now);
+		}
+		if(churnTracker != null && churnTracker.isPollDue(now)) {
+			pollThreadChurn(now, resourceSeries);
+		}
+	}
+
+	/**
+	 * shard별로 동시에 수집한 결과를 하나의 샘플로 합친다. 모든 스레드는 전체 shard의 수집 구간을 같은 시간 구간으로 갖는다.
+	 */
+	private long collectShardedData() throws Exception {
+		long start = System.currentTimeMillis();
+		List<CompositeData> resultData = shardPool.fetch();
+		long end = System.currentTimeMillis();
+		if(resultData.size() < 1) {
+			throw new Exception("Could not get thread info.");
+		}
+		for(CompositeData cd : resultData) {
+			if(cd == null) {
+				continue;
+			}
+			addRecordThreadInfo(toRecordThreadInfo(ThreadInfo.from(cd), sampleBuffer), start, end);
+		}
+		sampleCount++;
+		return end;
+	}
+
+	protected void addRecordThreadInfo(RecordThreadInfo recThrInfo, long start, long end) {
+		recThrInfo.recordStartTime = start;
+		recThrInfo.recordEndTime = end;
+		if(sampleRing != null) {
+			sampleRing.add(recThrInfo);
+			return;
+		}
+		sampleStore.add(recThrInfo);
+		if(stackIndex != null) {
+			stackIndex.add(recThrInfo);
+		}
+		tailSampleCount++;
+	}
+
+	/**
+	 * 최근 windowMS 동안의 샘플만 링 버퍼에 보관하도록 지정한다. startRecording() 전에 호출해야 한다.
+	 */
+	public void setRetentionWindow(long windowMS, long intervalMS) {
+		sampleRing = new RecordSampleRing(windowMS, intervalMS);
+	}
+
+	public boolean hasRetentionWindow() {
+		return sampleRing != null;
+	}
+
+	/**
+	 * heap에 쌓인 샘플 수가 {@link #SPILL_SAMPLE_THRESHOLD}를 넘으면 샘플이 많은 스레드부터 임시 segment 파일로 내보내서, 절반 이하로 줄인다.
+	 * 한번의 샘플링이 끝난 후에 호출한다.
+	 */
+	protected void spillIfNeeded() {
+		if(tailSampleCount < SPILL_SAMPLE_THRESHOLD) {
+			return;
+		}
+		try {
+			if(spillFile == null) {
+				spillFile = new RecordSpillFile();
+				Logger.logln(Level.DEBUG, "Spilling record samples to the file : " + spillFile.getFile().getAbsolutePath());
+			}
+			tailSampleCount = spillFile.spill(sampleStore, SPILL_SAMPLE_THRESHOLD/2);
+		} catch(Exception e) {
+			Logger.logln(Level.ERROR, "Failed to spill record samples to the file : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * window 레코딩에서 스택 수가 마지막으로 정리했을 때의 두배를 넘으면, 링 버퍼에 남아있는 샘플이 사용하는 스택만 남긴다.
+	 * 스냅샷과 동시에 수행되지 않도록 링 버퍼로 동기화한다.
+	 */
+	protected void compactStackTableIfNeeded() {
+		if(sampleRing == null || stackTable.getStackCount() <= compactStackCount) {
+			return;
+		}
+		synchronized(sampleRing) {
+			BitSet used = new BitSet(stackTable.getStackCount());
+			sampleRing.collectStackIds(used);
+			int[] stackIdMap = stackTable.retainStacks(used);
+			sampleRing.remapStackIds(stackIdMap);
+			List<RecordThreadSampleState> states = new ArrayList<RecordThreadSampleState>(stackTable.getStackCount());
+			for(int i = 0; i < stackIdMap.length && i < stackStates.size(); i++) {
+				if(stackIdMap[i] > -1) {
+					states.add(stackStates.get(i));
+				}
+			}
+			stackStates = states;
+		}
+		compactStackCount = Math.max(MIN_COMPACT_STACK_COUNT, stackTable.getStackCount() * 2);
+		Logger.logln(Level.DEBUG, "Compacted the stack table of the window recording : " + stackTable.getStackCount() + " stacks retained.");
+	}
+
 	public void printResult() {
 		if(sampleCount < 1) {
 			Logger.logln("No data collected.");
@@ -128,8 +438,7 @@ public class StackRecordThread extends AbstractRecordThread {
 		Logger.logln("Recorded for " + (endTimeMS-startTimeMS) + "ms (" + sampleCount + " sampled)");
 	}
 
-	public RecordThreadInfo toRecordThreadInfo(ThreadInfo thrInfo) {
-		RecordThreadInfo recThrInfo = new RecordThreadInfo();
+	public RecordThreadInfo toRecordThreadInfo(ThreadInfo thrInfo, RecordThreadInfo recThrInfo) {
 		recThrInfo.threadName = thrInfo.getThreadName();
 		recThrInfo.threadId = thrInfo.getThreadId();
 		recThrInfo.blockedTime = thrInfo.getBlockedTime();
@@ -142,21 +451,118 @@ public class StackRecordThread extends AbstractRecordThread {
 		recThrInfo.inNative = thrInfo.isInNative();
 		recThrInfo.suspended = thrInfo.isSuspended();
 		recThrInfo.threadState = thrInfo.getThreadState().name();
-		recThrInfo.stackTrace = thrInfo.getStackTrace();
-		RecordThreadSampleState state = RecordRequestWaitClassifier.classify(recThrInfo.stackTrace);
-		recThrInfo.sampleState = state;
+		setStackTrace(recThrInfo, thrInfo.getStackTrace());
 		return recThrInfo;		
 	}
+
+	protected void setStackTrace(RecordThreadInfo recThrInfo, StackTraceElement[] stackTrace) {
+		if(effectiveStackDepth < 1) {
+			setStack(recThrInfo, stackTable.internStack(stackTrace));
+			return;
+		}
+		int[] frameIds = new int[stackTrace.length];
+		for(int i = 0; i < frameIds.length; i++) {
+			frameIds[i] = stackTable.internFrame(stackTrace[i]);
+		}
+		setStack(recThrInfo, internLimitedStack(frameIds));
+	}
+
+	/**
+	 * depth 제한보다 깊은 스택이면 depth까지 자르고 잘림 표시 프레임을 추가하여 등록한다.
+	 */
+	protected int internLimitedStack(int[] frameIds) {
+		if(effectiveStackDepth > 0 && frameIds.length > effectiveStackDepth) {
+			int[] limited = Arrays.copyOf(frameIds, effectiveStackDepth + 1);
+			limited[effectiveStackDepth] = truncatedFrameId;
+			return stackTable.internStack(limited);
+		}
+		return stackTable.internStack(frameIds);
+	}
+
+	protected void setStack(RecordThreadInfo recThrInfo, int stackId) {
+		if(stackId == stackStates.size()) {
+			stackStates.add(RecordRequestWaitClassifier.classify(stackTable.getStackTrace(stackId)));
+		}
+		recThrInfo.stackId = stackId;
+		recThrInfo.sampleState = stackStates.get(stackId);
+	}
 	
+	/**
+	 * 링 버퍼에 보관된 최근 window 동안의 샘플로 레코드 결과를 만든다. 레코딩은 계속된다.
+	 * @return 보관된 샘플이 없으면 null
+	 */
+	public RecordResult snapshot() {
+		long now = System.currentTimeMillis();
+		RecordSampleStore store;
+		RecordStackTable table;
+		synchronized(sampleRing) {
+			store = sampleRing.snapshot(now);
+			table = stackTable.copy();
+		}
+		if(store.getThreadCount() < 1) {
+			return null;
+		}
+		RecordResult result = new RecordResult();
+		result.startTime = Long.MAX_VALUE;
+		result.endTime = Long.MIN_VALUE;
+		for(RecordThreadSamples samples : store.getAllThreadSamples()) {
+			result.startTime = Math.min(result.startTime, samples.getStartTime(0));
+			result.endTime = Math.max(result.endTime, samples.getEndTime(samples.size()-1));
+			result.sampleCount = Math.max(result.sampleCount, samples.size());
+		}
+		result.recordLimitMS = sampleRing.getWindowMS();
+		result.recordIntervalMS = this.recordIntervalMS;
+		result.sampleStore = store;
+		result.stackTable = table;
+		result.tickStats = tickStats.copy();
+		result.maxStackDepth = this.maxStackDepth;
+		result.adjustments = (adaptiveController == null) ? null : adaptiveController.getAdjustments();
+		result.threadChurn = (churnTracker == null) ? null : churnTracker.getThreadChurn();
+		if(!stop) {
+			try {
+				collectResourceData();
+			} catch(Exception e) {
+				Logger.logln(Level.DEBUG, "Failed to collect resource usage : " + e.getMessage());
+			}
+		}
+		result.resourceData = new HashMap<Long,ResourceUsage>();
+		for(Long tid : resourceData.keySet()) {
+			ResourceUsage usage = resourceData.get(tid);
+			ResourceUsage copied = new ResourceUsage(usage.threadName, usage.startCpu, usage.startMem);
+			copied.update(usage.currCpu, usage.currMem);
+			result.resourceData.put(tid, copied);
+		}
+		return result;
+	}
+
 	public RecordResult getRecordResult() {
+		if(sampleRing != null) {
+			return snapshot();
+		}
 		RecordResult result = new RecordResult();
 		result.startTime = this.startTimeMS;
 		result.endTime = this.endTimeMS;
 		result.recordLimitMS = this.recordLimitMS;
 		result.recordIntervalMS = this.recordIntervalMS;
 		result.sampleCount = this.sampleCount;
-		result.recordData = recordData;
+		if(spillFile != null) {
+			try {
+				spillFile.finish(sampleStore);
+				tailSampleCount = 0;
+			} catch(Exception e) {
+				Logger.logln(Level.ERROR, "Failed to spill record samples to the file : " + e.getMessage());
+			}
+		}
+		sampleStore.trimToSize();
+		result.sampleStore = sampleStore;
+		result.stackTable = stackTable;
 		result.resourceData = resourceData;
+		result.tickStats = tickStats;
+		result.maxStackDepth = this.maxStackDepth;
+		result.adjustments = (adaptiveController == null) ? null : adaptiveController.getAdjustments();
+		result.threadChurn = (churnTracker == null) ? null : churnTracker.getThreadChurn();
+		result.resourceSeries = resourceSeries;
+		result.stackIndex = stackIndex;
 		return result;
 	}
 
@@ -0,0 +1,51 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import javax.management.MBeanServerConnection;
+
+import dal.tool.trace.jmxer.cli.data.RecordResult;
+import dal.tool.trace.jmxer.cli.data.RecordThreadInfo;
+
+/**
+ * 스택트레이스 없이 스레드 상태만 샘플링하는 레코더<br/>
+ * 깊이 0으로 getThreadInfo를 호출하여 상태, Lock명, Lock 소유 스레드만 수집한다.
+ * 모든 샘플은 빈 스택 하나를 가리키므로, 샘플당 크기는 스레드 상태 컬럼({@link dal.tool.trace.jmxer.cli.data.RecordThreadSamples})뿐이다.
+ */
+public class StateRecordThread extends StackRecordThread {
+
+	private int emptyStackId = -1;
+
+	public StateRecordThread(MBeanServerConnection mbeanConnection, String[] threadIds) throws Exception {
+		super("StateRecorder", mbeanConnection, threadIds);
+	}
+
+	protected void afterInit() throws Exception {
+		super.afterInit();
+		emptyStackId = stackTable.internStack(new int[0]);
+	}
+
+	protected int getThreadInfoDepth() {
+		return 0;
+	}
+
+	protected void setStackTrace(RecordThreadInfo recThrInfo, StackTraceElement[] stackTrace) {
+		recThrInfo.stackId = emptyStackId;
+		recThrInfo.sampleState = null;
+	}
+
+	public RecordResult snapshot() {
+		RecordResult result = super.snapshot();
+		if(result != null) {
+			result.stateOnly = true;
+		}
+		return result;
+	}
+
+	public RecordResult getRecordResult() {
+		RecordResult result = super.getRecordResult();
+		if(result != null) {
+			result.stateOnly = true;
+		}
+		return result;
+	}
+
+}
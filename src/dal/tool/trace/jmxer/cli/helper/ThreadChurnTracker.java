@@ -0,0 +1,272 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import dal.tool.trace.jmxer.cli.data.RecordResourceSeries;
+import dal.tool.trace.jmxer.cli.data.RecordThreadChurn;
+import dal.tool.util.jmx.JMXUtil;
+import dal.tool.util.jmx.MBeanOperationCall;
+
+/**
+ * 대상 JVM의 AllThreadIds를 이전에 확인한 목록과 비교하여 스레드의 생성/종료를 {@link RecordThreadChurn}에 기록한다.<br/>
+ * 샘플링 tick마다 확인하지 않고 {@link #POLL_INTERVAL_MS} 주기로 확인하며({@link #isPollDue}), 생성/종료 시간도 이 주기 단위가 된다.
+ * AllThreadIds와 TotalStartedThreadCount는 한번의 getAttributes로 가져오고, 스레드명은 새로 생긴 ID에 대해서만 getThreadInfo(depth 0)로 가져온다.
+ * 사용량을 수집하는 경우, 레코딩 중에 생성된 스레드는 스레드 시작 이후의 누적값 전체를, 시작할 때부터 있던 스레드는 처음 확인한 값과의 차이를 사용량으로 기록한다.
+ * 자원 시계열({@link RecordResourceSeries})을 함께 수집하면 시계열의 마지막 값을 사용하고, 시계열에 없는 스레드의 사용량만 조회한다.
+ * 누적값이 줄어들면 같은 ID가 다른 스레드에 재사용된 것으로 보고 종료와 생성으로 기록한다.
+ */
+public class ThreadChurnTracker {
+
+	/** 스레드 목록을 확인하는 최소 주기(ms) */
+	public static final long POLL_INTERVAL_MS = 1000L;
+
+	private static final String[] ATTRIBUTES = { "AllThreadIds", "TotalStartedThreadCount" };
+
+	private final MBeanServerConnection mbeanConnection;
+	private final ObjectName threadingName;
+	private final RecordThreadChurn churn = new RecordThreadChurn();
+	private final MBeanOperationCall threadInfoCall;
+	private final MBeanOperationCall threadCpuTimeCall;
+	private final MBeanOperationCall threadAllocatedBytesCall;
+	private boolean started = false;
+	/** 살아있는 스레드 ID(정렬됨)와 같은 위치의 항목 위치, 기준값, 마지막 값 */
+	private long[] aliveIds = new long[0];
+	private int[] aliveEntries = new int[0];
+	private long[] baseCpus = new long[0];
+	private long[] lastCpus = new long[0];
+	private long[] baseMems = new long[0];
+	private long[] lastMems = new long[0];
+	/** 자원 시계열의 스레드 ID(정렬됨)와 같은 위치의 시계열 내 스레드 위치 */
+	private RecordResourceSeries series = null;
+	private long[] seriesIds = null;
+	private int[] seriesIndexes = null;
+
+
+	/**
+	 * @param cpuTime 스레드별 CPU 시간을 수집할지 여부
+	 * @param allocatedBytes 스레드별 할당 바이트를 수집할지 여부
+	 */
+	public ThreadChurnTracker(MBeanServerConnection mbeanConnection, boolean cpuTime, boolean allocatedBytes) throws Exception {
+		this.mbeanConnection = mbeanConnection;
+		this.threadingName = new ObjectName(JMXUtil.THREADING_OBJECT_NAME);
+		this.threadInfoCall = JMXUtil.createThreadInfoCall(new long[0], 0);
+		this.threadCpuTimeCall = cpuTime ? JMXUtil.createThreadIdsCall("getThreadCpuTime", new long[0]) : null;
+		this.threadAllocatedBytesCall = allocatedBytes ? JMXUtil.createThreadIdsCall("getThreadAllocatedBytes", new long[0]) : null;
+	}
+
+	public RecordThreadChurn getThreadChurn() {
+		return churn;
+	}
+
+	/**
+	 * 마지막으로 확인한 후 {@link #POLL_INTERVAL_MS}가 지났는지 확인한다. 아직 확인한 적이 없으면 true
+	 */
+	public synchronized boolean isPollDue(long now) {
+		return !started || now - churn.endTime >= POLL_INTERVAL_MS;
+	}
+
+	/**
+	 * 현재 스레드 목록을 이전 목록과 비교하여 기록한다. 처음 호출하면 기준 목록만 만든다.
+	 */
+	public void poll(long now) throws Exception {
+		poll(now, null);
+	}
+
+	/**
+	 * 현재 스레드 목록을 이전 목록과 비교하여 기록한다. 처음 호출하면 기준 목록만 만든다.
+	 * @param series 방금 값을 추가한 자원 시계열. 시계열에 있는 스레드는 마지막 값을 사용량으로 사용한다. null이면 모든 스레드의 사용량을 조회한다.
+	 */
+	public synchronized void poll(long now, RecordResourceSeries series) throws Exception {
+		AttributeList attrs = mbeanConnection.getAttributes(threadingName, ATTRIBUTES);
+		long[] ids = null;
+		long startedCount = -1L;
+		for(Attribute attr : attrs.asList()) {
+			if("AllThreadIds".equals(attr.getName())) {
+				ids = (long[])attr.getValue();
+			} else if(attr.getValue() instanceof Number) {
+				startedCount = ((Number)attr.getValue()).longValue();
+			}
+		}
+		if(ids == null) {
+			throw new Exception("Could not get thread ids.");
+		}
+		Arrays.sort(ids);
+		String[] newNames = getNewThreadNames(ids);
+		int[] seriesPos = getSeriesPositions(series, ids);
+		long[] cpus = getUsage(threadCpuTimeCall, ids, series, seriesPos, true);
+		long[] mems = getUsage(threadAllocatedBytesCall, ids, series, seriesPos, false);
+
+		long[] nIds = new long[ids.length];
+		int[] entries = new int[ids.length];
+		long[] bCpus = new long[ids.length];
+		long[] lCpus = new long[ids.length];
+		long[] bMems = new long[ids.length];
+		long[] lMems = new long[ids.length];
+		int n = 0;
+		int prev = 0;
+		int newIdx = 0;
+		for(int i = 0; i < ids.length; i++) {
+			while(prev < aliveIds.length && aliveIds[prev] < ids[i]) {
+				churn.setDeathTime(aliveEntries[prev++], now);
+			}
+			long cpu = (cpus == null) ? -1L : cpus[i];
+			long mem = (mems == null) ? -1L : mems[i];
+			int entry;
+			if(prev < aliveIds.length && aliveIds[prev] == ids[i]) {
+				entry = aliveEntries[prev];
+				if((cpu > -1L && cpu < lastCpus[prev]) || (mem > -1L && mem < lastMems[prev])) {
+					// 같은 ID를 다른 스레드가 사용하고 있다.
+					churn.setDeathTime(entry, now);
+					entry = churn.add(ids[i], getThreadName(ids[i]), now);
+					bCpus[n] = 0L;
+					bMems[n] = 0L;
+				} else {
+					bCpus[n] = baseCpus[prev];
+					bMems[n] = baseMems[prev];
+				}
+				prev++;
+			} else {
+				String name = newNames[newIdx++];
+				entry = churn.add(ids[i], name, started ? now : -1L);
+				bCpus[n] = started ? 0L : cpu;
+				bMems[n] = started ? 0L : mem;
+				if(name == null) {
+					// getThreadInfo 전에 종료되었다.
+					churn.setUsage(entry, getUsage(bCpus[n], cpu), getUsage(bMems[n], mem));
+					churn.setDeathTime(entry, now);
+					continue;
+				}
+			}
+			churn.setUsage(entry, getUsage(bCpus[n], cpu), getUsage(bMems[n], mem));
+			nIds[n] = ids[i];
+			entries[n] = entry;
+			lCpus[n] = cpu;
+			lMems[n] = mem;
+			n++;
+		}
+		while(prev < aliveIds.length) {
+			churn.setDeathTime(aliveEntries[prev++], now);
+		}
+		aliveIds = Arrays.copyOf(nIds, n);
+		aliveEntries = Arrays.copyOf(entries, n);
+		baseCpus = Arrays.copyOf(bCpus, n);
+		lastCpus = Arrays.copyOf(lCpus, n);
+		baseMems = Arrays.copyOf(bMems, n);
+		lastMems = Arrays.copyOf(lMems, n);
+
+		if(!started) {
+			started = true;
+			churn.startTime = now;
+			churn.startThreadCount = ids.length;
+			churn.startedCountAtStart = startedCount;
+		}
+		churn.endTime = now;
+		churn.endThreadCount = ids.length;
+		churn.maxThreadCount = Math.max(churn.maxThreadCount, ids.length);
+		churn.startedCountAtEnd = startedCount;
+	}
+
+	/**
+	 * ids(정렬됨)의 각 스레드의 자원 시계열 내 위치. 시계열에 없는 스레드는 -1이다.
+	 * @return 시계열이 없거나 비어있으면 null
+	 */
+	private int[] getSeriesPositions(RecordResourceSeries series, long[] ids) {
+		if(series == null || series.size() < 1) {
+			return null;
+		}
+		if(this.series != series) {
+			int count = series.getThreadCount();
+			seriesIds = new long[count];
+			for(int t = 0; t < count; t++) {
+				seriesIds[t] = series.getThreadId(t);
+			}
+			Arrays.sort(seriesIds);
+			seriesIndexes = new int[count];
+			for(int t = 0; t < count; t++) {
+				seriesIndexes[Arrays.binarySearch(seriesIds, series.getThreadId(t))] = t;
+			}
+			this.series = series;
+		}
+		int[] positions = new int[ids.length];
+		for(int i = 0; i < ids.length; i++) {
+			int pos = Arrays.binarySearch(seriesIds, ids[i]);
+			positions[i] = (pos < 0) ? -1 : seriesIndexes[pos];
+		}
+		return positions;
+	}
+
+	/**
+	 * ids의 사용량 누적값. 자원 시계열에 있는 스레드는 시계열의 마지막 값을 사용하고, 나머지 스레드만 한번에 조회한다.
+	 */
+	private long[] getUsage(MBeanOperationCall call, long[] ids, RecordResourceSeries series, int[] seriesPos, boolean cpu) throws Exception {
+		if(call == null) {
+			return null;
+		}
+		if(seriesPos == null) {
+			call.setParam(0, ids);
+			return (long[])call.invoke(mbeanConnection);
+		}
+		long[] values = new long[ids.length];
+		long[] missingIds = new long[ids.length];
+		int[] missingIdx = new int[ids.length];
+		int missing = 0;
+		int last = series.size() - 1;
+		for(int i = 0; i < ids.length; i++) {
+			if(seriesPos[i] > -1) {
+				values[i] = cpu ? series.getCpuTime(seriesPos[i], last) : series.getAllocBytes(seriesPos[i], last);
+			} else {
+				missingIds[missing] = ids[i];
+				missingIdx[missing++] = i;
+			}
+		}
+		if(missing > 0) {
+			call.setParam(0, Arrays.copyOf(missingIds, missing));
+			long[] fetched = (long[])call.invoke(mbeanConnection);
+			for(int m = 0; m < missing; m++) {
+				values[missingIdx[m]] = fetched[m];
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * 이전 tick에 없던 ID의 스레드명을 ID 순서대로 가져온다. 이미 종료된 스레드는 null이다.
+	 */
+	private String[] getNewThreadNames(long[] ids) throws Exception {
+		long[] newIds = new long[ids.length];
+		int count = 0;
+		for(long id : ids) {
+			if(Arrays.binarySearch(aliveIds, id) < 0) {
+				newIds[count++] = id;
+			}
+		}
+		String[] names = new String[count];
+		if(count < 1) {
+			return names;
+		}
+		threadInfoCall.setParam(0, Arrays.copyOf(newIds, count));
+		CompositeData[] resultData = (CompositeData[])threadInfoCall.invoke(mbeanConnection);
+		for(int i = 0; resultData != null && i < count; i++) {
+			names[i] = (resultData[i] == null) ? null : ThreadInfo.from(resultData[i]).getThreadName();
+		}
+		return names;
+	}
+
+	private String getThreadName(long id) throws Exception {
+		threadInfoCall.setParam(0, new long[]{ id });
+		CompositeData[] resultData = (CompositeData[])threadInfoCall.invoke(mbeanConnection);
+		return (resultData == null || resultData[0] == null) ? null : ThreadInfo.from(resultData[0]).getThreadName();
+	}
+
+	private static long getUsage(long base, long value) {
+		return (base < 0 || value < 0) ? -1L : value - base;
+	}
+
+}
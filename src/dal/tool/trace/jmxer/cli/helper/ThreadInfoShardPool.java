@@ -0,0 +1,147 @@
+package dal.tool.trace.jmxer.cli.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.management.MBeanServerConnection;
+import javax.management.openmbean.CompositeData;
+import javax.management.remote.JMXConnector;
+
+import dal.tool.cli.Logger;
+import dal.tool.util.jmx.JMXHelper;
+import dal.tool.util.jmx.JMXUtil;
+import dal.tool.util.jmx.MBeanInvokerCache;
+import dal.tool.util.jmx.MBeanConnector.ConnectType;
+import dal.tool.util.jmx.MBeanOperationCall;
+
+/**
+ * 대상 스레드 목록을 여러 shard로 나누어 getThreadInfo를 동시에 호출하는 JMX 연결 pool<br/>
+ * 첫번째 shard는 기존 연결로 호출자 스레드에서 수행하고, 나머지 shard는 각각 별도의 JMXConnector로 수행한다.
+ * 결과는 shard 순서(스레드 ID 순서)대로 합쳐서 하나의 샘플로 리턴한다.
+ */
+public class ThreadInfoShardPool {
+
+	private final MBeanServerConnection[] connections;
+	private final JMXConnector[] connectors;
+	private final MBeanOperationCall[] calls;
+	private final long[][] shardIds;
+	private final ExecutorService executor;
+
+
+	public ThreadInfoShardPool(MBeanServerConnection mainConnection, long[] threadIds, int shardCount, int maxDepth, ConnectType connectType, String connectTarget, String[] authenticate) throws Exception {
+		int count = Math.max(1, Math.min(shardCount, threadIds.length));
+		connections = new MBeanServerConnection[count];
+		connectors = new JMXConnector[count];
+		calls = new MBeanOperationCall[count];
+		shardIds = new long[count][];
+		int from = 0;
+		for(int i = 0; i < count; i++) {
+			int size = threadIds.length / count + ((i < threadIds.length % count) ? 1 : 0);
+			shardIds[i] = new long[size];
+			System.arraycopy(threadIds, from, shardIds[i], 0, size);
+			from += size;
+		}
+		setMaxDepth(maxDepth);
+		connections[0] = mainConnection;
+		try {
+			for(int i = 1; i < count; i++) {
+				connectors[i] = JMXHelper.connectToVM(connectType, connectTarget, authenticate);
+				connections[i] = connectors[i].getMBeanServerConnection();
+			}
+		} catch(Exception e) {
+			close();
+			throw new Exception("Failed to open JMX connections for shards : " + e.getMessage(), e);
+		}
+		executor = (count > 1) ? Executors.newFixedThreadPool(count - 1, new ThreadFactory() {
+			private int seq = 1;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "StackRecorder-Shard-" + (seq++));
+				t.setDaemon(true);
+				return t;
+			}
+		}) : null;
+		Logger.logln(Logger.Level.DEBUG, "Sampling " + threadIds.length + " threads with " + count + " shard(s).");
+	}
+
+	/**
+	 * 수집할 스택의 최대 깊이를 변경한다. 다음 fetch()부터 적용된다.
+	 */
+	public synchronized void setMaxDepth(int maxDepth) throws Exception {
+		for(int i = 0; i < shardIds.length; i++) {
+			calls[i] = JMXUtil.createThreadInfoCall(shardIds[i], maxDepth);
+		}
+	}
+
+	public int getShardCount() {
+		return calls.length;
+	}
+
+	/**
+	 * 모든 shard의 getThreadInfo를 동시에 호출하고, 결과를 shard 순서대로 합친다.
+	 */
+	public List<CompositeData> fetch() throws Exception {
+		MBeanOperationCall[] calls;
+		synchronized(this) {
+			calls = this.calls.clone();
+		}
+		List<Future<Object>> futures = new ArrayList<Future<Object>>(calls.length);
+		for(int i = 1; i < calls.length; i++) {
+			final MBeanOperationCall call = calls[i];
+			final MBeanServerConnection connection = connections[i];
+			futures.add(executor.submit(new Callable<Object>() {
+				public Object call() throws Exception {
+					return call.invoke(connection);
+				}
+			}));
+		}
+		List<CompositeData> result = new ArrayList<CompositeData>();
+		addResult(result, calls[0].invoke(connections[0]));
+		for(Future<Object> future : futures) {
+			try {
+				addResult(result, future.get());
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				throw (cause instanceof Exception) ? (Exception)cause : e;
+			}
+		}
+		return result;
+	}
+
+	private static void addResult(List<CompositeData> result, Object resultData) {
+		if(resultData == null) {
+			return;
+		}
+		for(CompositeData cd : (CompositeData[])resultData) {
+			result.add(cd);
+		}
+	}
+
+	/**
+	 * shard용 연결과 스레드를 정리한다. 연결에 대해 캐시된 호출 대상 해석 결과도 제거한다. 기존 연결은 닫지 않는다.
+	 */
+	public void close() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+		for(int i = 1; i < connectors.length; i++) {
+			if(connections[i] != null) {
+				MBeanInvokerCache.release(connections[i]);
+				connections[i] = null;
+			}
+			if(connectors[i] != null) {
+				try {
+					connectors[i].close();
+				} catch(Exception e) {
+				}
+				connectors[i] = null;
+			}
+		}
+	}
+
+}
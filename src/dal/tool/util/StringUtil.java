@@ -318,14 +318,10 @@ public class StringUtil {
 	 * @return 문자열이 패턴과 일치하면 true
 	 */
 	public static boolean isMatchStringWithPattern(String str, String pattern) {
-		String regex_pattern = pattern;
-		if(regex_pattern != null) {
-			regex_pattern = regex_pattern.replaceAll("\\.", "\\\\.").replaceAll("\\*", ".*").replaceAll("\\?", ".");
+		if(str == null || pattern == null) {
+			return false;
 		}
-		if(str != null && str.matches(regex_pattern)) {
-			return true;
-		}
-		return false;
+		return WildcardMatcher.compile(pattern).matches(str);
 	}
 
 	/**
@@ -0,0 +1,113 @@
+package dal.tool.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * '*'와 '?' 패턴을 한번만 해석하여 반복해서 사용하기 위한 matcher<br/>
+ * '*'와 '?' 외에 정규 표현식 특수문자가 없는 패턴은 정규 표현식을 사용하지 않고 직접 비교한다.
+ * 그 외의 패턴은 기존과 같이 '.'만 문자로 취급하는 정규 표현식으로 컴파일하여 사용한다.
+ * @author 권영달
+ *
+ */
+public class WildcardMatcher {
+
+	private static final String REGEX_META_CHARACTERS = "\\^$|+()[]{}";
+	private static final int MAX_CACHE_SIZE = 256;
+
+	private static final Map<String,WildcardMatcher> cache = new ConcurrentHashMap<String,WildcardMatcher>();
+
+	private final String pattern;
+	private final Pattern regex;
+	private final boolean hasWildcard;
+
+
+	private WildcardMatcher(String pattern) {
+		this.pattern = pattern;
+		this.hasWildcard = pattern.indexOf('*') > -1 || pattern.indexOf('?') > -1;
+		if(isGlobPattern(pattern)) {
+			this.regex = null;
+		} else {
+			this.regex = Pattern.compile(pattern.replaceAll("\\.", "\\\\.").replaceAll("\\*", ".*").replaceAll("\\?", "."));
+		}
+	}
+
+	/**
+	 * 패턴에 해당하는 matcher를 가져온다. 한번 만든 matcher는 재사용된다.
+	 * @param pattern 패턴 문자열 ('*'와 '?'만 사용 가능)
+	 */
+	public static WildcardMatcher compile(String pattern) {
+		WildcardMatcher matcher = cache.get(pattern);
+		if(matcher == null) {
+			matcher = new WildcardMatcher(pattern);
+			if(cache.size() >= MAX_CACHE_SIZE) {
+				cache.clear();
+			}
+			cache.put(pattern, matcher);
+		}
+		return matcher;
+	}
+
+	private static boolean isGlobPattern(String pattern) {
+		for(int i = 0; i < pattern.length(); i++) {
+			if(REGEX_META_CHARACTERS.indexOf(pattern.charAt(i)) > -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * 문자열 전체가 패턴과 일치하는지 여부를 리턴한다.
+	 * @return str이 null이면 false
+	 */
+	public boolean matches(String str) {
+		if(str == null) {
+			return false;
+		}
+		if(regex != null) {
+			return regex.matcher(str).matches();
+		}
+		if(!hasWildcard) {
+			return pattern.equals(str);
+		}
+		return matchGlob(str);
+	}
+
+	/**
+	 * '*'를 만나면 위치를 기억해두고, 이후에 일치하지 않으면 '*'가 한 문자를 더 차지하도록 하여 다시 비교한다.
+	 */
+	private boolean matchGlob(String str) {
+		int p = 0;
+		int s = 0;
+		int starIdx = -1;
+		int starMatch = 0;
+		int plen = pattern.length();
+		int slen = str.length();
+		while(s < slen) {
+			char pc = (p < plen) ? pattern.charAt(p) : 0;
+			if(p < plen && pc == '*') {
+				starIdx = p++;
+				starMatch = s;
+			} else if(p < plen && (pc == '?' || pc == str.charAt(s))) {
+				p++;
+				s++;
+			} else if(starIdx > -1) {
+				p = starIdx + 1;
+				s = ++starMatch;
+			} else {
+				return false;
+			}
+		}
+		while(p < plen && pattern.charAt(p) == '*') {
+			p++;
+		}
+		return p == plen;
+	}
+
+}
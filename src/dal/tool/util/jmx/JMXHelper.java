@@ -247,6 +247,57 @@ public class JMXHelper {
 	}
 
 
+	/**
+	 * Local JVM에 Attach 하여 Agent Jar를 로드한다.<br/>
+	 * Agent Jar의 MANIFEST에 Agent-Class가 지정되어 있어야 하며, 로드 후에는 바로 detach 한다.
+	 * @param connect_type 연결 방식. ATTACH_BY_PID 또는 ATTACH_BY_NAME만 가능하다.
+	 * @param connect_value 연결 대상 문자열. connect_type에 따라 의미가 다르다.
+	 * @param agentJarPath 로드할 Agent Jar 파일의 경로
+	 * @param agentArgs Agent에 전달할 인자 문자열
+	 * @throws Exception 수행 과정에서 발생한 모든 Exception
+	 */
+	public static void loadAgent(ConnectType connect_type, String connect_value, String agentJarPath, String agentArgs) throws Exception {
+		if(connect_type != ConnectType.ATTACH_BY_PID && connect_type != ConnectType.ATTACH_BY_NAME) {
+			throw new Exception("Loading an agent is only available when attached by PID or NAME.");
+		}
+		addAttachToolsToClasspath();
+		List<AttachProvider> availableProviders = AttachProvider.providers();
+		if(availableProviders == null || availableProviders.size() < 1) {
+        	throw new Exception("No AttachProvider exists : Attach is not available in JRE.");
+		}
+		AttachProvider attachProvider = availableProviders.get(0);
+		VirtualMachine virtualMachine = null;
+		try {
+			if(connect_type.equals(ConnectType.ATTACH_BY_PID)) {
+				virtualMachine = attachProvider.attachVirtualMachine(connect_value);
+			} else {
+	    		VirtualMachineDescriptor descriptor = null;
+	            for(VirtualMachineDescriptor virtualMachineDescriptor : attachProvider.listVirtualMachines()) {
+	            	String dispName = virtualMachineDescriptor.displayName();
+	                if(dispName != null && dispName.split(" ")[0].equals(connect_value)) {
+	                    descriptor = virtualMachineDescriptor;
+	                    break;
+	                }
+	            }
+	            if(descriptor == null) {
+	                throw new Exception("Could not find the process named '" + connect_value + "'");
+	            }
+				virtualMachine = attachProvider.attachVirtualMachine(descriptor);
+			}
+			virtualMachine.loadAgent(agentJarPath, agentArgs);
+		} catch(Exception e) {
+			throw new Exception("Failed to load agent to '" + connect_value + "' : " + getAttachFailureReason(e));
+		} finally {
+			if(virtualMachine != null) {
+				try {
+					virtualMachine.detach();
+				} catch(Exception e) {
+				}
+			}
+		}
+	}
+
+
 	/**
 	 * MBean Operation 호출을 위해 입력받은 문자열을 파라미터에 맞는 Class의 객체로 변환한다. 
 	 * @param paramInfos 파라미터 정보를 나타내는 MBeanParameterInfo 목록
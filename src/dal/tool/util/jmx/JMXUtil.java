@@ -28,8 +28,9 @@ import dal.tool.cli.Logger;
 import dal.tool.util.PatternUtil;
 import dal.tool.util.PatternUtil.PATTERN_TYPE;
 import dal.tool.util.StringUtil;
-import dal.tool.util.TypeUtil;
 import dal.tool.util.jmx.MBeanConnector.ConnectType;
+import dal.tool.util.jmx.MBeanInvokerCache.ResolvedOperation;
+import dal.tool.util.jmx.MBeanInvokerCache.ResolvedTarget;
 
 
 /**
@@ -39,6 +40,7 @@ import dal.tool.util.jmx.MBeanConnector.ConnectType;
  */
 public class JMXUtil {
 
+	public static final String THREADING_OBJECT_NAME = "java.lang:type=Threading";
 
 	/**
 	 * 전체 MBean ObjectName을 가져온다.
@@ -340,67 +342,55 @@ public class JMXUtil {
 		if(target_name == null) {
 			throw new Exception("Target name cannot be null.");
 		}
-		MBeanInfo mbeanInfo = mbeanConn.getMBeanInfo(oName);
-		boolean isOperation = (target_name.indexOf("(") > 0);
-		if(!isOperation) {
-			for(MBeanAttributeInfo info : mbeanInfo.getAttributes()) {
-	            if(info.getName().equals(target_name)) {
-	            	if(target_values == null) {
-	            		return getAttributeValue(mbeanConn, oName, target_name);
-	            	} else {
-	            		if(target_values.length > 0) {
-	            			setAttributeValue(mbeanConn, oName, info, target_values[0]);
-	            			return null;
-	            		}
-	            	}
-	            }
+		ResolvedTarget target = MBeanInvokerCache.getInstance(mbeanConn).resolve(oName, target_name, target_values);
+		if(target != null) {
+			if(target.attributeInfo != null) {
+				if(target_values == null) {
+					return getAttributeValue(mbeanConn, oName, target_name);
+				} else {
+					setAttributeValue(mbeanConn, oName, target.attributeInfo, target_values[0]);
+					return null;
+				}
+			}
+			for(ResolvedOperation operation : target.operations) {
+				try {
+					return invokeOperation(mbeanConn, oName, operation, target_values);
+				} catch(Exception e) {
+					if(!target.tryNextOnNumberFormatError || e.getCause() == null || !(e.getCause() instanceof NumberFormatException)) {
+						throw e;
+					}
+				}
 			}
-		}
-		for(MBeanOperationInfo info : mbeanInfo.getOperations()) {
-        	if(isOperation) {
-        		String opString = target_name.substring(0, target_name.indexOf("("));
-        		String argsString = target_name.substring(target_name.indexOf("(")+1, target_name.indexOf(")"));
-        		if(info.getName().equals(opString)) {
-	        		String[] argsArr = StringUtil.getTokenArray(argsString, ',', new String[]{"()"});
-	        		MBeanParameterInfo[] paramInfo = info.getSignature();
-	        		if(argsArr.length != paramInfo.length) {
-	        			continue;
-	        		}
-	        		boolean isMatch = true;
-	        		for(int i = 0; i < argsArr.length; i++) {
-	        			String type = TypeUtil.toType(paramInfo[i].getType());
-	        			if(!type.equals(argsArr[i])) {
-	        				isMatch = false;
-	        				break;
-	        			}
-	        		}
-	        		if(isMatch) {
-	        			try {
-	        				return invokeOperation(mbeanConn, oName, info, target_values);
-	        			} catch(Exception e) {
-	        				throw e;
-	        			}
-	        		}
-        		}
-        	} else {
-	            if(info.getName().equals(target_name)) {
-	            	if((target_values == null && info.getSignature().length == 0) || 
-	            	   (target_values != null && target_values.length == info.getSignature().length)) {
-	            		try {
-            				return invokeOperation(mbeanConn, oName, info, target_values);
-	            		} catch(Exception e) {
-	            			if(e.getCause() == null || !(e.getCause() instanceof NumberFormatException)) {
-	            				throw e;
-	            			}
-	            		}
-	            	}
-	            }
-        	}
 		}
 		throw new MBeanNotFoundException("No such attribute or operation '" + target_name + "' found");
 	}
 
 	
+	/**
+	 * 해석된 Operation을 수행한다.
+	 * @param mbeanConn 접속할 JVM의 MBeanServerConnection 객체 
+	 * @param oName MBean ObjectName 객체
+	 * @param operation 캐시에서 해석된 Operation
+	 * @param argList Operation 수행에 필요한 argument 값 배열
+	 * @return Operation 수행 결과 객체
+	 * @throws Exception 수행 과정에서 발생한 모든 Exception
+	 */
+	private static Object invokeOperation(MBeanServerConnection mbeanConn, ObjectName oName, ResolvedOperation operation, String[] argList) throws Exception {
+		String[] opSig = operation.getSignature();
+		if(opSig.length > 0 && argList == null) {
+			throw new Exception("Invalid argument size : should be " + opSig.length + ", but 0");
+		}
+		Object[] opParam = operation.createParams(argList);
+		MBeanOperationInfo mbeanOperInfo = operation.getOperationInfo();
+		if(Logger.isShowLevel(Logger.Level.DEBUG)) {
+			Logger.logln(Logger.Level.DEBUG, "Invoking operation '" + mbeanOperInfo.getName() + "' in ObjectName '" + oName.toString() + "'");
+			Logger.logln(Logger.Level.DEBUG, "Operation : " + mbeanOperInfo.getName() + "(" + JMXHelper.toTypeString(opSig) + "), returnType=" + JMXHelper.toTypeString(mbeanOperInfo.getReturnType()));
+		}
+		Object opRet = mbeanConn.invoke(oName, mbeanOperInfo.getName(), opParam, opSig);
+		return operation.voidReturn ? null : opRet;
+	}
+
+	
     /**
 	 * JVM에 접속하여 JMX 호출 결과를 가져온다.
      * @param mbeanConn 접속할 JVM의 MBeanServerConnection 객체 
@@ -434,9 +424,8 @@ public class JMXUtil {
     		return null;
     	}
         ObjectName oName = new ObjectName(object_name);
-		MBeanInfo mbeanInfo = mbeanConn.getMBeanInfo(oName);
 		if(target_name == null || "??".equals(target_name)) {
-			return mbeanInfo;
+			return mbeanConn.getMBeanInfo(oName);
 		} else if("?".equals(target_name)) {
 			if(target_values != null) {
 				throw new Exception("To view all info, argument should be null. To invoke a operation, select a name of Operation or Attribute.");
@@ -448,6 +437,7 @@ public class JMXUtil {
 			}
 			return getAttributeValuesWithInfo(mbeanConn, oName, null);
 		} else {
+			// 호출 대상 해석은 MBeanInvokerCache를 통해 수행되므로, 여기서 MBeanInfo를 미리 조회하지 않는다.
 			return invokeAttributeOrOperation(mbeanConn, oName, target_name, target_values);
 		}
     }
@@ -471,6 +461,39 @@ public class JMXUtil {
     	return threadIds;
     }
 
+    /**
+	 * ThreadMXBean의 getThreadInfo(long[],int) Operation을 반복 호출하기 위한 객체를 생성한다.
+	 * @param threadIds 가져올 Thread ID 배열
+	 * @param maxDepth 가져올 stacktrace의 최대 깊이
+	 * @return MBeanOperationCall 객체. 수행 결과는 CompositeData 배열
+	 * @throws Exception 호출 과정에서 발생한 모든 Exception
+     */
+    public static MBeanOperationCall createThreadInfoCall(long[] threadIds, int maxDepth) throws Exception {
+    	return new MBeanOperationCall(new ObjectName(THREADING_OBJECT_NAME), "getThreadInfo", new String[]{ "[J", "int" }, new Object[]{ threadIds, Integer.valueOf(maxDepth) });
+    }
+
+    /**
+	 * Thread ID 배열 하나를 인자로 받는 ThreadMXBean Operation(getThreadInfo, getThreadCpuTime, getThreadAllocatedBytes 등)을 반복 호출하기 위한 객체를 생성한다.
+	 * @param operationName Operation명
+	 * @param threadIds Thread ID 배열
+	 * @return MBeanOperationCall 객체
+	 * @throws Exception 호출 과정에서 발생한 모든 Exception
+     */
+    public static MBeanOperationCall createThreadIdsCall(String operationName, long[] threadIds) throws Exception {
+    	return new MBeanOperationCall(new ObjectName(THREADING_OBJECT_NAME), operationName, new String[]{ "[J" }, new Object[]{ threadIds });
+    }
+
+    /**
+	 * ThreadMXBean의 dumpAllThreads(boolean,boolean) Operation을 반복 호출하기 위한 객체를 생성한다.
+	 * @param lockedMonitors locked monitor 정보를 포함하려면 true
+	 * @param lockedSynchronizers locked synchronizer 정보를 포함하려면 true
+	 * @return MBeanOperationCall 객체. 수행 결과는 CompositeData 배열
+	 * @throws Exception 호출 과정에서 발생한 모든 Exception
+     */
+    public static MBeanOperationCall createDumpAllThreadsCall(boolean lockedMonitors, boolean lockedSynchronizers) throws Exception {
+    	return new MBeanOperationCall(new ObjectName(THREADING_OBJECT_NAME), "dumpAllThreads", new String[]{ "boolean", "boolean" }, new Object[]{ Boolean.valueOf(lockedMonitors), Boolean.valueOf(lockedSynchronizers) });
+    }
+
     /**
 	 * JVM에 접속하여 Thread ID에 대한 ThreadInfo Map을 가져온다.
      * @param mbeanConn 접속할 JVM의 MBeanServerConnection 객체
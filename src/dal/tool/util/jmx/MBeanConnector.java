@@ -64,11 +64,14 @@ public class MBeanConnector {
 	}
 
     /**
-     * 연결을 끊고, 세션을 정리한다.
+     * 연결을 끊고, 세션을 정리한다.<br/>
+     * 연결에 대해 캐시된 Attribute/Operation 해석 결과도 함께 제거된다.
      */
     public void close() {
 		initialized = false;
-		
+
+		MBeanInvokerCache.release(mbeanConnection);
+
 		if(jmxConnector != null) {
 			try {
 				jmxConnector.close();
@@ -0,0 +1,325 @@
+package dal.tool.util.jmx;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.OpenType;
+import javax.management.relation.MBeanServerNotificationFilter;
+
+import dal.tool.cli.Logger;
+import dal.tool.util.StringUtil;
+import dal.tool.util.TypeUtil;
+
+
+/**
+ * MBeanServerConnection 별로 Attribute/Operation 호출 대상의 해석 결과를 캐시하는 클래스<br/>
+ * ObjectName과 호출 대상 문자열(Attribute명, Operation명 또는 Operation 시그니처)로 찾은 MBeanAttributeInfo/MBeanOperationInfo,
+ * 파라미터 타입 배열 및 인자 변환기를 보관하여, 호출할 때마다 getMBeanInfo()를 다시 수행하지 않도록 한다.<br/>
+ * MBean이 unregister 되면 해당 ObjectName의 캐시가 제거되고, 연결을 닫거나 재접속하면 전체 캐시가 제거된다.
+ */
+public class MBeanInvokerCache {
+
+	private static final Map<MBeanServerConnection,MBeanInvokerCache> instances = Collections.synchronizedMap(new WeakHashMap<MBeanServerConnection,MBeanInvokerCache>());
+
+	private final WeakReference<MBeanServerConnection> mbeanConnRef;
+	private final Map<ObjectName,Map<String,ResolvedTarget>> targetCache = new ConcurrentHashMap<ObjectName,Map<String,ResolvedTarget>>();
+	private NotificationListener unregisterListener = null;
+
+
+	/**
+	 * 캐시 객체는 WeakHashMap의 값으로 보관되므로 MBeanServerConnection을 약한 참조로만 가진다.
+	 */
+	private MBeanInvokerCache(MBeanServerConnection mbeanConn) {
+		this.mbeanConnRef = new WeakReference<MBeanServerConnection>(mbeanConn);
+		registerUnregisterListener(mbeanConn);
+	}
+
+
+	/**
+	 * MBeanServerConnection에 대한 캐시 객체를 가져온다. 없으면 새로 생성한다.
+	 * @param mbeanConn 접속할 JVM의 MBeanServerConnection 객체
+	 * @return MBeanInvokerCache 객체
+	 */
+	public static MBeanInvokerCache getInstance(MBeanServerConnection mbeanConn) {
+		synchronized(instances) {
+			MBeanInvokerCache cache = instances.get(mbeanConn);
+			if(cache == null) {
+				cache = new MBeanInvokerCache(mbeanConn);
+				instances.put(mbeanConn, cache);
+			}
+			return cache;
+		}
+	}
+
+
+	/**
+	 * MBeanServerConnection에 대한 캐시를 제거하고, 등록한 Notification Listener를 해제한다.
+	 * @param mbeanConn 캐시를 제거할 MBeanServerConnection 객체
+	 */
+	public static void release(MBeanServerConnection mbeanConn) {
+		if(mbeanConn == null) {
+			return;
+		}
+		MBeanInvokerCache cache = instances.remove(mbeanConn);
+		if(cache != null) {
+			cache.clear();
+			cache.unregisterUnregisterListener();
+		}
+	}
+
+
+	/**
+	 * 캐시된 모든 해석 결과를 제거한다.
+	 */
+	public void clear() {
+		targetCache.clear();
+	}
+
+
+	/**
+	 * 특정 ObjectName에 대해 캐시된 해석 결과를 제거한다.
+	 * @param oName 제거할 MBean ObjectName 객체
+	 */
+	public void invalidate(ObjectName oName) {
+		if(oName != null) {
+			targetCache.remove(oName);
+		}
+	}
+
+
+	/**
+	 * 호출 대상을 해석한다. 캐시된 결과가 있으면 MBeanInfo를 조회하지 않고 바로 리턴한다.<br/>
+	 * MBeanInfo는 캐시 객체를 가져온 MBeanServerConnection으로 조회한다.
+	 * @param oName MBean ObjectName 객체
+	 * @param target_name Attribute명 또는 Operation명. Operation 시그니처(예:"getThreadInfo(long[],int)")도 가능
+	 * @param target_values 호출 대상 값. 개수에 따라 해석 결과가 달라질 수 있다.
+	 * @return 해석된 호출 대상. 일치하는 Attribute나 Operation이 없으면 null
+	 * @throws Exception 수행 과정에서 발생한 모든 Exception
+	 */
+	public ResolvedTarget resolve(ObjectName oName, String target_name, String[] target_values) throws Exception {
+		String key = target_name + "#" + ((target_values == null) ? -1 : target_values.length);
+		Map<String,ResolvedTarget> targets = targetCache.get(oName);
+		if(targets != null) {
+			ResolvedTarget target = targets.get(key);
+			if(target != null) {
+				return target;
+			}
+		}
+		MBeanServerConnection mbeanConn = mbeanConnRef.get();
+		if(mbeanConn == null) {
+			throw new Exception("The MBeanServerConnection is already released.");
+		}
+		ResolvedTarget target = resolveFromMBeanInfo(mbeanConn.getMBeanInfo(oName), target_name, target_values);
+		if(target != null) {
+			if(targets == null) {
+				targets = new ConcurrentHashMap<String,ResolvedTarget>();
+				targetCache.put(oName, targets);
+			}
+			targets.put(key, target);
+		}
+		return target;
+	}
+
+
+	/**
+	 * MBeanInfo로부터 호출 대상을 찾는다. {@link JMXUtil#invokeAttributeOrOperation}의 탐색 순서와 동일하다.
+	 */
+	private static ResolvedTarget resolveFromMBeanInfo(MBeanInfo mbeanInfo, String target_name, String[] target_values) throws Exception {
+		boolean isOperation = (target_name.indexOf("(") > 0);
+		if(!isOperation) {
+			for(MBeanAttributeInfo info : mbeanInfo.getAttributes()) {
+				if(info.getName().equals(target_name)) {
+					if(target_values == null || target_values.length > 0) {
+						return new ResolvedTarget(info, null, false);
+					}
+				}
+			}
+		}
+		List<ResolvedOperation> operations = new ArrayList<ResolvedOperation>();
+		for(MBeanOperationInfo info : mbeanInfo.getOperations()) {
+			if(isOperation) {
+				String opString = target_name.substring(0, target_name.indexOf("("));
+				String argsString = target_name.substring(target_name.indexOf("(")+1, target_name.indexOf(")"));
+				if(info.getName().equals(opString)) {
+					String[] argsArr = StringUtil.getTokenArray(argsString, ',', new String[]{"()"});
+					MBeanParameterInfo[] paramInfo = info.getSignature();
+					if(argsArr.length != paramInfo.length) {
+						continue;
+					}
+					boolean isMatch = true;
+					for(int i = 0; i < argsArr.length; i++) {
+						String type = TypeUtil.toType(paramInfo[i].getType());
+						if(!type.equals(argsArr[i])) {
+							isMatch = false;
+							break;
+						}
+					}
+					if(isMatch) {
+						operations.add(new ResolvedOperation(info));
+						break;
+					}
+				}
+			} else {
+				if(info.getName().equals(target_name)) {
+					if((target_values == null && info.getSignature().length == 0) ||
+					   (target_values != null && target_values.length == info.getSignature().length)) {
+						operations.add(new ResolvedOperation(info));
+					}
+				}
+			}
+		}
+		if(operations.isEmpty()) {
+			return null;
+		}
+		return new ResolvedTarget(null, operations, !isOperation);
+	}
+
+
+	private void registerUnregisterListener(MBeanServerConnection mbeanConn) {
+		try {
+			MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+			filter.enableAllObjectNames();
+			filter.disableType(MBeanServerNotification.REGISTRATION_NOTIFICATION);
+			NotificationListener listener = new NotificationListener() {
+				@Override
+				public void handleNotification(Notification notification, Object handback) {
+					if(notification instanceof MBeanServerNotification) {
+						invalidate(((MBeanServerNotification)notification).getMBeanName());
+					}
+				}
+			};
+			mbeanConn.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, listener, filter, null);
+			unregisterListener = listener;
+		} catch(Exception e) {
+			Logger.logln(Logger.Level.DEBUG, "Failed to listen MBean unregistration. The invoker cache will be cleared only on reconnect : " + e.getMessage());
+		}
+	}
+
+
+	private void unregisterUnregisterListener() {
+		MBeanServerConnection mbeanConn = mbeanConnRef.get();
+		if(unregisterListener == null || mbeanConn == null) {
+			unregisterListener = null;
+			return;
+		}
+		try {
+			mbeanConn.removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, unregisterListener);
+		} catch(Exception e) {
+			// the connection may already be closed
+		} finally {
+			unregisterListener = null;
+		}
+	}
+
+
+	/**
+	 * 해석된 호출 대상<br/>
+	 * Attribute이면 attributeInfo가, Operation이면 후보 Operation 목록이 설정된다.
+	 */
+	public static class ResolvedTarget {
+
+		final MBeanAttributeInfo attributeInfo;
+		final List<ResolvedOperation> operations;
+		final boolean tryNextOnNumberFormatError;
+
+		ResolvedTarget(MBeanAttributeInfo attributeInfo, List<ResolvedOperation> operations, boolean tryNextOnNumberFormatError) {
+			this.attributeInfo = attributeInfo;
+			this.operations = operations;
+			this.tryNextOnNumberFormatError = tryNextOnNumberFormatError;
+		}
+
+	}
+
+
+	/**
+	 * 해석된 Operation<br/>
+	 * 호출 시그니처와 파라미터별 변환기를 미리 만들어 둔다.
+	 */
+	public static class ResolvedOperation {
+
+		final MBeanOperationInfo info;
+		final String[] signature;
+		final ParamConverter[] converters;
+		final boolean voidReturn;
+
+		ResolvedOperation(MBeanOperationInfo info) {
+			this.info = info;
+			MBeanParameterInfo[] paramInfos = info.getSignature();
+			this.signature = new String[paramInfos.length];
+			this.converters = new ParamConverter[paramInfos.length];
+			for(int i = 0; i < paramInfos.length; i++) {
+				signature[i] = paramInfos[i].getType();
+				converters[i] = new ParamConverter(paramInfos[i]);
+			}
+			this.voidReturn = "void".equals(info.getReturnType());
+		}
+
+		public MBeanOperationInfo getOperationInfo() {
+			return info;
+		}
+
+		public String[] getSignature() {
+			return signature;
+		}
+
+		/**
+		 * 문자열 argument들을 파라미터 타입에 맞는 객체로 변환한다. {@link JMXHelper#createParams}와 동일한 결과를 만든다.
+		 * @param argList Operation 수행에 필요한 argument 값 배열
+		 * @return 변환된 Argument 객체 배열
+		 * @throws Exception 변환 과정에서 발생한 모든 Exception
+		 */
+		public Object[] createParams(String[] argList) throws Exception {
+			Object[] params = new Object[converters.length];
+			for(int i = 0; i < params.length; i++) {
+				params[i] = converters[i].convert(argList[i]);
+			}
+			return params;
+		}
+
+	}
+
+
+	/**
+	 * 하나의 Operation 파라미터에 대한 문자열 변환기
+	 */
+	static class ParamConverter {
+
+		final OpenType<?> arrayOpenType;
+		final String clsName;
+
+		ParamConverter(MBeanParameterInfo paramInfo) {
+			OpenType<?> openType = (OpenType<?>)paramInfo.getDescriptor().getFieldValue("openType");
+			if(openType != null && openType.isArray()) {
+				this.arrayOpenType = openType;
+				this.clsName = null;
+			} else {
+				this.arrayOpenType = null;
+				this.clsName = (openType==null) ? paramInfo.getType() : openType.getClassName();
+			}
+		}
+
+		Object convert(String value) throws Exception {
+			if(arrayOpenType != null) {
+				return JMXHelper.getArrayFromString(arrayOpenType, value);
+			}
+			return JMXHelper.createInstance(clsName, value);
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+package dal.tool.util.jmx;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+
+
+/**
+ * 시그니처와 인자 객체를 미리 만들어 두고 반복 호출하는 MBean Operation 호출 클래스<br/>
+ * 문자열 argument를 파싱하여 파라미터 객체를 만드는 {@link JMXUtil#invokeAttributeOrOperation}과 달리,
+ * 타입이 정해진 인자 객체를 그대로 {@link MBeanServerConnection#invoke}에 전달한다.<br/>
+ * 주기적으로 같은 Operation을 호출하는 샘플링 경로에서 매 호출마다 발생하는 문자열 생성/파싱 비용을 없애기 위해 사용한다.
+ */
+public class MBeanOperationCall {
+
+	private final ObjectName objectName;
+	private final String operationName;
+	private final String[] signature;
+	private final Object[] params;
+
+
+	/**
+	 * MBeanOperationCall 객체를 생성한다.
+	 * @param objectName MBean ObjectName 객체
+	 * @param operationName Operation명
+	 * @param signature 파라미터 타입 배열(예: "[J", "int")
+	 * @param params 파라미터 객체 배열. 배열은 호출간에 재사용된다.
+	 */
+	public MBeanOperationCall(ObjectName objectName, String operationName, String[] signature, Object[] params) {
+		if(signature.length != params.length) {
+			throw new IllegalArgumentException("Invalid argument size : should be " + signature.length + ", but " + params.length);
+		}
+		this.objectName = objectName;
+		this.operationName = operationName;
+		this.signature = signature;
+		this.params = params;
+	}
+
+
+	/**
+	 * 파라미터 객체를 변경한다. 이후 호출부터 적용된다.
+	 * @param idx 파라미터 위치(0부터 시작)
+	 * @param value 파라미터 객체
+	 */
+	public void setParam(int idx, Object value) {
+		params[idx] = value;
+	}
+
+
+	/**
+	 * 파라미터 객체를 가져온다.
+	 * @param idx 파라미터 위치(0부터 시작)
+	 * @return 파라미터 객체
+	 */
+	public Object getParam(int idx) {
+		return params[idx];
+	}
+
+
+	/**
+	 * Operation을 수행한다.
+	 * @param mbeanConn 접속할 JVM의 MBeanServerConnection 객체
+	 * @return Operation 수행 결과 객체
+	 * @throws Exception 수행 과정에서 발생한 모든 Exception
+	 */
+	public Object invoke(MBeanServerConnection mbeanConn) throws Exception {
+		return mbeanConn.invoke(objectName, operationName, params, signature);
+	}
+
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	public String getOperationName() {
+		return operationName;
+	}
+
+}